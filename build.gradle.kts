@@ -154,7 +154,7 @@ tasks.register<JavaExec>("exportDocs") {
 /**
  * Determine which projects to include/exclude as dependencies
  */
-val excludedProjects = listOf(project)
+val excludedProjects = listOf(project, project(":qupath-benchmarks"))
 val includedProjects = rootProject.subprojects.filter { !excludedProjects.contains(it) }
 
 dependencies {
@@ -192,7 +192,7 @@ tasks.register<Copy>("assembleJavadocs") {
     duplicatesStrategy = DuplicatesStrategy.EXCLUDE
 
     // Always include jars developed by all subprojects
-    rootProject.subprojects.forEach {
+    includedProjects.forEach {
         from(it.tasks.javadocJar)
     }
 
@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -55,7 +56,6 @@ import qupath.lib.gui.BuildInfo;
 import qupath.lib.gui.QuPathApp;
 import qupath.lib.gui.QuPathGUI;
 import qupath.lib.gui.extensions.Subcommand;
-import qupath.lib.gui.images.stores.ImageRegionStoreFactory;
 import qupath.lib.gui.logging.LogManager;
 import qupath.lib.gui.logging.LogManager.LogLevel;
 import qupath.lib.gui.prefs.PathPrefs;
@@ -67,8 +67,10 @@ import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ImageServerBuilder;
 import qupath.lib.images.servers.ImageServerProvider;
 import qupath.lib.images.servers.ImageServers;
+import qupath.lib.images.servers.TileCache;
 import qupath.lib.projects.Project;
 import qupath.lib.projects.ProjectIO;
+import qupath.lib.projects.ProjectImageEntry;
 import qupath.lib.roi.GeometryTools;
 import qupath.lib.scripting.QP;
 import qupath.lib.scripting.ScriptParameters;
@@ -388,6 +390,17 @@ class ScriptCommand implements Runnable {
 			+ "extract the third series within the file.", paramLabel = "server-arguments")
 	private String[] serverArgs;
 
+	@Option(names = {"--parallel"}, description = {"Number of project images to process in parallel (default = 1).",
+			"Each image is processed with its own script bindings; only relevant when using --project."}, paramLabel = "threads")
+	private int nThreads = 1;
+
+	@Option(names = {"--summary"}, description = "Path to write a JSON summary of the time taken and any errors for each project image.", paramLabel = "summary")
+	private String summaryPath;
+
+	@Option(names = {"--defer-detections"}, description = {"Only load detections from project data files when they are first needed by the script.",
+			"This can be much faster for images with many detections, but detections are not in their parents' child lists until loaded."})
+	private boolean deferDetections;
+
 	@Option(names = {"-h", "--help"}, usageHelp = true, description = "Show this help message and exit.")
 	private boolean usageHelpRequested;
 		
@@ -402,6 +415,8 @@ class ScriptCommand implements Runnable {
 			} else if (scriptFile != null) {
 				throw new IllegalArgumentException("Either a script file or a script command may be provided, but not both!");
 			}
+			if (nThreads < 1)
+				throw new IllegalArgumentException("Number of parallel threads must be at least 1, but was " + nThreads);
 			
 			// Ensure we have a tile cache set
 			createTileCache();
@@ -425,27 +440,18 @@ class ScriptCommand implements Runnable {
 					imageList = imageList.stream().filter(e -> imagePath.equals(e.getImageName())).toList();
 				}
 					
-				int batchSize = imageList.size();
-				
-				for (int batchIndex = 0; batchIndex < batchSize; batchIndex++) {
-					var entry = imageList.get(batchIndex);
-					logger.info("Running script for {} ({}/{})", entry.getImageName(), batchIndex, batchSize);
-					imageData = entry.readImageData();
-					try {
-						Object result = runBatchScript(project, imageData, batchIndex, batchSize, save);
-						if (result != null)
-							logger.info("Script result: {}", result);
-						if (save)
-							entry.saveImageData(imageData);
-					} catch (Exception e) {
-						logger.error("Error running script for image: " + entry.getImageName(), e);
-						// Throw an exception if we have a single image
-						// Otherwise, try to recover and continue processing images
-						if (imagePath != null && imagePath.equals(entry.getImageName()))
-							throw new RuntimeException(e);
-					} finally {
-						imageData.getServer().close();						
-					}
+				if (nThreads > 1 || summaryPath != null) {
+					var runner = new ScriptBatchRunner(imageList, nThreads, save,
+							(data, batchIndex, batchSize) -> runBatchScript(project, data, batchIndex, batchSize, save));
+					runner.setDeferDetections(deferDetections);
+					var summary = runner.run();
+					if (summaryPath != null)
+						ScriptBatchRunner.writeSummary(summary, Paths.get(QuPath.getEncodedPath(summaryPath)));
+					// Throw an exception if we have a single image
+					if (imagePath != null && !imagePath.isEmpty() && summary.nFailed() > 0)
+						throw new RuntimeException("Error running script for image: " + imagePath);
+				} else {
+					runSequential(project, imageList);
 				}
 			} else if (imagePath != null && !imagePath.equals("")) {
 				String path = QuPath.getEncodedPath(imagePath);
@@ -467,6 +473,34 @@ class ScriptCommand implements Runnable {
 		}
 	}
 	
+	/**
+	 * Run the script for each image in turn, on the current thread.
+	 */
+	private void runSequential(Project<BufferedImage> project, List<ProjectImageEntry<BufferedImage>> imageList) throws IOException {
+		int batchSize = imageList.size();
+		
+		for (int batchIndex = 0; batchIndex < batchSize; batchIndex++) {
+			var entry = imageList.get(batchIndex);
+			logger.info("Running script for {} ({}/{})", entry.getImageName(), batchIndex, batchSize);
+			var imageData = entry.readImageData(deferDetections);
+			try {
+				Object result = runBatchScript(project, imageData, batchIndex, batchSize, save);
+				if (result != null)
+					logger.info("Script result: {}", result);
+				if (save)
+					entry.saveImageData(imageData);
+			} catch (Exception e) {
+				logger.error("Error running script for image: " + entry.getImageName(), e);
+				// Throw an exception if we have a single image
+				// Otherwise, try to recover and continue processing images
+				if (imagePath != null && imagePath.equals(entry.getImageName()))
+					throw new RuntimeException(e);
+			} finally {
+				imageData.getServer().close();
+			}
+		}
+	}
+	
 	/**
 	 * Parse String arguments. If surrounded by square brackets, this is treated as a comma-separated list.
 	 * Otherwise, an array is returned containing a copy of the supplied args.
@@ -490,26 +524,8 @@ class ScriptCommand implements Runnable {
 	 * The tile cache is usually set when initializing the GUI; here, we need to create one for performance
 	 */
 	private void createTileCache() {
-		// TODO: Refactor this to avoid replicating logic from QuPathGUI private method
-		Runtime rt = Runtime.getRuntime();
-		long maxAvailable = rt.maxMemory(); // Max available memory
-		if (maxAvailable == Long.MAX_VALUE) {
-			logger.warn("No inherent maximum memory set - for caching purposes, will assume 64 GB");
-			maxAvailable = 64L * 1024L * 1024L * 1024L;
-		}
-		double percentage = PathPrefs.tileCachePercentageProperty().get();
-		if (percentage < 10) {
-			logger.warn("At least 10% of available memory needs to be used for tile caching (you requested {}%)", percentage);
-			percentage = 10;
-		} else if (percentage > 90) {
-			logger.warn("No more than 90% of available memory can be used for tile caching (you requested {}%)", percentage);
-			percentage = 90;			
-		}
-		long tileCacheSize = Math.round(maxAvailable * (percentage / 100.0));
-		logger.info(String.format("Setting tile cache size to %.2f MB (%.1f%% max memory)", tileCacheSize/(1024.*1024.), percentage));
-		
-		var imageRegionStore = ImageRegionStoreFactory.createImageRegionStore(tileCacheSize);
-		ImageServerProvider.setCache(imageRegionStore.getCache(), BufferedImage.class);
+		var tileCache = TileCache.createBufferedImageCache(PathPrefs.tileCachePercentageProperty().get(), true);
+		ImageServerProvider.setCache(tileCache, BufferedImage.class);
 	}
 	
 	
@@ -0,0 +1,283 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.common.ThreadTools;
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.ImageServerProvider;
+import qupath.lib.images.servers.TileCache;
+import qupath.lib.io.GsonTools;
+import qupath.lib.projects.ProjectImageEntry;
+
+/**
+ * Helper class to apply a script to multiple project entries, optionally in parallel.
+ * <p>
+ * Image data is read on separate threads, so that the next entry is usually ready by the time a worker
+ * becomes free. The number of images held in memory at any time is limited to one per worker, plus one
+ * that has been read ahead. Tiles are shared through the default tile cache, but are removed once an
+ * image has been processed since they are unlikely to be needed again.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+class ScriptBatchRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(ScriptBatchRunner.class);
+
+	/**
+	 * Function to run a script for a single image.
+	 */
+	@FunctionalInterface
+	static interface BatchScript {
+
+		/**
+		 * Run the script.
+		 * @param imageData the image data for the current entry
+		 * @param batchIndex index of the entry in the batch
+		 * @param batchSize total number of entries in the batch
+		 * @return the script result (may be null)
+		 * @throws Exception
+		 */
+		Object run(ImageData<BufferedImage> imageData, int batchIndex, int batchSize) throws Exception;
+
+	}
+
+	/**
+	 * Result of running the script for a single image.
+	 * Times are given in milliseconds.
+	 *
+	 * @param batchIndex index of the entry in the batch
+	 * @param imageName name of the image
+	 * @param imageId project ID of the image
+	 * @param thread name of the thread used to run the script
+	 * @param success true if the script completed (and data was saved, if requested)
+	 * @param readMillis time taken to read the image data
+	 * @param scriptMillis time taken to run the script
+	 * @param saveMillis time taken to save the image data
+	 * @param error description of the error, or null if the image was processed successfully
+	 */
+	static record ImageResult(int batchIndex, String imageName, String imageId, String thread, boolean success,
+			long readMillis, long scriptMillis, long saveMillis, String error) {}
+
+	/**
+	 * Summary of a batch run, which is written as JSON.
+	 *
+	 * @param nThreads number of worker threads
+	 * @param nImages number of images in the batch
+	 * @param nFailed number of images that could not be processed
+	 * @param totalMillis total time taken, in milliseconds
+	 * @param images results for individual images, in batch order
+	 */
+	static record BatchSummary(int nThreads, int nImages, int nFailed, long totalMillis, List<ImageResult> images) {}
+
+	private final List<? extends ProjectImageEntry<BufferedImage>> entries;
+	private final int nThreads;
+	private final boolean save;
+	private final BatchScript script;
+	private boolean deferDetections = false;
+
+	// Number of images currently open for each server path, so that tiles are only cleared when no longer needed
+	private final Map<String, Integer> openServerPaths = new HashMap<>();
+
+	/**
+	 * Constructor.
+	 * @param entries the entries to process
+	 * @param nThreads number of entries to process in parallel
+	 * @param save if true, save the image data for each entry after the script has run
+	 * @param script the script to run
+	 */
+	ScriptBatchRunner(List<? extends ProjectImageEntry<BufferedImage>> entries, int nThreads, boolean save, BatchScript script) {
+		Objects.requireNonNull(entries);
+		Objects.requireNonNull(script);
+		if (nThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be at least 1, but was " + nThreads);
+		this.entries = List.copyOf(entries);
+		this.nThreads = nThreads;
+		this.save = save;
+		this.script = script;
+	}
+
+	/**
+	 * Request that detections are only loaded when they are needed by the script, when reading image data.
+	 * @param deferDetections
+	 * @see ProjectImageEntry#readImageData(boolean)
+	 */
+	void setDeferDetections(boolean deferDetections) {
+		this.deferDetections = deferDetections;
+	}
+
+	/**
+	 * Process all entries, waiting until they are complete.
+	 * Failures for individual images are logged and recorded in the summary, rather than thrown.
+	 * @return a summary of the batch
+	 * @throws InterruptedException if interrupted while waiting for the batch to complete
+	 */
+	BatchSummary run() throws InterruptedException {
+		long startTime = System.currentTimeMillis();
+		int batchSize = entries.size();
+		// Limit the number of images in memory to one per worker, plus one read ahead
+		var permits = new Semaphore(nThreads + 1);
+		ExecutorService readPool = Executors.newFixedThreadPool(nThreads, ThreadTools.createThreadFactory("batch-read-", true));
+		ExecutorService scriptPool = Executors.newFixedThreadPool(nThreads, ThreadTools.createThreadFactory("batch-script-", true));
+		try {
+			List<CompletableFuture<ImageResult>> futures = new ArrayList<>();
+			for (int i = 0; i < batchSize; i++) {
+				int batchIndex = i;
+				var entry = entries.get(i);
+				var read = CompletableFuture.supplyAsync(() -> readImageData(entry, permits), readPool);
+				futures.add(read.thenApplyAsync(loaded -> process(entry, loaded, batchIndex, batchSize, permits), scriptPool));
+			}
+			List<ImageResult> results = new ArrayList<>();
+			for (var future : futures) {
+				try {
+					results.add(future.get());
+				} catch (InterruptedException e) {
+					futures.forEach(f -> f.cancel(true));
+					throw e;
+				} catch (Exception e) {
+					// Shouldn't happen, since process catches its own exceptions
+					logger.error("Error in batch: " + e.getLocalizedMessage(), e);
+				}
+			}
+			long totalMillis = System.currentTimeMillis() - startTime;
+			int nFailed = (int)results.stream().filter(r -> !r.success()).count();
+			logger.info("Processed {} images with {} thread(s) in {} ms ({} failed)", batchSize, nThreads, totalMillis, nFailed);
+			return new BatchSummary(nThreads, batchSize, nFailed, totalMillis, results);
+		} finally {
+			readPool.shutdownNow();
+			scriptPool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Write a summary to a JSON file.
+	 * @param summary
+	 * @param path
+	 * @throws IOException
+	 */
+	static void writeSummary(BatchSummary summary, Path path) throws IOException {
+		var parent = path.toAbsolutePath().getParent();
+		if (parent != null)
+			Files.createDirectories(parent);
+		try (var writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			GsonTools.getInstance(true).toJson(summary, writer);
+		}
+		logger.info("Batch summary written to {}", path);
+	}
+
+
+	/**
+	 * Image data that has been read for an entry, or the exception that prevented it being read.
+	 */
+	private static record LoadedImage(ImageData<BufferedImage> imageData, String serverPath, long readMillis, Throwable exception) {}
+
+	private LoadedImage readImageData(ProjectImageEntry<BufferedImage> entry, Semaphore permits) {
+		permits.acquireUninterruptibly();
+		long start = System.currentTimeMillis();
+		try {
+			var imageData = entry.readImageData(deferDetections);
+			String serverPath = imageData.getServerPath();
+			synchronized (openServerPaths) {
+				openServerPaths.merge(serverPath, 1, Integer::sum);
+			}
+			return new LoadedImage(imageData, serverPath, System.currentTimeMillis() - start, null);
+		} catch (Throwable e) {
+			return new LoadedImage(null, null, System.currentTimeMillis() - start, e);
+		}
+	}
+
+	private ImageResult process(ProjectImageEntry<BufferedImage> entry, LoadedImage loaded, int batchIndex, int batchSize, Semaphore permits) {
+		String name = entry.getImageName();
+		String thread = Thread.currentThread().getName();
+		var imageData = loaded.imageData();
+		long scriptMillis = 0;
+		long saveMillis = 0;
+		try {
+			if (loaded.exception() != null)
+				throw loaded.exception();
+			logger.info("Running script for {} ({}/{})", name, batchIndex, batchSize);
+			long start = System.currentTimeMillis();
+			Object result = script.run(imageData, batchIndex, batchSize);
+			scriptMillis = System.currentTimeMillis() - start;
+			if (result != null)
+				logger.info("Script result for {}: {}", name, result);
+			if (save) {
+				start = System.currentTimeMillis();
+				entry.saveImageData(imageData);
+				saveMillis = System.currentTimeMillis() - start;
+			}
+			return new ImageResult(batchIndex, name, entry.getID(), thread, true, loaded.readMillis(), scriptMillis, saveMillis, null);
+		} catch (Throwable e) {
+			logger.error("Error running script for image: " + name, e);
+			return new ImageResult(batchIndex, name, entry.getID(), thread, false, loaded.readMillis(), scriptMillis, saveMillis, describe(e));
+		} finally {
+			if (imageData != null)
+				closeImageData(imageData, loaded.serverPath());
+			permits.release();
+		}
+	}
+
+	private void closeImageData(ImageData<BufferedImage> imageData, String serverPath) {
+		var server = imageData.getServer();
+		try {
+			server.close();
+		} catch (Exception e) {
+			logger.warn("Exception closing server: " + e.getLocalizedMessage(), e);
+		}
+		// Another entry might be using the same image (e.g. if it has been duplicated), in which case its tiles 
+		// are still needed
+		boolean lastOpen;
+		synchronized (openServerPaths) {
+			lastOpen = openServerPaths.merge(serverPath, -1, Integer::sum) <= 0;
+			if (lastOpen)
+				openServerPaths.remove(serverPath);
+		}
+		if (lastOpen && ImageServerProvider.getCache(BufferedImage.class) instanceof TileCache<BufferedImage> cache)
+			cache.clearCacheForServer(serverPath);
+	}
+
+	private static String describe(Throwable e) {
+		String message = e.getLocalizedMessage();
+		if (message == null)
+			return e.getClass().getName();
+		return e.getClass().getName() + ": " + message;
+	}
+
+}
@@ -0,0 +1,400 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.images.servers.ImageServerProvider;
+import qupath.lib.images.servers.TileCache;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.io.GsonTools;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.projects.ProjectImageEntry;
+import qupath.lib.projects.ResourceManager.Manager;
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class TestScriptBatchRunner {
+	
+	@TempDir
+	Path dir;
+	
+	@Test
+	public void test_resultsInBatchOrder() throws Exception {
+		var counter = new ImageCounter();
+		var entries = createEntries(6, counter);
+		// Later images finish first, but results should still be in batch order
+		var runner = new ScriptBatchRunner(entries, 3, false, (imageData, batchIndex, batchSize) -> {
+			Thread.sleep((batchSize - batchIndex) * 10L);
+			return null;
+		});
+		var summary = runner.run();
+		assertEquals(3, summary.nThreads());
+		assertEquals(6, summary.nImages());
+		assertEquals(0, summary.nFailed());
+		assertEquals(6, summary.images().size());
+		for (int i = 0; i < entries.size(); i++) {
+			var result = summary.images().get(i);
+			assertEquals(i, result.batchIndex());
+			assertEquals(entries.get(i).getImageName(), result.imageName());
+			assertEquals(entries.get(i).getID(), result.imageId());
+			assertTrue(result.success());
+			assertNull(result.error());
+			assertTrue(result.thread().startsWith("batch-script-"));
+		}
+		// All images should be closed
+		assertEquals(0, counter.open.get());
+	}
+	
+	@Test
+	public void test_failuresInSummary() throws Exception {
+		var counter = new ImageCounter();
+		var entries = createEntries(5, counter);
+		entries.get(1).readException = new IOException("Unable to read");
+		entries.get(3).saveException = new IOException("Unable to save");
+		var runner = new ScriptBatchRunner(entries, 2, true, (imageData, batchIndex, batchSize) -> {
+			if (batchIndex == 2)
+				throw new IllegalArgumentException("Script failed");
+			return batchIndex;
+		});
+		var summary = runner.run();
+		assertEquals(5, summary.nImages());
+		assertEquals(3, summary.nFailed());
+		
+		var results = summary.images();
+		assertTrue(results.get(0).success());
+		assertTrue(results.get(4).success());
+		assertFalse(results.get(1).success());
+		assertTrue(results.get(1).error().contains("Unable to read"));
+		assertFalse(results.get(2).success());
+		assertTrue(results.get(2).error().contains(IllegalArgumentException.class.getName()));
+		assertTrue(results.get(2).error().contains("Script failed"));
+		assertFalse(results.get(3).success());
+		assertTrue(results.get(3).error().contains("Unable to save"));
+		
+		// Only images where the script succeeded should be saved
+		for (int i = 0; i < entries.size(); i++)
+			assertEquals(i == 0 || i == 3 || i == 4, entries.get(i).saveAttempted);
+		assertEquals(0, counter.open.get());
+		
+		// Failures should also be written to the JSON summary
+		var path = dir.resolve("summary").resolve("batch.json");
+		ScriptBatchRunner.writeSummary(summary, path);
+		var json = GsonTools.getInstance().fromJson(Files.readString(path), Map.class);
+		assertEquals(3, ((Number)json.get("nFailed")).intValue());
+		assertEquals(5, ((List<?>)json.get("images")).size());
+	}
+	
+	@Test
+	public void test_imagesInMemoryLimited() throws Exception {
+		for (int nThreads : new int[] {1, 2, 4}) {
+			var counter = new ImageCounter();
+			var entries = createEntries(12, counter);
+			// Reading is fast compared to the script, so the readers would get far ahead if they weren't limited
+			var runner = new ScriptBatchRunner(entries, nThreads, false, (imageData, batchIndex, batchSize) -> {
+				Thread.sleep(20L);
+				return null;
+			});
+			var summary = runner.run();
+			assertEquals(0, summary.nFailed());
+			assertTrue(counter.maxOpen.get() <= nThreads + 1, 
+					"Expected at most " + (nThreads + 1) + " images in memory, but found " + counter.maxOpen.get());
+			assertTrue(counter.maxOpen.get() >= nThreads);
+			assertEquals(0, counter.open.get());
+		}
+	}
+	
+	@Test
+	public void test_duplicateEntriesKeepTiles() throws Exception {
+		var previousCache = ImageServerProvider.getCache(BufferedImage.class);
+		var cache = TileCache.createBufferedImageCache(1024 * 1024);
+		ImageServerProvider.setCache(cache, BufferedImage.class);
+		try {
+			var counter = new ImageCounter();
+			var entries = createEntries(2, counter);
+			for (var entry : entries)
+				entry.serverId = "shared";
+			var request = RegionRequest.createInstance("shared", 1.0, 0, 0, 16, 16);
+			cache.put(request, new BufferedImage(16, 16, BufferedImage.TYPE_BYTE_GRAY));
+			
+			// The second image should be able to use the tiles after the first image has been closed
+			var firstDone = new CountDownLatch(1);
+			var runner = new ScriptBatchRunner(entries, 2, false, (imageData, batchIndex, batchSize) -> {
+				if (batchIndex == 0) {
+					// Wait until both images are open, otherwise the tiles may legitimately be cleared
+					long timeout = System.currentTimeMillis() + 10_000;
+					while (counter.open.get() < 2 && System.currentTimeMillis() < timeout)
+						Thread.sleep(10L);
+					firstDone.countDown();
+					return null;
+				}
+				assertTrue(firstDone.await(10, TimeUnit.SECONDS));
+				// Wait for the first image to be closed
+				long timeout = System.currentTimeMillis() + 10_000;
+				while (counter.open.get() > 1 && System.currentTimeMillis() < timeout)
+					Thread.sleep(10L);
+				assertEquals(1, counter.open.get());
+				assertTrue(cache.containsKey(request));
+				return null;
+			});
+			var summary = runner.run();
+			assertEquals(0, summary.nFailed());
+			// Tiles should be removed once no entry needs them
+			assertFalse(cache.containsKey(request));
+		} finally {
+			ImageServerProvider.setCache(previousCache, BufferedImage.class);
+		}
+	}
+	
+	@Test
+	public void test_invalidThreads() {
+		assertThrows(IllegalArgumentException.class, 
+				() -> new ScriptBatchRunner(List.of(), 0, false, (imageData, batchIndex, batchSize) -> null));
+	}
+	
+	
+	@Test
+	public void test_deferDetections() throws Exception {
+		var counter = new ImageCounter();
+		var entries = createEntries(3, counter);
+		var runner = new ScriptBatchRunner(entries, 2, false, (imageData, batchIndex, batchSize) -> null);
+		runner.run();
+		assertTrue(entries.stream().noneMatch(e -> e.deferDetections));
+		runner.setDeferDetections(true);
+		runner.run();
+		assertTrue(entries.stream().allMatch(e -> e.deferDetections));
+	}
+	
+	private static List<StubEntry> createEntries(int n, ImageCounter counter) {
+		List<StubEntry> entries = new ArrayList<>();
+		for (int i = 0; i < n; i++)
+			entries.add(new StubEntry("Image " + i, Integer.toString(i), counter));
+		return entries;
+	}
+	
+	/**
+	 * Count the images that have been read but not yet closed.
+	 */
+	private static class ImageCounter {
+		
+		private final AtomicInteger open = new AtomicInteger();
+		private final AtomicInteger maxOpen = new AtomicInteger();
+		
+		private void opened() {
+			maxOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+		}
+		
+		private void closed() {
+			open.decrementAndGet();
+		}
+		
+	}
+	
+	/**
+	 * Server that reports when it is closed.
+	 */
+	private static class CountedServer extends WrappedBufferedImageServer {
+		
+		private final ImageCounter counter;
+		
+		private final String id;
+		
+		private CountedServer(String name, ImageCounter counter, String id) {
+			super(name, new BufferedImage(16, 16, BufferedImage.TYPE_BYTE_GRAY));
+			this.counter = counter;
+			this.id = id;
+		}
+		
+		@Override
+		protected String createID() {
+			return id == null ? super.createID() : id;
+		}
+		
+		@Override
+		public void close() throws Exception {
+			counter.closed();
+			super.close();
+		}
+		
+	}
+	
+	/**
+	 * Minimal entry that creates a new image for each read, and optionally fails to read or save.
+	 */
+	private static class StubEntry implements ProjectImageEntry<BufferedImage> {
+		
+		private final String name;
+		private final String id;
+		private final ImageCounter counter;
+		private final Map<String, String> metadata = new HashMap<>();
+		
+		private volatile IOException readException;
+		private volatile IOException saveException;
+		private volatile boolean saveAttempted;
+		private volatile String serverId;
+		private volatile boolean deferDetections;
+		
+		private StubEntry(String name, String id, ImageCounter counter) {
+			this.name = name;
+			this.id = id;
+			this.counter = counter;
+		}
+
+		@Override
+		public ImageData<BufferedImage> readImageData() throws IOException {
+			if (readException != null)
+				throw readException;
+			counter.opened();
+			return new ImageData<>(new CountedServer(name, counter, serverId));
+		}
+
+		@Override
+		public ImageData<BufferedImage> readImageData(boolean deferDetections) throws IOException {
+			this.deferDetections = deferDetections;
+			return readImageData();
+		}
+
+		@Override
+		public void saveImageData(ImageData<BufferedImage> imageData) throws IOException {
+			saveAttempted = true;
+			if (saveException != null)
+				throw saveException;
+		}
+
+		@Override
+		public String getID() {
+			return id;
+		}
+
+		@Override
+		public String getImageName() {
+			return name;
+		}
+
+		@Override
+		public void setImageName(String name) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getOriginalImageName() {
+			return name;
+		}
+
+		@Override
+		public Path getEntryPath() {
+			return null;
+		}
+
+		@Override
+		public String getDescription() {
+			return null;
+		}
+
+		@Override
+		public void setDescription(String description) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public ServerBuilder<BufferedImage> getServerBuilder() {
+			return null;
+		}
+
+		@Override
+		public PathObjectHierarchy readHierarchy() throws IOException {
+			return new PathObjectHierarchy();
+		}
+
+		@Override
+		public boolean hasImageData() {
+			return true;
+		}
+
+		@Override
+		public String getSummary() {
+			return name;
+		}
+
+		@Override
+		public BufferedImage getThumbnail() throws IOException {
+			return null;
+		}
+
+		@Override
+		public void setThumbnail(BufferedImage img) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Manager<ImageServer<BufferedImage>> getImages() {
+			return null;
+		}
+
+		@Override
+		public Set<String> getTags() {
+			return Set.of();
+		}
+
+		@Override
+		public Map<String, String> getMetadata() {
+			return metadata;
+		}
+
+		@Override
+		public Collection<URI> getURIs() throws IOException {
+			return List.of();
+		}
+
+		@Override
+		public boolean updateURIs(Map<URI, URI> replacements) throws IOException {
+			return false;
+		}
+		
+	}
+
+}
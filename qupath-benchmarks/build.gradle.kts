@@ -0,0 +1,133 @@
+import groovy.json.JsonSlurper
+
+/**
+ * JMH benchmarks for QuPath's core operations.
+ *
+ * Run all benchmarks with
+ *   ./gradlew :qupath-benchmarks:jmh
+ * or a subset with
+ *   ./gradlew :qupath-benchmarks:jmh -Pjmh.includes=Hierarchy
+ *
+ * To compare against an earlier build, first run the benchmarks and save the results as a baseline
+ *   ./gradlew :qupath-benchmarks:jmh :qupath-benchmarks:jmhSaveBaseline
+ * then switch to the new code and run
+ *   ./gradlew :qupath-benchmarks:jmh :qupath-benchmarks:jmhCompare
+ *
+ * The baseline is saved to qupath-benchmarks/baselines/baseline.json by default (which is ignored by git, 
+ * since results are specific to the machine that ran them).
+ * Use -Pjmh.baseline=path/to/baseline.json to specify a different baseline file,
+ * -Pjmh.threshold=0.1 to change the relative change that is reported as a regression,
+ * and -Pjmh.failOnRegression=true to fail the build if any regressions are found.
+ */
+
+plugins {
+    id("qupath.common-conventions")
+    alias(libs.plugins.jmh)
+}
+
+base {
+    archivesName = "qupath-benchmarks"
+    description = "JMH benchmarks for QuPath."
+}
+
+dependencies {
+    jmhImplementation(project(":qupath-core"))
+    jmhImplementation(project(":qupath-core-processing"))
+}
+
+jmh {
+    jmhVersion = libs.versions.jmh
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+    fork = providers.gradleProperty("jmh.fork").map(String::toInt).getOrElse(1)
+    warmupIterations = providers.gradleProperty("jmh.warmupIterations").map(String::toInt).getOrElse(3)
+    iterations = providers.gradleProperty("jmh.iterations").map(String::toInt).getOrElse(5)
+    providers.gradleProperty("jmh.includes").orNull?.let {
+        includes.addAll(it.split(",").map(String::trim))
+    }
+}
+
+val jmhResults = layout.buildDirectory.file("results/jmh/results.json")
+val jmhBaseline = providers.gradleProperty("jmh.baseline")
+    .map { file(it) }
+    // Keep the default baseline outside the build directory, so that it survives a clean build
+    .orElse(layout.projectDirectory.file("baselines/baseline.json").asFile)
+
+tasks.register<Copy>("jmhSaveBaseline") {
+    group = "benchmark"
+    description = "Save the latest JMH results as a baseline for comparison"
+    mustRunAfter("jmh")
+    val baseline = jmhBaseline.get()
+    from(jmhResults)
+    into(baseline.parentFile)
+    rename { baseline.name }
+}
+
+tasks.register("jmhCompare") {
+    group = "benchmark"
+    description = "Compare the latest JMH results against a saved baseline"
+    mustRunAfter("jmh")
+    val resultsFile = jmhResults.get().asFile
+    val baselineFile = jmhBaseline.get()
+    val reportFile = layout.buildDirectory.file("reports/jmh/comparison.txt").get().asFile
+    val threshold = providers.gradleProperty("jmh.threshold").map(String::toDouble).getOrElse(0.1)
+    val failOnRegression = providers.gradleProperty("jmh.failOnRegression").map(String::toBoolean).getOrElse(false)
+    inputs.files(resultsFile, baselineFile)
+    outputs.file(reportFile)
+    doLast {
+        if (!baselineFile.isFile)
+            throw GradleException("No baseline found at $baselineFile - run jmhSaveBaseline first")
+        if (!resultsFile.isFile)
+            throw GradleException("No results found at $resultsFile - run jmh first")
+        val baseline = readJmhScores(baselineFile)
+        val current = readJmhScores(resultsFile)
+        val lines = mutableListOf<String>()
+        val regressions = mutableListOf<String>()
+        lines.add(String.format("%-80s %14s %14s %9s", "Benchmark", "Baseline", "Current", "Change"))
+        for ((key, score) in current) {
+            val base = baseline[key]
+            if (base == null) {
+                lines.add(String.format("%-80s %14s %14.3f %9s  %s", key, "-", score.value, "-", score.unit))
+                continue
+            }
+            // For throughput, higher is better; for everything else, lower is better
+            val change = if (score.mode == "thrpt") (score.value - base.value) / base.value else (base.value - score.value) / base.value
+            val flag = if (change < -threshold) "  REGRESSION" else if (change > threshold) "  improved" else ""
+            lines.add(String.format("%-80s %14.3f %14.3f %+8.1f%%  %s%s", key, base.value, score.value, change * 100, score.unit, flag))
+            if (change < -threshold)
+                regressions.add(key)
+        }
+        for (key in baseline.keys - current.keys)
+            lines.add(String.format("%-80s %14.3f %14s %9s", key, baseline[key]!!.value, "-", "-"))
+        reportFile.parentFile.mkdirs()
+        reportFile.writeText(lines.joinToString(System.lineSeparator()))
+        lines.forEach { println(it) }
+        if (regressions.isNotEmpty()) {
+            val message = "${regressions.size} benchmark(s) are more than ${(threshold * 100).toInt()}% slower than the baseline"
+            if (failOnRegression)
+                throw GradleException(message)
+            logger.warn(message)
+        }
+    }
+}
+
+data class JmhScore(val mode: String, val value: Double, val unit: String)
+
+/**
+ * Read the primary scores from a JMH JSON results file, using the benchmark name and parameters as keys.
+ */
+fun readJmhScores(file: File): Map<String, JmhScore> {
+    val results = JsonSlurper().parse(file) as List<*>
+    return results.filterIsInstance<Map<*, *>>().associate { result ->
+        val params = (result["params"] as Map<*, *>?)
+            ?.entries
+            ?.joinToString(",", prefix = " [", postfix = "]") { "${it.key}=${it.value}" }
+            ?: ""
+        val metric = result["primaryMetric"] as Map<*, *>
+        "${result["benchmark"]}$params" to JmhScore(
+            result["mode"].toString(),
+            (metric["score"] as Number).toDouble(),
+            metric["scoreUnit"].toString()
+        )
+    }
+}
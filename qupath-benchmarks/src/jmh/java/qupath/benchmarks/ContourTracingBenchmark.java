@@ -0,0 +1,81 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import qupath.lib.analysis.images.ContourTracing;
+import qupath.lib.analysis.images.SimpleImage;
+import qupath.lib.regions.RegionRequest;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Benchmarks for tracing contours from labeled images with {@link ContourTracing}.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ContourTracingBenchmark {
+
+	@Param({"1024", "4096"})
+	private int imageSize;
+
+	@Param({"500", "2000"})
+	private int labelsPerMegapixel;
+
+	private SimpleImage labels;
+
+	private RegionRequest region;
+
+	/**
+	 * Create the labeled image.
+	 */
+	@Setup
+	public void setup() {
+		int nLabels = (int)Math.max(1, (long)imageSize * imageSize * labelsPerMegapixel / 1_000_000L);
+		labels = SyntheticData.createLabelImage(imageSize, imageSize, nLabels, 42L);
+		region = RegionRequest.createInstance("labels", 1.0, 0, 0, imageSize, imageSize);
+	}
+
+	/**
+	 * Create ROIs for all labels, finding the maximum label from the image.
+	 * @return
+	 */
+	@Benchmark
+	public Map<Number, ROI> createROIs() {
+		return ContourTracing.createROIs(labels, region, 1, -1);
+	}
+
+}
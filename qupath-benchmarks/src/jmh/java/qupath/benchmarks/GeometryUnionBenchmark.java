@@ -0,0 +1,110 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.operation.overlayng.UnaryUnionNG;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import qupath.lib.roi.GeometryTools;
+
+/**
+ * Benchmarks for computing unions with {@link GeometryTools}.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GeometryUnionBenchmark {
+
+	@Param({"1000", "10000"})
+	private int nGeometries;
+
+	@Param({"1024", "8192"})
+	private int regionSize;
+
+	private List<Geometry> geometries;
+
+	private List<Geometry> tiles;
+
+	/**
+	 * Create the geometries. Smaller regions result in more overlaps.
+	 * Tiles are created so that there are approximately the same number as the other geometries.
+	 */
+	@Setup
+	public void setup() {
+		geometries = SyntheticData.createOverlappingGeometries(nGeometries, regionSize, regionSize, 42L);
+		int nTiles = (int)Math.ceil(Math.sqrt(nGeometries));
+		tiles = SyntheticData.createTileGeometries(nTiles, nTiles, regionSize / nTiles, 42L);
+	}
+
+	/**
+	 * Compute the union of all geometries.
+	 * @return
+	 */
+	@Benchmark
+	public Geometry union() {
+		return GeometryTools.union(geometries);
+	}
+
+	/**
+	 * Compute the union of all geometries with JTS directly, for comparison.
+	 * @return
+	 */
+	@Benchmark
+	public Geometry unionJts() {
+		var factory = GeometryTools.getDefaultFactory();
+		return UnaryUnionNG.union(geometries, factory, factory.getPrecisionModel());
+	}
+
+	/**
+	 * Compute the union of grid-aligned tiles, which share edges but don't overlap.
+	 * @return
+	 */
+	@Benchmark
+	public Geometry unionTiles() {
+		return GeometryTools.union(tiles);
+	}
+
+	/**
+	 * Compute the union of grid-aligned tiles with JTS directly, for comparison.
+	 * @return
+	 */
+	@Benchmark
+	public Geometry unionTilesJts() {
+		var factory = GeometryTools.getDefaultFactory();
+		return UnaryUnionNG.union(tiles, factory, factory.getPrecisionModel());
+	}
+
+}
@@ -0,0 +1,108 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImageRegion;
+
+/**
+ * Benchmarks for spatial queries of a {@link PathObjectHierarchy}.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HierarchyBenchmark {
+
+	private static final int IMAGE_SIZE = 20_000;
+
+	@Param({"10000", "100000"})
+	private int nCells;
+
+	@Param({"500", "2000"})
+	private int regionSize;
+
+	private PathObjectHierarchy hierarchy;
+
+	private List<ImageRegion> regions;
+
+	private int regionIndex = 0;
+
+	/**
+	 * Create the hierarchy, and a fixed sequence of regions to query.
+	 */
+	@Setup
+	public void setup() {
+		hierarchy = SyntheticData.createCellHierarchy(nCells, IMAGE_SIZE, IMAGE_SIZE, 42L);
+		var rand = new Random(42L);
+		regions = new ArrayList<>();
+		for (int i = 0; i < 64; i++) {
+			int x = rand.nextInt(IMAGE_SIZE - regionSize);
+			int y = rand.nextInt(IMAGE_SIZE - regionSize);
+			regions.add(ImageRegion.createInstance(x, y, regionSize, regionSize, 0, 0));
+		}
+		// Ensure any spatial cache is built before we start
+		hierarchy.getAllDetectionsForRegion(regions.get(0));
+	}
+
+	private ImageRegion nextRegion() {
+		regionIndex = (regionIndex + 1) % regions.size();
+		return regions.get(regionIndex);
+	}
+
+	/**
+	 * Get all objects within a region.
+	 * @return
+	 */
+	@Benchmark
+	public Collection<PathObject> getAllObjectsForRegion() {
+		return hierarchy.getAllObjectsForRegion(nextRegion());
+	}
+
+	/**
+	 * Get all detections (including subclasses) within a region.
+	 * @return
+	 */
+	@Benchmark
+	public Collection<PathObject> getAllDetectionsForRegion() {
+		return hierarchy.getAllDetectionsForRegion(nextRegion());
+	}
+
+}
@@ -0,0 +1,187 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.ColorTransforms;
+import qupath.lib.images.servers.PixelType;
+import qupath.lib.regions.RegionRequest;
+import qupath.opencv.ops.ImageDataOp;
+import qupath.opencv.ops.ImageOp;
+import qupath.opencv.ops.ImageOps;
+import qupath.opencv.tools.OpenCVTools;
+
+/**
+ * Benchmarks for applying {@link ImageOps} pipelines to image regions.
+ * <p>
+ * Tiles are cached after the first invocation, so this mostly measures the cost of the ops
+ * rather than generating the pixels.
+ * The element-wise benchmarks apply ops directly to a {@link Mat}, to compare applying ops one at a time 
+ * with applying a compiled op that fuses them into a single pass.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ImageOpsBenchmark {
+
+	@Param({"512", "2048"})
+	private int regionSize;
+
+	private SyntheticImageServer server;
+
+	private ImageData<BufferedImage> imageData;
+
+	private RegionRequest request;
+
+	private ImageDataOp filterOp;
+
+	private ImageDataOp thresholdOp;
+
+	private ImageOp elementwiseOp;
+
+	private ImageOp elementwiseOpCompiled;
+
+	private Mat mat;
+
+	/**
+	 * Create the server and ops.
+	 */
+	@Setup
+	public void setup() {
+		server = new SyntheticImageServer(8192, 8192, 512, 3, 42L);
+		imageData = new ImageData<>(server);
+		request = RegionRequest.createInstance(server.getPath(), 1.0, 1000, 1000, regionSize, regionSize);
+		var channels = new ColorTransforms.ColorTransform[] {
+				ColorTransforms.createChannelExtractor(0),
+				ColorTransforms.createChannelExtractor(1),
+				ColorTransforms.createChannelExtractor(2)
+		};
+		filterOp = ImageOps.buildImageDataOp(channels)
+				.appendOps(
+						ImageOps.Core.ensureType(PixelType.FLOAT32),
+						ImageOps.Filters.gaussianBlur(2.0),
+						ImageOps.Core.subtract(96),
+						ImageOps.Core.multiply(1.0 / 64.0));
+		thresholdOp = ImageOps.buildImageDataOp(channels)
+				.appendOps(
+						ImageOps.Core.ensureType(PixelType.FLOAT32),
+						ImageOps.Filters.gaussianBlur(1.0),
+						ImageOps.Channels.sum(),
+						ImageOps.Threshold.threshold(300));
+		elementwiseOp = ImageOps.Core.sequential(
+				ImageOps.Core.subtract(96, 64, 32),
+				ImageOps.Core.multiply(1.0 / 64.0),
+				ImageOps.Core.clip(-4, 4),
+				ImageOps.Normalize.sigmoid(),
+				ImageOps.Core.add(1.0),
+				ImageOps.Core.log(),
+				ImageOps.Core.replaceNaNs(0));
+		elementwiseOpCompiled = ImageOps.compile(elementwiseOp);
+		mat = new Mat(regionSize, regionSize, opencv_core.CV_32FC3);
+		OpenCVTools.addNoise(mat, 128, 32);
+	}
+
+	/**
+	 * Close the server.
+	 * @throws Exception
+	 */
+	@TearDown
+	public void tearDown() throws Exception {
+		server.close();
+		mat.close();
+	}
+
+	/**
+	 * Apply a sequence of filters and arithmetic operations to all channels.
+	 * @return
+	 * @throws IOException
+	 */
+	@Benchmark
+	public long filterPipeline() throws IOException {
+		return applyAndClose(filterOp);
+	}
+
+	/**
+	 * Combine channels and apply a threshold.
+	 * @return
+	 * @throws IOException
+	 */
+	@Benchmark
+	public long thresholdPipeline() throws IOException {
+		return applyAndClose(thresholdOp);
+	}
+
+	/**
+	 * Apply a sequence of element-wise ops, one at a time.
+	 * @return
+	 */
+	@Benchmark
+	public long elementwiseOps() {
+		return applyAndClose(elementwiseOp);
+	}
+
+	/**
+	 * Apply the same sequence of element-wise ops, after compiling them into a single op.
+	 * @return
+	 */
+	@Benchmark
+	public long elementwiseOpsCompiled() {
+		return applyAndClose(elementwiseOpCompiled);
+	}
+
+	private long applyAndClose(ImageOp op) {
+		try (var temp = mat.clone()) {
+			var output = op.apply(temp);
+			long total = output.total();
+			if (output != temp)
+				output.close();
+			return total;
+		}
+	}
+
+	private long applyAndClose(ImageDataOp op) throws IOException {
+		try (var mat = op.apply(imageData, request)) {
+			return mat.total();
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.utils.ObjectMerger;
+
+/**
+ * Benchmarks for merging objects with {@link ObjectMerger}.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ObjectMergerBenchmark {
+
+	private static final int IMAGE_SIZE = 8192;
+
+	private static final int TILE_SIZE = 512;
+
+	@Param({"2000", "20000"})
+	private int nObjects;
+
+	private List<PathObject> detections;
+
+	/**
+	 * Create detections that have been split along tile boundaries.
+	 */
+	@Setup
+	public void setup() {
+		detections = SyntheticData.createTiledDetections(nObjects, IMAGE_SIZE, IMAGE_SIZE, TILE_SIZE, 42L);
+	}
+
+	/**
+	 * Merge objects split along tile boundaries.
+	 * @return
+	 */
+	@Benchmark
+	public List<PathObject> sharedTileBoundaryMerger() {
+		return ObjectMerger.createSharedTileBoundaryMerger(0.5).process(detections);
+	}
+
+	/**
+	 * Merge objects that touch and share the same classification.
+	 * @return
+	 */
+	@Benchmark
+	public List<PathObject> touchingMerger() {
+		return ObjectMerger.createTouchingMerger().process(detections);
+	}
+
+	/**
+	 * Merge overlapping objects based on intersection over union.
+	 * @return
+	 */
+	@Benchmark
+	public List<PathObject> iouMerger() {
+		return ObjectMerger.createIoUMerger(0.1).process(detections);
+	}
+
+}
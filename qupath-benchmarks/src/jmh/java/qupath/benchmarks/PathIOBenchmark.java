@@ -0,0 +1,131 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.io.PathIO;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+
+/**
+ * Benchmarks for reading and writing data files with {@link PathIO}.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PathIOBenchmark {
+
+	private static final int IMAGE_SIZE = 20_000;
+
+	@Param({"10000", "100000"})
+	private int nCells;
+
+	@Param({"true", "false"})
+	private boolean chunked;
+
+	private boolean previousChunked;
+
+	private SyntheticImageServer server;
+
+	private ImageData<BufferedImage> imageData;
+
+	private Path pathRead;
+
+	private Path pathWrite;
+
+	/**
+	 * Create the image data and write a file to read.
+	 * @throws IOException
+	 */
+	@Setup
+	public void setup() throws IOException {
+		previousChunked = PathIO.getWriteChunkedDataFiles();
+		PathIO.setWriteChunkedDataFiles(chunked);
+		server = new SyntheticImageServer(IMAGE_SIZE, IMAGE_SIZE, 512, 3, 42L);
+		imageData = new ImageData<>(server, SyntheticData.createCellHierarchy(nCells, IMAGE_SIZE, IMAGE_SIZE, 42L));
+		pathRead = Files.createTempFile("qupath-benchmark-read", ".qpdata");
+		pathWrite = Files.createTempFile("qupath-benchmark-write", ".qpdata");
+		PathIO.writeImageData(pathRead, imageData);
+	}
+
+	/**
+	 * Delete temp files and restore the previous setting.
+	 * @throws Exception
+	 */
+	@TearDown
+	public void tearDown() throws Exception {
+		PathIO.setWriteChunkedDataFiles(previousChunked);
+		Files.deleteIfExists(pathRead);
+		Files.deleteIfExists(pathWrite);
+		server.close();
+	}
+
+	/**
+	 * Write the image data to a file.
+	 * @return
+	 * @throws IOException
+	 */
+	@Benchmark
+	public long writeImageData() throws IOException {
+		PathIO.writeImageData(pathWrite, imageData);
+		return Files.size(pathWrite);
+	}
+
+	/**
+	 * Read the image data from a file.
+	 * @return
+	 * @throws IOException
+	 */
+	@Benchmark
+	public ImageData<BufferedImage> readImageData() throws IOException {
+		return PathIO.readImageData(pathRead, server);
+	}
+
+	/**
+	 * Read only the hierarchy from a file.
+	 * @return
+	 * @throws IOException
+	 */
+	@Benchmark
+	public PathObjectHierarchy readHierarchy() throws IOException {
+		return PathIO.readHierarchy(pathRead);
+	}
+
+}
@@ -0,0 +1,223 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.locationtech.jts.geom.Geometry;
+
+import qupath.lib.analysis.images.SimpleImage;
+import qupath.lib.analysis.images.SimpleImages;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.GeometryTools;
+import qupath.lib.roi.ROIs;
+
+/**
+ * Generators for synthetic data used in benchmarks.
+ * <p>
+ * All generators are deterministic for a given seed, so that results can be compared between runs.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+public class SyntheticData {
+
+	private static final List<PathClass> CLASSES = List.of(
+			PathClass.fromString("Tumor"),
+			PathClass.fromString("Stroma"),
+			PathClass.fromString("Immune cells"),
+			PathClass.fromString("Necrosis"));
+
+	private static final String[] MEASUREMENTS = {
+			"Nucleus: Area", "Nucleus: Perimeter", "Nucleus: Circularity",
+			"Nucleus: Hematoxylin OD mean", "Nucleus: Eosin OD mean",
+			"Cell: Area", "Cell: Perimeter", "Cell: Eosin OD mean",
+			"Cytoplasm: Eosin OD mean", "Nucleus/Cell area ratio"
+	};
+
+	private SyntheticData() {
+		throw new AssertionError("Cannot instantiate this class");
+	}
+
+	/**
+	 * Create cell objects with elliptical nuclei and boundaries, randomly distributed across an image.
+	 * Each cell has a classification and 10 measurements.
+	 * @param nCells number of cells
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param seed random seed
+	 * @return the cells
+	 */
+	public static List<PathObject> createCells(int nCells, int width, int height, long seed) {
+		var rand = new Random(seed);
+		List<PathObject> cells = new ArrayList<>(nCells);
+		for (int i = 0; i < nCells; i++) {
+			double rx = 4 + rand.nextDouble() * 4;
+			double ry = 4 + rand.nextDouble() * 4;
+			double x = rx * 2 + rand.nextDouble() * (width - rx * 4);
+			double y = ry * 2 + rand.nextDouble() * (height - ry * 4);
+			var nucleus = ROIs.createEllipseROI(x - rx, y - ry, rx * 2, ry * 2, ImagePlane.getDefaultPlane());
+			var cell = ROIs.createEllipseROI(x - rx * 1.8, y - ry * 1.8, rx * 3.6, ry * 3.6, ImagePlane.getDefaultPlane());
+			var pathObject = PathObjects.createCellObject(cell, nucleus, CLASSES.get(rand.nextInt(CLASSES.size())));
+			try (var ml = pathObject.getMeasurementList()) {
+				for (var name : MEASUREMENTS)
+					ml.put(name, rand.nextDouble() * 100);
+			}
+			cells.add(pathObject);
+		}
+		return cells;
+	}
+
+	/**
+	 * Create a hierarchy containing randomly-distributed cells.
+	 * @param nCells number of cells
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param seed random seed
+	 * @return the hierarchy
+	 * @see #createCells(int, int, int, long)
+	 */
+	public static PathObjectHierarchy createCellHierarchy(int nCells, int width, int height, long seed) {
+		var hierarchy = new PathObjectHierarchy();
+		hierarchy.addObjects(createCells(nCells, width, height, seed));
+		return hierarchy;
+	}
+
+	/**
+	 * Create detections that have been split along tile boundaries, as would occur when detecting objects tile-by-tile.
+	 * Fragments of the same object share a classification.
+	 * @param nObjects number of objects, before splitting
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param tileSize size of each square tile
+	 * @param seed random seed
+	 * @return the detections
+	 */
+	public static List<PathObject> createTiledDetections(int nObjects, int width, int height, int tileSize, long seed) {
+		var rand = new Random(seed);
+		List<PathObject> detections = new ArrayList<>();
+		for (int i = 0; i < nObjects; i++) {
+			var pathClass = CLASSES.get(rand.nextInt(CLASSES.size()));
+			var geometry = createEllipse(rand, width, height, 6, 16);
+			var env = geometry.getEnvelopeInternal();
+			int tx1 = (int)(env.getMinX() / tileSize);
+			int tx2 = (int)(env.getMaxX() / tileSize);
+			int ty1 = (int)(env.getMinY() / tileSize);
+			int ty2 = (int)(env.getMaxY() / tileSize);
+			for (int ty = ty1; ty <= ty2; ty++) {
+				for (int tx = tx1; tx <= tx2; tx++) {
+					var tile = GeometryTools.createRectangle(tx * tileSize, ty * tileSize, tileSize, tileSize);
+					var fragment = tile.intersection(geometry);
+					if (fragment.isEmpty() || fragment.getArea() < 1)
+						continue;
+					var roi = GeometryTools.geometryToROI(fragment, ImagePlane.getDefaultPlane());
+					detections.add(PathObjects.createDetectionObject(roi, pathClass));
+				}
+			}
+		}
+		return detections;
+	}
+
+	/**
+	 * Create randomly-distributed elliptical polygons, many of which will overlap.
+	 * @param nGeometries number of geometries
+	 * @param width width of the region
+	 * @param height height of the region
+	 * @param seed random seed
+	 * @return the geometries
+	 */
+	public static List<Geometry> createOverlappingGeometries(int nGeometries, int width, int height, long seed) {
+		var rand = new Random(seed);
+		List<Geometry> geometries = new ArrayList<>(nGeometries);
+		for (int i = 0; i < nGeometries; i++)
+			geometries.add(createEllipse(rand, width, height, 5, 20));
+		return geometries;
+	}
+
+	/**
+	 * Create square tiles on a regular grid, as would be created by thresholding or pixel classification tile-by-tile.
+	 * Some tiles are omitted at random, so that the union contains holes and separate pieces.
+	 * @param nTilesX number of tiles horizontally
+	 * @param nTilesY number of tiles vertically
+	 * @param tileSize size of each square tile
+	 * @param seed random seed
+	 * @return the tile geometries
+	 */
+	public static List<Geometry> createTileGeometries(int nTilesX, int nTilesY, int tileSize, long seed) {
+		var rand = new Random(seed);
+		List<Geometry> geometries = new ArrayList<>();
+		for (int y = 0; y < nTilesY; y++) {
+			for (int x = 0; x < nTilesX; x++) {
+				if (rand.nextDouble() < 0.8)
+					geometries.add(GeometryTools.createRectangle(x * tileSize, y * tileSize, tileSize, tileSize));
+			}
+		}
+		return geometries;
+	}
+
+	/**
+	 * Create a labeled image containing non-zero disks with labels 1, 2, 3... on a zero background.
+	 * Disks drawn later may overwrite earlier ones.
+	 * @param width image width
+	 * @param height image height
+	 * @param nLabels number of labels
+	 * @param seed random seed
+	 * @return the labeled image
+	 */
+	public static SimpleImage createLabelImage(int width, int height, int nLabels, long seed) {
+		var rand = new Random(seed);
+		var img = SimpleImages.createFloatImage(width, height);
+		for (int label = 1; label <= nLabels; label++) {
+			double r = 3 + rand.nextDouble() * 6;
+			double cx = rand.nextDouble() * width;
+			double cy = rand.nextDouble() * height;
+			int x1 = Math.max(0, (int)(cx - r));
+			int x2 = Math.min(width - 1, (int)Math.ceil(cx + r));
+			int y1 = Math.max(0, (int)(cy - r));
+			int y2 = Math.min(height - 1, (int)Math.ceil(cy + r));
+			for (int y = y1; y <= y2; y++) {
+				for (int x = x1; x <= x2; x++) {
+					double dx = x - cx;
+					double dy = y - cy;
+					if (dx * dx + dy * dy <= r * r)
+						img.setValue(x, y, label);
+				}
+			}
+		}
+		return img;
+	}
+
+	private static Geometry createEllipse(Random rand, int width, int height, double minRadius, double maxRadius) {
+		double rx = minRadius + rand.nextDouble() * (maxRadius - minRadius);
+		double ry = minRadius + rand.nextDouble() * (maxRadius - minRadius);
+		double x = rx + rand.nextDouble() * (width - rx * 2);
+		double y = ry + rand.nextDouble() * (height - ry * 2);
+		return GeometryTools.roiToGeometry(ROIs.createEllipseROI(x - rx, y - ry, rx * 2, ry * 2, ImagePlane.getDefaultPlane()));
+	}
+
+}
@@ -0,0 +1,144 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import qupath.lib.images.servers.AbstractTileableImageServer;
+import qupath.lib.images.servers.ImageChannel;
+import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.images.servers.ImageServerMetadata;
+import qupath.lib.images.servers.PixelType;
+import qupath.lib.images.servers.TileRequest;
+
+/**
+ * Tiled image server that generates deterministic pixel values on demand, without any file I/O.
+ * <p>
+ * Pixels combine a smooth pattern with pseudo-random noise, so that the tiles are not trivially compressible.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+public class SyntheticImageServer extends AbstractTileableImageServer {
+
+	private final ImageServerMetadata metadata;
+	private final long seed;
+
+	/**
+	 * Create a new server.
+	 * @param width image width
+	 * @param height image height
+	 * @param tileSize tile width and height
+	 * @param nChannels number of 8-bit channels
+	 * @param seed seed used to generate the noise
+	 */
+	public SyntheticImageServer(int width, int height, int tileSize, int nChannels, long seed) {
+		this.seed = seed;
+		var builder = new ImageServerMetadata.Builder()
+				.width(width)
+				.height(height)
+				.preferredTileSize(tileSize, tileSize)
+				.pixelType(PixelType.UINT8)
+				.channels(ImageChannel.getDefaultChannelList(nChannels))
+				.pixelSizeMicrons(0.5, 0.5)
+				.name("Synthetic image");
+		double downsample = 1;
+		List<Double> downsamples = new ArrayList<>();
+		while (Math.max(width, height) / downsample >= tileSize) {
+			downsamples.add(downsample);
+			downsample *= 4;
+		}
+		if (downsamples.isEmpty())
+			downsamples.add(1.0);
+		builder.levelsFromDownsamples(downsamples.stream().mapToDouble(Double::doubleValue).toArray());
+		this.metadata = builder.build();
+	}
+
+	@Override
+	protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
+		int w = tileRequest.getTileWidth();
+		int h = tileRequest.getTileHeight();
+		var colorModel = getDefaultColorModel();
+		var img = new BufferedImage(colorModel, colorModel.createCompatibleWritableRaster(w, h), false, null);
+		var raster = img.getRaster();
+		double downsample = tileRequest.getDownsample();
+		int nChannels = nChannels();
+		int[] samples = new int[w * h];
+		for (int c = 0; c < nChannels; c++) {
+			int ind = 0;
+			for (int y = 0; y < h; y++) {
+				int yy = (int)(tileRequest.getImageY() + y * downsample);
+				for (int x = 0; x < w; x++) {
+					int xx = (int)(tileRequest.getImageX() + x * downsample);
+					samples[ind++] = value(xx, yy, c);
+				}
+			}
+			raster.setSamples(0, 0, w, h, c, samples);
+		}
+		return img;
+	}
+
+	private int value(int x, int y, int c) {
+		double smooth = 96 + 64 * Math.sin(x / (20.0 + c * 5)) * Math.cos(y / (30.0 + c * 3));
+		return (int)Math.max(0, Math.min(255, smooth + (hash(x, y, c) & 0x3F)));
+	}
+
+	private int hash(int x, int y, int c) {
+		long h = seed + x * 0x9E3779B97F4A7C15L + y * 0xC2B2AE3D27D4EB4FL + c * 0x165667B19E3779F9L;
+		h ^= (h >>> 33);
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= (h >>> 33);
+		return (int)h;
+	}
+
+	@Override
+	protected ServerBuilder<BufferedImage> createServerBuilder() {
+		return null;
+	}
+
+	@Override
+	protected String createID() {
+		return getClass().getName() + ": " + UUID.randomUUID();
+	}
+
+	@Override
+	public Collection<URI> getURIs() {
+		return List.of();
+	}
+
+	@Override
+	public String getServerType() {
+		return "Synthetic image server";
+	}
+
+	@Override
+	public ImageServerMetadata getOriginalMetadata() {
+		return metadata;
+	}
+
+}
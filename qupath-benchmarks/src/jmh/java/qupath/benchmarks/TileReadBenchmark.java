@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import qupath.lib.images.servers.AbstractTileableImageServer;
+import qupath.lib.images.servers.ImageServerProvider;
+import qupath.lib.images.servers.TileCache;
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * Benchmarks for reading regions from a tiled image with {@link AbstractTileableImageServer}.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TileReadBenchmark {
+
+	private static final int IMAGE_SIZE = 16384;
+
+	@Param({"1.0", "4.0"})
+	private double downsample;
+
+	@Param({"true", "false"})
+	private boolean cached;
+
+	private SyntheticImageServer server;
+
+	private List<RegionRequest> requests;
+
+	private int requestIndex = 0;
+
+	/**
+	 * Create the server and a fixed sequence of requests.
+	 */
+	@Setup
+	public void setup() {
+		server = new SyntheticImageServer(IMAGE_SIZE, IMAGE_SIZE, 512, 3, 42L);
+		var rand = new Random(42L);
+		int size = (int)(1024 * downsample);
+		requests = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			int x = rand.nextInt(IMAGE_SIZE - size);
+			int y = rand.nextInt(IMAGE_SIZE - size);
+			requests.add(RegionRequest.createInstance(server.getPath(), downsample, x, y, size, size));
+		}
+	}
+
+	/**
+	 * Close the server.
+	 * @throws Exception
+	 */
+	@TearDown
+	public void tearDown() throws Exception {
+		clearCache();
+		server.close();
+	}
+
+	/**
+	 * Read a region, either using cached tiles or reading all tiles again.
+	 * @return
+	 * @throws IOException
+	 */
+	@Benchmark
+	public BufferedImage readRegion() throws IOException {
+		if (!cached)
+			clearCache();
+		requestIndex = (requestIndex + 1) % requests.size();
+		return server.readRegion(requests.get(requestIndex));
+	}
+
+	private void clearCache() {
+		if (ImageServerProvider.getCache(BufferedImage.class) instanceof TileCache<BufferedImage> cache)
+			cache.clearCacheForServer(server.getPath());
+	}
+
+}
@@ -23,13 +23,11 @@
 
 package qupath.imagej.processing;
 
-import java.util.ArrayDeque;
-import java.util.PriorityQueue;
-
 import ij.IJ;
 import ij.plugin.filter.EDM;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
+import qupath.lib.analysis.algorithms.PixelPriorityQueue;
 
 /**
  * Implementation of 2D watershed transform for ImageJ.
@@ -84,10 +82,9 @@ public class Watershed {
 		
 		// Process the queue
 		while (!queue.isEmpty()) {
-			final PixelWithValue pwv = queue.poll();
-			final int x = pwv.x;
-			final int y = pwv.y;
-			queue.discard(pwv);
+			final int ind = queue.poll();
+			final int x = ind % width;
+			final int y = ind / width;
 			
 			float lastLabel;
 			if (conn8)
@@ -199,28 +196,32 @@ public class Watershed {
 	
 	static class WatershedQueueWrapper {
 
-		private final PriorityQueue<PixelWithValue> queue = new PriorityQueue<>();
+		private final PixelPriorityQueue queue;
+		private final float[] values;
 		private final boolean[] queued;
 		private final int width, height;
-		private final ImageProcessor ip;
-		
-		private long counter = 0;//Long.MIN_VALUE;
-		
-		// Keep a pool of objects so they can be reused... not normally worth the effort, but we are likely to have *a lot*
-		private final ArrayDeque<PixelWithValue> dequePool;
 		
 		
 		public WatershedQueueWrapper(final ImageProcessor ip, final ImageProcessor ipLabels, final double minThreshold) {
-			this.ip = ip;
 			this.width = ip.getWidth();
 			this.height = ip.getHeight();
 			// Keep a record of already-queued pixels
 			queued = new boolean[width * height];
 			
+			// Cache the pixel values, so that we don't need to request them again whenever we add to the queue
+			if (ip instanceof FloatProcessor)
+				values = (float[])ip.getPixels();
+			else {
+				values = new float[width * height];
+				for (int i = 0; i < values.length; i++)
+					values[i] = ip.getf(i);
+			}
+			queue = new PixelPriorityQueue();
+			
 			// Loop through and populate the queue sensibly; background assumed to be zero
 			for (int y = 0; y < height; y++) {
 				for (int x = 0; x < width; x++) {
-					float val = ip.getf(x, y);
+					float val = values[y * width + x];
 					// Mark below-threshold pixels as queued (even if they aren't...) to indicate they shouldn't be added later
 					if (val <= minThreshold) {
 						queued[y * width + x] = true;
@@ -232,52 +233,36 @@ public class Watershed {
 						queued[y * width + x] = true;
 					}
 					else if (ipLabels.getPixelValue(x+1, y) != 0f || ipLabels.getPixelValue(x-1, y) != 0f || ipLabels.getPixelValue(x, y-1) != 0f || ipLabels.getPixelValue(x, y+1) != 0f) {
-						queued[y * width + x] = true;
-						queue.add(new PixelWithValue(x, y, val, ++counter));
+						addWithoutCheck(x, y);
 					}
 				}			
 			}
-			
-			// Create a deque
-			dequePool = new ArrayDeque<>(ip.getWidth() * ip.getHeight());
 		}
 		
 		public final void add(final int x, final int y) {
 			// Don't add to the queue twice
 			if (!mayAddToQueue(x, y))
 				return;
-			addWithoutCheck(x, y, ip.getf(x, y));
+			addWithoutCheck(x, y);
 		}
 		
-		protected final void addWithoutCheck(final int x, final int y, final float val) {
-			PixelWithValue pwv = dequePool.poll();
-			if (pwv == null)
-				pwv = new PixelWithValue(x, y, val, ++counter);
-			else {
-				pwv.x = x;
-				pwv.y = y;
-				pwv.value = val;
-				pwv.count = ++counter;
-			}
-			// Add, while storing a count variable, effectively turning the PriorityQueue into a FIFO queue whenever values are equal
+		protected final void addWithoutCheck(final int x, final int y) {
+			// Pixels with equal values are returned in the order they were added
 			// This is necessary to produce reasonable-looking watershed results where there are plateaus (i.e. pixels with the same value)
-			queue.add(pwv);
-			
-//			queue.add(new PixelWithValue(x, y, val, ++counter));
-
+			queue.add(y * width + x, values[y * width + x]);
 			// Keep track of the fact this has been queued - won't need it again
 			queued[y * width + x] = true;
 		}
-		
-//		public final boolean mayAddToQueue(int x, int y) {
-//			return !queued[y * width + x];
-//		}
 
 		public final boolean mayAddToQueue(final int x, final int y) {
 			return x >= 0 && x < width && y >= 0 && y < height && !queued[y * width + x];
 		}
 
-		public final PixelWithValue poll() {
+		/**
+		 * Remove the next pixel from the queue.
+		 * @return the pixel index, or -1 if the queue is empty
+		 */
+		public final int poll() {
 			return queue.poll();
 		}
 		
@@ -285,46 +270,6 @@ public class Watershed {
 			return queue.isEmpty();
 		}
 		
-		/**
-		 * Inform the queue it is free to reuse a PixelWithValue object if required
-		 * @param pwv
-		 */
-		public final void discard(PixelWithValue pwv) {
-			dequePool.add(pwv);
-		}
-		
-	}
-
-
-	static class PixelWithValue implements Comparable<PixelWithValue> {
-		
-		public int x, y;
-		public float value;
-		public long count;
-		
-//		public final int x, y;
-//		public final float value;
-//		public final long count;
-		
-		public PixelWithValue(final int x, final int y, final float value, final long count) {
-			this.x = x;
-			this.y = y;
-			this.value = value;
-			this.count = count;
-		}
-
-		@Override
-		public int compareTo(final PixelWithValue pwv) {
-			// Profiling indicates that the many comparisons are the slowest part of the algorithm...
-			if (value < pwv.value) {
-				return 1;
-			}
-			else if (value > pwv.value) {
-				return -1;
-			}
-			return count > pwv.count ? 1 : -1;
-		}
-		
 	}
 
 }
\ No newline at end of file
@@ -30,11 +30,13 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +45,7 @@ import qupath.lib.algorithms.IntensityFeaturesPlugin.BasicFeatureComputer.Featur
 import qupath.lib.analysis.features.CoocurranceMatrices;
 import qupath.lib.analysis.features.HaralickFeatureComputer;
 import qupath.lib.analysis.features.HaralickFeatures;
+import qupath.lib.analysis.features.ObjectTileBatch;
 import qupath.lib.analysis.images.SimpleImages;
 import qupath.lib.analysis.images.SimpleModifiableImage;
 import qupath.lib.analysis.images.SimpleImage;
@@ -66,6 +69,7 @@ import qupath.lib.objects.TMACoreObject;
 import qupath.lib.plugins.AbstractInteractivePlugin;
 import qupath.lib.plugins.TaskRunner;
 import qupath.lib.plugins.parameters.ParameterList;
+import qupath.lib.regions.ImageRegion;
 import qupath.lib.regions.RegionRequest;
 import qupath.lib.roi.RoiTools;
 import qupath.lib.roi.interfaces.ROI;
@@ -406,6 +410,55 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 	}
 	
 	
+	/**
+	 * Approximate width and height of the tiles used to batch objects, in pixels at the requested resolution.
+	 */
+	private static final int BATCH_TILE_SIZE = 512;
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * When measuring within ROIs, objects are grouped by tile so that pixels are read and transformed once 
+	 * for all the objects within the same tile, rather than once per object. 
+	 * This is much faster for densely-packed detections, since neighboring objects often share pixels.
+	 */
+	@Override
+	protected Collection<Runnable> getTasks(final ImageData<BufferedImage> imageData) {
+		final ParameterList params = getParameterList(imageData);
+		RegionType regionType = (RegionType)params.getChoiceParameterValue("region");
+		if (regionType != RegionType.ROI && regionType != RegionType.NUCLEUS)
+			return super.getTasks(imageData);
+		
+		Collection<? extends PathObject> parentObjects = getParentObjects(imageData);
+		if (parentObjects == null || parentObjects.isEmpty())
+			return Collections.emptyList();
+
+		double downsample = calculateDownsample(imageData.getServer().getPixelCalibration(), params);
+		if (downsample <= 0) {
+			throw new IllegalArgumentException("Effective downsample must be > 0 (requested value " + GeneralTools.formatNumber(downsample, 1) + ")");
+		}
+		
+		Function<PathObject, ROI> roiFunction;
+		if (regionType == RegionType.NUCLEUS)
+			roiFunction = p -> p instanceof PathCellObject cell ? cell.getNucleusROI() : null;
+		else
+			roiFunction = PathObject::getROI;
+		
+		int tileSize = (int)Math.ceil(BATCH_TILE_SIZE * downsample);
+		var batches = ObjectTileBatch.createBatches(parentObjects, roiFunction, tileSize);
+		logger.debug("Measuring {} objects in {} batches", parentObjects.size(), batches.size());
+		List<Runnable> tasks = new ArrayList<>(batches.size());
+		for (var batch : batches) {
+			// Use the original method for single objects, since it can also handle large ROIs
+			if (batch.size() == 1)
+				tasks.add(new IntensityFeatureRunnable(imageData, batch.getPathObjects().get(0), params));
+			else
+				tasks.add(new IntensityFeatureBatchRunnable(imageData, batch, roiFunction, params));
+		}
+		return tasks;
+	}
+	
+	
 //	@Override
 //	protected Collection<Runnable> getTasks(final PluginRunner<BufferedImage> runner) {
 //		Collection<Runnable> tasks = super.getTasks(runner);
@@ -470,6 +523,42 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 	}
 	
 	
+	static class IntensityFeatureBatchRunnable implements Runnable {
+		
+		private ImageData<BufferedImage> imageData;
+		private ParameterList params;
+		private ObjectTileBatch<? extends PathObject> batch;
+		private Function<PathObject, ROI> roiFunction;
+		
+		IntensityFeatureBatchRunnable(final ImageData<BufferedImage> imageData, final ObjectTileBatch<? extends PathObject> batch, 
+				final Function<PathObject, ROI> roiFunction, final ParameterList params) {
+			this.imageData = imageData;
+			this.batch = batch;
+			this.roiFunction = roiFunction;
+			this.params = params;
+		}
+
+		@Override
+		public void run() {
+			try {
+				processObjects(batch.getPathObjects(), roiFunction, batch.getRegion(), params, imageData);
+			} catch (IOException e) {
+				logger.error("Unable to process " + batch, e);
+			} finally {
+				imageData = null;
+				params = null;
+			}
+		}
+		
+		
+		@Override
+		public String toString() {
+			return "Intensity measurements";
+		}
+		
+	}
+	
+	
 	static double calculateDownsample(PixelCalibration cal, ParameterList params) {
 		if (cal.hasPixelSizeMicrons()) {
 			return params.getDoubleParameterValue("pixelSizeMicrons") / cal.getAveragedPixelSizeMicrons();
@@ -509,24 +598,7 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 			return false;
 		
 		// Create a map - this is useful for occasions when tiling is needed
-		Map<FeatureColorTransform, List<FeatureComputer>> map = new LinkedHashMap<>();
-		if (server.isRGB()) {
-			for (FeatureColorTransform transform : FeatureColorTransformEnum.values()) {
-				List<FeatureComputer> list = new ArrayList<>();
-				map.put(transform, list);
-				for (FeatureComputerBuilder builder : builders) {
-					list.add(builder.build());
-				}
-			}
-		} else {
-			for (FeatureColorTransform transform : getBasicChannelTransforms(server.nChannels())) {
-				List<FeatureComputer> list = new ArrayList<>();
-				map.put(transform, list);
-				for (FeatureComputerBuilder builder : builders) {
-					list.add(builder.build());
-				}
-			}
-		}
+		var map = createFeatureComputers(server);
 		
 		String prefix = getDiameterString(server, params);
 
@@ -574,19 +646,13 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 			}
 			
 			boolean isRGB = server.isRGB();
-			List<FeatureColorTransform> transforms;
-			if (isRGB)
-				transforms = Arrays.asList(FeatureColorTransformEnum.values());
-			else
-				transforms = getBasicChannelTransforms(server.nChannels());
-			
 			int w = img.getWidth();
 	 		int h = img.getHeight();
 			int[] rgbBuffer = isRGB ? img.getRGB(0, 0, w, h, null, 0, w) : null;
 			float[] pixels = null;
-			for (FeatureColorTransform transform : transforms) {
+			for (FeatureColorTransform transform : map.keySet()) {
 				// Check if the color transform is requested
-				if (params.containsKey(transform.getKey()) && Boolean.TRUE.equals(params.getBooleanParameterValue(transform.getKey()))) {
+				if (isRequested(transform, params)) {
 					
 					// Transform the pixels
 					pixels = transform.getTransformedPixels(img, rgbBuffer, stains, pixels);
@@ -622,6 +688,133 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 			}
 		}
 		
+		addMeasurements(pathObject, map, prefix, params, imageData);
+		return true;
+	}
+	
+	
+	/**
+	 * Process objects that are close together, reading the pixels for the region containing them all only once.
+	 * Each requested color transform is also applied only once to the whole region, and the transformed pixels 
+	 * are then masked separately for each object.
+	 * <p>
+	 * This is only suitable for objects that are measured within their ROI (i.e. not for square or circular tiles) 
+	 * and that are small enough not to need splitting into tiles.
+	 * 
+	 * @param pathObjects the objects to measure
+	 * @param roiFunction function to get the ROI to measure for each object
+	 * @param regionBounds region containing the bounding boxes of all the ROIs
+	 * @param params
+	 * @param imageData
+	 * @return true if the objects were processed, false if the pixels could not be read
+	 * @throws IOException
+	 */
+	static boolean processObjects(final List<? extends PathObject> pathObjects, final Function<PathObject, ROI> roiFunction, 
+			final ImageRegion regionBounds, final ParameterList params, final ImageData<BufferedImage> imageData) throws IOException {
+		
+		var server = imageData.getServer();
+		var stains = imageData.getColorDeconvolutionStains();
+		double downsample = calculateDownsample(server.getPixelCalibration(), params);
+		String prefix = getDiameterString(server, params);
+
+		// Clip the region to the image, so that we don't measure pixels outside it for objects touching the boundary
+		RegionRequest region = RegionRequest.createInstance(server.getPath(), downsample, regionBounds)
+				.intersect2D(0, 0, server.getWidth(), server.getHeight());
+		BufferedImage img = server.readRegion(region);
+		if (img == null) {
+			logger.error("Could not read image - unable to compute intensity features for {} objects", pathObjects.size());
+			return false;
+		}
+		
+		// Transform the pixels for the whole region
+		int w = img.getWidth();
+		int h = img.getHeight();
+		int[] rgbBuffer = server.isRGB() ? img.getRGB(0, 0, w, h, null, 0, w) : null;
+		Map<FeatureColorTransform, float[]> transformed = new LinkedHashMap<>();
+		for (var transform : createFeatureComputers(server).keySet()) {
+			if (isRequested(transform, params))
+				transformed.put(transform, transform.getTransformedPixels(img, rgbBuffer, stains, null));
+		}
+		
+		for (var pathObject : pathObjects) {
+			if (Thread.currentThread().isInterrupted()) {
+				logger.warn("Measurement skipped - thread interrupted!");
+				return false;
+			}
+			ROI roi = roiFunction.apply(pathObject);
+			if (roi == null)
+				continue;
+			
+			// Find the pixels containing the ROI bounding box
+			int x = GeneralTools.clipValue((int)Math.floor((roi.getBoundsX() - region.getX()) / downsample), 0, w);
+			int y = GeneralTools.clipValue((int)Math.floor((roi.getBoundsY() - region.getY()) / downsample), 0, h);
+			int x2 = GeneralTools.clipValue((int)Math.ceil((roi.getBoundsX() + roi.getBoundsWidth() - region.getX()) / downsample), x, w);
+			int y2 = GeneralTools.clipValue((int)Math.ceil((roi.getBoundsY() + roi.getBoundsHeight() - region.getY()) / downsample), y, h);
+			int width = x2 - x;
+			int height = y2 - y;
+			if (width == 0 || height == 0)
+				continue;
+			
+			// Create mask, aligned to the pixels of the region
+			// If we just have 1 pixel, we want to use it so that the mean/min/max measurements are valid (even if nothing else is)
+			byte[] maskBytes = null;
+			if (width * height > 1) {
+				BufferedImage imgMask = BufferedImageTools.createROIMask(width, height, roi,
+						region.getX() + x * downsample, region.getY() + y * downsample, downsample);
+				maskBytes = ((DataBufferByte)imgMask.getRaster().getDataBuffer()).getData();
+			}
+			
+			var map = createFeatureComputers(server);
+			for (var entry : transformed.entrySet()) {
+				float[] pixels = entry.getValue();
+				float[] objectPixels = new float[width * height];
+				for (int yy = 0; yy < height; yy++) {
+					System.arraycopy(pixels, (y + yy) * w + x, objectPixels, yy * width, width);
+				}
+				if (maskBytes != null) {
+					for (int i = 0; i < objectPixels.length; i++) {
+						if (maskBytes[i] == (byte)0)
+							objectPixels[i] = Float.NaN;
+					}
+				}
+				SimpleImage pixelImage = SimpleImages.createFloatImage(objectPixels, width, height);
+				for (FeatureComputer computer : map.get(entry.getKey())) {
+					computer.updateFeatures(pixelImage, entry.getKey(), params);
+				}
+			}
+			addMeasurements(pathObject, map, prefix, params, imageData);
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Create the feature computers for all potential transforms for an image.
+	 * A new map is required for every object, since the computers accumulate values.
+	 */
+	private static Map<FeatureColorTransform, List<FeatureComputer>> createFeatureComputers(final ImageServer<BufferedImage> server) {
+		Map<FeatureColorTransform, List<FeatureComputer>> map = new LinkedHashMap<>();
+		List<FeatureColorTransform> transforms;
+		if (server.isRGB())
+			transforms = Arrays.asList(FeatureColorTransformEnum.values());
+		else
+			transforms = getBasicChannelTransforms(server.nChannels());
+		for (FeatureColorTransform transform : transforms) {
+			List<FeatureComputer> list = new ArrayList<>();
+			map.put(transform, list);
+			for (FeatureComputerBuilder builder : builders) {
+				list.add(builder.build());
+			}
+		}
+		return map;
+	}
+	
+	private static boolean isRequested(final FeatureColorTransform transform, final ParameterList params) {
+		return params.containsKey(transform.getKey()) && Boolean.TRUE.equals(params.getBooleanParameterValue(transform.getKey()));
+	}
+	
+	private static void addMeasurements(final PathObject pathObject, final Map<FeatureColorTransform, List<FeatureComputer>> map, 
+			final String prefix, final ParameterList params, final ImageData<BufferedImage> imageData) {
 		// Add measurements to the parent object
 		for (Entry<FeatureColorTransform, List<FeatureComputer>> entry : map.entrySet()) {
 			String name = prefix + ": " + entry.getKey().getName(imageData, false) + ":";
@@ -635,8 +828,6 @@ public class IntensityFeaturesPlugin extends AbstractInteractivePlugin<BufferedI
 			((PathAnnotationObject)pathObject).setLocked(true);
 		else if (pathObject instanceof TMACoreObject)
 			((TMACoreObject)pathObject).setLocked(true);
-		
-		return true;
 	}
 	
 	
@@ -0,0 +1,151 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis.algorithms;
+
+import java.util.Arrays;
+
+/**
+ * Priority queue of pixel indices, used to implement flooding algorithms such as the watershed transform.
+ * <p>
+ * Pixels are returned in order of decreasing value, and in the order they were added if their values are equal.
+ * This is necessary to produce reasonable-looking results where there are plateaus (i.e. pixels with the same value).
+ * <p>
+ * This is implemented as a binary heap using primitive arrays, so that adding or removing a pixel does not require 
+ * any objects to be created (except when the arrays need to grow).
+ * 
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+public class PixelPriorityQueue {
+	
+	private float[] values;
+	private int[] indices;
+	private int[] order;
+	
+	private int size = 0;
+	private int counter = 0;
+	
+	/**
+	 * Create a queue with a default initial capacity.
+	 */
+	public PixelPriorityQueue() {
+		this(1024);
+	}
+	
+	/**
+	 * Create a queue with the specified initial capacity.
+	 * @param initialCapacity the number of pixels that can be added before the queue needs to grow
+	 */
+	public PixelPriorityQueue(int initialCapacity) {
+		initialCapacity = Math.max(initialCapacity, 16);
+		values = new float[initialCapacity];
+		indices = new int[initialCapacity];
+		order = new int[initialCapacity];
+	}
+	
+	/**
+	 * Add a pixel to the queue.
+	 * @param index the pixel index
+	 * @param value the pixel value, used to determine the priority
+	 */
+	public void add(int index, float value) {
+		if (size == values.length) {
+			int capacity = values.length * 2;
+			values = Arrays.copyOf(values, capacity);
+			indices = Arrays.copyOf(indices, capacity);
+			order = Arrays.copyOf(order, capacity);
+		}
+		int count = counter++;
+		// Sift up
+		int i = size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!isBefore(value, count, values[parent], order[parent]))
+				break;
+			set(i, values[parent], indices[parent], order[parent]);
+			i = parent;
+		}
+		set(i, value, index, count);
+	}
+	
+	/**
+	 * Remove and return the pixel with the highest value, or the first one added if several have the same value.
+	 * @return the pixel index, or -1 if the queue is empty
+	 */
+	public int poll() {
+		if (size == 0)
+			return -1;
+		int result = indices[0];
+		size--;
+		if (size > 0) {
+			float value = values[size];
+			int index = indices[size];
+			int count = order[size];
+			// Sift down
+			int i = 0;
+			int half = size >>> 1;
+			while (i < half) {
+				int child = 2 * i + 1;
+				int right = child + 1;
+				if (right < size && isBefore(values[right], order[right], values[child], order[child]))
+					child = right;
+				if (!isBefore(values[child], order[child], value, count))
+					break;
+				set(i, values[child], indices[child], order[child]);
+				i = child;
+			}
+			set(i, value, index, count);
+		}
+		return result;
+	}
+	
+	/**
+	 * Query if the queue is empty.
+	 * @return true if there are no pixels in the queue, false otherwise
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Get the number of pixels in the queue.
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+	
+	private void set(int i, float value, int index, int count) {
+		values[i] = value;
+		indices[i] = index;
+		order[i] = count;
+	}
+	
+	private static boolean isBefore(float value1, int count1, float value2, int count2) {
+		if (value1 > value2)
+			return true;
+		if (value1 < value2)
+			return false;
+		return count1 < count2;
+	}
+
+}
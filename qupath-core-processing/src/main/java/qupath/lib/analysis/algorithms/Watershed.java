@@ -23,8 +23,6 @@
 
 package qupath.lib.analysis.algorithms;
 
-import java.util.PriorityQueue;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -74,19 +72,21 @@ public class Watershed {
 		
 		// Process the queue
 		while (!queue.isEmpty()) {
-			PixelWithValue pwv = queue.poll();
+			int ind = queue.poll();
+			int x = ind % width;
+			int y = ind / width;
 			float lastLabel;
 			if (conn8)
-				lastLabel = getNeighborLabels8(ipLabels, pwv.x, pwv.y, width, height);
+				lastLabel = getNeighborLabels8(ipLabels, x, y, width, height);
 			else
-				lastLabel = getNeighborLabels4(ipLabels, pwv.x, pwv.y, width, height);
+				lastLabel = getNeighborLabels4(ipLabels, x, y, width, height);
 			if (Float.isNaN(lastLabel))
 				continue;
-			ipLabels.setValue(pwv.x, pwv.y, lastLabel);
+			ipLabels.setValue(x, y, lastLabel);
 			if (conn8)
-				addNeighboursToQueue8(queue, pwv.x, pwv.y, width, height);
+				addNeighboursToQueue8(queue, x, y, width, height);
 			else
-				addNeighboursToQueue4(queue, pwv.x, pwv.y, width, height);
+				addNeighboursToQueue4(queue, x, y, width, height);
 		}
 		
 		long endTime = System.currentTimeMillis();
@@ -179,22 +179,27 @@ public class Watershed {
 	
 	private static final class WatershedQueueWrapper {
 
-		private PriorityQueue<PixelWithValue> queue = new PriorityQueue<>();
+		private PixelPriorityQueue queue;
+		private float[] values;
 		private boolean[] queued = null;
-		private long counter = 0;//Long.MIN_VALUE;
 		private int width, height;
-		private SimpleImage ip;
 		
 		public WatershedQueueWrapper(SimpleImage ip, SimpleImage ipLabels, double minThreshold) {
-			this.ip = ip;
 			this.width = ip.getWidth();
 			this.height = ip.getHeight();
 			// Keep a record of already-queued pixels
 			queued = new boolean[width * height];
+			// Cache the pixel values, so that we don't need to request them again whenever we add to the queue
+			values = new float[width * height];
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++)
+					values[y * width + x] = ip.getValue(x, y);
+			}
+			queue = new PixelPriorityQueue();
 			// Loop through and populate the queue sensibly; background assumed to be zero
 			for (int y = 0; y < height; y++) {
 				for (int x = 0; x < width; x++) {
-					float val = ip.getValue(x, y);
+					float val = values[y * width + x];
 					// Mark below-threshold pixels as queued (even if they aren't...) to indicate they shouldn't be added later
 					if (val <= minThreshold) {
 						queued[y * width + x] = true;
@@ -209,10 +214,8 @@ public class Watershed {
 								(y > 0 && ipLabels.getValue(x, y-1) != 0) ||
 								(x < width-1 && ipLabels.getValue(x+1, y) != 0) ||
 								(y > height-1 && ipLabels.getValue(x, y+1) != 0);
-						if (front) {
-							queued[y * width + x] = true;
-							queue.add(new PixelWithValue(x, y, val, ++counter));
-						}
+						if (front)
+							addWithoutCheck(x, y);
 					}
 				}			
 			}
@@ -222,26 +225,22 @@ public class Watershed {
 			// Don't add to the queue twice
 			if (!mayAddToQueue(x, y))
 				return;
-			addWithoutCheck(x, y, ip.getValue(x, y));
+			addWithoutCheck(x, y);
 		}
 		
-		protected final void addWithoutCheck(int x, int y, float val) {
-			// Add, while storing a count variable, effectively turning the PriorityQueue into a FIFO queue whenever values are equal
+		protected final void addWithoutCheck(int x, int y) {
+			// Pixels with equal values are returned in the order they were added
 			// This is necessary to produce reasonable-looking watershed results where there are plateaus (i.e. pixels with the same value)
-			queue.add(new PixelWithValue(x, y, val, ++counter));
+			queue.add(y * width + x, values[y * width + x]);
 			// Keep track of the fact this has been queued - won't need it again
 			queued[y * width + x] = true;
 		}
-		
-//		public final boolean mayAddToQueue(int x, int y) {
-//			return !queued[y * width + x];
-//		}
 
 		public final boolean mayAddToQueue(int x, int y) {
 			return x >= 0 && x < width && y >= 0 && y < height && !queued[y * width + x];
 		}
 
-		public final PixelWithValue poll() {
+		public final int poll() {
 			return queue.poll();
 		}
 		
@@ -250,41 +249,6 @@ public class Watershed {
 		}
 		
 	}
-
-
-	private static final class PixelWithValue implements Comparable<PixelWithValue> {
-		
-		public int x, y;
-		public float value;
-		private long count;
-		
-		public PixelWithValue(final int x, final int y, final float value, final long count) {
-			this.x = x;
-			this.y = y;
-			this.value = value;
-			this.count = count;
-		}
-
-		@Override
-		public int compareTo(final PixelWithValue pwv) {
-			// Profiling indicates that the many comparisons are the slowest part of the algorithm...
-			if (value < pwv.value) {
-				return 1;
-			}
-			else if (value > pwv.value) {
-				return -1;
-			}
-			return count > pwv.count ? 1 : -1;
-			
-//			// Profiling indicates that the many comparisons are the slowest part of the algorithm...
-//			if (value > pwv.value)
-//				return 1;
-//			else if (value < pwv.value)
-//				return -1;
-//			return count > pwv.count ? 1 : -1;
-		}
-		
-	}
 	
 	
 }
\ No newline at end of file
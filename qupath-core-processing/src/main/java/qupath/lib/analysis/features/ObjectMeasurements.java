@@ -23,12 +23,15 @@ package qupath.lib.analysis.features;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -46,6 +49,8 @@ import org.locationtech.jts.geom.util.AffineTransformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ij.ImagePlus;
+import ij.gui.Roi;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.FloatProcessor;
@@ -430,20 +435,7 @@ public class ObjectMeasurements {
 		
 		var pathImage = IJTools.convertToImagePlus(server, request);
 		var imp = pathImage.getImage();
-		
-		Map<String, ImageProcessor> channels = new LinkedHashMap<>();
-		var serverChannels = server.getMetadata().getChannels();
-		if (server.isRGB() && imp.getStackSize() == 1 && imp.getProcessor() instanceof ColorProcessor) {
-			ColorProcessor cp = (ColorProcessor)imp.getProcessor();
-			for (int i = 0; i < serverChannels.size(); i++) {
-				channels.put(serverChannels.get(i).getName(), cp.getChannel(i+1, null));
-			}
-		} else {
-			assert imp.getStackSize() == serverChannels.size();
-			for (int i = 0; i < imp.getStackSize(); i++) {
-				channels.put(serverChannels.get(i).getName(), imp.getStack().getProcessor(i+1));
-			}			
-		}
+		var channels = getChannels(server, imp);
 		
 		ByteProcessor bpCell = new ByteProcessor(imp.getWidth(), imp.getHeight());
 		bpCell.setValue(1.0);
@@ -467,6 +459,195 @@ public class ObjectMeasurements {
 		}
 	}
 	
+	/**
+	 * Measure all channels of an image for multiple objects or cells.
+	 * All compartments are measured where possible (nucleus, cytoplasm, membrane and full cell).
+	 * <p>
+	 * This gives the same measurements as calling {@link #addIntensityMeasurements(ImageServer, PathObject, double, Collection, Collection)} 
+	 * for each object in turn, but is much more efficient for densely-packed objects: objects are grouped by tile, 
+	 * so that the pixels for each tile are requested only once and all the objects within it are measured together 
+	 * using a labelled image.
+	 * If objects overlap, they are measured in separate passes over the same pixels.
+	 * <p>
+	 * Note that at a downsample other than 1 there can be small differences compared to measuring objects individually, 
+	 * because the pixel grid is aligned to the tile rather than to each object.
+	 * 
+	 * @param server the server containing the pixels (and channels) to be measured
+	 * @param pathObjects the objects or cells to measure (the {@link MeasurementList} for each will be updated)
+	 * @param downsample resolution at which to request pixels
+	 * @param measurements requested measurements to make
+	 * @param compartments the cell compartments to measure; ignored for objects that are not cells
+	 * @throws IOException
+	 * @since v0.6.0
+	 */
+	public static void addIntensityMeasurements(
+			ImageServer<BufferedImage> server,
+			Collection<? extends PathObject> pathObjects,
+			double downsample,
+			Collection<Measurements> measurements,
+			Collection<Compartments> compartments) throws IOException {
+		
+		// Objects with line or point ROIs can't be labelled by filling, so are measured individually
+		List<PathObject> toBatch = new ArrayList<>();
+		for (var pathObject : pathObjects) {
+			var roi = pathObject.getROI();
+			if (roi == null)
+				continue;
+			if (roi.isArea())
+				toBatch.add(pathObject);
+			else
+				addIntensityMeasurements(server, pathObject, downsample, measurements, compartments);
+		}
+		
+		int tileSize = (int)Math.ceil(BATCH_TILE_SIZE * downsample);
+		var batches = ObjectTileBatch.createBatches(toBatch, PathObject::getROI, tileSize);
+		logger.debug("Measuring intensities for {} objects in {} batches", toBatch.size(), batches.size());
+		try {
+			batches.parallelStream().forEach(batch -> {
+				try {
+					if (batch.size() == 1)
+						addIntensityMeasurements(server, batch.getPathObjects().get(0), downsample, measurements, compartments);
+					else
+						measureBatch(server, batch, downsample, measurements, compartments);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * Approximate width and height of the tiles used to batch objects, in pixels at the requested resolution.
+	 */
+	private static final int BATCH_TILE_SIZE = 512;
+	
+	private static void measureBatch(
+			ImageServer<BufferedImage> server,
+			ObjectTileBatch<PathObject> batch,
+			double downsample,
+			Collection<Measurements> measurements,
+			Collection<Compartments> compartments) throws IOException {
+		
+		int pad = (int)Math.ceil(downsample * 2);
+		var request = RegionRequest.createInstance(server.getPath(), downsample, batch.getRegion())
+				.pad2D(pad, pad)
+				.intersect2D(0, 0, server.getWidth(), server.getHeight());
+		
+		var pathImage = IJTools.convertToImagePlus(server, request);
+		var imp = pathImage.getImage();
+		var channels = getChannels(server, imp);
+		int width = imp.getWidth();
+		int height = imp.getHeight();
+		
+		// Cells need to be measured separately, since they have more compartments
+		List<PathObject> cells = new ArrayList<>();
+		List<PathObject> others = new ArrayList<>();
+		for (var pathObject : batch.getPathObjects()) {
+			if (pathObject instanceof PathCellObject)
+				cells.add(pathObject);
+			else
+				others.add(pathObject);
+		}
+		
+		// Label as many objects as possible at a time, deferring any that overlap an object that has already been labelled
+		while (!cells.isEmpty()) {
+			var ipCells = new FloatProcessor(width, height);
+			var ipNuclei = new FloatProcessor(width, height);
+			Map<Integer, PathObject> labels = new LinkedHashMap<>();
+			List<PathObject> deferred = new ArrayList<>();
+			for (var pathObject : cells) {
+				var cell = (PathCellObject)pathObject;
+				var roiCell = IJTools.convertToIJRoi(cell.getROI(), pathImage);
+				var roiNucleus = cell.getNucleusROI() == null ? null : IJTools.convertToIJRoi(cell.getNucleusROI(), pathImage);
+				if (!isUnlabelled(roiCell, ipCells, ipNuclei) || (roiNucleus != null && !isUnlabelled(roiNucleus, ipCells, ipNuclei))) {
+					deferred.add(cell);
+					continue;
+				}
+				int label = labels.size() + 1;
+				labels.put(label, cell);
+				ipCells.setValue(label);
+				ipCells.fill(roiCell);
+				if (roiNucleus != null) {
+					ipNuclei.setValue(label);
+					ipNuclei.fill(roiNucleus);
+				}
+			}
+			measureCells(ipNuclei, ipCells, labels, channels, compartments, measurements);
+			cells = deferred;
+		}
+		
+		while (!others.isEmpty()) {
+			var ipLabels = new FloatProcessor(width, height);
+			Map<Integer, PathObject> labels = new LinkedHashMap<>();
+			List<PathObject> deferred = new ArrayList<>();
+			for (var pathObject : others) {
+				var roi = IJTools.convertToIJRoi(pathObject.getROI(), pathImage);
+				if (!isUnlabelled(roi, ipLabels)) {
+					deferred.add(pathObject);
+					continue;
+				}
+				int label = labels.size() + 1;
+				labels.put(label, pathObject);
+				ipLabels.setValue(label);
+				ipLabels.fill(roi);
+			}
+			var array = mapToArray(labels);
+			var imgLabels = new PixelImageIJ(ipLabels);
+			for (var entry : channels.entrySet()) {
+				var img = new PixelImageIJ(entry.getValue());				
+				measureObjects(img, imgLabels, array, entry.getKey(), measurements);
+			}
+			others = deferred;
+		}
+	}
+	
+	/**
+	 * Check whether all the pixels inside an area ROI are zero in all the specified label images.
+	 * @param roi the ROI
+	 * @param ipLabels the label images; these should all have the same size
+	 * @return true if no pixel inside the ROI has been labelled, false otherwise
+	 */
+	private static boolean isUnlabelled(Roi roi, ImageProcessor... ipLabels) {
+		var ip = ipLabels[0];
+		ip.setRoi(roi);
+		var bounds = ip.getRoi();
+		var mask = ip.getMask();
+		ip.resetRoi();
+		for (int y = 0; y < bounds.height; y++) {
+			for (int x = 0; x < bounds.width; x++) {
+				if (mask != null && mask.get(x, y) == 0)
+					continue;
+				for (var ipLabel : ipLabels) {
+					if (ipLabel.getf(bounds.x + x, bounds.y + y) != 0f)
+						return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Get the channels of an image as separate processors, mapped to the channel names.
+	 */
+	private static Map<String, ImageProcessor> getChannels(ImageServer<BufferedImage> server, ImagePlus imp) {
+		Map<String, ImageProcessor> channels = new LinkedHashMap<>();
+		var serverChannels = server.getMetadata().getChannels();
+		if (server.isRGB() && imp.getStackSize() == 1 && imp.getProcessor() instanceof ColorProcessor) {
+			ColorProcessor cp = (ColorProcessor)imp.getProcessor();
+			for (int i = 0; i < serverChannels.size(); i++) {
+				channels.put(serverChannels.get(i).getName(), cp.getChannel(i+1, null));
+			}
+		} else {
+			assert imp.getStackSize() == serverChannels.size();
+			for (int i = 0; i < imp.getStackSize(); i++) {
+				channels.put(serverChannels.get(i).getName(), imp.getStack().getProcessor(i+1));
+			}			
+		}
+		return channels;
+	}
+	
 	/**
 	 * Make cell measurements based on labelled images.
 	 * All compartments are measured where possible (nucleus, cytoplasm, membrane and full cell).
@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis.features;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * A group of objects that are close together, along with the region that contains all their ROIs.
+ * <p>
+ * This is used to measure many small objects (e.g. cells) efficiently: pixels can be requested and 
+ * transformed once for the whole batch, rather than once for every object.
+ * Objects are assigned to a batch according to the tile that contains the center of their bounding box, 
+ * and the region is expanded beyond the tile to contain all the assigned objects. 
+ * This means that every object is found entirely within a single batch.
+ * 
+ * @author Pete Bankhead
+ * @since v0.6.0
+ * @param <T> the type of object
+ */
+public class ObjectTileBatch<T extends PathObject> {
+	
+	private final ImageRegion region;
+	private final List<T> pathObjects;
+	
+	private ObjectTileBatch(ImageRegion region, List<T> pathObjects) {
+		this.region = region;
+		this.pathObjects = Collections.unmodifiableList(pathObjects);
+	}
+	
+	/**
+	 * Get the smallest region that contains the bounding boxes of all the ROIs in the batch.
+	 * @return
+	 */
+	public ImageRegion getRegion() {
+		return region;
+	}
+	
+	/**
+	 * Get the objects in the batch.
+	 * @return an unmodifiable list of objects
+	 */
+	public List<T> getPathObjects() {
+		return pathObjects;
+	}
+	
+	/**
+	 * Get the number of objects in the batch.
+	 * @return
+	 */
+	public int size() {
+		return pathObjects.size();
+	}
+	
+	/**
+	 * Group objects into batches, according to the tiles that contain them.
+	 * <p>
+	 * Any object with a ROI that is larger than the tile size is assigned to a batch of its own, 
+	 * so that callers can process it separately (e.g. by splitting it into tiles). 
+	 * Objects without a ROI are ignored.
+	 * 
+	 * @param <T> the type of object
+	 * @param pathObjects the objects to group
+	 * @param roiFunction function to extract the ROI to measure for each object, e.g. {@link PathObject#getROI()}; may return null
+	 * @param tileSize the width and height of each tile, in pixel units of the full-resolution image
+	 * @return a list of batches; batches containing a single large object are first, followed by batches for each tile
+	 */
+	public static <T extends PathObject> List<ObjectTileBatch<T>> createBatches(Collection<? extends T> pathObjects, Function<? super T, ROI> roiFunction, int tileSize) {
+		if (tileSize <= 0)
+			throw new IllegalArgumentException("Tile size must be > 0, but was " + tileSize);
+		
+		Map<TileKey, List<T>> map = new LinkedHashMap<>();
+		List<ObjectTileBatch<T>> batches = new ArrayList<>();
+		for (var pathObject : pathObjects) {
+			var roi = roiFunction.apply(pathObject);
+			if (roi == null)
+				continue;
+			if (roi.getBoundsWidth() > tileSize || roi.getBoundsHeight() > tileSize) {
+				batches.add(new ObjectTileBatch<>(ImageRegion.createInstance(roi), List.of(pathObject)));
+				continue;
+			}
+			// Use the bounding box center rather than the centroid, since it is cheaper to compute
+			int tx = (int)Math.floor((roi.getBoundsX() + roi.getBoundsWidth()/2.0) / tileSize);
+			int ty = (int)Math.floor((roi.getBoundsY() + roi.getBoundsHeight()/2.0) / tileSize);
+			map.computeIfAbsent(new TileKey(tx, ty, roi.getZ(), roi.getT()), k -> new ArrayList<>()).add(pathObject);
+		}
+		for (var list : map.values()) {
+			var rois = list.stream().map(roiFunction).toList();
+			batches.add(new ObjectTileBatch<>(ImageRegion.createInstance(rois), list));
+		}
+		return batches;
+	}
+	
+	private static record TileKey(int x, int y, int z, int t) {}
+	
+	@Override
+	public String toString() {
+		return "ObjectTileBatch [region=" + region + ", size=" + pathObjects.size() + "]";
+	}
+
+}
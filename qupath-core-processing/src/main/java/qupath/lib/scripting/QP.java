@@ -202,14 +202,15 @@ public class QP {
 	public static final ImageData.ImageType OTHER = ImageData.ImageType.OTHER;
 	
 	/**
-	 * Store ImageData accessible to the script thread
+	 * Store ImageData accessible to the script thread.
+	 * This needs to be synchronized, since scripts may be run for different images in parallel.
 	 */
-	private static Map<Thread, ImageData<BufferedImage>> batchImageData = new WeakHashMap<>();
+	private static Map<Thread, ImageData<BufferedImage>> batchImageData = Collections.synchronizedMap(new WeakHashMap<>());
 
 	/**
 	 * Store Project accessible to the script thread
 	 */
-	private static Map<Thread, Project<BufferedImage>> batchProject = new WeakHashMap<>();
+	private static Map<Thread, Project<BufferedImage>> batchProject = Collections.synchronizedMap(new WeakHashMap<>());
 	
 	/**
 	 * Placeholder for the path to the current project.
@@ -690,8 +691,12 @@ public class QP {
 		if (imageData != null || defaultTemp == null)
 			return imageData;
 		// If we don't have any other possible image data, return with debug logging
-		var batchImages = batchImageData.values();
-		if (batchImages.isEmpty() || (batchImages.size() == 1 && batchImages.contains(defaultTemp))) {
+		boolean onlyDefault;
+		synchronized (batchImageData) {
+			var batchImages = batchImageData.values();
+			onlyDefault = batchImages.isEmpty() || (batchImages.size() == 1 && batchImages.contains(defaultTemp));
+		}
+		if (onlyDefault) {
 			logger.debug("Returning the default ImageData: {}", defaultTemp);
 			return defaultTemp;
 		}
@@ -717,8 +722,12 @@ public class QP {
 		if (project != null || defaultTemp == null)
 			return project;
 		// If we don't have any other possible project, return with debug logging
-		var batchProjects = batchProject.values();
-		if (batchProjects.isEmpty() || (batchProjects.size() == 1 && batchProjects.contains(defaultTemp))) {
+		boolean onlyDefault;
+		synchronized (batchProject) {
+			var batchProjects = batchProject.values();
+			onlyDefault = batchProjects.isEmpty() || (batchProjects.size() == 1 && batchProjects.contains(defaultTemp));
+		}
+		if (onlyDefault) {
 			logger.debug("Returning the default project: {}", defaultTemp);
 			return defaultTemp;
 		}
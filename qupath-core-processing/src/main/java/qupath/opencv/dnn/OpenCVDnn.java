@@ -24,6 +24,7 @@ package qupath.opencv.dnn;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -33,8 +34,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.stream.Collectors;
 
+import org.bytedeco.javacpp.Pointer;
 import org.bytedeco.javacpp.PointerScope;
 import org.bytedeco.opencv.opencv_core.Mat;
 import org.bytedeco.opencv.opencv_core.MatVector;
@@ -55,6 +59,7 @@ import org.bytedeco.opencv.opencv_dnn.TextRecognitionModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import qupath.lib.common.ThreadTools;
 import qupath.lib.io.UriResource;
 import qupath.opencv.ops.ImageOp;
 import qupath.opencv.ops.ImageOps;
@@ -139,9 +144,18 @@ public class OpenCVDnn extends AbstractDnnModel<Mat> implements UriResource {
 	
 	private Map<String, DnnShape> inputs;
 	private Map<String, DnnShape> outputs;
+	
+	private int poolSize = 0;
+	private int maxBatchSize = 1;
+	private long maxBatchDelayMillis = DEFAULT_MAX_BATCH_DELAY_MILLIS;
 
 	private transient boolean constructed = false;
 	
+	/**
+	 * Default maximum time to wait for concurrent predictions to be combined into a batch, in milliseconds.
+	 */
+	private static final long DEFAULT_MAX_BATCH_DELAY_MILLIS = 5;
+	
 //	private OpenCVDnn() {}
 
 	/**
@@ -341,6 +355,58 @@ public class OpenCVDnn extends AbstractDnnModel<Mat> implements UriResource {
 		return framework;
 	}
 	
+	/**
+	 * Get the maximum number of {@link Net} instances that may be used for concurrent predictions.
+	 * If this was not set explicitly, a default is determined from the number of available processors 
+	 * and the size of the model. GPU targets use a single {@link Net} by default.
+	 * @return
+	 * @since v0.6.0
+	 */
+	public int getPoolSize() {
+		if (poolSize > 0)
+			return poolSize;
+		switch (target) {
+		case opencv_dnn.DNN_TARGET_CUDA:
+		case opencv_dnn.DNN_TARGET_CUDA_FP16:
+		case opencv_dnn.DNN_TARGET_OPENCL:
+		case opencv_dnn.DNN_TARGET_OPENCL_FP16:
+			return 1;
+		default:
+			// Each Net has its own copy of the weights, plus working memory for activations.
+			// We can't know how much native memory we have, so use a fraction of the heap as a rough guide.
+			long modelBytes = getModelBytes();
+			int nThreads = ThreadTools.getParallelism();
+			if (modelBytes <= 0)
+				return nThreads;
+			long maxNets = Runtime.getRuntime().maxMemory() / 4 / (modelBytes * 4);
+			return (int)Math.max(1, Math.min(nThreads, maxNets));
+		}
+	}
+	
+	private long getModelBytes() {
+		long bytes = 0;
+		for (var uri : Arrays.asList(pathModel, pathConfig)) {
+			if (uri == null)
+				continue;
+			try {
+				bytes += Files.size(Paths.get(uri));
+			} catch (Exception e) {
+				logger.debug("Unable to get model file size for {}: {}", uri, e.getLocalizedMessage());
+			}
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Get the maximum number of concurrent single-item predictions that may be combined into a single batch.
+	 * A value of 1 indicates that predictions are not batched.
+	 * @return
+	 * @since v0.6.0
+	 */
+	public int getMaxBatchSize() {
+		return Math.max(1, maxBatchSize);
+	}
+	
 	
 	/**
 	 * Create a new builder.
@@ -379,6 +445,10 @@ public class OpenCVDnn extends AbstractDnnModel<Mat> implements UriResource {
 		
 		private Map<String, DnnShape> outputs;
 		
+		private int poolSize = 0;
+		private int maxBatchSize = 1;
+		private long maxBatchDelayMillis = DEFAULT_MAX_BATCH_DELAY_MILLIS;
+		
 		/**
 		 * Path to the model file.
 		 * @param pathModel
@@ -615,6 +685,37 @@ public class OpenCVDnn extends AbstractDnnModel<Mat> implements UriResource {
 			return this;
 		}
 		
+		/**
+		 * Set the maximum number of {@link Net} instances to use for concurrent predictions.
+		 * Each instance requires its own memory, but allows predictions to run in parallel.
+		 * @param poolSize the number of instances, or 0 to determine this automatically
+		 * @return
+		 * @since v0.6.0
+		 */
+		public Builder poolSize(int poolSize) {
+			if (poolSize < 0)
+				throw new IllegalArgumentException("Pool size must be >= 0, but was " + poolSize);
+			this.poolSize = poolSize;
+			return this;
+		}
+		
+		/**
+		 * Combine concurrent predictions for single inputs (with a batch size of 1) into larger batches.
+		 * This can improve throughput when the model runs more efficiently with larger batches (e.g. on a GPU), 
+		 * but requires that the model supports variable batch sizes.
+		 * @param maxBatchSize maximum number of inputs to combine in a single batch; 1 indicates no batching
+		 * @param maxDelayMillis maximum time to wait for other predictions before running a batch, in milliseconds
+		 * @return
+		 * @since v0.6.0
+		 */
+		public Builder batching(int maxBatchSize, long maxDelayMillis) {
+			if (maxBatchSize < 1)
+				throw new IllegalArgumentException("Maximum batch size must be >= 1, but was " + maxBatchSize);
+			this.maxBatchSize = maxBatchSize;
+			this.maxBatchDelayMillis = Math.max(0, maxDelayMillis);
+			return this;
+		}
+		
 		/**
 		 * Build a new {@link OpenCVDnn}.
 		 * @return
@@ -635,6 +736,9 @@ public class OpenCVDnn extends AbstractDnnModel<Mat> implements UriResource {
 			dnn.scale = scale;
 			dnn.swapRB = swapRB;
 			dnn.outputs = outputs;
+			dnn.poolSize = poolSize;
+			dnn.maxBatchSize = maxBatchSize;
+			dnn.maxBatchDelayMillis = maxBatchDelayMillis;
 			return dnn;
 		}
 		
@@ -646,27 +750,31 @@ public class OpenCVDnn extends AbstractDnnModel<Mat> implements UriResource {
 
 	
 	
-	class OpenCVNetFunction implements PredictionFunction<Mat>, AutoCloseable { //, UriResource {
-				
+	/**
+	 * Prediction function that uses a pool of {@link Net} instances, so that predictions can run concurrently.
+	 * Single-item predictions may optionally be combined into larger batches.
+	 */
+	class OpenCVNetFunction implements PredictionFunction<Mat>, AutoCloseable {
+		
+		// The first Net, used to query the model
 		private transient Net net;
 		private transient List<String> outputLayerNames;
 		private transient StringVector outputLayerNamesVector;
 		
-		// Experimental code - can use a ThreadLocal Net, but doesn't seem to improve performance overall
-		// and can even slightly reduce it
-		// (tested 06/22 using StarDist on an Apple M1 Max with 32 GB RAM)
-//		private transient ThreadLocal<Net> localNet = ThreadLocal.withInitial(() -> {
-//			ensureInitialized();
-//			if (net != null) {
-//				var net2 = buildNet();
-//				net2.retainReference();
-//				return net2;
-//			}
-//			return net;
-//		});
-
+		private final transient List<Net> allNets = new ArrayList<>();
+		private final transient BlockingQueue<Net> availableNets = new LinkedBlockingQueue<>();
+		private final transient int maxNets;
+		
+		private final transient PredictionBatcher<Mat> batcher;
 				
 		OpenCVNetFunction() {
+			maxNets = getPoolSize();
+			int batchSize = getMaxBatchSize();
+			if (batchSize > 1)
+				batcher = new PredictionBatcher<>(batchSize, maxBatchDelayMillis, OpenCVNetFunction::batchKey, this::batchForward);
+			else
+				batcher = null;
+			logger.debug("Creating prediction function with up to {} Net(s), max batch size {}", maxNets, batchSize);
 			ensureInitialized();
 		}
 		
@@ -674,8 +782,7 @@ public class OpenCVDnn extends AbstractDnnModel<Mat> implements UriResource {
 			if (net == null || net.isNull()) {
 				synchronized (this) {
 					if (net == null || net.isNull()) {
-						net = buildNet();
-						net.retainReference();
+						net = createNet();
 						outputLayerNames = new ArrayList<>();
 						if (outputs != null && !outputs.isEmpty())
 							outputLayerNames.addAll(outputs.keySet());
@@ -692,40 +799,127 @@ public class OpenCVDnn extends AbstractDnnModel<Mat> implements UriResource {
 			}
 		}
 		
+		private synchronized Net createNet() {
+			var newNet = buildNet();
+			newNet.retainReference();
+			allNets.add(newNet);
+			availableNets.add(newNet);
+			return newNet;
+		}
 		
-		private Net getNet() {
+		/**
+		 * Get a Net that isn't currently in use, creating a new one if the pool isn't full, 
+		 * or waiting for one to become available.
+		 * The Net must be returned with {@link #releaseNet(Net)}.
+		 */
+		private Net acquireNet() {
 			ensureInitialized();
-			return net;
-//			boolean doParallel = false;
-//			if (doParallel)
-//				return localNet.get();
-//			else
-//				return net;
+			var available = availableNets.poll();
+			if (available != null)
+				return available;
+			synchronized (this) {
+				if (allNets.size() < maxNets) {
+					createNet();
+				}
+			}
+			try {
+				return availableNets.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for a Net", e);
+			}
+		}
+		
+		private void releaseNet(Net net) {
+			availableNets.add(net);
 		}
 		
 
 		@Override
 		public Mat predict(Mat input) {
-			
-			var net = getNet();
-//			var net = buildNet();
-			
-			synchronized(net) {
+			ensureInitialized();
+			if (outputLayerNames.size() > 1)
+				logger.warn("Single output requested for multi-output model - only the first will be returned");
+			if (batcher != null && canBatch(input))
+				return batcher.predict(input);
+			return forward(input);
+		}
+		
+		private Mat forward(Mat input) {
+			var net = acquireNet();
+			try {
 				net.setInput(input);
-				// We need to clone so that we can release the lock
-				if (outputLayerNames.size() > 1)
-					logger.warn("Single output requested for multi-output model - only the first will be returned");
+				// We need to clone so that the Net can be reused
 				return net.forward(outputLayerNames.get(0)).clone();
-//				return net.forward().clone();
+			} finally {
+				releaseNet(net);
 			}
 		}
 		
+		/**
+		 * Combine single-item blobs along the batch dimension, run a single forward pass, and split the output.
+		 */
+		private List<Mat> batchForward(List<Mat> inputs) {
+			if (inputs.size() == 1)
+				return List.of(forward(inputs.get(0)));
+			int n = inputs.size();
+			var first = inputs.get(0);
+			int[] sizes = shape(first);
+			sizes[0] = n;
+			long bytesPerInput = first.total() * first.elemSize();
+			try (var blob = new Mat(sizes.length, sizes, first.type())) {
+				var data = blob.data();
+				for (int i = 0; i < n; i++) {
+					Pointer.memcpy(data.position(i * bytesPerInput), inputs.get(i).data(), bytesPerInput);
+				}
+				try (var output = forward(blob)) {
+					if (output.dims() < 2 || output.size(0) != n || !output.isContinuous())
+						throw new IllegalStateException("Unexpected output shape for batch size " + n + ": " + Arrays.toString(shape(output)));
+					int[] outputSizes = shape(output);
+					outputSizes[0] = 1;
+					long bytesPerOutput = output.total() * output.elemSize() / n;
+					var outputData = output.data();
+					List<Mat> results = new ArrayList<>(n);
+					for (int i = 0; i < n; i++) {
+						var mat = new Mat(outputSizes.length, outputSizes, output.type());
+						Pointer.memcpy(mat.data(), outputData.position(i * bytesPerOutput), bytesPerOutput);
+						results.add(mat);
+					}
+					return results;
+				}
+			}
+		}
+		
+		/**
+		 * Only single-item blobs can be combined into a batch.
+		 */
+		private static boolean canBatch(Mat input) {
+			return input.dims() >= 2 && input.size(0) == 1 && input.isContinuous();
+		}
+		
+		/**
+		 * Inputs can only be combined if they have the same type and shape.
+		 */
+		private static List<Integer> batchKey(Mat input) {
+			var key = new ArrayList<Integer>();
+			key.add(input.type());
+			for (int s : shape(input))
+				key.add(s);
+			return key;
+		}
+		
+		private static int[] shape(Mat mat) {
+			int[] sizes = new int[mat.dims()];
+			for (int i = 0; i < sizes.length; i++)
+				sizes[i] = mat.size(i);
+			return sizes;
+		}
+		
 		
-		@SuppressWarnings("unchecked")
 		@Override
 		public Map<String, Mat> predict(Map<String, Mat> input) {
 			
-			var net = getNet();
+			ensureInitialized();
 			
 			// If we have one input and one output, use simpler method
 			if (input.size() == 1 && outputLayerNames.size() == 1) {
@@ -742,31 +936,32 @@ public class OpenCVDnn extends AbstractDnnModel<Mat> implements UriResource {
 				result.put(name, new Mat());
 			}
 			
+			var net = acquireNet();
 			try (var scope = new PointerScope()) {
 				
 				// Prepare output
 				var output = new MatVector();
 						
-				synchronized(net) {
-					// Only use input names if we have more than one input (usually we don't)
-					boolean singleInput = input.size() == 1;
-					for (var entry : input.entrySet()) {
-						if (singleInput)
-							net.setInput(entry.getValue());
-						else
-							net.setInput(entry.getValue(), entry.getKey(), 1.0, null);
-					}
-					net.forward(output, outputLayerNamesVector);
-					
-					// Clone so we can release the lock
-					var mats = output.get();
-					int i = 0;
-					for (var name : outputLayerNames) {
-						result.get(name).put(mats[i].clone());
-						i++;
-					}
+				// Only use input names if we have more than one input (usually we don't)
+				boolean singleInput = input.size() == 1;
+				for (var entry : input.entrySet()) {
+					if (singleInput)
+						net.setInput(entry.getValue());
+					else
+						net.setInput(entry.getValue(), entry.getKey(), 1.0, null);
+				}
+				net.forward(output, outputLayerNamesVector);
+				
+				// Clone so the Net can be reused
+				var mats = output.get();
+				int i = 0;
+				for (var name : outputLayerNames) {
+					result.get(name).put(mats[i].clone());
+					i++;
 				}
 	
+			} finally {
+				releaseNet(net);
 			}
 			
 			return result;
@@ -803,11 +998,14 @@ public class OpenCVDnn extends AbstractDnnModel<Mat> implements UriResource {
 
 		@Override
 		public synchronized void close() throws Exception {
-			if (net != null) {
-				logger.debug("Closing {}", net);
-				net.close();
-				net.deallocate();
+			for (var n : allNets) {
+				logger.debug("Closing {}", n);
+				n.close();
+				n.deallocate();
 			}
+			allNets.clear();
+			availableNets.clear();
+			net = null;
 			if (outputLayerNamesVector != null) {
 				outputLayerNamesVector.close();
 				outputLayerNamesVector.deallocate();
@@ -0,0 +1,157 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.opencv.dnn;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Helper class to group concurrent single-input predictions into batches.
+ * <p>
+ * The first thread to request a prediction for an input starts a new batch, and waits until either the batch
+ * is full or a maximum delay has elapsed. Any other threads requesting predictions for compatible inputs during
+ * that time join the same batch. The first thread then applies the batch function on behalf of all of them,
+ * and each thread receives its own output.
+ * <p>
+ * No additional threads are created; when there is no concurrency, the cost is at most the maximum delay
+ * for each prediction.
+ *
+ * @param <T> the type of input and output
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+class PredictionBatcher<T> {
+
+	private final int maxBatchSize;
+	private final long maxDelayNanos;
+	private final Function<List<T>, List<T>> batchFunction;
+	private final Function<T, ?> keyFunction;
+
+	private final Map<Object, Batch<T>> pending = new HashMap<>();
+
+	/**
+	 * Create a new batcher.
+	 * @param maxBatchSize maximum number of inputs to combine in a single batch
+	 * @param maxDelayMillis maximum time to wait for a batch to be filled, in milliseconds
+	 * @param keyFunction function to create a key for each input; only inputs with equal keys may be batched together
+	 * @param batchFunction function to compute a list of outputs from a list of inputs, in the same order
+	 */
+	PredictionBatcher(int maxBatchSize, long maxDelayMillis, Function<T, ?> keyFunction, Function<List<T>, List<T>> batchFunction) {
+		if (maxBatchSize < 1)
+			throw new IllegalArgumentException("Maximum batch size must be at least 1, but was " + maxBatchSize);
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMillis));
+		this.keyFunction = Objects.requireNonNull(keyFunction);
+		this.batchFunction = Objects.requireNonNull(batchFunction);
+	}
+
+	/**
+	 * Compute the output for a single input, possibly as part of a larger batch.
+	 * @param input
+	 * @return
+	 */
+	T predict(T input) {
+		var key = keyFunction.apply(input);
+		Batch<T> batch;
+		int index;
+		boolean isLeader = false;
+		synchronized (pending) {
+			batch = pending.get(key);
+			if (batch == null) {
+				batch = new Batch<>();
+				pending.put(key, batch);
+				isLeader = true;
+			}
+			index = batch.inputs.size();
+			batch.inputs.add(input);
+			if (batch.inputs.size() >= maxBatchSize) {
+				pending.remove(key, batch);
+				pending.notifyAll();
+			}
+		}
+		if (isLeader) {
+			awaitBatch(key, batch);
+			run(batch);
+		}
+		try {
+			return batch.result.join().get(index);
+		} catch (CompletionException e) {
+			var cause = e.getCause();
+			if (cause instanceof RuntimeException re)
+				throw re;
+			if (cause instanceof Error err)
+				throw err;
+			throw e;
+		}
+	}
+
+	/**
+	 * Wait until the batch is full or the maximum delay has elapsed, then ensure no more inputs can be added.
+	 */
+	private void awaitBatch(Object key, Batch<T> batch) {
+		long deadline = System.nanoTime() + maxDelayNanos;
+		boolean interrupted = false;
+		synchronized (pending) {
+			long remaining = maxDelayNanos;
+			while (pending.get(key) == batch && remaining > 0) {
+				try {
+					TimeUnit.NANOSECONDS.timedWait(pending, remaining);
+				} catch (InterruptedException e) {
+					// Don't abandon threads that have already joined the batch
+					interrupted = true;
+				}
+				remaining = deadline - System.nanoTime();
+			}
+			pending.remove(key, batch);
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private void run(Batch<T> batch) {
+		try {
+			var inputs = Collections.unmodifiableList(batch.inputs);
+			var outputs = batchFunction.apply(inputs);
+			if (outputs == null || outputs.size() != inputs.size())
+				throw new IllegalStateException("Expected " + inputs.size() + " outputs, but got " + (outputs == null ? "null" : outputs.size()));
+			batch.result.complete(outputs);
+		} catch (Throwable t) {
+			batch.result.completeExceptionally(t);
+		}
+	}
+
+	private static class Batch<T> {
+
+		private final List<T> inputs = new ArrayList<>();
+		private final CompletableFuture<List<T>> result = new CompletableFuture<>();
+
+	}
+
+}
@@ -26,6 +26,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 import qupath.lib.images.ImageData;
 import qupath.lib.measurements.MeasurementList;
@@ -33,6 +37,11 @@ import qupath.lib.objects.PathObject;
 
 /**
  * {@link FeatureExtractor} that takes features from the existing {@link MeasurementList} of each object.
+ * <p>
+ * Rather than looking up every feature by name for every object, the position of each feature is resolved 
+ * once for each distinct list of measurement names. Since closed measurement lists share their names, 
+ * this usually means that features only need to be resolved once for all objects.
+ * Values are then copied for chunks of objects in parallel.
  * 
  * @author Pete Bankhead
  * @param <T> 
@@ -40,16 +49,78 @@ import qupath.lib.objects.PathObject;
  */
 class DefaultFeatureExtractor<T> implements FeatureExtractor<T> {
 	
+	/**
+	 * Number of objects to handle in each parallel task.
+	 */
+	private static final int CHUNK_SIZE = 1024;
+	
 	private List<String> measurements = new ArrayList<>();
 	
+	/**
+	 * Cache of feature indices for each list of measurement names.
+	 */
+	private transient Map<List<String>, int[]> indexCache;
+	
 	DefaultFeatureExtractor(final Collection<String> measurements) {
 		this.measurements.addAll(measurements);
 	}
 	
 	@Override
 	public void extractFeatures(ImageData<T> imageData, Collection<? extends PathObject> pathObjects, FloatBuffer buffer) {
-		for (var pathObject : pathObjects)
-			extractFeatures(pathObject, buffer);
+		List<? extends PathObject> list = pathObjects instanceof List<? extends PathObject> l && l instanceof RandomAccess ? l : new ArrayList<>(pathObjects);
+		int nFeatures = nFeatures();
+		int nObjects = list.size();
+		int start = buffer.position();
+		if (indexCache == null)
+			indexCache = new ConcurrentHashMap<>();
+		int nChunks = (nObjects + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		var stream = IntStream.range(0, nChunks);
+		if (nChunks > 1)
+			stream = stream.parallel();
+		stream.forEach(c -> {
+			int from = c * CHUNK_SIZE;
+			int to = Math.min(nObjects, from + CHUNK_SIZE);
+			float[] values = new float[(to - from) * nFeatures];
+			extractFeatures(list.subList(from, to), values);
+			// Absolute puts don't change the position, so chunks can be written concurrently
+			buffer.put(start + from * nFeatures, values);
+		});
+		buffer.position(start + nObjects * nFeatures);
+	}
+	
+	private void extractFeatures(List<? extends PathObject> pathObjects, float[] values) {
+		int nFeatures = nFeatures();
+		List<String> lastNames = null;
+		int[] inds = null;
+		int offset = 0;
+		for (var pathObject : pathObjects) {
+			var measurementList = pathObject.getMeasurementList();
+			List<String> names;
+			double[] listValues;
+			// Get names and values together, in case the list is being modified
+			synchronized (measurementList) {
+				names = measurementList.getNames();
+				listValues = measurementList.values();
+			}
+			// Usually the same list of names is shared across objects
+			if (names != lastNames) {
+				inds = getFeatureIndices(names);
+				lastNames = names;
+			}
+			for (int i = 0; i < nFeatures; i++) {
+				int ind = inds[i];
+				values[offset++] = ind < 0 || ind >= listValues.length ? Float.NaN : (float)listValues[ind];
+			}
+		}
+	}
+	
+	/**
+	 * Get the index of each feature within a list of measurement names, or -1 if a feature is missing.
+	 * @param names
+	 * @return
+	 */
+	private int[] getFeatureIndices(List<String> names) {
+		return indexCache.computeIfAbsent(names, n -> measurements.stream().mapToInt(n::indexOf).toArray());
 	}
 	
 	@Override
@@ -62,14 +133,6 @@ class DefaultFeatureExtractor<T> implements FeatureExtractor<T> {
 		return measurements.size();
 	}
 	
-	private void extractFeatures(final PathObject pathObject, FloatBuffer buffer) {
-		var measurementList = pathObject.getMeasurementList();
-		for (var m : measurements) {
-			double value = measurementList.get(m);
-			buffer.put((float)value);
-		}
-	}
-	
 	@Override
 	public Collection<String> getMissingFeatures(ImageData<T> imageData, PathObject pathObject) {
 		List<String> missing = null;
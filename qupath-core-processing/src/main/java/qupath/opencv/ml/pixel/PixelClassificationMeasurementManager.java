@@ -33,6 +33,7 @@ import java.awt.image.DataBuffer;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -42,7 +43,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
@@ -53,6 +53,9 @@ import java.util.stream.LongStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import qupath.lib.awt.common.BufferedImageTools;
 import qupath.lib.common.GeneralTools;
 import qupath.lib.common.ThreadTools;
@@ -82,9 +85,21 @@ public class PixelClassificationMeasurementManager {
 	
 	private static final Logger logger = LoggerFactory.getLogger(PixelClassificationMeasurementManager.class);
 	
-	private static final Map<ImageServer<BufferedImage>, Map<ROI, MeasurementList>> measuredROIs = Collections.synchronizedMap(new WeakHashMap<>());
+	/**
+	 * Approximate maximum number of bytes for the measurements cached for each classifier server.
+	 */
+	private static final long MAX_MEASUREMENT_CACHE_BYTES = 32L * 1024L * 1024L;
+
+	/**
+	 * Approximate maximum number of bytes for the tile counts cached for each classifier server.
+	 */
+	private static final long MAX_TILE_CACHE_BYTES = 32L * 1024L * 1024L;
+
+	private static final Map<ImageServer<BufferedImage>, MeasurementCache> caches = Collections.synchronizedMap(new WeakHashMap<>());
 	
 	private final ImageServer<BufferedImage> classifierServer;
+	
+	private final MeasurementCache cache;
 	private List<String> measurementNames = null;
 	
 	private ROI rootROI = null; // ROI for the Root object, if required
@@ -103,10 +118,8 @@ public class PixelClassificationMeasurementManager {
 	 */
 	public PixelClassificationMeasurementManager(ImageServer<BufferedImage> classifierServer) {
 		this.classifierServer = classifierServer;
-		synchronized (measuredROIs) {
-			if (!measuredROIs.containsKey(classifierServer))
-				measuredROIs.put(classifierServer, new HashMap<>());
-		}
+		// Share the cache between managers for the same server, but don't require the shared map for every lookup
+		this.cache = caches.computeIfAbsent(classifierServer, s -> new MeasurementCache());
 		
         // Calculate area of a pixel
         requestedDownsample = classifierServer.getDownsampleForResolution(0);
@@ -354,15 +367,83 @@ public class PixelClassificationMeasurementManager {
 	private MeasurementList getMeasurementList(ROI roi, ExecutorService pool) {
 		if (roi == null)
 			return null;
-		var map = measuredROIs.computeIfAbsent(classifierServer, s -> new ConcurrentHashMap<>());
-		var ml = map.getOrDefault(roi, null);
+		var ml = cache.measurements.getIfPresent(roi);
 		if (ml == null) {
 			ml = calculateMeasurements(roi, pool);
 			if (ml != null)
-				map.put(roi, ml);
+				cache.measurements.put(roi, ml);
 		}
 		return ml;
 	}
+	
+	/**
+	 * Get statistics for the measurement cache used by this manager.
+	 * The cache is shared by all managers for the same classifier server.
+	 * @return a snapshot of the current statistics
+	 * @since v0.6.0
+	 */
+	public CacheStats getCacheStats() {
+		var measurementStats = cache.measurements.stats();
+		var tileStats = cache.tileCounts.stats();
+		return new CacheStats(measurementStats.hitCount(), measurementStats.missCount(), cache.measurements.size(),
+				tileStats.hitCount(), tileStats.missCount(), cache.tileCounts.size());
+	}
+	
+	/**
+	 * Snapshot of measurement cache statistics.
+	 * @param measurementHits number of requests for measurements that were cached
+	 * @param measurementMisses number of requests for measurements that were not cached
+	 * @param nMeasurements number of ROIs with cached measurements
+	 * @param tileHits number of requests for tile counts that were cached
+	 * @param tileMisses number of requests for tile counts that were not cached
+	 * @param nTiles number of tiles with cached counts
+	 * @since v0.6.0
+	 */
+	public record CacheStats(long measurementHits, long measurementMisses, long nMeasurements,
+			long tileHits, long tileMisses, long nTiles) {
+		
+		/**
+		 * Get the proportion of requests for measurements that were satisfied by the cache.
+		 * @return the hit rate, or NaN if there have been no requests
+		 */
+		public double measurementHitRate() {
+			long n = measurementHits + measurementMisses;
+			return n == 0 ? Double.NaN : (double)measurementHits / n;
+		}
+		
+		/**
+		 * Get the proportion of requests for tile counts that were satisfied by the cache.
+		 * @return the hit rate, or NaN if there have been no requests
+		 */
+		public double tileHitRate() {
+			long n = tileHits + tileMisses;
+			return n == 0 ? Double.NaN : (double)tileHits / n;
+		}
+		
+	}
+	
+	/**
+	 * Cached measurements for a single classifier server.
+	 * <p>
+	 * Pixel counts are also cached for tiles that are completely inside a ROI, since these don't depend upon the 
+	 * shape of the ROI and so can be reused for overlapping ROIs (including the root object).
+	 * Both caches are bounded by an estimate of their memory use.
+	 */
+	private static class MeasurementCache {
+		
+		private final Cache<ROI, MeasurementList> measurements = CacheBuilder.newBuilder()
+				.maximumWeight(MAX_MEASUREMENT_CACHE_BYTES)
+				.weigher((ROI roi, MeasurementList ml) -> 64 + roi.getNumPoints() * 16 + ml.size() * 8)
+				.recordStats()
+				.build();
+		
+		private final Cache<TileRequest, long[]> tileCounts = CacheBuilder.newBuilder()
+				.maximumWeight(MAX_TILE_CACHE_BYTES)
+				.weigher((TileRequest request, long[] counts) -> 64 + counts.length * 8)
+				.recordStats()
+				.build();
+		
+	}
 
 
 	/**
@@ -456,6 +537,24 @@ public class PixelClassificationMeasurementManager {
   			return null;
         }
         
+        // We can't count pixels for other output types
+        if (type != ChannelType.CLASSIFICATION && type != ChannelType.PROBABILITY && type != ChannelType.MULTICLASS_PROBABILITY)
+        	return updateMeasurements(classificationLabels, null, pixelArea, pixelAreaUnits);
+        
+        // Use cached counts for tiles that are completely inside the ROI, where possible
+        long[] fullTileCounts = null;
+        if (shape != null) {
+        	List<TileRequest> uncounted = new ArrayList<>();
+        	for (var request : requests) {
+        		long[] tileCounts = completelyContainsTile(shape, request, request.getDownsample()) ? 
+        				cache.tileCounts.getIfPresent(request) : null;
+        		if (tileCounts == null)
+        			uncounted.add(request);
+        		else
+        			fullTileCounts = addCounts(fullTileCounts, tileCounts);
+        	}
+        	requests = uncounted;
+        }
 
         // Try to get all cached tiles - if this fails, we need to return quickly if cachedOnly==true
 		// Otherwise, submit parallel tile requests with an auto-estimated pool size
@@ -618,40 +717,23 @@ public class PixelClassificationMeasurementManager {
 			int nChannels = tile.getSampleModel().getNumBands();
 			
 			try {
-				switch (type) {
-					case CLASSIFICATION:
-						// Calculate histogram to get labelled image counts
-						counts = BufferedImageTools.computeUnsignedIntHistogram(tile.getRaster(), counts, fullMask ? null : imgMask.getRaster(), bounds);
-						break;
-					case PROBABILITY:
-						// Take classification from the channel with the highest value
-						if (nChannels > 1) {
-							counts = BufferedImageTools.computeArgMaxHistogram(tile.getRaster(), counts, fullMask ? null : imgMask.getRaster(), bounds);
-							break;
-						}
-						// For one channel, fall through & treat as multiclass
-					case MULTICLASS_PROBABILITY:
-						// For multiclass, count
-						if (counts == null)
-							counts = new long[nChannels];
-						double threshold = getProbabilityThreshold(tile.getRaster());
-						for (int c = 0; c < nChannels; c++)
-							counts[c] += BufferedImageTools.computeAboveThresholdCounts(tile.getRaster(), c, threshold, fullMask ? null : imgMask.getRaster(), bounds);
-					case DEFAULT:
-					case FEATURE:
-					default:
-						// TODO: Consider handling other OutputTypes?
-						return updateMeasurements(classificationLabels, counts, pixelArea, pixelAreaUnits);
-				}
+				if (fullMask) {
+					// Count the whole tile separately, so the counts can be reused for other ROIs
+					long[] tileCounts = trimCounts(countPixels(type, tile.getRaster(), null, null, bounds));
+					cache.tileCounts.put(region, tileCounts);
+					fullTileCounts = addCounts(fullTileCounts, tileCounts);
+				} else
+					counts = countPixels(type, tile.getRaster(), counts, imgMask.getRaster(), bounds);
 			} catch (Exception e) {
 				logger.error("Error calculating classification areas", e);
 				if (nChannels > 1 && type == ChannelType.CLASSIFICATION)
 					logger.error("There are {} channels - are you sure this is really a classification image?", nChannels);
 			}
         }
+        counts = addCounts(counts, fullTileCounts);
 
     	long endTime = System.currentTimeMillis();
-    	if (logger.isDebugEnabled()) {
+    	if (logger.isDebugEnabled() && counts != null) {
     		long totalCounts = LongStream.of(counts).sum();
     		logger.debug("Counted {} pixels in {} ms (area {} {})", totalCounts, endTime - startTime, GeneralTools.formatNumber(totalCounts*pixelArea, 2), pixelAreaUnits);
     	}
@@ -660,6 +742,68 @@ public class PixelClassificationMeasurementManager {
     }
 
 
+	/**
+	 * Count the pixels for each classification in a raster.
+	 * @param type the output type of the classifier
+	 * @param raster the raster containing classifier output
+	 * @param counts existing counts to update, or null if new counts should be created
+	 * @param mask optional mask; pixels with 0 values in the mask will be skipped
+	 * @param bounds bounding box of the pixels to count
+	 * @return the updated counts
+	 */
+	private static long[] countPixels(ChannelType type, WritableRaster raster, long[] counts, WritableRaster mask, Rectangle bounds) {
+		int nChannels = raster.getNumBands();
+		switch (type) {
+			case CLASSIFICATION:
+				// Calculate histogram to get labelled image counts
+				return BufferedImageTools.computeUnsignedIntHistogram(raster, counts, mask, bounds);
+			case PROBABILITY:
+				// Take classification from the channel with the highest value
+				if (nChannels > 1)
+					return BufferedImageTools.computeArgMaxHistogram(raster, counts, mask, bounds);
+				// For one channel, fall through & treat as multiclass
+			case MULTICLASS_PROBABILITY:
+				// For multiclass, count
+				if (counts == null)
+					counts = new long[nChannels];
+				double threshold = getProbabilityThreshold(raster);
+				for (int c = 0; c < nChannels; c++)
+					counts[c] += BufferedImageTools.computeAboveThresholdCounts(raster, c, threshold, mask, bounds);
+				return counts;
+			default:
+				throw new IllegalArgumentException("Unable to count pixels for output type " + type);
+		}
+	}
+	
+	/**
+	 * Remove trailing zeros from counts, to reduce the memory needed to cache them.
+	 * This is important for 16-bit classification images, which otherwise need 65536 counts per tile.
+	 */
+	private static long[] trimCounts(long[] counts) {
+		int n = counts.length;
+		while (n > 0 && counts[n-1] == 0)
+			n--;
+		return n == counts.length ? counts : Arrays.copyOf(counts, n);
+	}
+	
+	/**
+	 * Add counts to an existing array, which may be null or need to be expanded.
+	 * @param counts the existing counts
+	 * @param toAdd the counts to add; these are not modified
+	 * @return the updated counts (which may be a new array)
+	 */
+	private static long[] addCounts(long[] counts, long[] toAdd) {
+		if (toAdd == null)
+			return counts;
+		if (counts == null)
+			return toAdd.clone();
+		if (counts.length < toAdd.length)
+			counts = Arrays.copyOf(counts, toAdd.length);
+		for (int i = 0; i < toAdd.length; i++)
+			counts[i] += toAdd[i];
+		return counts;
+	}
+
 	/**
 	 * Make a semi-educated guess as to an appropriate number of threads to use.
 	 * We lack much information about the image and pixel classifier, so this should be a fairly pessimistic
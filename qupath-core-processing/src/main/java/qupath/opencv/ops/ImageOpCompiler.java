@@ -0,0 +1,387 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.opencv.ops;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.math3.util.FastMath;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import qupath.lib.common.GeneralTools;
+import qupath.lib.images.servers.ImageChannel;
+import qupath.lib.images.servers.PixelType;
+import qupath.lib.regions.Padding;
+
+/**
+ * Helper class to optimize an {@link ImageOp} before it is applied to many images.
+ * <p>
+ * Sequential ops are flattened, and adjacent element-wise ops (e.g. add, multiply, clip, log) are fused 
+ * so that they can be applied in a single pass through the pixels, working in-place on the input {@link Mat}.
+ * Intermediate values are stored in small per-thread buffers, rather than allocating a new {@link Mat} for 
+ * each op.
+ * <p>
+ * Compiled ops should be used only for processing, and not serialized: the original op should be 
+ * retained for that.
+ * 
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+final class ImageOpCompiler {
+	
+	/**
+	 * Number of values processed at a time by a fused op.
+	 * This should be small enough for the buffer to remain in the CPU cache while all ops are applied.
+	 */
+	private static final int CHUNK_SIZE = 4096;
+
+	private static final ThreadLocal<double[]> DOUBLE_BUFFER = ThreadLocal.withInitial(() -> new double[CHUNK_SIZE]);
+
+	private static final ThreadLocal<float[]> FLOAT_BUFFER = ThreadLocal.withInitial(() -> new float[CHUNK_SIZE]);
+
+	private ImageOpCompiler() {
+		throw new AssertionError();
+	}
+	
+	/**
+	 * Element-wise operations that may be fused.
+	 */
+	static enum Kind {
+		/**
+		 * Add a constant (optionally per channel).
+		 */
+		ADD,
+		/**
+		 * Subtract a constant (optionally per channel).
+		 */
+		SUBTRACT,
+		/**
+		 * Multiply by a constant (optionally per channel).
+		 */
+		MULTIPLY,
+		/**
+		 * Divide by a constant (optionally per channel).
+		 */
+		DIVIDE,
+		/**
+		 * Clip to a minimum and maximum value.
+		 */
+		CLIP,
+		/**
+		 * Natural logarithm.
+		 */
+		LOG,
+		/**
+		 * Exponential.
+		 */
+		EXP,
+		/**
+		 * Square root.
+		 */
+		SQRT,
+		/**
+		 * Raise to a power.
+		 */
+		POW,
+		/**
+		 * Sigmoid function.
+		 */
+		SIGMOID,
+		/**
+		 * Replace NaNs with a constant.
+		 */
+		REPLACE_NANS;
+		
+		private boolean isPerChannel() {
+			return this == ADD || this == SUBTRACT || this == MULTIPLY || this == DIVIDE;
+		}
+		
+	}
+	
+	/**
+	 * A single element-wise operation, with any parameters it requires.
+	 * @param kind the kind of operation
+	 * @param values the parameters; for arithmetic operations, this may be either a single value or one value per channel
+	 */
+	static record Stage(Kind kind, double... values) {}
+	
+	/**
+	 * An {@link ImageOp} that applies the same function to every pixel, independently of its neighbors, 
+	 * and without changing the type or the number of channels.
+	 * Implementing this interface enables the op to be fused with other element-wise ops.
+	 */
+	static interface ElementwiseOp extends ImageOp {
+		
+		/**
+		 * Get the operation applied to each pixel.
+		 * @return
+		 */
+		Stage getStage();
+		
+	}
+	
+	/**
+	 * Compile an op, fusing adjacent element-wise ops where possible.
+	 * @param op the op to compile
+	 * @return an op that gives the same output as the input op; this may be the input op itself, if it could not be optimized
+	 */
+	static ImageOp compile(ImageOp op) {
+		if (op == null || op instanceof FusedElementwiseOp)
+			return op;
+		List<ImageOp> ops = new ArrayList<>();
+		flatten(op, ops);
+		List<ImageOp> compiled = new ArrayList<>();
+		List<ElementwiseOp> run = new ArrayList<>();
+		for (var o : ops) {
+			if (o instanceof ElementwiseOp elementwise) {
+				run.add(elementwise);
+			} else {
+				addRun(run, compiled);
+				compiled.add(o);
+			}
+		}
+		addRun(run, compiled);
+		if (compiled.isEmpty())
+			return ImageOps.Core.identity();
+		if (compiled.size() == 1)
+			return compiled.get(0);
+		if (compiled.equals(ops) && op instanceof ImageOps.Core.SequentialMultiOp)
+			return op;
+		return new ImageOps.Core.SequentialMultiOp(compiled);
+	}
+	
+	private static void flatten(ImageOp op, List<ImageOp> ops) {
+		if (op instanceof ImageOps.Core.SequentialMultiOp sequential) {
+			for (var o : sequential.getOps())
+				flatten(o, ops);
+		} else if (!(op instanceof ImageOps.Core.IdentityOp))
+			ops.add(op);
+	}
+	
+	private static void addRun(List<ElementwiseOp> run, List<ImageOp> ops) {
+		if (run.size() == 1)
+			ops.add(run.get(0));
+		else if (run.size() > 1)
+			ops.add(new FusedElementwiseOp(run));
+		run.clear();
+	}
+	
+	
+	/**
+	 * Op that applies multiple element-wise ops in a single pass through the pixels.
+	 * <p>
+	 * This works in-place for continuous 32-bit and 64-bit floating point images, 
+	 * and otherwise applies each op in turn.
+	 */
+	static class FusedElementwiseOp implements ImageOp {
+		
+		private final List<ElementwiseOp> ops;
+		private final Stage[] stages;
+		
+		FusedElementwiseOp(List<? extends ElementwiseOp> ops) {
+			this.ops = List.copyOf(ops);
+			this.stages = this.ops.stream().map(ElementwiseOp::getStage).toArray(Stage[]::new);
+		}
+		
+		List<ElementwiseOp> getOps() {
+			return Collections.unmodifiableList(ops);
+		}
+
+		@Override
+		public Mat apply(Mat input) {
+			int depth = input.depth();
+			int nChannels = input.channels();
+			if ((depth != opencv_core.CV_32F && depth != opencv_core.CV_64F) || !input.isContinuous() || !supportsChannels(nChannels))
+				return applySequentially(input);
+			
+			// Process whole pixels in each chunk, so that the first value is always from the first channel
+			int chunkSize = CHUNK_SIZE / nChannels * nChannels;
+			long total = input.total() * nChannels;
+			double[] values = DOUBLE_BUFFER.get();
+			if (depth == opencv_core.CV_32F) {
+				float[] floats = FLOAT_BUFFER.get();
+				FloatBuffer buffer = input.createBuffer();
+				for (long pos = 0; pos < total; pos += chunkSize) {
+					int n = (int)Math.min(chunkSize, total - pos);
+					buffer.get((int)pos, floats, 0, n);
+					for (int i = 0; i < n; i++)
+						values[i] = floats[i];
+					applyStages(values, n, nChannels, stages);
+					for (int i = 0; i < n; i++)
+						floats[i] = (float)values[i];
+					buffer.put((int)pos, floats, 0, n);
+				}
+			} else {
+				DoubleBuffer buffer = input.createBuffer();
+				for (long pos = 0; pos < total; pos += chunkSize) {
+					int n = (int)Math.min(chunkSize, total - pos);
+					buffer.get((int)pos, values, 0, n);
+					applyStages(values, n, nChannels, stages);
+					buffer.put((int)pos, values, 0, n);
+				}
+			}
+			return input;
+		}
+		
+		private boolean supportsChannels(int nChannels) {
+			if (nChannels > CHUNK_SIZE)
+				return false;
+			for (var stage : stages) {
+				if (stage.kind().isPerChannel() && stage.values().length != 1 && stage.values().length != nChannels)
+					return false;
+			}
+			return true;
+		}
+		
+		/**
+		 * Apply the ops one at a time, as if they had not been fused.
+		 * This is used for unsupported types, and to ensure exceptions are the same as for the original ops.
+		 */
+		private Mat applySequentially(Mat input) {
+			for (var op : ops) {
+				var output = op.apply(input);
+				if (output != input) {
+					input.put(output);
+					output.close();
+				}
+			}
+			return input;
+		}
+		
+		@Override
+		public Padding getPadding() {
+			return Padding.empty();
+		}
+		
+		@Override
+		public List<ImageChannel> getChannels(List<ImageChannel> channels) {
+			for (var op : ops)
+				channels = op.getChannels(channels);
+			return channels;
+		}
+		
+		@Override
+		public PixelType getOutputType(PixelType inputType) {
+			for (var op : ops)
+				inputType = op.getOutputType(inputType);
+			return inputType;
+		}
+		
+		@Override
+		public String toString() {
+			return "Fused " + ops;
+		}
+		
+	}
+	
+	/**
+	 * Apply all stages to the first n values of an array.
+	 * Per-channel parameters assume that values are interleaved, with the first value from the first channel.
+	 */
+	private static void applyStages(double[] values, int n, int nChannels, Stage[] stages) {
+		for (var stage : stages) {
+			var p = stage.values();
+			switch (stage.kind()) {
+			case ADD:
+				if (p.length == 1) {
+					double v = p[0];
+					for (int i = 0; i < n; i++)
+						values[i] += v;
+				} else {
+					for (int i = 0; i < n; i++)
+						values[i] += p[i % nChannels];
+				}
+				break;
+			case SUBTRACT:
+				if (p.length == 1) {
+					double v = p[0];
+					for (int i = 0; i < n; i++)
+						values[i] -= v;
+				} else {
+					for (int i = 0; i < n; i++)
+						values[i] -= p[i % nChannels];
+				}
+				break;
+			case MULTIPLY:
+				if (p.length == 1) {
+					double v = p[0];
+					for (int i = 0; i < n; i++)
+						values[i] *= v;
+				} else {
+					for (int i = 0; i < n; i++)
+						values[i] *= p[i % nChannels];
+				}
+				break;
+			case DIVIDE:
+				if (p.length == 1) {
+					double v = p[0];
+					for (int i = 0; i < n; i++)
+						values[i] /= v;
+				} else {
+					for (int i = 0; i < n; i++)
+						values[i] /= p[i % nChannels];
+				}
+				break;
+			case CLIP:
+				double min = p[0], max = p[1];
+				for (int i = 0; i < n; i++)
+					values[i] = GeneralTools.clipValue(values[i], min, max);
+				break;
+			case LOG:
+				for (int i = 0; i < n; i++)
+					values[i] = FastMath.log(values[i]);
+				break;
+			case EXP:
+				for (int i = 0; i < n; i++)
+					values[i] = Math.exp(values[i]);
+				break;
+			case SQRT:
+				for (int i = 0; i < n; i++)
+					values[i] = Math.sqrt(values[i]);
+				break;
+			case POW:
+				double power = p[0];
+				for (int i = 0; i < n; i++)
+					values[i] = FastMath.pow(values[i], power);
+				break;
+			case SIGMOID:
+				for (int i = 0; i < n; i++)
+					values[i] = 1.0 / (1.0 + Math.exp(-values[i]));
+				break;
+			case REPLACE_NANS:
+				double replace = p[0];
+				for (int i = 0; i < n; i++) {
+					if (Double.isNaN(values[i]))
+						values[i] = replace;
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported operation " + stage.kind());
+			}
+		}
+	}
+	
+}
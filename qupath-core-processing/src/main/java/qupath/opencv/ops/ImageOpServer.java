@@ -95,8 +95,11 @@ class ImageOpServer extends AbstractTileableImageServer implements ImageDataServ
 
 	@Override
 	protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
-		var mat = dataOp.apply(imageData, tileRequest.getRegionRequest());
-		return OpenCVTools.matToBufferedImage(mat);
+		// Pixels are copied to the image, so we can release the native memory immediately
+		// rather than waiting for the garbage collector
+		try (var mat = dataOp.apply(imageData, tileRequest.getRegionRequest())) {
+			return OpenCVTools.matToBufferedImage(mat);
+		}
 	}
 
 	@Override
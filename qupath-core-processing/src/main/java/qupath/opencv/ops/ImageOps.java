@@ -76,6 +76,9 @@ import qupath.opencv.dnn.DnnShape;
 import qupath.opencv.dnn.PredictionFunction;
 import qupath.opencv.ml.FeaturePreprocessor;
 import qupath.opencv.ml.OpenCVClassifiers.OpenCVStatModel;
+import qupath.opencv.ops.ImageOpCompiler.ElementwiseOp;
+import qupath.opencv.ops.ImageOpCompiler.Kind;
+import qupath.opencv.ops.ImageOpCompiler.Stage;
 import qupath.opencv.tools.LocalNormalization;
 import qupath.opencv.tools.MultiscaleFeatures.MultiscaleFeature;
 import qupath.opencv.tools.MultiscaleFeatures.MultiscaleResultsBuilder;
@@ -256,6 +259,25 @@ public class ImageOps {
 		return buildImageDataOp(inputChannels.toArray(ColorTransform[]::new));
 	}
 	
+	/**
+	 * Create an optimized version of an op, which gives the same output but may be applied more efficiently.
+	 * <p>
+	 * Currently, this flattens sequential ops and fuses adjacent element-wise ops (e.g. arithmetic, clipping, 
+	 * log and sigmoid), so that they are applied in a single pass through the pixels of a floating point 
+	 * {@link Mat} rather than one op at a time.
+	 * <p>
+	 * The compiled op is intended only for processing: it cannot be serialized, so the original op should be 
+	 * retained if it needs to be saved. {@link ImageDataOp ImageDataOps} created by this class use compiled ops 
+	 * automatically.
+	 * 
+	 * @param op the op to compile
+	 * @return an op that gives the same output as the input op; this may be the input op itself if it could not be optimized
+	 * @since v0.6.0
+	 */
+	public static ImageOp compile(ImageOp op) {
+		return ImageOpCompiler.compile(op);
+	}
+	
 	
 	
 	/**
@@ -306,10 +328,18 @@ public class ImageOps {
 		
 		private ImageOp op;
 		
+		private transient ImageOp compiledOp;
+		
 		DefaultImageDataOp(ImageOp op) {
 			this.op = op;
 		}
 		
+		private ImageOp getCompiledOp() {
+			if (compiledOp == null)
+				compiledOp = compile(op);
+			return compiledOp;
+		}
+		
 		@Override
 		public Mat apply(ImageData<BufferedImage> imageData, RegionRequest request) throws IOException {
 			BufferedImage img;
@@ -324,7 +354,7 @@ public class ImageOps {
 				// Use PointerScope so we can release intermediate references quickly
 //				return op.apply(mat);
 				try (var scope = new PointerScope()) {
-					mat.put(op.apply(mat));
+					mat.put(getCompiledOp().apply(mat));
 					return mat;
 				}
 			}
@@ -383,11 +413,19 @@ public class ImageOps {
 		private ColorTransform[] colorTransforms;
 		private ImageOp op;
 		
+		private transient ImageOp compiledOp;
+		
 		ChannelImageDataOp(ImageOp op, ColorTransform... colorTransforms) {
 			this.colorTransforms = colorTransforms.clone();
 			this.op = op;
 		}
 		
+		private ImageOp getCompiledOp() {
+			if (compiledOp == null)
+				compiledOp = compile(op);
+			return compiledOp;
+		}
+		
 		@Override
 		public boolean supportsImage(ImageData<BufferedImage> imageData) {
 			for (var t : colorTransforms) {
@@ -423,7 +461,7 @@ public class ImageOps {
 				}
 				OpenCVTools.mergeChannels(channels, mat);
 				if (op != null) {
-					mat.put(op.apply(mat));					
+					mat.put(getCompiledOp().apply(mat));
 				}
 //				scope.deallocate();
 			}
@@ -631,8 +669,13 @@ public class ImageOps {
 		 * @since v0.3.1
 		 */
 		@OpType("sigmoid")
-		static class SigmoidOp implements ImageOp {
+		static class SigmoidOp implements ElementwiseOp {
 
+			@Override
+			public Stage getStage() {
+				return new Stage(Kind.SIGMOID);
+			}
+			
 			@Override
 			public Mat apply(Mat input) {
 				OpenCVTools.apply(input, ImageOps.Normalize::sigmoid);
@@ -2200,7 +2243,7 @@ public class ImageOps {
 		 * @since v0.3.1
 		 */
 		@OpType("clip")
-		static class ClipOp implements ImageOp {
+		static class ClipOp implements ElementwiseOp {
 			
 			private double min, max;
 			
@@ -2208,6 +2251,11 @@ public class ImageOps {
 				this.min = min;
 				this.max = max;
 			}
+			
+			@Override
+			public Stage getStage() {
+				return new Stage(Kind.CLIP, min, max);
+			}
 
 			@Override
 			public Mat apply(Mat input) {
@@ -2241,7 +2289,7 @@ public class ImageOps {
 		}
 		
 		@OpType("multiply")
-		static class MultiplyOp implements ImageOp {
+		static class MultiplyOp implements ElementwiseOp {
 
 			private double[] values;
 			
@@ -2249,6 +2297,11 @@ public class ImageOps {
 				this.values = values.clone();
 			}
 			
+			@Override
+			public Stage getStage() {
+				return new Stage(Kind.MULTIPLY, values.clone());
+			}
+			
 			@Override
 			public Mat apply(Mat input) {
 				if (values.length == 1)
@@ -2288,13 +2341,18 @@ public class ImageOps {
 		}
 		
 		@OpType("replace-nans")
-		static class ReplaceNaNsOp implements ImageOp {
+		static class ReplaceNaNsOp implements ElementwiseOp {
 			
 			private double value;
 			
 			ReplaceNaNsOp(double value) {
 				this.value = value;
 			}
+			
+			@Override
+			public Stage getStage() {
+				return new Stage(Kind.REPLACE_NANS, value);
+			}
 
 			@Override
 			public Mat apply(Mat input) {
@@ -2339,7 +2397,7 @@ public class ImageOps {
 		}
 		
 		@OpType("divide")
-		static class DivideOp implements ImageOp {
+		static class DivideOp implements ElementwiseOp {
 
 			private double[] values;
 			
@@ -2347,6 +2405,11 @@ public class ImageOps {
 				this.values = values.clone();
 			}
 			
+			@Override
+			public Stage getStage() {
+				return new Stage(Kind.DIVIDE, values.clone());
+			}
+			
 			@Override
 			public Mat apply(Mat input) {
 				if (values.length == 1)
@@ -2367,7 +2430,7 @@ public class ImageOps {
 		}
 		
 		@OpType("add")
-		static class AddOp implements ImageOp {
+		static class AddOp implements ElementwiseOp {
 
 			private double[] values;
 			
@@ -2375,6 +2438,11 @@ public class ImageOps {
 				this.values = values.clone();
 			}
 			
+			@Override
+			public Stage getStage() {
+				return new Stage(Kind.ADD, values.clone());
+			}
+			
 			@Override
 			public Mat apply(Mat input) {
 				if (values.length == 1)
@@ -2395,7 +2463,7 @@ public class ImageOps {
 		}
 		
 		@OpType("subtract")
-		static class SubtractOp implements ImageOp {
+		static class SubtractOp implements ElementwiseOp {
 
 			private double[] values;
 			
@@ -2403,6 +2471,11 @@ public class ImageOps {
 				this.values = values.clone();
 			}
 			
+			@Override
+			public Stage getStage() {
+				return new Stage(Kind.SUBTRACT, values.clone());
+			}
+			
 			@Override
 			public Mat apply(Mat input) {
 				if (values.length == 1)
@@ -2423,7 +2496,12 @@ public class ImageOps {
 		}
 		
 		@OpType("sqrt")
-		static class SqrtOp implements ImageOp {
+		static class SqrtOp implements ElementwiseOp {
+			
+			@Override
+			public Stage getStage() {
+				return new Stage(Kind.SQRT);
+			}
 			
 			@Override
 			public Mat apply(Mat input) {
@@ -2435,10 +2513,15 @@ public class ImageOps {
 		
 		
 		@OpType("log")
-		static class LogOp implements ImageOp {
+		static class LogOp implements ElementwiseOp {
 			
 			LogOp() {}
 			
+			@Override
+			public Stage getStage() {
+				return new Stage(Kind.LOG);
+			}
+			
 			@Override
 			public Mat apply(Mat input) {
 				// Use FastMath - there are too many caveats with OpenCV's log implementation
@@ -2450,10 +2533,15 @@ public class ImageOps {
 		
 		
 		@OpType("exp")
-		static class ExponentialOp implements ImageOp {
+		static class ExponentialOp implements ElementwiseOp {
 			
 			ExponentialOp() {}
 			
+			@Override
+			public Stage getStage() {
+				return new Stage(Kind.EXP);
+			}
+			
 			@Override
 			public Mat apply(Mat input) {
 				opencv_core.exp(input, input);
@@ -2463,7 +2551,7 @@ public class ImageOps {
 		}
 		
 		@OpType("pow")
-		static class PowerOp implements ImageOp {
+		static class PowerOp implements ElementwiseOp {
 			
 			private double power;
 			
@@ -2471,6 +2559,11 @@ public class ImageOps {
 				this.power = power;
 			}
 			
+			@Override
+			public Stage getStage() {
+				return new Stage(Kind.POW, power);
+			}
+			
 			@Override
 			public Mat apply(Mat input) {
 				// Use FastMath - there are too many caveats with OpenCV's pow implementation
@@ -2512,6 +2605,10 @@ public class ImageOps {
 			SequentialMultiOp(Collection<? extends ImageOp> ops) {
 				this.ops = new ArrayList<>(ops);
 			}
+			
+			List<ImageOp> getOps() {
+				return Collections.unmodifiableList(ops);
+			}
 
 			@Override
 			protected Padding calculatePadding() {
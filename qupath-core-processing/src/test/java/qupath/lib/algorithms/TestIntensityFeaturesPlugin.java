@@ -0,0 +1,93 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.plugins.parameters.BooleanParameter;
+import qupath.lib.plugins.parameters.DoubleParameter;
+import qupath.lib.plugins.parameters.ParameterList;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestIntensityFeaturesPlugin {
+	
+	@Test
+	public void test_batchedFeatures() throws IOException {
+		var rng = new Random(100);
+		int width = 200;
+		int height = 150;
+		var img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++)
+				img.getRaster().setSample(x, y, 0, (x * y + rng.nextInt(50)) % 256);
+		}
+		var imageData = new ImageData<>(new WrappedBufferedImageServer("Test", img));
+		
+		var plugin = new IntensityFeaturesPlugin();
+		ParameterList params = plugin.getDefaultParameterList(imageData);
+		for (var key : List.of("channel1", "doMean", "doStdDev", "doMinMax", "doMedian", "doHaralick"))
+			((BooleanParameter)params.getParameters().get(key)).setValue(true);
+		((DoubleParameter)params.getParameters().get("haralickMin")).setValue(0.0);
+		((DoubleParameter)params.getParameters().get("haralickMax")).setValue(255.0);
+		
+		// Create overlapping objects of different sizes, including some that cover only one or two pixels
+		List<PathObject> individual = new ArrayList<>();
+		List<PathObject> batched = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			var roi = ROIs.createEllipseROI(
+					rng.nextDouble() * (width - 21), rng.nextDouble() * (height - 21), 
+					1 + rng.nextDouble() * 20, 1 + rng.nextDouble() * 20);
+			individual.add(PathObjects.createDetectionObject(roi));
+			batched.add(PathObjects.createDetectionObject(roi));
+		}
+		
+		for (var pathObject : individual)
+			IntensityFeaturesPlugin.processObject(pathObject, params, imageData);
+		var region = ImageRegion.createInstance(batched.stream().map(PathObject::getROI).toList());
+		assertTrue(IntensityFeaturesPlugin.processObjects(batched, PathObject::getROI, region, params, imageData));
+		
+		for (int i = 0; i < individual.size(); i++) {
+			var expected = individual.get(i).getMeasurementList();
+			var actual = batched.get(i).getMeasurementList();
+			assertTrue(expected.size() > 0);
+			assertEquals(expected.getNames(), actual.getNames());
+			for (var name : expected.getNames())
+				assertEquals(expected.get(name), actual.get(name), 1e-9, name);
+		}
+	}
+
+}
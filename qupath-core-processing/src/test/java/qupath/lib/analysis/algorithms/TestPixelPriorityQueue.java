@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis.algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+public class TestPixelPriorityQueue {
+	
+	@Test
+	public void test_empty() {
+		var queue = new PixelPriorityQueue();
+		assertTrue(queue.isEmpty());
+		assertEquals(-1, queue.poll());
+	}
+	
+	@Test
+	public void test_plateau() {
+		// Equal values should be returned in the order they were added
+		var queue = new PixelPriorityQueue(1);
+		for (int i = 0; i < 100; i++)
+			queue.add(i, 1f);
+		queue.add(100, 2f);
+		assertEquals(101, queue.size());
+		assertEquals(100, queue.poll());
+		for (int i = 0; i < 100; i++)
+			assertEquals(i, queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+	
+	@Test
+	public void test_matchesPriorityQueue() {
+		var rand = new Random(100);
+		var queue = new PixelPriorityQueue(4);
+		// Reference implementation: decreasing value, then increasing insertion order
+		var comparator = Comparator.comparingDouble((long[] p) -> -Float.intBitsToFloat((int)p[0])).thenComparingLong(p -> p[1]);
+		var reference = new PriorityQueue<long[]>(comparator);
+		long count = 0;
+		int index = 0;
+		for (int i = 0; i < 10_000; i++) {
+			// Interleave adding and polling, with a small number of distinct values
+			if (rand.nextInt(3) > 0 || reference.isEmpty()) {
+				float value = rand.nextInt(20) - 10f;
+				queue.add(index, value);
+				reference.add(new long[] {Float.floatToIntBits(value), count++, index});
+				index++;
+			} else
+				assertEquals((int)reference.poll()[2], queue.poll());
+			assertEquals(reference.size(), queue.size());
+		}
+		while (!reference.isEmpty())
+			assertEquals((int)reference.poll()[2], queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+}
@@ -0,0 +1,124 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis.features;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.analysis.features.ObjectMeasurements.Compartments;
+import qupath.lib.analysis.features.ObjectMeasurements.Measurements;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestObjectMeasurements {
+	
+	private static final int WIDTH = 400;
+	private static final int HEIGHT = 300;
+	
+	@Test
+	public void test_batchedIntensityMeasurements() throws IOException {
+		var rng = new Random(100);
+		var img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++)
+				img.setRGB(x, y, rng.nextInt(0xffffff));
+		}
+		var server = new WrappedBufferedImageServer("Test", img);
+		
+		// Create densely-packed (and sometimes overlapping) cells and detections, including some at the image boundary
+		List<PathObject> individual = new ArrayList<>();
+		List<PathObject> batched = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			double x = rng.nextDouble() * WIDTH - 5;
+			double y = rng.nextDouble() * HEIGHT - 5;
+			double w = 5 + rng.nextDouble() * 20;
+			double h = 5 + rng.nextDouble() * 20;
+			var roi = ROIs.createEllipseROI(x, y, w, h);
+			if (i % 3 == 0) {
+				individual.add(PathObjects.createDetectionObject(roi));
+				batched.add(PathObjects.createDetectionObject(roi));
+			} else {
+				var nucleus = i % 5 == 0 ? null : ROIs.createEllipseROI(x + w/4, y + h/4, w/2, h/2);
+				individual.add(PathObjects.createCellObject(roi, nucleus));
+				batched.add(PathObjects.createCellObject(roi, nucleus));
+			}
+		}
+		
+		var measurements = Arrays.asList(Measurements.values());
+		var compartments = Arrays.asList(Compartments.values());
+		for (var pathObject : individual)
+			ObjectMeasurements.addIntensityMeasurements(server, pathObject, 1.0, measurements, compartments);
+		ObjectMeasurements.addIntensityMeasurements(server, batched, 1.0, measurements, compartments);
+		
+		for (int i = 0; i < individual.size(); i++) {
+			var expected = individual.get(i).getMeasurementList();
+			var actual = batched.get(i).getMeasurementList();
+			assertTrue(expected.size() > 0);
+			assertEquals(expected.getNames(), actual.getNames());
+			for (var name : expected.getNames())
+				assertEquals(expected.get(name), actual.get(name), 1e-9, name);
+		}
+	}
+	
+	@Test
+	public void test_createBatches() {
+		List<PathObject> pathObjects = new ArrayList<>();
+		for (int y = 0; y < 1000; y += 20) {
+			for (int x = 0; x < 1000; x += 20)
+				pathObjects.add(PathObjects.createDetectionObject(ROIs.createRectangleROI(x, y, 15, 15)));
+		}
+		var large = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 300, 300));
+		pathObjects.add(large);
+		var ignored = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 10, 10));
+		pathObjects.add(ignored);
+		
+		var batches = ObjectTileBatch.createBatches(pathObjects, p -> p == ignored ? null : p.getROI(), 256);
+		assertEquals(List.of(large), batches.get(0).getPathObjects());
+		assertEquals(1 + 16, batches.size());
+		
+		int count = 0;
+		for (var batch : batches) {
+			var region = batch.getRegion();
+			for (var pathObject : batch.getPathObjects()) {
+				var bounds = ImageRegion.createInstance(pathObject.getROI());
+				assertTrue(region.getX() <= bounds.getX() && region.getMaxX() >= bounds.getMaxX());
+				assertTrue(region.getY() <= bounds.getY() && region.getMaxY() >= bounds.getMaxY());
+			}
+			count += batch.size();
+		}
+		assertEquals(pathObjects.size() - 1, count);
+	}
+
+}
@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.opencv.dnn;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+public class TestPredictionBatcher {
+
+	@Test
+	public void test_singleThread() {
+		List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+		var batcher = new PredictionBatcher<String>(4, 1, s -> s.length(), inputs -> {
+			batchSizes.add(inputs.size());
+			return inputs.stream().map(String::toUpperCase).toList();
+		});
+		assertEquals("ABC", batcher.predict("abc"));
+		assertEquals("DEF", batcher.predict("def"));
+		// Without concurrency, each input is its own batch
+		assertEquals(List.of(1, 1), batchSizes);
+	}
+
+	@Test
+	public void test_concurrentBatches() throws InterruptedException, ExecutionException {
+		int nThreads = 8;
+		List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+		var batcher = new PredictionBatcher<String>(4, 10_000, s -> s.length(), inputs -> {
+			batchSizes.add(inputs.size());
+			return inputs.stream().map(String::toUpperCase).toList();
+		});
+		var pool = Executors.newFixedThreadPool(nThreads);
+		var latch = new CountDownLatch(nThreads);
+		try {
+			List<Future<String>> futures = new ArrayList<>();
+			for (int i = 0; i < nThreads; i++) {
+				String input = "input " + i;
+				futures.add(pool.submit(() -> {
+					latch.countDown();
+					latch.await();
+					return batcher.predict(input);
+				}));
+			}
+			for (int i = 0; i < nThreads; i++)
+				assertEquals("INPUT " + i, futures.get(i).get());
+		} finally {
+			pool.shutdown();
+		}
+		// Batches are only run early when they are full, so with a long delay we should have exactly 2
+		assertEquals(List.of(4, 4), batchSizes);
+	}
+
+	@Test
+	public void test_incompatibleInputs() throws InterruptedException, ExecutionException {
+		List<List<String>> batches = new CopyOnWriteArrayList<>();
+		var batcher = new PredictionBatcher<String>(2, 10_000, s -> s.length(), inputs -> {
+			batches.add(List.copyOf(inputs));
+			return inputs;
+		});
+		var pool = Executors.newFixedThreadPool(4);
+		try {
+			var futures = List.of("a", "bb", "c", "dd").stream()
+					.map(s -> pool.submit(() -> batcher.predict(s)))
+					.toList();
+			for (var f : futures)
+				f.get();
+		} finally {
+			pool.shutdown();
+		}
+		// Only inputs with the same key should be combined
+		assertEquals(2, batches.size());
+		for (var batch : batches) {
+			assertEquals(2, batch.size());
+			assertEquals(batch.get(0).length(), batch.get(1).length());
+		}
+	}
+
+	@Test
+	public void test_exceptions() throws InterruptedException {
+		var batcher = new PredictionBatcher<String>(4, 1, s -> "key", inputs -> {
+			throw new IllegalArgumentException("Bad input");
+		});
+		assertThrows(IllegalArgumentException.class, () -> batcher.predict("abc"));
+
+		var wrongSize = new PredictionBatcher<String>(4, 1, s -> "key", inputs -> List.of());
+		assertThrows(IllegalStateException.class, () -> wrongSize.predict("abc"));
+
+		assertThrows(IllegalArgumentException.class, () -> new PredictionBatcher<String>(0, 1, s -> s, s -> s));
+	}
+
+}
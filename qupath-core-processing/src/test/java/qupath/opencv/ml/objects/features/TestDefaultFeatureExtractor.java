@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.opencv.ml.objects.features;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.measurements.MeasurementList.MeasurementListType;
+import qupath.lib.measurements.MeasurementListFactory;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.roi.ROIs;
+
+public class TestDefaultFeatureExtractor {
+
+	@Test
+	public void test_extractFeatures() {
+		var rng = new Random(100);
+		var store = MeasurementListFactory.createColumnarStore();
+		var types = MeasurementListType.values();
+		List<String> allNames = List.of("A", "B", "C", "D", "E");
+		List<PathObject> pathObjects = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			// Use different kinds of list, some measurements in a different order, and omit some measurements
+			var ml = i % 4 == 0 ? store.createMeasurementList() : MeasurementListFactory.createMeasurementList(0, types[i % types.length]);
+			var names = new ArrayList<>(allNames);
+			if (i % 5 == 0)
+				Collections.reverse(names);
+			for (var name : names) {
+				if (rng.nextDouble() < 0.8)
+					ml.put(name, rng.nextDouble());
+			}
+			ml.close();
+			// Modify some lists after closing them
+			if (i % 11 == 0)
+				ml.put("B", i);
+			pathObjects.add(PathObjects.createDetectionObject(ROIs.createEmptyROI(), null, ml));
+		}
+
+		var features = List.of("C", "A", "Missing", "B");
+		var extractor = new DefaultFeatureExtractor<Object>(features);
+		int offset = 3;
+		var buffer = FloatBuffer.allocate(offset + pathObjects.size() * features.size());
+		buffer.position(offset);
+		extractor.extractFeatures(null, pathObjects, buffer);
+		assertEquals(buffer.capacity(), buffer.position());
+
+		int ind = offset;
+		for (var pathObject : pathObjects) {
+			var ml = pathObject.getMeasurementList();
+			for (var name : features)
+				assertEquals((float)ml.get(name), buffer.get(ind++));
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.opencv.ml.pixel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.ImageServerMetadata;
+import qupath.lib.images.servers.ImageServerMetadata.ChannelType;
+import qupath.lib.images.servers.ImageServers;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.ROIs;
+
+class TestPixelClassificationMeasurementManager {
+
+	@Test
+	void testCachedMeasurements() throws Exception {
+		// Create a labelled image with blocks of different classes
+		int width = 512;
+		int height = 512;
+		var img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		var raster = img.getRaster();
+		var rng = new Random(100);
+		for (int y = 0; y < height; y += 8) {
+			for (int x = 0; x < width; x += 8) {
+				int label = rng.nextInt(3);
+				for (int yy = y; yy < y + 8; yy++) {
+					for (int xx = x; xx < x + 8; xx++)
+						raster.setSample(xx, yy, 0, label);
+				}
+			}
+		}
+		var classificationLabels = new LinkedHashMap<Integer, PathClass>();
+		for (int i = 0; i < 3; i++)
+			classificationLabels.put(i, PathClass.getInstance("Class " + i));
+		
+		ImageServer<BufferedImage> wrapped = new WrappedBufferedImageServer(UUID.randomUUID().toString(), img);
+		wrapped.setMetadata(
+				new ImageServerMetadata.Builder(wrapped.getOriginalMetadata())
+				.channelType(ChannelType.CLASSIFICATION)
+				.classificationLabels(classificationLabels)
+				.build()
+				);
+		// Use a tiled server, so that some tiles are completely inside the ROIs
+		var server = ImageServers.pyramidalizeTiled(wrapped, 128, 128, 1.0);
+		
+		var manager = new PixelClassificationMeasurementManager(server);
+		String name = "Class 1 area px^2";
+		assertTrue(manager.getMeasurementNames().contains(name));
+		
+		// Measure overlapping ROIs, which can share counts for tiles that are completely inside both
+		var roi = ROIs.createRectangleROI(100, 100, 300, 300, ImagePlane.getDefaultPlane());
+		var roiOverlapping = ROIs.createRectangleROI(120, 110, 300, 280, ImagePlane.getDefaultPlane());
+		assertEquals(countPixels(img, 1, 100, 100, 300, 300), manager.getMeasurementValue(roi, name).doubleValue());
+		var stats = manager.getCacheStats();
+		assertEquals(0, stats.tileHits());
+		assertTrue(stats.nTiles() > 0);
+		
+		assertEquals(countPixels(img, 1, 120, 110, 300, 280), manager.getMeasurementValue(roiOverlapping, name).doubleValue());
+		stats = manager.getCacheStats();
+		assertTrue(stats.tileHits() > 0);
+		
+		// The root object contains all tiles
+		var root = new PathObjectHierarchy().getRootObject();
+		assertEquals(countPixels(img, 1, 0, 0, width, height), manager.getMeasurementValue(root, name).doubleValue());
+		
+		// Repeated requests should use the cached measurements
+		long hits = manager.getCacheStats().measurementHits();
+		assertEquals(countPixels(img, 1, 100, 100, 300, 300), manager.getMeasurementValue(roi, name).doubleValue());
+		assertEquals(hits + 1, manager.getCacheStats().measurementHits());
+		
+		// Counts for tiles should be reused by new managers for the same server
+		var manager2 = new PixelClassificationMeasurementManager(server);
+		assertEquals(manager.getCacheStats(), manager2.getCacheStats());
+		
+		server.close();
+	}
+	
+	private static int countPixels(BufferedImage img, int label, int x, int y, int width, int height) {
+		int count = 0;
+		var raster = img.getRaster();
+		for (int yy = y; yy < y + height; yy++) {
+			for (int xx = x; xx < x + width; xx++) {
+				if (raster.getSample(xx, yy, 0) == label)
+					count++;
+			}
+		}
+		return count;
+	}
+
+}
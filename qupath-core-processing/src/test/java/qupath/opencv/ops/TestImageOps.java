@@ -277,6 +277,44 @@ public class TestImageOps {
 		
 	}
 	
+	@Test
+	public void testCompile() {
+		var op = ImageOps.Core.sequential(
+				ImageOps.Core.subtract(1, 2, 3),
+				ImageOps.Core.multiply(0.5),
+				ImageOps.Core.log(),
+				ImageOps.Core.replaceNaNs(-1),
+				ImageOps.Core.sequential(
+						ImageOps.Filters.gaussianBlur(1.0),
+						ImageOps.Core.identity()
+						),
+				ImageOps.Core.clip(-0.5, 2.5),
+				ImageOps.Normalize.sigmoid(),
+				ImageOps.Core.power(2),
+				ImageOps.Core.divide(2, 4, 8)
+				);
+		var compiled = ImageOps.compile(op);
+		assertNotEquals(op, compiled);
+		assertEquals(op.getPadding().getXSum(), compiled.getPadding().getXSum());
+		assertEquals(op.getPadding().getYSum(), compiled.getPadding().getYSum());
+
+		try (var scope = new PointerScope()) {
+			for (int type : new int[] {opencv_core.CV_32FC3, opencv_core.CV_64FC3, opencv_core.CV_8UC3}) {
+				var mat = new Mat(64, 48, type, Scalar.all(10));
+				opencv_core.setRNGSeed(100);
+				OpenCVTools.addNoise(mat, 0, 5.0);
+				var expected = op.apply(mat.clone());
+				var actual = compiled.apply(mat.clone());
+				assertTrue(matsEqual(expected, actual, 1e-5));
+			}
+
+			// Per-channel values should be checked in the same way as for the original op
+			var mat = new Mat(8, 8, opencv_core.CV_32FC2, Scalar.ONE);
+			assertThrows(IllegalArgumentException.class, () -> op.apply(mat.clone()));
+			assertThrows(IllegalArgumentException.class, () -> compiled.apply(mat.clone()));
+		}
+	}
+
 	/**
 	 * Apply an op to a (clone of a) Mat and check its values match the target.
 	 * @param mat
@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -43,6 +44,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -214,6 +216,150 @@ public class ContourTracing {
 	}
 	
 	
+	/**
+	 * Convert a labeled image server to detection objects, reading and tracing tiles in parallel.
+	 * <p>
+	 * This avoids needing to read the entire labeled image into memory.
+	 * Labels that touch across tile borders are joined, but labels that are split into 
+	 * disconnected pieces in different tiles will give separate objects.
+	 * 
+	 * @param server the labeled image server
+	 * @param region the region to trace; if null, the full image will be traced at the full resolution
+	 * @return a list of objects generated from the labels, sorted by label
+	 * @throws IOException if there is an error reading the image
+	 * @since v0.6.0
+	 * @see #labelsToObjects(ImageServer, RegionRequest, int, int, BiFunction, Consumer)
+	 */
+	public static List<PathObject> labelsToDetections(ImageServer<BufferedImage> server, RegionRequest region) throws IOException {
+		List<PathObject> pathObjects = new ArrayList<>();
+		labelsToObjects(server, region, 0, 1, createNumberedObjectFunction(r -> PathObjects.createDetectionObject(r)), pathObjects::addAll);
+		return sortByLabel(pathObjects);
+	}
+	
+	/**
+	 * Convert a 2-channel labeled image server to cell objects, reading and tracing tiles in parallel.
+	 * The first channel should contain nucleus labels, and the second should contain cell labels.
+	 * 
+	 * @param server the labeled image server
+	 * @param region the region to trace; if null, the full image will be traced at the full resolution
+	 * @return a list of cells generated from the labels, sorted by label
+	 * @throws IOException if there is an error reading the image
+	 * @since v0.6.0
+	 * @see #labelsToCells(ImageServer, RegionRequest, int, int, int, Consumer)
+	 */
+	public static List<PathObject> labelsToCells(ImageServer<BufferedImage> server, RegionRequest region) throws IOException {
+		if (server.nChannels() < 2)
+			throw new IllegalArgumentException("labelsToCells requires an image with at least 2 channels, cannot convert " + server.getPath());
+		List<PathObject> pathObjects = new ArrayList<>();
+		labelsToCells(server, region, 0, 1, 1, pathObjects::addAll);
+		return sortByLabel(pathObjects);
+	}
+	
+	private static List<PathObject> sortByLabel(List<PathObject> pathObjects) {
+		// Objects are created in the order in which they are completed, which depends upon the threads.
+		// Names are set from the labels, so can be used for sorting.
+		pathObjects.sort(Comparator.comparingDouble(p -> Double.parseDouble(p.getName())));
+		return pathObjects;
+	}
+	
+	/**
+	 * Create objects from one channel of a labeled image server, reading and tracing tiles in parallel.
+	 * <p>
+	 * Objects are passed to the consumer in batches as soon as all the tiles containing them have been traced, 
+	 * which makes it possible to add them to a hierarchy (e.g. using {@code hierarchy::addObjects}) 
+	 * without waiting for the full image to be processed.
+	 * The consumer may be called from different threads, but never concurrently.
+	 * <p>
+	 * Labels that touch across tile borders are joined, but labels that are split into 
+	 * disconnected pieces in different tiles will give separate objects.
+	 * Objects are traced within all tiles that overlap the region.
+	 * 
+	 * @param server the labeled image server
+	 * @param region the region to trace; if null, the full image will be traced at the full resolution
+	 * @param band the channel containing the labels (usually 0)
+	 * @param minLabel minimum label; usually 1, but may be 0 if a background ROI should be created
+	 * @param creator function to convert the traced ROI and associated numeric label into a {@link PathObject}
+	 * @param consumer consumer for batches of objects
+	 * @throws IOException if there is an error reading the image
+	 * @since v0.6.0
+	 */
+	public static void labelsToObjects(ImageServer<BufferedImage> server, RegionRequest region, int band, int minLabel, 
+			BiFunction<ROI, Number, PathObject> creator, Consumer<? super List<PathObject>> consumer) throws IOException {
+		traceLabels(server, region, new int[] {band}, minLabel, labels -> {
+			List<PathObject> pathObjects = new ArrayList<>();
+			for (var traced : labels) {
+				var geometry = traced.geometries()[0];
+				if (geometry != null)
+					pathObjects.add(creator.apply(GeometryTools.geometryToROI(geometry, getPlane(region)), traced.label()));
+			}
+			if (!pathObjects.isEmpty())
+				consumer.accept(pathObjects);
+		});
+	}
+	
+	/**
+	 * Create cell objects from two channels of a labeled image server, reading and tracing tiles in parallel.
+	 * <p>
+	 * Cells are passed to the consumer in batches as soon as all the tiles containing them have been traced.
+	 * The consumer may be called from different threads, but never concurrently.
+	 * 
+	 * @param server the labeled image server
+	 * @param region the region to trace; if null, the full image will be traced at the full resolution
+	 * @param bandNuclei the channel containing the nucleus labels
+	 * @param bandCells the channel containing the cell labels; labels must match with bandNuclei
+	 * @param minLabel minimum label; usually 1
+	 * @param consumer consumer for batches of cells
+	 * @throws IOException if there is an error reading the image
+	 * @since v0.6.0
+	 * @see #labelsToObjects(ImageServer, RegionRequest, int, int, BiFunction, Consumer)
+	 */
+	public static void labelsToCells(ImageServer<BufferedImage> server, RegionRequest region, int bandNuclei, int bandCells, 
+			int minLabel, Consumer<? super List<PathObject>> consumer) throws IOException {
+		traceLabels(server, region, new int[] {bandNuclei, bandCells}, minLabel, labels -> {
+			var plane = getPlane(region);
+			List<PathObject> cells = new ArrayList<>();
+			for (var traced : labels) {
+				var geomNucleus = traced.geometries()[0];
+				var geomCell = traced.geometries()[1];
+				if (geomCell == null)
+					continue;
+				var roiNucleus = geomNucleus == null ? null : GeometryTools.geometryToROI(geomNucleus, plane);
+				var cell = PathObjects.createCellObject(GeometryTools.geometryToROI(geomCell, plane), roiNucleus, null, null);
+				cell.setName(numberToString(traced.label()));
+				cells.add(cell);
+			}
+			if (!cells.isEmpty())
+				consumer.accept(cells);
+		});
+	}
+	
+	private static ImagePlane getPlane(RegionRequest region) {
+		return region == null ? ImagePlane.getDefaultPlane() : region.getImagePlane();
+	}
+	
+	private static void traceLabels(ImageServer<BufferedImage> server, RegionRequest region, int[] bands, int minLabel, 
+			Consumer<List<TiledLabelTracer.TracedLabel>> consumer) throws IOException {
+		if (region == null)
+			region = RegionRequest.createInstance(server, server.getDownsampleForResolution(0));
+		
+		Collection<TileRequest> tiles = server.getTileRequestManager().getTileRequests(region);
+		if (tiles.isEmpty())
+			return;
+		
+		// If the region downsample doesn't match the tile requests, generate new tile requests for a pyramidalized server
+		double downsample = region.getDownsample();
+		if (Math.abs(tiles.iterator().next().getDownsample() - downsample) > 1e-3) {
+			server = ImageServers.pyramidalize(server, downsample);
+			tiles = server.getTileRequestManager().getTileRequests(region);
+		}
+		
+		boolean checkCellLabels = bands.length > 1 && bands[0] != bands[1];
+		long startTime = System.currentTimeMillis();
+		new TiledLabelTracer(server, tiles, bands, minLabel, checkCellLabels).trace(consumer);
+		logger.debug("Labels traced from {} tiles in {} ms", tiles.size(), System.currentTimeMillis() - startTime);
+	}
+	
+	
 	/**
 	 * Try to read {@link BufferedImage} from a file.
 	 * @param path path to the file
@@ -597,7 +743,7 @@ public class ContourTracing {
 					if (val != label)
 						continue;
 					// Update our max label if required
-					if (label > maxLabel) {
+					if (label > maxLabelFound) {
 						maxLabelFound = label;
 						if (searchingMaxLabel)
 							maxLabel = maxLabelFound;
@@ -768,8 +914,8 @@ public class ContourTracing {
 
 
 
-	private static Geometry createGeometry(GeometryFactory factory, Collection<CoordinatePair> lines,
-										   double xOrigin, double yOrigin, double scale) {
+	static Geometry createGeometry(GeometryFactory factory, Collection<CoordinatePair> lines,
+								   double xOrigin, double yOrigin, double scale) {
 
 		if (lines.isEmpty())
 			return factory.createEmpty(2);
@@ -1295,8 +1441,8 @@ public class ContourTracing {
 	 *                 This is useful to avoid searching the entire image when only a small region is needed.
 	 * @return
 	 */
-	private static List<CoordinatePair> traceCoordinates(SimpleImage image, double min, double max, int xOffset,
-														 int yOffset, Envelope envelope) {
+	static List<CoordinatePair> traceCoordinates(SimpleImage image, double min, double max, int xOffset,
+												 int yOffset, Envelope envelope) {
 
 		var factory = GeometryTools.getDefaultFactory();
 		var pm = factory.getPrecisionModel();
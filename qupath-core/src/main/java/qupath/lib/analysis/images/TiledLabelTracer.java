@@ -0,0 +1,406 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis.images;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.common.ThreadTools;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.TileRequest;
+import qupath.lib.roi.GeometryTools;
+
+/**
+ * Helper class to trace labels from an {@link ImageServer} tile by tile.
+ * <p>
+ * Tiles are read and traced in parallel. Labels are assumed to be consistent across tiles, and fragments with the 
+ * same label that reach a shared tile border are joined using a union-find structure.
+ * Each joined group is passed to the consumer as soon as all the tiles it might extend into have been traced, 
+ * so that only fragments along the boundary of the processed tiles need to be retained in memory.
+ * <p>
+ * Note that fragments with the same label that do not touch across tile borders are treated as separate objects.
+ * 
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+final class TiledLabelTracer {
+	
+	private static final Logger logger = LoggerFactory.getLogger(TiledLabelTracer.class);
+	
+	private static final int LEFT = 1, RIGHT = 2, TOP = 4, BOTTOM = 8,
+			TOP_LEFT = 16, TOP_RIGHT = 32, BOTTOM_LEFT = 64, BOTTOM_RIGHT = 128;
+	
+	/**
+	 * Traced label, with one geometry per band.
+	 * @param label the label value
+	 * @param geometries geometries for each requested band, in the same order as the bands; entries may be null if the label was not found in a band
+	 */
+	static record TracedLabel(int label, Geometry[] geometries) {}
+	
+	private final ImageServer<BufferedImage> server;
+	private final List<TileRequest> tiles;
+	private final int[] bands;
+	private final int minLabel;
+	private final boolean checkCellLabels;
+	
+	// Grid position for each tile, used to find neighbors
+	private final int[] tileColumns;
+	private final int[] tileRows;
+	private final int[][] grid;
+	
+	private final boolean[] processed;
+	private final Map<Integer, List<Fragment>> waiting = new HashMap<>();
+	
+	private final Object outputLock = new Object();
+	
+	/**
+	 * Constructor.
+	 * @param server the labelled image server
+	 * @param tiles the tiles to trace; these should all be at the same resolution and come from the same plane
+	 * @param bands the bands to trace
+	 * @param minLabel the minimum label value to include
+	 * @param checkCellLabels if true, check that labels in the first band are matched by labels in the second band for every tile
+	 */
+	TiledLabelTracer(ImageServer<BufferedImage> server, Collection<TileRequest> tiles, int[] bands, int minLabel, boolean checkCellLabels) {
+		this.server = server;
+		this.tiles = List.copyOf(tiles);
+		this.bands = bands.clone();
+		this.minLabel = minLabel;
+		this.checkCellLabels = checkCellLabels;
+		
+		int n = this.tiles.size();
+		int[] xs = this.tiles.stream().mapToInt(TileRequest::getTileX).distinct().sorted().toArray();
+		int[] ys = this.tiles.stream().mapToInt(TileRequest::getTileY).distinct().sorted().toArray();
+		grid = new int[xs.length][ys.length];
+		for (var column : grid)
+			Arrays.fill(column, -1);
+		tileColumns = new int[n];
+		tileRows = new int[n];
+		for (int i = 0; i < n; i++) {
+			var tile = this.tiles.get(i);
+			tileColumns[i] = Arrays.binarySearch(xs, tile.getTileX());
+			tileRows[i] = Arrays.binarySearch(ys, tile.getTileY());
+			grid[tileColumns[i]][tileRows[i]] = i;
+		}
+		processed = new boolean[n];
+	}
+	
+	/**
+	 * Trace all tiles, passing the labels to the consumer as they become available.
+	 * The consumer is called once for each tile that completes at least one label; calls are never concurrent, 
+	 * but may be made from different threads.
+	 * @param consumer
+	 * @throws IOException if the tiles could not be read or traced
+	 */
+	void trace(Consumer<? super List<TracedLabel>> consumer) throws IOException {
+		var pool = Executors.newFixedThreadPool(ThreadTools.getParallelism(), ThreadTools.createThreadFactory("label-tracer", true));
+		List<Future<?>> futures = new ArrayList<>();
+		try {
+			// Tiles are submitted in row order, so that the fragments waiting on unprocessed tiles stay close to a single row
+			for (int i = 0; i < tiles.size(); i++) {
+				int index = i;
+				futures.add(pool.submit(() -> {
+					processTile(index, consumer);
+					return null;
+				}));
+			}
+			for (var future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException ioe)
+				throw ioe;
+			if (e.getCause() instanceof RuntimeException re)
+				throw re;
+			throw new IOException(e.getCause());
+		} finally {
+			futures.forEach(f -> f.cancel(true));
+			pool.shutdown();
+		}
+		synchronized (this) {
+			if (!waiting.isEmpty())
+				logger.warn("{} tiles still have unresolved labels after tracing", waiting.size());
+		}
+	}
+	
+	private void processTile(int index, Consumer<? super List<TracedLabel>> consumer) throws IOException {
+		var fragments = traceTile(index);
+		var completed = addTile(index, fragments);
+		if (completed.isEmpty())
+			return;
+		double downsample = tiles.get(index).getDownsample();
+		var factory = GeometryTools.getDefaultFactory();
+		List<TracedLabel> output = new ArrayList<>();
+		for (var component : completed) {
+			var geometries = new Geometry[bands.length];
+			for (int b = 0; b < bands.length; b++) {
+				List<CoordinatePair> pairs = new ArrayList<>();
+				for (var fragment : component.fragments) {
+					if (fragment.pairs[b] != null)
+						pairs.addAll(fragment.pairs[b]);
+				}
+				if (!pairs.isEmpty()) {
+					// Pairs were traced using the tile offsets, but still need to be scaled to the full image coordinates
+					var geometry = ContourTracing.createGeometry(factory, pairs, 0, 0, downsample);
+					if (!geometry.isEmpty())
+						geometries[b] = geometry;
+				}
+			}
+			output.add(new TracedLabel(component.label, geometries));
+		}
+		synchronized (outputLock) {
+			consumer.accept(output);
+		}
+	}
+	
+	/**
+	 * Read a tile and trace all the labels it contains.
+	 * @param index
+	 * @return a map of fragments, with labels as keys
+	 * @throws IOException
+	 */
+	private Map<Integer, Fragment> traceTile(int index) throws IOException {
+		var tile = tiles.get(index);
+		var raster = server.readRegion(tile.getRegionRequest()).getRaster();
+		int w = raster.getWidth();
+		int h = raster.getHeight();
+		
+		var images = new SimpleImage[bands.length];
+		for (int b = 0; b < bands.length; b++)
+			images[b] = ContourTracing.extractBand(raster, bands[b]);
+		
+		if (checkCellLabels && images.length > 1 && !ContourTracing.maybeCellLabels(images[0], images[1], minLabel))
+			throw new IllegalArgumentException("Nucleus and cell labelled images don't match for " + tile + "! All labels >= " + minLabel + " for nuclei must be the same as labels for cells.");
+		
+		// Find the bounding box of each label, and the tile borders it touches
+		Map<Integer, Fragment> fragments = new HashMap<>();
+		for (int b = 0; b < bands.length; b++) {
+			var image = images[b];
+			Fragment fragment = null;
+			for (int y = 0; y < h; y++) {
+				for (int x = 0; x < w; x++) {
+					float val = image.getValue(x, y);
+					int label = (int)val;
+					if (val != label || label < minLabel)
+						continue;
+					if (fragment == null || fragment.label != label)
+						fragment = fragments.computeIfAbsent(label, k -> new Fragment(index, k, bands.length));
+					if (fragment.envelopes[b] == null)
+						fragment.envelopes[b] = new Envelope();
+					fragment.envelopes[b].expandToInclude(x, y);
+					if (x == 0 || y == 0 || x == w-1 || y == h-1)
+						fragment.borders |= getBorders(x, y, w, h);
+				}
+			}
+		}
+		
+		// Trace each label separately
+		for (var fragment : fragments.values()) {
+			for (int b = 0; b < bands.length; b++) {
+				var envelope = fragment.envelopes[b];
+				if (envelope == null)
+					continue;
+				fragment.pairs[b] = ContourTracing.traceCoordinates(
+						images[b], fragment.label, fragment.label, tile.getTileX(), tile.getTileY(), envelope);
+			}
+			fragment.envelopes = null;
+			fragment.neighbors = getNeighbors(index, fragment.borders);
+		}
+		return fragments;
+	}
+	
+	/**
+	 * Add the fragments for a tile, joining them with fragments from neighboring tiles that have already been processed.
+	 * @param index
+	 * @param fragments
+	 * @return a list of all components that are now complete, because no unprocessed tile is waiting to be joined
+	 */
+	private synchronized List<Component> addTile(int index, Map<Integer, Fragment> fragments) {
+		processed[index] = true;
+		for (var fragment : fragments.values()) {
+			var component = new Component(fragment);
+			for (int neighbor : fragment.neighbors) {
+				if (!processed[neighbor]) {
+					waiting.computeIfAbsent(neighbor, k -> new ArrayList<>()).add(fragment);
+					component.pending++;
+				}
+			}
+		}
+		var previous = waiting.remove(index);
+		if (previous != null) {
+			for (var other : previous) {
+				other.component.pending--;
+				var fragment = fragments.get(other.label);
+				if (fragment != null && fragment.isNeighbor(other.tile))
+					union(fragment.component, other.component);
+			}
+		}
+		
+		// Find the components that are now complete
+		var candidates = new LinkedHashSet<Component>();
+		for (var fragment : fragments.values())
+			candidates.add(fragment.component);
+		if (previous != null) {
+			for (var other : previous)
+				candidates.add(other.component);
+		}
+		List<Component> completed = new ArrayList<>();
+		for (var component : candidates) {
+			if (component.pending == 0)
+				completed.add(component);
+		}
+		return completed;
+	}
+	
+	private static void union(Component a, Component b) {
+		if (a == b)
+			return;
+		if (a.fragments.size() < b.fragments.size()) {
+			var temp = a;
+			a = b;
+			b = temp;
+		}
+		for (var fragment : b.fragments)
+			fragment.component = a;
+		a.fragments.addAll(b.fragments);
+		a.pending += b.pending;
+		b.fragments.clear();
+		b.pending = 0;
+	}
+	
+	private static int getBorders(int x, int y, int w, int h) {
+		int borders = 0;
+		if (x == 0)
+			borders |= LEFT;
+		if (x == w-1)
+			borders |= RIGHT;
+		if (y == 0)
+			borders |= TOP;
+		if (y == h-1)
+			borders |= BOTTOM;
+		// Include corners, since labels may extend diagonally into the next tile
+		if ((borders & (TOP | LEFT)) == (TOP | LEFT))
+			borders |= TOP_LEFT;
+		if ((borders & (TOP | RIGHT)) == (TOP | RIGHT))
+			borders |= TOP_RIGHT;
+		if ((borders & (BOTTOM | LEFT)) == (BOTTOM | LEFT))
+			borders |= BOTTOM_LEFT;
+		if ((borders & (BOTTOM | RIGHT)) == (BOTTOM | RIGHT))
+			borders |= BOTTOM_RIGHT;
+		return borders;
+	}
+	
+	private int[] getNeighbors(int index, int borders) {
+		if (borders == 0)
+			return new int[0];
+		int col = tileColumns[index];
+		int row = tileRows[index];
+		int[] neighbors = new int[8];
+		int n = 0;
+		n = addNeighbor(neighbors, n, borders, LEFT, col-1, row);
+		n = addNeighbor(neighbors, n, borders, RIGHT, col+1, row);
+		n = addNeighbor(neighbors, n, borders, TOP, col, row-1);
+		n = addNeighbor(neighbors, n, borders, BOTTOM, col, row+1);
+		n = addNeighbor(neighbors, n, borders, TOP_LEFT, col-1, row-1);
+		n = addNeighbor(neighbors, n, borders, TOP_RIGHT, col+1, row-1);
+		n = addNeighbor(neighbors, n, borders, BOTTOM_LEFT, col-1, row+1);
+		n = addNeighbor(neighbors, n, borders, BOTTOM_RIGHT, col+1, row+1);
+		return Arrays.copyOf(neighbors, n);
+	}
+	
+	private int addNeighbor(int[] neighbors, int n, int borders, int border, int col, int row) {
+		if ((borders & border) == 0 || col < 0 || row < 0 || col >= grid.length || row >= grid[col].length)
+			return n;
+		int neighbor = grid[col][row];
+		if (neighbor >= 0)
+			neighbors[n++] = neighbor;
+		return n;
+	}
+	
+	/**
+	 * Part of a label found within a single tile.
+	 */
+	private static class Fragment {
+		
+		private final int tile;
+		private final int label;
+		private final List<CoordinatePair>[] pairs;
+		private Envelope[] envelopes;
+		private int borders;
+		private int[] neighbors;
+		private Component component;
+		
+		@SuppressWarnings("unchecked")
+		private Fragment(int tile, int label, int nBands) {
+			this.tile = tile;
+			this.label = label;
+			this.pairs = new List[nBands];
+			this.envelopes = new Envelope[nBands];
+		}
+		
+		private boolean isNeighbor(int tile) {
+			for (int n : neighbors) {
+				if (n == tile)
+					return true;
+			}
+			return false;
+		}
+		
+	}
+	
+	/**
+	 * Fragments that have been joined across tiles.
+	 * Only the fragments of a root component are retained; merged components are emptied.
+	 */
+	private static class Component {
+		
+		private final int label;
+		private final List<Fragment> fragments = new ArrayList<>();
+		// Number of links to neighboring tiles that haven't yet been processed
+		private int pending;
+		
+		private Component(Fragment fragment) {
+			this.label = fragment.label;
+			this.fragments.add(fragment);
+			fragment.component = this;
+		}
+		
+	}
+
+}
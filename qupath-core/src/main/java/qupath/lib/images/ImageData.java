@@ -578,12 +578,16 @@ public class ImageData<T> implements WorkflowListener, PathObjectHierarchyListen
 	}
 
 	/**
-	 * Close the server if it has been loaded.
-	 * Note that this should <i>not</i> be called if the server is still in use.
+	 * Close the server if it has been loaded, and release any file that deferred detections would be read from.
+	 * Note that this should <i>not</i> be called if the server or hierarchy is still in use, 
+	 * since any detections that haven't been loaded are discarded.
 	 * @throws Exception
+	 * @see PathObjectHierarchy#getDeferredObjects()
 	 */
 	@Override
 	public void close() throws Exception {
+		if (hierarchy.getDeferredObjects() != null)
+			hierarchy.setDeferredObjects(null);
 		if (server != null)
 			server.close();
 	}
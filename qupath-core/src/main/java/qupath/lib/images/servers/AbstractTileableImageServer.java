@@ -28,22 +28,32 @@ import java.awt.image.ColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import qupath.lib.awt.common.BufferedImageTools;
 import qupath.lib.color.ColorModelFactory;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.images.servers.ImageServerMetadata.ChannelType;
 import qupath.lib.regions.RegionRequest;
 
@@ -70,6 +80,14 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 	
 	// Maintain a record of tiles that could not be cached, so we warn for each only once
 	private transient Set<RegionRequest> failedCacheTiles = new HashSet<>();
+	
+	// Optional persistent cache, used when tiles aren't found in the in-memory cache
+	private transient volatile DiskTileCache diskCache;
+	
+	// Shared pool used to read batches of tiles in parallel
+	private static final ExecutorService tileReaderPool = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(),
+			ThreadTools.createThreadFactory("tile-reader-", true));
 		
 	protected AbstractTileableImageServer() {
 		super(BufferedImage.class);
@@ -160,6 +178,167 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 	 */
 	protected abstract BufferedImage readTile(final TileRequest tileRequest) throws IOException;
 	
+	/**
+	 * Set a persistent cache to use for tiles that aren't available from the in-memory cache.
+	 * <p>
+	 * This is most useful for servers where tiles are slow to read or expensive to compute, 
+	 * and which have a path that identifies their pixels uniquely across sessions.
+	 * 
+	 * @param diskCache the disk cache, or null if no disk cache should be used
+	 * @since v0.6.0
+	 */
+	public void setDiskCache(DiskTileCache diskCache) {
+		this.diskCache = diskCache;
+	}
+	
+	/**
+	 * Get the persistent cache used for tiles that aren't available from the in-memory cache.
+	 * @return the disk cache, or null if no disk cache is used
+	 * @since v0.6.0
+	 * @see #setDiskCache(DiskTileCache)
+	 */
+	public DiskTileCache getDiskCache() {
+		return diskCache;
+	}
+	
+	/**
+	 * Read a tile from the disk cache if possible, or else using {@link #readTile(TileRequest)} - 
+	 * and then add the tile to the disk cache.
+	 */
+	private BufferedImage readTileWithDiskCache(TileRequest tileRequest) throws IOException {
+		var diskCache = this.diskCache;
+		if (diskCache == null)
+			return readTile(tileRequest);
+		var request = tileRequest.getRegionRequest();
+		var colorModel = getDefaultColorModel();
+		var img = diskCache.get(request, colorModel);
+		if (img != null) {
+			logger.trace("Read tile from disk cache: {}", request);
+			return img;
+		}
+		img = readTile(tileRequest);
+		if (img != null && !isEmptyTile(img))
+			diskCache.put(request, img, colorModel);
+		return img;
+	}
+	
+	/**
+	 * Read multiple image tiles.
+	 * <p>
+	 * This is called whenever a region requires more than one tile that isn't already cached, 
+	 * so that the server can see the whole batch at once.
+	 * The default implementation calls {@link #readTile(TileRequest)} for each tile in parallel, using a shared 
+	 * thread pool as well as the calling thread; 
+	 * subclasses may override this to coalesce adjacent reads, or to overlap decoding with I/O.
+	 * 
+	 * @param tileRequests the tiles to read
+	 * @return a map containing the tile for every request (which may be null if {@link #readTile(TileRequest)} would return null)
+	 * @throws IOException if any of the tiles could not be read
+	 * @since v0.6.0
+	 */
+	protected Map<TileRequest, BufferedImage> readTiles(Collection<TileRequest> tileRequests) throws IOException {
+		Queue<TileRequest> queue = new ConcurrentLinkedQueue<>(tileRequests);
+		Map<TileRequest, BufferedImage> map = new ConcurrentHashMap<>();
+		// ConcurrentHashMap doesn't permit null values, so track these separately
+		Set<TileRequest> nullTiles = ConcurrentHashMap.newKeySet();
+		
+		// The calling thread reads tiles too, and only waits for pool tasks that have already started.
+		// This avoids deadlocks if readTile makes nested requests (e.g. to a wrapped server) while the pool is busy.
+		// Note that we can't rely on Future.cancel for this, since it also succeeds for tasks that are running.
+		int nWorkers = Math.min(tileRequests.size(), ThreadTools.getParallelism()) - 1;
+		Map<AtomicBoolean, Future<?>> workers = new LinkedHashMap<>();
+		for (int i = 0; i < nWorkers; i++) {
+			var started = new AtomicBoolean();
+			workers.put(started, tileReaderPool.submit(() -> {
+				if (started.compareAndSet(false, true))
+					readQueuedTiles(queue, map, nullTiles);
+				return null;
+			}));
+		}
+		Throwable failure = null;
+		try {
+			readQueuedTiles(queue, map, nullTiles);
+		} catch (IOException | RuntimeException e) {
+			failure = e;
+		}
+		for (var entry : workers.entrySet()) {
+			// Prevent workers that haven't started from doing so, since the queue is already empty
+			if (entry.getKey().compareAndSet(false, true))
+				continue;
+			try {
+				entry.getValue().get();
+			} catch (ExecutionException e) {
+				if (failure == null)
+					failure = e.getCause();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading tiles", e);
+			}
+		}
+		if (failure instanceof IOException e)
+			throw e;
+		else if (failure instanceof RuntimeException e)
+			throw e;
+		else if (failure != null)
+			throw new IOException(failure);
+		
+		if (nullTiles.isEmpty())
+			return map;
+		Map<TileRequest, BufferedImage> result = new HashMap<>(map);
+		for (var tile : nullTiles)
+			result.put(tile, null);
+		return result;
+	}
+	
+	/**
+	 * Read tiles from a shared queue until it is empty.
+	 * If a tile can't be read, the queue is cleared so that other threads stop reading too.
+	 */
+	private void readQueuedTiles(Queue<TileRequest> queue, Map<TileRequest, BufferedImage> map, Set<TileRequest> nullTiles) throws IOException {
+		TileRequest tile;
+		while ((tile = queue.poll()) != null) {
+			try {
+				var img = readTile(tile);
+				if (img == null)
+					nullTiles.add(tile);
+				else
+					map.put(tile, img);
+			} catch (IOException | RuntimeException e) {
+				queue.clear();
+				throw e;
+			}
+		}
+	}
+	
+	/**
+	 * Read multiple tiles using {@link #readTiles(Collection)}, after first checking for them in the disk cache (if available).
+	 */
+	private Map<TileRequest, BufferedImage> readTilesWithDiskCache(Collection<TileRequest> tileRequests) throws IOException {
+		var diskCache = this.diskCache;
+		if (diskCache == null)
+			return readTiles(tileRequests);
+		var colorModel = getDefaultColorModel();
+		Map<TileRequest, BufferedImage> result = new HashMap<>();
+		List<TileRequest> toRead = new ArrayList<>();
+		for (var tile : tileRequests) {
+			var img = diskCache.get(tile.getRegionRequest(), colorModel);
+			if (img == null)
+				toRead.add(tile);
+			else
+				result.put(tile, img);
+		}
+		if (toRead.isEmpty())
+			return result;
+		var images = readTiles(toRead);
+		for (var tile : toRead) {
+			var img = images.get(tile);
+			if (img != null && !isEmptyTile(img))
+				diskCache.put(tile.getRegionRequest(), img, colorModel);
+			result.put(tile, img);
+		}
+		return result;
+	}
+	
 	
 	/**
 	 * Map of tiles currently being requested, so avoid duplicate requests (wait instead for the first request to return).
@@ -181,7 +360,19 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 			this.thread = thread;
 		}
 		
+		/**
+		 * Complete the task with a tile that was read as part of a batch.
+		 */
+		private void complete(BufferedImage img) {
+			set(img);
+		}
 		
+		/**
+		 * Complete the task with an exception thrown when reading a batch.
+		 */
+		private void fail(Throwable t) {
+			setException(t);
+		}
 		
 	}
 		
@@ -210,7 +401,7 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 		logger.trace("Reading tile: {}", request);
 		
 		BufferedImage imgCached;
-		var futureTask = pendingTiles.computeIfAbsent(tileRequest, t -> new TileTask(Thread.currentThread(), () -> readTile(t)));
+		var futureTask = pendingTiles.computeIfAbsent(tileRequest, t -> new TileTask(Thread.currentThread(), () -> readTileWithDiskCache(t)));
 		var myTask = futureTask.thread == Thread.currentThread();
 		try {
 			if (myTask)
@@ -221,6 +412,8 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 			}
 			imgCached = futureTask.get();
 		} catch (ExecutionException | InterruptedException e) {
+			if (myTask)
+				pendingTiles.remove(tileRequest, futureTask);
 			if (e.getCause() instanceof IOException)
 				throw (IOException)e.getCause();
 			throw new IOException(e);
@@ -230,22 +423,49 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 		
 		// Put the tile in the appropriate cache
 		if (myTask) {
-			if (imgCached != null) {
-				if (isEmptyTile(imgCached)) {
-					emptyTiles.add(tileRequest);
-				} else if (cache != null) {
-					cache.put(request, imgCached);
-					// Check if we were able to cache the tile; sometimes we can't if it is too big
-					if (!cache.containsKey(request) && failedCacheTiles.add(request))
-						logger.warn("Unable to add {} to cache.\nYou might need to give QuPath more memory, or to increase the 'Percentage memory for tile caching' preference.", request);
-				}
-			}
+			cacheTile(tileRequest, imgCached, cache);
 			pendingTiles.remove(tileRequest);
 		}
 		
 		return imgCached;
 	}
 	
+	/**
+	 * Read the tile that exactly matches a region request, without checking or updating any cache.
+	 * <p>
+	 * This is intended for servers with pixels that can change, such as a {@link GeneratingImageServer} 
+	 * that renders objects, so that a cached tile can be replaced without the previous version being returned.
+	 * 
+	 * @param request the region request for the tile
+	 * @return the tile, or null if the request does not correspond to a single tile (or the tile has no pixels)
+	 * @throws IOException 
+	 * @since v0.6.0
+	 */
+	public BufferedImage readTileUncached(final RegionRequest request) throws IOException {
+		for (var tileRequest : getTileRequestManager().getTileRequests(request)) {
+			if (tileRequest.getRegionRequest().equals(request))
+				return readTile(tileRequest);
+		}
+		return null;
+	}
+	
+	/**
+	 * Add a tile that has been read to the cache, or record that it is empty.
+	 */
+	private void cacheTile(TileRequest tileRequest, BufferedImage img, Map<RegionRequest, BufferedImage> cache) {
+		if (img == null)
+			return;
+		var request = tileRequest.getRegionRequest();
+		if (isEmptyTile(img)) {
+			emptyTiles.add(tileRequest);
+		} else if (cache != null) {
+			cache.put(request, img);
+			// Check if we were able to cache the tile; sometimes we can't if it is too big
+			if (!cache.containsKey(request) && failedCacheTiles.add(request))
+				logger.warn("Unable to add {} to cache.\nYou might need to give QuPath more memory, or to increase the 'Percentage memory for tile caching' preference.", request);
+		}
+	}
+	
 	/**
 	 * Create the default (blank) RGB image for this server.
 	 * <p>
@@ -267,8 +487,7 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 		// Check if we already have a tile for precisely this occasion - with the right server path
 		// Make a defensive copy, since the cache is critical
 		var cache = getCache();
-		var currentPath = request.getPath();
-		if (request.getPath().equals(currentPath) && cache != null) {
+		if (cache != null && getPath().equals(request.getPath())) {
 			BufferedImage img = cache.getOrDefault(request, null);
 			if (img != null)
 				return BufferedImageTools.duplicate(img);
@@ -294,9 +513,43 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 			}
 		}
 		
-		// Ensure all tiles are either cached or pending before we continue
-		prerequestTiles(tiles);
-
+		// Pin the tiles if we can, so that none are evicted from the cache before the region has been assembled.
+		// This is only done if the tiles are small compared to the cache - otherwise pinning could make the cache 
+		// grow far beyond its limit, and it is better to accept that some tiles might need to be read again.
+		var tileCache = cache instanceof TileCache<BufferedImage> tc ? tc : null;
+		if (tileCache != null && estimateTileBytes(tiles) > tileCache.getMaxBytes() * MAX_PINNED_CACHE_PROPORTION)
+			tileCache = null;
+		List<RegionRequest> pinnedRequests = tileCache == null ? List.of() : 
+			tiles.stream().map(TileRequest::getRegionRequest).toList();
+		if (tileCache != null)
+			tileCache.pinAll(pinnedRequests);
+		try {
+			// Ensure all tiles are either cached or pending before we continue
+			prerequestTiles(tiles);
+			return readRegionFromTiles(request, tiles, singleTile);
+		} finally {
+			if (tileCache != null)
+				tileCache.unpinAll(pinnedRequests);
+		}
+	}
+	
+	/**
+	 * Maximum proportion of the tile cache that may be pinned by a single region request.
+	 */
+	private static final double MAX_PINNED_CACHE_PROPORTION = 0.25;
+	
+	/**
+	 * Estimate the memory required to store tiles, based on their size and the pixel type.
+	 */
+	private long estimateTileBytes(Collection<TileRequest> tiles) {
+		long bytesPerPixel = isRGB() ? 4 : (long)nChannels() * getPixelType().getBytesPerPixel();
+		long bytes = 0;
+		for (var tile : tiles)
+			bytes += (long)tile.getTileWidth() * tile.getTileHeight() * bytesPerPixel;
+		return bytes;
+	}
+	
+	private BufferedImage readRegionFromTiles(RegionRequest request, Collection<TileRequest> tiles, boolean singleTile) throws IOException {
 		// Determine output image size
 		int width = (int)Math.max(1, Math.round(request.getWidth() / request.getDownsample()));
 		int height = (int)Math.max(1, Math.round(request.getHeight() / request.getDownsample()));
@@ -513,12 +766,50 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 	 * @param tiles
 	 */
 	private void prerequestTiles(Collection<TileRequest> tiles) {
-		var cache = getCache();
+		runTasks(claimTiles(tiles, getCache()));
+	}
+	
+	/**
+	 * Create pending tasks for all tiles that are neither cached nor already pending.
+	 * @param tiles the tiles that are required
+	 * @param cache the tile cache (may be null)
+	 * @return the tasks that belong to the current thread, which should be run by the caller
+	 */
+	private Map<TileRequest, TileTask> claimTiles(Collection<TileRequest> tiles, Map<RegionRequest, BufferedImage> cache) {
+		Map<TileRequest, TileTask> myTasks = new LinkedHashMap<>();
+		var thread = Thread.currentThread();
 		for (var tile : tiles) {
 			if (cache == null || !cache.containsKey(tile.getRegionRequest()) && !pendingTiles.containsKey(tile)) {
-				var futureTask = pendingTiles.computeIfAbsent(tile, t -> new TileTask(Thread.currentThread(), () -> readTile(t)));
-				if (futureTask.thread == Thread.currentThread())
-					futureTask.run();
+				var futureTask = pendingTiles.computeIfAbsent(tile, t -> new TileTask(thread, () -> readTileWithDiskCache(t)));
+				if (futureTask.thread == thread && !futureTask.isDone())
+					myTasks.put(tile, futureTask);
+			}
+		}
+		return myTasks;
+	}
+	
+	/**
+	 * Run pending tile tasks, reading the tiles as a single batch if there is more than one.
+	 * Every task is complete when this method returns, either with a tile or an exception.
+	 * @param tasks
+	 */
+	private void runTasks(Map<TileRequest, TileTask> tasks) {
+		if (tasks.isEmpty())
+			return;
+		if (tasks.size() == 1) {
+			tasks.values().iterator().next().run();
+			return;
+		}
+		try {
+			var images = readTilesWithDiskCache(tasks.keySet());
+			for (var entry : tasks.entrySet())
+				entry.getValue().complete(images.get(entry.getKey()));
+		} catch (Throwable t) {
+			// Tasks that have already completed are unaffected
+			// Failed tasks shouldn't remain pending, or else the tiles could never be requested again
+			for (var entry : tasks.entrySet()) {
+				entry.getValue().fail(t);
+				pendingTiles.remove(entry.getKey(), entry.getValue());
 			}
 		}
 	}
@@ -0,0 +1,495 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * A persistent cache for image tiles, which stores compressed tiles as files within a directory.
+ * <p>
+ * This is intended as a second-level cache behind the in-memory {@link TileCache}, for tiles that are
+ * expensive to read or to compute (e.g. from a network share, or from a pixel classifier).
+ * Because the cache persists between sessions, it should only be used for servers with a path
+ * that uniquely identifies the pixels they provide.
+ * <p>
+ * Tiles for each server are written to a separate subdirectory, and the least recently used tiles are
+ * deleted whenever the total size of the files exceeds the maximum number of bytes.
+ * Errors reading or writing the cache are logged, and treated as if the tile were not cached.
+ * <p>
+ * A disk cache is only used by servers for which it has been set explicitly.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ * @see AbstractTileableImageServer#setDiskCache(DiskTileCache)
+ */
+public class DiskTileCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(DiskTileCache.class);
+
+	private static final int MAGIC = 0x5150544C; // QPTL
+	private static final int VERSION = 2;
+
+	private static final String EXT_TILE = ".tile";
+	private static final String EXT_TEMP = ".tmp";
+
+	private final Path root;
+	private final long maxBytes;
+
+	// Access-ordered, so the eldest entry is the least recently used
+	private final LinkedHashMap<Path, Long> index = new LinkedHashMap<>(256, 0.75f, true);
+	private long currentBytes = 0L;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	private DiskTileCache(Path root, long maxBytes) {
+		this.root = root;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Create a disk cache using the specified directory.
+	 * Any tiles already in the directory (e.g. from a previous session) will be used.
+	 * @param root the directory to use; this will be created if necessary
+	 * @param maxBytes the maximum number of bytes to store
+	 * @return
+	 * @throws IOException if the directory could not be created or read
+	 */
+	public static DiskTileCache create(Path root, long maxBytes) throws IOException {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("Maximum cache size must be > 0, but was " + maxBytes);
+		Files.createDirectories(root);
+		var cache = new DiskTileCache(root, maxBytes);
+		cache.initialize();
+		return cache;
+	}
+
+	/**
+	 * Find any existing tiles, ordered by their last access (approximated by the last modified time).
+	 */
+	private void initialize() throws IOException {
+		record ExistingTile(Path path, long size, FileTime time) {}
+		List<ExistingTile> existing = new ArrayList<>();
+		try (Stream<Path> stream = Files.walk(root, 2)) {
+			for (var path : stream.filter(Files::isRegularFile).toList()) {
+				String name = path.getFileName().toString();
+				if (name.endsWith(EXT_TEMP)) {
+					// Incomplete tile left from an earlier session
+					Files.deleteIfExists(path);
+				} else if (name.endsWith(EXT_TILE)) {
+					existing.add(new ExistingTile(path, Files.size(path), Files.getLastModifiedTime(path)));
+				}
+			}
+		}
+		existing.sort(Comparator.comparing(ExistingTile::time));
+		List<Path> toDelete;
+		synchronized (this) {
+			for (var tile : existing) {
+				index.put(tile.path(), tile.size());
+				currentBytes += tile.size();
+			}
+			toDelete = evictIfNeeded();
+		}
+		deleteFiles(toDelete);
+		logger.debug("Disk tile cache initialized with {} tiles ({} bytes) at {}", existing.size(), currentBytes, root);
+	}
+
+	/**
+	 * Get the directory used for the cache.
+	 * @return
+	 */
+	public Path getPath() {
+		return root;
+	}
+
+	/**
+	 * Get the maximum size of the cache, in bytes.
+	 * @return
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Get a tile from the cache.
+	 * @param request the request for the tile
+	 * @param colorModel the color model for tiles that do not have one of the standard {@link BufferedImage} types
+	 * @return the tile, or null if it is not cached (or could not be read)
+	 */
+	public BufferedImage get(RegionRequest request, ColorModel colorModel) {
+		var path = getTilePath(request);
+		boolean cached;
+		synchronized (this) {
+			cached = index.get(path) != null;
+		}
+		if (cached) {
+			try {
+				var img = readTile(path, request, colorModel);
+				if (img != null) {
+					hits.increment();
+					updateAccessTime(path);
+					return img;
+				}
+			} catch (NoSuchFileException e) {
+				logger.debug("Cached tile no longer exists: {}", path);
+			} catch (Exception e) {
+				logger.warn("Unable to read cached tile {}: {}", path, e.getMessage());
+				logger.debug(e.getMessage(), e);
+			}
+			remove(path);
+		}
+		misses.increment();
+		return null;
+	}
+
+	/**
+	 * Add a tile to the cache.
+	 * Tiles that do not have one of the standard {@link BufferedImage} types can only be cached
+	 * if their color model is equal to the one provided.
+	 * @param request the request for the tile
+	 * @param img the tile
+	 * @param colorModel the color model for tiles that do not have one of the standard {@link BufferedImage} types
+	 * @return true if the tile was written to the cache, false otherwise
+	 */
+	public boolean put(RegionRequest request, BufferedImage img, ColorModel colorModel) {
+		if (img.getType() == BufferedImage.TYPE_CUSTOM && !Objects.equals(img.getColorModel(), colorModel)) {
+			logger.trace("Tile can't be written to disk cache (unsupported color model): {}", request);
+			return false;
+		}
+		var path = getTilePath(request);
+		var pathTemp = path.resolveSibling(path.getFileName().toString() + "-" + UUID.randomUUID() + EXT_TEMP);
+		long size;
+		try {
+			Files.createDirectories(path.getParent());
+			writeTile(pathTemp, request, img);
+			Files.move(pathTemp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			size = Files.size(path);
+		} catch (Exception e) {
+			logger.warn("Unable to write tile to disk cache: {}", e.getMessage());
+			logger.debug(e.getMessage(), e);
+			try {
+				Files.deleteIfExists(pathTemp);
+			} catch (IOException e2) {
+				logger.debug(e2.getMessage(), e2);
+			}
+			return false;
+		}
+		List<Path> toDelete;
+		synchronized (this) {
+			var previous = index.put(path, size);
+			currentBytes += size - (previous == null ? 0L : previous);
+			toDelete = evictIfNeeded();
+		}
+		deleteFiles(toDelete);
+		return !toDelete.contains(path);
+	}
+
+	/**
+	 * Remove all the cached tiles for a specific server.
+	 * @param serverPath the path of the server, as returned by {@link ImageServer#getPath()}
+	 * @return the number of tiles that were removed
+	 */
+	public int clearCacheForServer(String serverPath) {
+		var dir = getServerDirectory(serverPath);
+		List<Path> toDelete = new ArrayList<>();
+		synchronized (this) {
+			var iter = index.entrySet().iterator();
+			while (iter.hasNext()) {
+				var entry = iter.next();
+				if (entry.getKey().getParent().equals(dir)) {
+					toDelete.add(entry.getKey());
+					currentBytes -= entry.getValue();
+					iter.remove();
+				}
+			}
+		}
+		deleteFiles(toDelete);
+		try {
+			Files.deleteIfExists(dir);
+		} catch (IOException e) {
+			logger.debug("Unable to delete {}: {}", dir, e.getMessage());
+		}
+		return toDelete.size();
+	}
+
+	/**
+	 * Remove all tiles from the cache.
+	 */
+	public void clear() {
+		List<Path> toDelete;
+		synchronized (this) {
+			toDelete = new ArrayList<>(index.keySet());
+			index.clear();
+			currentBytes = 0L;
+		}
+		deleteFiles(toDelete);
+	}
+
+	/**
+	 * Get a snapshot of the cache statistics.
+	 * @return
+	 */
+	public TileCache.Stats getStats() {
+		synchronized (this) {
+			return new TileCache.Stats(hits.sum(), misses.sum(), evictions.sum(), index.size(), currentBytes, maxBytes);
+		}
+	}
+
+	private void remove(Path path) {
+		synchronized (this) {
+			var size = index.remove(path);
+			if (size != null)
+				currentBytes -= size;
+		}
+		deleteFiles(List.of(path));
+	}
+
+	/**
+	 * Remove the least recently used tiles from the index until the cache is within its size limit.
+	 * Must be called while holding the lock; the files should then be deleted without the lock.
+	 * @return the files to delete
+	 */
+	private List<Path> evictIfNeeded() {
+		if (currentBytes <= maxBytes)
+			return List.of();
+		List<Path> toDelete = new ArrayList<>();
+		var iter = index.entrySet().iterator();
+		while (currentBytes > maxBytes && iter.hasNext()) {
+			var entry = iter.next();
+			currentBytes -= entry.getValue();
+			toDelete.add(entry.getKey());
+			iter.remove();
+			evictions.increment();
+		}
+		return toDelete;
+	}
+
+	/**
+	 * Record an access using the last modified time, so that tiles are evicted in the right order in later sessions.
+	 */
+	private static void updateAccessTime(Path path) {
+		try {
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			logger.debug("Unable to update last modified time for {}: {}", path, e.getMessage());
+		}
+	}
+
+	private static void deleteFiles(List<Path> paths) {
+		for (var path : paths) {
+			try {
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+				logger.warn("Unable to delete cached tile {}: {}", path, e.getMessage());
+			}
+		}
+	}
+
+	private Path getServerDirectory(String serverPath) {
+		return root.resolve(UUID.nameUUIDFromBytes(serverPath.getBytes(StandardCharsets.UTF_8)).toString());
+	}
+
+	private Path getTilePath(RegionRequest request) {
+		String name = String.format("%s_%d_%d_%d_%d_z%d_t%d%s",
+				Double.toString(request.getDownsample()),
+				request.getX(), request.getY(), request.getWidth(), request.getHeight(),
+				request.getZ(), request.getT(), EXT_TILE);
+		return getServerDirectory(request.getPath()).resolve(name);
+	}
+
+
+	private static void writeTile(Path path, RegionRequest request, BufferedImage img) throws IOException {
+		var raster = img.getRaster();
+		int width = raster.getWidth();
+		int height = raster.getHeight();
+		int transferType = raster.getTransferType();
+		var data = raster.getDataElements(0, 0, width, height, null);
+		var deflater = new Deflater(Deflater.BEST_SPEED);
+		try (var out = new DataOutputStream(new DeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(path)), deflater, 65536))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			// Store the full path, to guard against hash collisions between server directories
+			writeString(out, request.getPath());
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeInt(img.getType());
+			out.writeInt(transferType);
+			out.writeInt(raster.getNumDataElements());
+			out.writeBoolean(img.isAlphaPremultiplied());
+			out.write(toBytes(data, transferType));
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static void writeString(DataOutput out, String s) throws IOException {
+		// Avoid writeUTF, since it is limited to 64 kB (and server paths can be longer)
+		var bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0)
+			throw new IOException("Invalid string length " + length);
+		var bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static BufferedImage readTile(Path path, RegionRequest request, ColorModel colorModel) throws IOException {
+		try (var in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(Files.newInputStream(path)), new Inflater(), 65536))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a cached tile");
+			int version = in.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported cached tile version " + version);
+			if (!request.getPath().equals(readString(in)))
+				return null;
+			int width = in.readInt();
+			int height = in.readInt();
+			int type = in.readInt();
+			int transferType = in.readInt();
+			int nElements = in.readInt();
+			boolean alphaPremultiplied = in.readBoolean();
+
+			BufferedImage img;
+			if (type == BufferedImage.TYPE_CUSTOM) {
+				if (colorModel == null)
+					return null;
+				WritableRaster raster = colorModel.createCompatibleWritableRaster(width, height);
+				img = new BufferedImage(colorModel, raster, alphaPremultiplied, null);
+			} else
+				img = new BufferedImage(width, height, type);
+			var raster = img.getRaster();
+			if (raster.getTransferType() != transferType || raster.getNumDataElements() != nElements)
+				throw new IOException("Cached tile is incompatible with the color model");
+
+			int n = width * height * nElements;
+			byte[] bytes = new byte[n * DataBuffer.getDataTypeSize(transferType) / 8];
+			in.readFully(bytes);
+			raster.setDataElements(0, 0, width, height, fromBytes(bytes, transferType, n));
+			return img;
+		}
+	}
+
+	private static byte[] toBytes(Object data, int transferType) {
+		return switch (transferType) {
+			case DataBuffer.TYPE_BYTE -> (byte[])data;
+			case DataBuffer.TYPE_SHORT, DataBuffer.TYPE_USHORT -> {
+				var arr = (short[])data;
+				var buffer = ByteBuffer.allocate(arr.length * Short.BYTES);
+				buffer.asShortBuffer().put(arr);
+				yield buffer.array();
+			}
+			case DataBuffer.TYPE_INT -> {
+				var arr = (int[])data;
+				var buffer = ByteBuffer.allocate(arr.length * Integer.BYTES);
+				buffer.asIntBuffer().put(arr);
+				yield buffer.array();
+			}
+			case DataBuffer.TYPE_FLOAT -> {
+				var arr = (float[])data;
+				var buffer = ByteBuffer.allocate(arr.length * Float.BYTES);
+				buffer.asFloatBuffer().put(arr);
+				yield buffer.array();
+			}
+			case DataBuffer.TYPE_DOUBLE -> {
+				var arr = (double[])data;
+				var buffer = ByteBuffer.allocate(arr.length * Double.BYTES);
+				buffer.asDoubleBuffer().put(arr);
+				yield buffer.array();
+			}
+			default -> throw new IllegalArgumentException("Unsupported transfer type " + transferType);
+		};
+	}
+
+	private static Object fromBytes(byte[] bytes, int transferType, int n) {
+		var buffer = ByteBuffer.wrap(bytes);
+		return switch (transferType) {
+			case DataBuffer.TYPE_BYTE -> bytes;
+			case DataBuffer.TYPE_SHORT, DataBuffer.TYPE_USHORT -> {
+				var arr = new short[n];
+				buffer.asShortBuffer().get(arr);
+				yield arr;
+			}
+			case DataBuffer.TYPE_INT -> {
+				var arr = new int[n];
+				buffer.asIntBuffer().get(arr);
+				yield arr;
+			}
+			case DataBuffer.TYPE_FLOAT -> {
+				var arr = new float[n];
+				buffer.asFloatBuffer().get(arr);
+				yield arr;
+			}
+			case DataBuffer.TYPE_DOUBLE -> {
+				var arr = new double[n];
+				buffer.asDoubleBuffer().get(arr);
+				yield arr;
+			}
+			default -> throw new IllegalArgumentException("Unsupported transfer type " + transferType);
+		};
+	}
+
+	@Override
+	public String toString() {
+		return "DiskTileCache [" + root + "]";
+	}
+
+}
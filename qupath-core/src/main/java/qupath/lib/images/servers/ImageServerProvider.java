@@ -65,23 +65,29 @@ public class ImageServerProvider {
 	
 	/**
 	 * Set the cache to be used for image tiles of a specific type.
+	 * <p>
+	 * Note that this only affects servers that are created after the cache is set.
 	 * @param <T>
 	 * @param cache
 	 * @param cls
 	 */
 	public static <T> void setCache(Map<RegionRequest, T> cache, final Class<T> cls) {
-		cacheMap.put(cls, cache);
+		synchronized (cacheMap) {
+			cacheMap.put(cls, cache);
+		}
 	}
 	
 	/**
 	 * Get the cache in use for image tiles of a specific type.
 	 * @param <T>
 	 * @param cls
-	 * @return
+	 * @return the cache, or null if no cache has been set
 	 */
 	@SuppressWarnings("unchecked")
 	public static <T> Map<RegionRequest, T> getCache(final Class<T> cls) {
-		return (Map<RegionRequest, T>)cacheMap.get(cls);
+		synchronized (cacheMap) {
+			return (Map<RegionRequest, T>)cacheMap.get(cls);
+		}
 	}
 	
 	/**
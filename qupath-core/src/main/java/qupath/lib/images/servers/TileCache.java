@@ -0,0 +1,889 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.function.ToLongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * A concurrent cache for image tiles, limited by the approximate number of bytes the tiles require.
+ * <p>
+ * Entries are split between independently-locked segments, so that threads reading different tiles
+ * rarely need to wait for one another.
+ * The memory limit applies to the cache as a whole (not to each segment), and when it is exceeded
+ * the least recently used tile across all segments is evicted.
+ * This means that a single tile can use up to the full cache size, which is important for large,
+ * non-pyramidal images.
+ * <p>
+ * Optionally, tiles can be stored using soft references so that the garbage collector can reclaim them 
+ * if memory runs low, even if the cache is within its size limit.
+ * This is useful whenever the cache is large compared to the memory available to Java.
+ * <p>
+ * Tiles can be <i>pinned</i> to prevent them being evicted while they are needed,
+ * e.g. while a region is being assembled from several tiles.
+ * A tile can be pinned before it is added to the cache, so that a tile that is still being read
+ * is protected as soon as it arrives.
+ * <p>
+ * Cached requests are also indexed spatially, so that the tiles overlapping a region can be found 
+ * (e.g. to invalidate them) without checking every tile in the cache.
+ * <p>
+ * The cache implements {@link Map} so that it can be used with {@link ImageServerProvider#setCache(Map, Class)}.
+ * Null keys and values are not supported.
+ *
+ * @author Pete Bankhead
+ * @param <T> generic parameter for the cached images (usually {@link BufferedImage})
+ * @since v0.6.0
+ */
+public class TileCache<T> extends AbstractMap<RegionRequest, T> {
+
+	private static final Logger logger = LoggerFactory.getLogger(TileCache.class);
+
+	/**
+	 * Default percentage of the maximum memory available to Java to use for caching tiles.
+	 */
+	public static final double DEFAULT_MEMORY_PERCENTAGE = 25.0;
+
+	private static final int MAX_SEGMENTS = 64;
+
+	private final long maxBytes;
+	private final ToLongFunction<? super T> weigher;
+	private final Segment<T>[] segments;
+
+	// Queue for soft references that have been cleared, or null if tiles are strongly referenced
+	private final ReferenceQueue<T> collectedQueue;
+
+	private final AtomicLong currentBytes = new AtomicLong();
+
+	private final SpatialIndex index = new SpatialIndex();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	private transient Set<Entry<RegionRequest, T>> entrySet;
+
+	/**
+	 * Create a new tile cache, using a default number of segments based upon the available processors.
+	 * @param maxBytes maximum size of the cache, in bytes
+	 * @param weigher function to estimate the size of a tile in bytes
+	 */
+	public TileCache(long maxBytes, ToLongFunction<? super T> weigher) {
+		this(maxBytes, weigher, false);
+	}
+
+	/**
+	 * Create a new tile cache, optionally using soft references for the tiles.
+	 * @param maxBytes maximum size of the cache, in bytes
+	 * @param weigher function to estimate the size of a tile in bytes
+	 * @param softValues if true, tiles may be reclaimed by the garbage collector when memory is low
+	 */
+	public TileCache(long maxBytes, ToLongFunction<? super T> weigher, boolean softValues) {
+		this(maxBytes, weigher, defaultSegmentCount(), softValues);
+	}
+
+	/**
+	 * Create a new tile cache with a specified number of segments.
+	 * @param maxBytes maximum size of the cache, in bytes
+	 * @param weigher function to estimate the size of a tile in bytes
+	 * @param nSegments number of independently-locked segments; this is rounded up to a power of 2
+	 */
+	public TileCache(long maxBytes, ToLongFunction<? super T> weigher, int nSegments) {
+		this(maxBytes, weigher, nSegments, false);
+	}
+
+	/**
+	 * Create a new tile cache with a specified number of segments, optionally using soft references for the tiles.
+	 * @param maxBytes maximum size of the cache, in bytes
+	 * @param weigher function to estimate the size of a tile in bytes
+	 * @param nSegments number of independently-locked segments; this is rounded up to a power of 2
+	 * @param softValues if true, tiles may be reclaimed by the garbage collector when memory is low
+	 */
+	@SuppressWarnings("unchecked")
+	public TileCache(long maxBytes, ToLongFunction<? super T> weigher, int nSegments, boolean softValues) {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("Maximum cache size must be > 0, but was " + maxBytes);
+		Objects.requireNonNull(weigher, "Weigher must not be null");
+		this.maxBytes = maxBytes;
+		this.weigher = weigher;
+		this.collectedQueue = softValues ? new ReferenceQueue<>() : null;
+		int n = 1;
+		while (n < nSegments && n < MAX_SEGMENTS)
+			n <<= 1;
+		this.segments = new Segment[n];
+		for (int i = 0; i < n; i++)
+			segments[i] = new Segment<>();
+	}
+
+	/**
+	 * Create a cache for {@link BufferedImage} tiles, weighted according to their raster data.
+	 * @param maxBytes maximum size of the cache, in bytes
+	 * @return
+	 * @see #estimateBytes(BufferedImage)
+	 */
+	public static TileCache<BufferedImage> createBufferedImageCache(long maxBytes) {
+		return createBufferedImageCache(maxBytes, false);
+	}
+
+	/**
+	 * Create a cache for {@link BufferedImage} tiles, weighted according to their raster data, 
+	 * optionally using soft references for the tiles.
+	 * @param maxBytes maximum size of the cache, in bytes
+	 * @param softValues if true, tiles may be reclaimed by the garbage collector when memory is low
+	 * @return
+	 * @see #estimateBytes(BufferedImage)
+	 */
+	public static TileCache<BufferedImage> createBufferedImageCache(long maxBytes, boolean softValues) {
+		return new TileCache<>(maxBytes, TileCache::estimateBytes, softValues);
+	}
+
+	/**
+	 * Create a cache for {@link BufferedImage} tiles using a specified percentage of the memory available to Java.
+	 * @param percentage percentage of the maximum memory to use; this is clipped to the range 10-90
+	 * @return
+	 * @see #calculateCacheSize(double)
+	 */
+	public static TileCache<BufferedImage> createBufferedImageCache(double percentage) {
+		return createBufferedImageCache(percentage, false);
+	}
+
+	/**
+	 * Create a cache for {@link BufferedImage} tiles using a specified percentage of the memory available to Java, 
+	 * optionally using soft references for the tiles.
+	 * @param percentage percentage of the maximum memory to use; this is clipped to the range 10-90
+	 * @param softValues if true, tiles may be reclaimed by the garbage collector when memory is low
+	 * @return
+	 * @see #calculateCacheSize(double)
+	 */
+	public static TileCache<BufferedImage> createBufferedImageCache(double percentage, boolean softValues) {
+		return createBufferedImageCache(calculateCacheSize(percentage), softValues);
+	}
+
+	/**
+	 * Calculate a tile cache size as a percentage of the maximum memory available to Java.
+	 * @param percentage percentage of the maximum memory to use; this is clipped to the range 10-90
+	 * @return the cache size, in bytes
+	 */
+	public static long calculateCacheSize(double percentage) {
+		long maxAvailable = Runtime.getRuntime().maxMemory();
+		if (maxAvailable == Long.MAX_VALUE) {
+			logger.warn("No inherent maximum memory set - for caching purposes, will assume 64 GB");
+			maxAvailable = 64L * 1024L * 1024L * 1024L;
+		}
+		if (percentage < 10) {
+			logger.warn("At least 10% of available memory needs to be used for tile caching (you requested {}%)", percentage);
+			percentage = 10;
+		} else if (percentage > 90) {
+			logger.warn("No more than 90% of available memory can be used for tile caching (you requested {}%)", percentage);
+			percentage = 90;
+		}
+		long tileCacheSize = Math.round(maxAvailable * (percentage / 100.0));
+		logger.info(String.format("Setting tile cache size to %.2f MB (%.1f%% max memory)", tileCacheSize/(1024.*1024.), percentage));
+		return tileCacheSize;
+	}
+
+	/**
+	 * Estimate the number of bytes required to store the pixels of a {@link BufferedImage}.
+	 * This is based upon the size of the raster's data buffer, and ignores any other overhead.
+	 * @param img
+	 * @return
+	 */
+	public static long estimateBytes(BufferedImage img) {
+		if (img == null)
+			return 0;
+		DataBuffer data = img.getRaster().getDataBuffer();
+		return (long)data.getSize() * (long)(DataBuffer.getDataTypeSize(data.getDataType())/8) * data.getNumBanks();
+	}
+
+	private static int defaultSegmentCount() {
+		return Runtime.getRuntime().availableProcessors() * 2;
+	}
+
+	/**
+	 * Get the maximum size of the cache, in bytes.
+	 * Tiles larger than this cannot be cached.
+	 * @return
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Query whether tiles are stored using soft references, so that they may be reclaimed by the garbage collector.
+	 * @return
+	 */
+	public boolean hasSoftValues() {
+		return collectedQueue != null;
+	}
+
+	/**
+	 * Get the approximate number of bytes currently used by cached tiles.
+	 * @return
+	 */
+	public long getCurrentBytes() {
+		return currentBytes.get();
+	}
+
+	private Segment<T> segmentFor(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (segments.length - 1)];
+	}
+
+	@Override
+	public T get(Object key) {
+		if (key == null)
+			return null;
+		var segment = segmentFor(key);
+		T value = null;
+		synchronized (segment) {
+			var node = segment.map.get(key);
+			if (node != null) {
+				node.lastAccess = System.nanoTime();
+				value = node.getValue();
+			}
+		}
+		if (value == null) {
+			misses.increment();
+			// The tile may have been reclaimed by the garbage collector
+			expungeCollected();
+			return null;
+		}
+		hits.increment();
+		return value;
+	}
+
+	@Override
+	public T getOrDefault(Object key, T defaultValue) {
+		var value = get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (key == null)
+			return false;
+		expungeCollected();
+		var segment = segmentFor(key);
+		synchronized (segment) {
+			// Unlike get, this doesn't change the access order
+			return segment.map.containsKey(key);
+		}
+	}
+
+	/**
+	 * Add a tile to the cache, evicting the least recently used unpinned tiles if necessary.
+	 * <p>
+	 * If the tile is larger than {@link #getMaxBytes()} it is not cached, and any previous tile
+	 * for the same request is removed.
+	 */
+	@Override
+	public T put(RegionRequest key, T value) {
+		Objects.requireNonNull(key, "Key must not be null");
+		Objects.requireNonNull(value, "Value must not be null");
+		long bytes = Math.max(0L, weigher.applyAsLong(value));
+		if (bytes > maxBytes) {
+			logger.debug("Tile too large to cache ({} bytes, max is {}): {}", bytes, maxBytes, key);
+			return remove(key);
+		}
+		expungeCollected();
+		var segment = segmentFor(key);
+		Node<T> previous;
+		synchronized (segment) {
+			previous = segment.map.put(key, new Node<>(key, value, bytes, collectedQueue));
+			if (previous == null)
+				index.add(key);
+		}
+		currentBytes.addAndGet(previous == null ? bytes : bytes - previous.bytes);
+		evictIfNeeded();
+		return previous == null ? null : previous.getValue();
+	}
+
+	@Override
+	public T remove(Object key) {
+		if (key == null)
+			return null;
+		var segment = segmentFor(key);
+		Node<T> previous;
+		synchronized (segment) {
+			previous = segment.map.remove(key);
+			if (previous != null)
+				index.remove((RegionRequest)key);
+		}
+		if (previous == null)
+			return null;
+		currentBytes.addAndGet(-previous.bytes);
+		return previous.getValue();
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		if (key == null)
+			return false;
+		var segment = segmentFor(key);
+		Node<T> previous;
+		synchronized (segment) {
+			previous = segment.map.get(key);
+			if (previous == null || !Objects.equals(previous.getValue(), value))
+				return false;
+			segment.map.remove(key);
+			index.remove((RegionRequest)key);
+		}
+		currentBytes.addAndGet(-previous.bytes);
+		return true;
+	}
+
+	@Override
+	public int size() {
+		long n = 0;
+		for (var segment : segments) {
+			synchronized (segment) {
+				n += segment.map.size();
+			}
+		}
+		return (int)Math.min(n, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for (var segment : segments) {
+			synchronized (segment) {
+				if (!segment.map.isEmpty())
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Remove all tiles from the cache.
+	 * Pins are retained, so that tiles that are still being read are protected when they arrive.
+	 */
+	@Override
+	public void clear() {
+		for (var segment : segments) {
+			long removed = 0;
+			synchronized (segment) {
+				for (var entry : segment.map.entrySet()) {
+					removed += entry.getValue().bytes;
+					index.remove(entry.getKey());
+				}
+				segment.map.clear();
+			}
+			currentBytes.addAndGet(-removed);
+		}
+	}
+
+	/**
+	 * Remove all the cached tiles for a specific server.
+	 * @param serverPath the path of the server, as returned by {@link ImageServer#getPath()}
+	 * @return the number of tiles that were removed
+	 */
+	public int clearCacheForServer(String serverPath) {
+		int count = 0;
+		for (var segment : segments) {
+			long removed = 0;
+			synchronized (segment) {
+				var iter = segment.map.entrySet().iterator();
+				while (iter.hasNext()) {
+					var entry = iter.next();
+					if (Objects.equals(serverPath, entry.getKey().getPath())) {
+						removed += entry.getValue().bytes;
+						iter.remove();
+						index.remove(entry.getKey());
+						count++;
+					}
+				}
+			}
+			currentBytes.addAndGet(-removed);
+		}
+		logger.trace("Removed {} cached tiles for {}", count, serverPath);
+		return count;
+	}
+
+	/**
+	 * Get the requests for all cached tiles that overlap a specified request.
+	 * Tiles overlap if they have the same server path and their regions intersect, as defined by 
+	 * {@link RegionRequest#overlapsRequest(RegionRequest)}; the downsample is not considered.
+	 * <p>
+	 * This uses a spatial index, so the time required depends upon the number of tiles near the region 
+	 * rather than the total number of tiles in the cache.
+	 * @param request the request defining the server path and region
+	 * @return a snapshot of the overlapping requests
+	 */
+	public List<RegionRequest> getOverlappingRequests(RegionRequest request) {
+		Objects.requireNonNull(request, "Request must not be null");
+		return index.getOverlapping(request);
+	}
+
+	/**
+	 * Remove all cached tiles that overlap a specified request.
+	 * @param request the request defining the server path and region
+	 * @return the number of tiles that were removed
+	 * @see #getOverlappingRequests(RegionRequest)
+	 */
+	public int clearCacheForRequestOverlap(RegionRequest request) {
+		int count = 0;
+		for (var overlapping : getOverlappingRequests(request)) {
+			if (remove(overlapping) != null)
+				count++;
+		}
+		logger.trace("Removed {} cached tiles overlapping {}", count, request);
+		return count;
+	}
+
+	/**
+	 * Pin a tile, so that it will not be evicted from the cache until {@link #unpin(RegionRequest)} is called.
+	 * <p>
+	 * The tile does not need to be in the cache already: pinning a request for a tile that is
+	 * still being read means that it is protected as soon as it is added.
+	 * Pins are counted, so each call to this method should be matched by exactly one call to
+	 * {@link #unpin(RegionRequest)}.
+	 * <p>
+	 * Note that pinning only prevents eviction; pinned tiles can still be removed explicitly
+	 * (e.g. with {@link #remove(Object)} or {@link #clearCacheForServer(String)}).
+	 * @param request
+	 */
+	public void pin(RegionRequest request) {
+		var segment = segmentFor(request);
+		synchronized (segment) {
+			segment.pins.merge(request, 1, Integer::sum);
+		}
+	}
+
+	/**
+	 * Pin all tiles in a collection.
+	 * @param requests
+	 * @see #pin(RegionRequest)
+	 */
+	public void pinAll(Collection<? extends RegionRequest> requests) {
+		for (var request : requests)
+			pin(request);
+	}
+
+	/**
+	 * Release a pin that was previously added with {@link #pin(RegionRequest)}.
+	 * If the cache has grown beyond its maximum size while the tile was pinned, tiles will be evicted.
+	 * @param request
+	 */
+	public void unpin(RegionRequest request) {
+		unpinWithoutEviction(request);
+		evictIfNeeded();
+	}
+
+	/**
+	 * Unpin all tiles in a collection.
+	 * @param requests
+	 * @see #unpin(RegionRequest)
+	 */
+	public void unpinAll(Collection<? extends RegionRequest> requests) {
+		for (var request : requests)
+			unpinWithoutEviction(request);
+		evictIfNeeded();
+	}
+
+	private void unpinWithoutEviction(RegionRequest request) {
+		var segment = segmentFor(request);
+		synchronized (segment) {
+			segment.pins.computeIfPresent(request, (k, v) -> v > 1 ? v - 1 : null);
+		}
+	}
+
+	/**
+	 * Query whether a tile is currently pinned.
+	 * @param request
+	 * @return
+	 */
+	public boolean isPinned(RegionRequest request) {
+		var segment = segmentFor(request);
+		synchronized (segment) {
+			return segment.pins.containsKey(request);
+		}
+	}
+
+	/**
+	 * Evict the least recently used unpinned tiles until the cache is within its size limit.
+	 * Only one segment lock is held at a time.
+	 */
+	private void evictIfNeeded() {
+		while (currentBytes.get() > maxBytes) {
+			Segment<T> oldestSegment = null;
+			long oldestAccess = Long.MAX_VALUE;
+			for (var segment : segments) {
+				synchronized (segment) {
+					var node = segment.eldestUnpinned();
+					if (node != null && (oldestSegment == null || node.getValue().lastAccess - oldestAccess < 0)) {
+						oldestSegment = segment;
+						oldestAccess = node.getValue().lastAccess;
+					}
+				}
+			}
+			// Everything is pinned
+			if (oldestSegment == null)
+				return;
+			Entry<RegionRequest, Node<T>> evicted;
+			synchronized (oldestSegment) {
+				evicted = oldestSegment.eldestUnpinned();
+				if (evicted != null) {
+					oldestSegment.map.remove(evicted.getKey());
+					index.remove(evicted.getKey());
+				}
+			}
+			if (evicted != null) {
+				currentBytes.addAndGet(-evicted.getValue().bytes);
+				evictions.increment();
+				logger.trace("Evicted cached tile {}", evicted.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Remove any tiles that have been reclaimed by the garbage collector, so that they no longer count 
+	 * towards the size of the cache.
+	 */
+	private void expungeCollected() {
+		if (collectedQueue == null)
+			return;
+		Reference<? extends T> ref;
+		while ((ref = collectedQueue.poll()) != null) {
+			var key = ((SoftTile<?>)ref).key;
+			var segment = segmentFor(key);
+			Node<T> removed = null;
+			synchronized (segment) {
+				var node = segment.map.get(key);
+				// Check the node hasn't already been replaced
+				if (node != null && node.ref == ref) {
+					segment.map.remove(key);
+					index.remove(key);
+					removed = node;
+				}
+			}
+			if (removed != null) {
+				currentBytes.addAndGet(-removed.bytes);
+				logger.debug("Cached tile collected: {}", key);
+			}
+		}
+	}
+
+	/**
+	 * Get a snapshot of the cache statistics.
+	 * @return
+	 */
+	public Stats getStats() {
+		expungeCollected();
+		return new Stats(hits.sum(), misses.sum(), evictions.sum(), size(), currentBytes.get(), maxBytes);
+	}
+
+	/**
+	 * Reset the hit, miss and eviction counts.
+	 */
+	public void resetStats() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	/**
+	 * Iterators over the entry set operate on a snapshot of the cache, but support removal.
+	 */
+	@Override
+	public Set<Entry<RegionRequest, T>> entrySet() {
+		if (entrySet == null)
+			entrySet = new EntrySet();
+		return entrySet;
+	}
+
+	private List<Entry<RegionRequest, T>> snapshot() {
+		List<Entry<RegionRequest, T>> list = new ArrayList<>();
+		for (var segment : segments) {
+			synchronized (segment) {
+				for (var entry : segment.map.entrySet()) {
+					var value = entry.getValue().getValue();
+					if (value != null)
+						list.add(new SimpleImmutableEntry<>(entry.getKey(), value));
+				}
+			}
+		}
+		return list;
+	}
+
+
+	private class EntrySet extends AbstractSet<Entry<RegionRequest, T>> {
+
+		@Override
+		public Iterator<Entry<RegionRequest, T>> iterator() {
+			var iter = snapshot().iterator();
+			return new Iterator<>() {
+
+				private Entry<RegionRequest, T> current;
+
+				@Override
+				public boolean hasNext() {
+					return iter.hasNext();
+				}
+
+				@Override
+				public Entry<RegionRequest, T> next() {
+					current = iter.next();
+					return current;
+				}
+
+				@Override
+				public void remove() {
+					if (current == null)
+						throw new IllegalStateException();
+					TileCache.this.remove(current.getKey(), current.getValue());
+					current = null;
+				}
+
+			};
+		}
+
+		@Override
+		public int size() {
+			return TileCache.this.size();
+		}
+
+		@Override
+		public void clear() {
+			TileCache.this.clear();
+		}
+
+	}
+
+
+
+	private static class Segment<T> {
+
+		// Access-ordered, so the eldest entry is the least recently used
+		private final LinkedHashMap<RegionRequest, Node<T>> map = new LinkedHashMap<>(16, 0.75f, true);
+
+		private final Map<RegionRequest, Integer> pins = new HashMap<>();
+
+		/**
+		 * Get the least recently used entry that isn't pinned.
+		 * Must be called while holding the segment's lock.
+		 */
+		private Entry<RegionRequest, Node<T>> eldestUnpinned() {
+			for (var entry : map.entrySet()) {
+				if (pins.isEmpty() || !pins.containsKey(entry.getKey()))
+					return entry;
+			}
+			return null;
+		}
+
+	}
+
+	/**
+	 * Spatial index of cached requests.
+	 * <p>
+	 * Requests are grouped by server path and then by level, where the level is determined by the size of the region.
+	 * Each level uses a grid with cells at least as large as any request it contains, so that each request is 
+	 * added to at most four cells. Requests are only added once per plane, since z and t are checked when 
+	 * querying (this also supports requests with negative z or t, which match any plane).
+	 * <p>
+	 * Updates for a request should be made while holding the lock for its segment, so that the index remains 
+	 * consistent with the cache.
+	 */
+	private static class SpatialIndex {
+
+		private static final int MAX_LEVEL = 30;
+
+		private final Map<String, Map<Integer, Map<Long, Set<RegionRequest>>>> map = new ConcurrentHashMap<>();
+
+		private static int getLevel(RegionRequest request) {
+			int size = Math.max(1, Math.max(request.getWidth(), request.getHeight()));
+			return Math.min(MAX_LEVEL, 32 - Integer.numberOfLeadingZeros(size - 1));
+		}
+
+		private static long getCellKey(int gx, int gy) {
+			return ((long)gx << 32) | (gy & 0xffffffffL);
+		}
+
+		/*
+		 * Tiles in different segments can share cells, so add and remove may be called concurrently for the same cell.
+		 * Only the cells are updated inside compute calls, so that a cell can't be pruned by one thread while another 
+		 * thread is adding to it - and threads only contend if they update the same cell.
+		 * The maps for each path and level are never pruned, since they are small and there are few of them.
+		 */
+
+		private void add(RegionRequest request) {
+			int level = getLevel(request);
+			var cells = map.computeIfAbsent(request.getPath(), path -> new ConcurrentHashMap<>())
+					.computeIfAbsent(level, l -> new ConcurrentHashMap<>());
+			forEachCell(request, level, key -> cells.compute(key, (k, set) -> {
+				if (set == null)
+					set = ConcurrentHashMap.newKeySet();
+				set.add(request);
+				return set;
+			}));
+		}
+
+		private void remove(RegionRequest request) {
+			var levels = map.get(request.getPath());
+			if (levels == null)
+				return;
+			int level = getLevel(request);
+			var cells = levels.get(level);
+			if (cells == null)
+				return;
+			forEachCell(request, level, key -> cells.computeIfPresent(key, (k, set) -> {
+				set.remove(request);
+				return set.isEmpty() ? null : set;
+			}));
+		}
+
+		private List<RegionRequest> getOverlapping(RegionRequest request) {
+			var levels = map.get(request.getPath());
+			if (levels == null)
+				return List.of();
+			Set<RegionRequest> overlapping = new LinkedHashSet<>();
+			for (var entry : levels.entrySet()) {
+				int cellSize = 1 << entry.getKey();
+				var cells = entry.getValue();
+				long gx1 = Math.floorDiv(request.getX(), cellSize);
+				long gy1 = Math.floorDiv(request.getY(), cellSize);
+				long gx2 = Math.floorDiv(request.getX() + Math.max(1, request.getWidth()) - 1, cellSize);
+				long gy2 = Math.floorDiv(request.getY() + Math.max(1, request.getHeight()) - 1, cellSize);
+				if ((gx2 - gx1 + 1) * (gy2 - gy1 + 1) > cells.size()) {
+					// Cheaper to check everything at this level
+					for (var set : cells.values())
+						addOverlapping(request, set, overlapping);
+				} else {
+					for (long gy = gy1; gy <= gy2; gy++) {
+						for (long gx = gx1; gx <= gx2; gx++) {
+							var set = cells.get(getCellKey((int)gx, (int)gy));
+							if (set != null)
+								addOverlapping(request, set, overlapping);
+						}
+					}
+				}
+			}
+			return new ArrayList<>(overlapping);
+		}
+
+		private static void addOverlapping(RegionRequest request, Set<RegionRequest> candidates, Set<RegionRequest> overlapping) {
+			for (var candidate : candidates) {
+				if (request.overlapsRequest(candidate))
+					overlapping.add(candidate);
+			}
+		}
+
+		private static void forEachCell(RegionRequest request, int level, LongConsumer consumer) {
+			int cellSize = 1 << level;
+			int gx1 = Math.floorDiv(request.getX(), cellSize);
+			int gy1 = Math.floorDiv(request.getY(), cellSize);
+			int gx2 = Math.floorDiv(request.getX() + Math.max(1, request.getWidth()) - 1, cellSize);
+			int gy2 = Math.floorDiv(request.getY() + Math.max(1, request.getHeight()) - 1, cellSize);
+			for (int gy = gy1; gy <= gy2; gy++) {
+				for (int gx = gx1; gx <= gx2; gx++)
+					consumer.accept(getCellKey(gx, gy));
+			}
+		}
+
+	}
+
+	private static class Node<T> {
+
+		// Only one of value or ref is set, depending upon whether the cache uses soft references
+		private final T value;
+		private final SoftTile<T> ref;
+		private final long bytes;
+		private long lastAccess = System.nanoTime();
+
+		private Node(RegionRequest key, T value, long bytes, ReferenceQueue<T> queue) {
+			this.value = queue == null ? value : null;
+			this.ref = queue == null ? null : new SoftTile<>(key, value, queue);
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Get the tile, or null if it has been reclaimed by the garbage collector.
+		 */
+		private T getValue() {
+			return ref == null ? value : ref.get();
+		}
+
+	}
+
+	/**
+	 * Soft reference to a tile, which retains the request so that the entry can be removed once the tile is collected.
+	 */
+	private static class SoftTile<T> extends SoftReference<T> {
+
+		private final RegionRequest key;
+
+		private SoftTile(RegionRequest key, T value, ReferenceQueue<T> queue) {
+			super(value, queue);
+			this.key = key;
+		}
+
+	}
+
+
+	/**
+	 * Snapshot of tile cache statistics.
+	 * @param hits number of requests for a tile that was cached
+	 * @param misses number of requests for a tile that was not cached
+	 * @param evictions number of tiles that were removed to keep the cache within its size limit
+	 * @param nTiles number of tiles currently cached
+	 * @param bytes approximate number of bytes currently cached
+	 * @param maxBytes maximum number of bytes that may be cached
+	 */
+	public record Stats(long hits, long misses, long evictions, long nTiles, long bytes, long maxBytes) {
+
+		/**
+		 * Get the proportion of requests that were satisfied by the cache.
+		 * @return the hit rate, or NaN if there have been no requests
+		 */
+		public double hitRate() {
+			long n = hits + misses;
+			return n == 0 ? Double.NaN : (double)hits / n;
+		}
+
+	}
+
+}
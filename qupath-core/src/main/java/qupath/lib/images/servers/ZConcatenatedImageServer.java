@@ -75,7 +75,8 @@ public class ZConcatenatedImageServer extends AbstractTileableImageServer {
 
     @Override
     protected String createID() {
-        return String.format("%s: %s", getClass().getName(), getURIs());
+        // Use the server paths rather than URIs, since the URIs alone don't identify the servers uniquely
+        return String.format("%s: %s", getClass().getName(), servers.stream().map(ImageServer::getPath).toList());
     }
 
     @Override
@@ -0,0 +1,140 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.writers;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Minimal writer for uncompressed tar archives, using the POSIX ustar format.
+ * <p>
+ * Entries are written sequentially, which makes this suitable for writing many small files into a 
+ * single large file (e.g. as WebDataset-style shards for training).
+ * Only regular files with names up to 100 bytes are supported.
+ * 
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+class TarWriter implements Closeable {
+	
+	private static final int BLOCK_SIZE = 512;
+	
+	private static final int MAX_NAME_LENGTH = 100;
+	
+	private final OutputStream stream;
+	
+	private final long modifiedSeconds = System.currentTimeMillis() / 1000L;
+	
+	private long bytesWritten = 0L;
+	
+	/**
+	 * Create a writer for a new tar file.
+	 * Any existing file will be overwritten.
+	 * @param path
+	 * @throws IOException
+	 */
+	TarWriter(Path path) throws IOException {
+		this.stream = new BufferedOutputStream(Files.newOutputStream(path), 1024 * 1024);
+	}
+	
+	/**
+	 * Add a file entry to the archive.
+	 * @param name the name of the entry
+	 * @param bytes the contents of the entry
+	 * @throws IOException if the entry could not be written, or if the name is too long
+	 */
+	void addEntry(String name, byte[] bytes) throws IOException {
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		if (nameBytes.length > MAX_NAME_LENGTH)
+			throw new IOException("Tar entry name is too long: " + name);
+		
+		byte[] header = new byte[BLOCK_SIZE];
+		System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+		putOctal(header, 100, 8, 0644); // mode
+		putOctal(header, 108, 8, 0); // uid
+		putOctal(header, 116, 8, 0); // gid
+		putOctal(header, 124, 12, bytes.length); // size
+		putOctal(header, 136, 12, modifiedSeconds); // mtime
+		header[156] = '0'; // regular file
+		putString(header, 257, "ustar");
+		putString(header, 263, "00");
+		
+		// The checksum is calculated with the checksum field set to spaces
+		for (int i = 148; i < 156; i++)
+			header[i] = ' ';
+		long checksum = 0;
+		for (byte b : header)
+			checksum += b & 0xFF;
+		putOctal(header, 148, 7, checksum);
+		
+		write(header, header.length);
+		write(bytes, bytes.length);
+		int padding = (int)((BLOCK_SIZE - bytes.length % BLOCK_SIZE) % BLOCK_SIZE);
+		write(new byte[padding], padding);
+	}
+	
+	/**
+	 * Get the number of bytes written so far, including headers and padding.
+	 * @return
+	 */
+	long getBytesWritten() {
+		return bytesWritten;
+	}
+	
+	private void write(byte[] bytes, int length) throws IOException {
+		stream.write(bytes, 0, length);
+		bytesWritten += length;
+	}
+	
+	/**
+	 * Write a zero-padded octal number, followed by a null terminator.
+	 */
+	private static void putOctal(byte[] header, int offset, int length, long value) {
+		String s = Long.toOctalString(value);
+		if (s.length() > length - 1)
+			throw new IllegalArgumentException("Value " + value + " is too large for tar header");
+		s = "0".repeat(length - 1 - s.length()) + s;
+		putString(header, offset, s);
+		header[offset + length - 1] = 0;
+	}
+	
+	private static void putString(byte[] header, int offset, String s) {
+		byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(bytes, 0, header, offset, bytes.length);
+	}
+
+	/**
+	 * Write the end-of-archive marker and close the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		try (stream) {
+			write(new byte[BLOCK_SIZE * 2], BLOCK_SIZE * 2);
+		}
+	}
+
+}
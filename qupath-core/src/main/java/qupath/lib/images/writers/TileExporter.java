@@ -23,25 +23,33 @@ package qupath.lib.images.writers;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.NumberFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import com.google.gson.Gson;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -100,6 +108,8 @@ public class TileExporter  {
 	private String labelSubDir = null;
 	private boolean exportJson = false;
 	private String labelId = null;
+	
+	private int tilesPerShard = 0;
 
 	private ImageServer<BufferedImage> serverLabeled;
 
@@ -450,6 +460,24 @@ public class TileExporter  {
 		return this;
 	}
 	
+	/**
+	 * Optionally write tiles into a small number of large tar files ('shards'), rather than as individual image files.
+	 * This is much more efficient when exporting very large numbers of tiles, particularly on network or parallel file systems.
+	 * <p>
+	 * Shards follow the WebDataset convention, where all files for a tile share the same key and differ only by extension.
+	 * Each tile has an image, a labeled image (if {@link #labeledServer(ImageServer)} is provided) with the extension 
+	 * {@code .labels} followed by the labeled image extension, and a JSON file containing the region.
+	 * Image and labeled image subdirectories are ignored when writing shards.
+	 * 
+	 * @param tilesPerShard maximum number of tiles in each shard; if &le; 0, individual files are written (the default)
+	 * @return this exporter
+	 * @since v0.6.0
+	 */
+	public TileExporter tilesPerShard(int tilesPerShard) {
+		this.tilesPerShard = tilesPerShard;
+		return this;
+	}
+	
 	
 	/**
 	 * Create region requests, along with information about whether we have a partial tile (which should not be resized/padded) or not.
@@ -586,8 +614,6 @@ public class TileExporter  {
 		if (requests.size() > 1)
 			logger.info("Exporting {} tiles", requests.size());
 
-		var pool = Executors.newFixedThreadPool(ThreadTools.getParallelism(), ThreadTools.createThreadFactory("tile-exporter", true));
-
 		String imageName = GeneralTools.stripInvalidFilenameChars(
 				GeneralTools.stripExtension(server.getMetadata().getName())
 				);
@@ -614,6 +640,13 @@ public class TileExporter  {
 //		int tileWidth = includePartialTiles || (parentObjects != null && useParentRoiBounds) ? -1 : this.tileWidth;
 //		int tileHeight = includePartialTiles || (parentObjects != null && useParentRoiBounds) ? -1 : this.tileHeight;
 		
+		if (tilesPerShard > 0) {
+			writeShards(dirOutput, requests, imageName, imagePathName);
+			return;
+		}
+
+		var pool = Executors.newFixedThreadPool(ThreadTools.getParallelism(), ThreadTools.createThreadFactory("tile-exporter", true));
+		
 		// Maintain a record of what we exported
 		List<TileExportEntry> exportImages = new ArrayList<>();
 
@@ -660,39 +693,8 @@ public class TileExporter  {
 		}
 		
 		// Write JSON, if we need to
-		if (exportJson) {
-			var gson = GsonTools.getInstance(true)
-					.newBuilder()
-					.disableHtmlEscaping() // Required to support = in filenames
-					.create();
-			var data = new TileExportData(dirOutput, exportImages);
-			if (serverLabeled instanceof LabeledImageServer) {
-				var labels = ((LabeledImageServer) serverLabeled).getLabels();
-				var boundaryLabels = ((LabeledImageServer) serverLabeled).getBoundaryLabels();
-				List<TileExportLabel> labelList = new ArrayList<>();
-				Set<PathClass> existingLabels = new HashSet<>();
-				for (var entry : labels.entrySet()) {
-					var pathClass = entry.getKey();
-					var label = new TileExportLabel(pathClass.toString(), entry.getValue(), boundaryLabels.getOrDefault(pathClass, null));
-					labelList.add(label);
-				}
-				for (var entry : boundaryLabels.entrySet()) {
-					var pathClass = entry.getKey();
-					if (!existingLabels.contains(pathClass)) {
-						var label = new TileExportLabel(pathClass.toString(), null, boundaryLabels.getOrDefault(pathClass, null));
-						labelList.add(label);
-					}
-				}
-				data.labels = labelList;
-			}
-			var pathJson = Paths.get(dirOutput, imageName + "-tiles.json");
-			if (Files.exists(pathJson)) {
-				logger.warn("Overwriting existing JSON file {}", pathJson);
-			}
-			try (var writer = Files.newBufferedWriter(pathJson, StandardCharsets.UTF_8)) {
-				gson.toJson(data, writer);
-			}
-		}
+		if (exportJson)
+			writeJson(dirOutput, imageName, exportImages);
 
 		pool.shutdown();
 		try {
@@ -706,6 +708,217 @@ public class TileExporter  {
 	}
 	
 	
+	private void writeJson(String dirOutput, String imageName, List<TileExportEntry> exportImages) throws IOException {
+		var gson = GsonTools.getInstance(true)
+				.newBuilder()
+				.disableHtmlEscaping() // Required to support = in filenames
+				.create();
+		var data = new TileExportData(dirOutput, exportImages);
+		if (serverLabeled instanceof LabeledImageServer) {
+			var labels = ((LabeledImageServer) serverLabeled).getLabels();
+			var boundaryLabels = ((LabeledImageServer) serverLabeled).getBoundaryLabels();
+			List<TileExportLabel> labelList = new ArrayList<>();
+			Set<PathClass> existingLabels = new HashSet<>();
+			for (var entry : labels.entrySet()) {
+				var pathClass = entry.getKey();
+				var label = new TileExportLabel(pathClass.toString(), entry.getValue(), boundaryLabels.getOrDefault(pathClass, null));
+				labelList.add(label);
+			}
+			for (var entry : boundaryLabels.entrySet()) {
+				var pathClass = entry.getKey();
+				if (!existingLabels.contains(pathClass)) {
+					var label = new TileExportLabel(pathClass.toString(), null, boundaryLabels.getOrDefault(pathClass, null));
+					labelList.add(label);
+				}
+			}
+			data.labels = labelList;
+		}
+		var pathJson = Paths.get(dirOutput, imageName + "-tiles.json");
+		if (Files.exists(pathJson)) {
+			logger.warn("Overwriting existing JSON file {}", pathJson);
+		}
+		try (var writer = Files.newBufferedWriter(pathJson, StandardCharsets.UTF_8)) {
+			gson.toJson(data, writer);
+		}
+	}
+	
+	/**
+	 * Write tiles into tar shards.
+	 * Tiles are read and encoded in parallel, but written sequentially in order.
+	 * The number of encoded tiles waiting to be written is limited, to avoid running out of memory.
+	 */
+	private void writeShards(String dirOutput, Collection<RegionRequestWrapper> requests, String imageName, String imagePathName) throws IOException {
+		int nThreads = ThreadTools.getParallelism();
+		int maxPending = nThreads * 2;
+		var pool = Executors.newFixedThreadPool(nThreads, ThreadTools.createThreadFactory("tile-exporter", true));
+		
+		// WebDataset uses the first dot to separate the key from the extension
+		String extLabels = serverLabeled == null ? null : ".labels" + extLabeled;
+		// Tar entry names are limited to 100 bytes, so leave room for the tile index & the longest extension
+		int maxExtBytes = Math.max(utf8Length(ext), Math.max(utf8Length(".json"), extLabels == null ? 0 : utf8Length(extLabels)));
+		String keyPrefix = truncateUtf8(imageName.replace('.', '_'), 100 - maxExtBytes - 10);
+		if (keyPrefix.isEmpty())
+			throw new IOException("Unable to write shards - the image extension '" + ext + "' is too long");
+		
+		List<TileExportEntry> exportImages = new ArrayList<>();
+		Deque<Future<ShardSample>> pending = new ArrayDeque<>();
+		int tileWidth = this.tileWidth;
+		int tileHeight = this.tileHeight;
+		// Match the json written for all tiles
+		var gson = GsonTools.getInstance()
+				.newBuilder()
+				.disableHtmlEscaping()
+				.create();
+		try (var writer = new ShardWriter(Paths.get(dirOutput), keyPrefix, tilesPerShard, gson)) {
+			int index = 0;
+			for (var r : requests) {
+				String key = String.format("%s-%08d", keyPrefix, index);
+				var entry = new TileExportEntry(
+						r.request.updatePath(imagePathName),
+						key + ext,
+						extLabels == null ? null : key + extLabels);
+				var requestLabels = serverLabeled == null ? null : r.request.updatePath(serverLabeled.getPath());
+				boolean ensureSize = !r.partialTile;
+				pending.add(pool.submit(() -> {
+					byte[] image = encodeTile(server, r.request, ext, tileWidth, tileHeight, ensureSize);
+					byte[] labels = requestLabels == null ? null : encodeTile(serverLabeled, requestLabels, extLabeled, tileWidth, tileHeight, ensureSize);
+					return new ShardSample(entry, image, labels);
+				}));
+				index++;
+				while (pending.size() >= maxPending)
+					writeSample(writer, pending.removeFirst(), exportImages);
+			}
+			while (!pending.isEmpty())
+				writeSample(writer, pending.removeFirst(), exportImages);
+		} catch (InterruptedException e) {
+			logger.error("Tile export interrupted: {}", e.getLocalizedMessage());
+			logger.error("", e);
+			throw new IOException(e);
+		} finally {
+			pool.shutdownNow();
+		}
+		
+		if (exportJson)
+			writeJson(dirOutput, imageName, exportImages);
+	}
+	
+	private static int utf8Length(String s) {
+		return s.getBytes(StandardCharsets.UTF_8).length;
+	}
+	
+	/**
+	 * Truncate a string so that it requires no more than the specified number of bytes when encoded as UTF-8, 
+	 * without splitting any characters.
+	 */
+	static String truncateUtf8(String s, int maxBytes) {
+		int nBytes = 0;
+		int i = 0;
+		while (i < s.length()) {
+			int codePoint = s.codePointAt(i);
+			nBytes += utf8Length(Character.toString(codePoint));
+			if (nBytes > maxBytes)
+				break;
+			i += Character.charCount(codePoint);
+		}
+		return s.substring(0, i);
+	}
+	
+	/**
+	 * Write the next sample, if it could be encoded.
+	 * Tiles that failed are skipped, so the shard is only assigned here (not when the tile is submitted).
+	 */
+	private static void writeSample(ShardWriter writer, Future<ShardSample> future, List<TileExportEntry> exportImages) throws IOException, InterruptedException {
+		ShardSample sample;
+		try {
+			sample = future.get();
+		} catch (ExecutionException e) {
+			logger.error("Error writing tile: " + e.getCause().getLocalizedMessage(), e.getCause());
+			return;
+		}
+		writer.write(sample);
+		exportImages.add(sample.entry);
+	}
+	
+	/**
+	 * Read a tile and encode it using a writer for the specified extension.
+	 */
+	private static byte[] encodeTile(ImageServer<BufferedImage> server, RegionRequest request, String ext, int tileWidth, int tileHeight, boolean ensureSize) throws IOException {
+		var img = ensureSize ? readFixedSizeRegion(server, request, tileWidth, tileHeight) : null;
+		for (var writer : ImageWriterTools.getCompatibleWriters(server, ext)) {
+			try (var stream = new ByteArrayOutputStream()) {
+				if (img == null)
+					writer.writeImage(server, request, stream);
+				else
+					writer.writeImage(img, stream);
+				return stream.toByteArray();
+			} catch (Exception e) {
+				logger.warn("Unable to write image", e);
+			}
+		}
+		throw new IOException("Unable to write tile " + request + "!  No compatible writer found for " + ext);
+	}
+	
+	/**
+	 * Encoded images for a single tile.
+	 */
+	private static record ShardSample(TileExportEntry entry, byte[] image, byte[] labels) {}
+	
+	/**
+	 * Write samples to tar files, starting a new file whenever the current one contains the maximum number of tiles.
+	 */
+	private static class ShardWriter implements AutoCloseable {
+		
+		private final Path dir;
+		private final String prefix;
+		private final int tilesPerShard;
+		private final Gson gson;
+		
+		private TarWriter tar;
+		private String shardName;
+		private int nTiles = 0;
+		
+		private ShardWriter(Path dir, String prefix, int tilesPerShard, Gson gson) {
+			this.dir = dir;
+			this.prefix = prefix;
+			this.tilesPerShard = tilesPerShard;
+			this.gson = gson;
+		}
+		
+		private String getShardName(int tileIndex) {
+			return String.format("%s-%06d.tar", prefix, tileIndex / tilesPerShard);
+		}
+		
+		/**
+		 * Write a sample to the current shard, and set the shard of its entry accordingly.
+		 */
+		private void write(ShardSample sample) throws IOException {
+			if (tar == null || nTiles % tilesPerShard == 0) {
+				if (tar != null)
+					tar.close();
+				shardName = getShardName(nTiles);
+				var path = dir.resolve(shardName);
+				if (Files.exists(path))
+					logger.warn("Overwriting existing shard {}", path);
+				tar = new TarWriter(path);
+			}
+			var entry = sample.entry();
+			entry.shard = shardName;
+			tar.addEntry(entry.image, sample.image());
+			if (sample.labels() != null)
+				tar.addEntry(entry.labels, sample.labels());
+			String key = entry.image.substring(0, entry.image.indexOf('.'));
+			tar.addEntry(key + ".json", gson.toJson(entry).getBytes(StandardCharsets.UTF_8));
+			nTiles++;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if (tar != null)
+				tar.close();
+		}
+		
+	}
+	
 	@SuppressWarnings("unused")
 	private static class TileExportData {
 		
@@ -743,6 +956,7 @@ public class TileExporter  {
 //		private PixelCalibration pixel_size;
 		private String image;
 		private String labels;
+		private String shard;
 		
 		TileExportEntry (RegionRequest region, String image, String labels) {
 			this.region = region;
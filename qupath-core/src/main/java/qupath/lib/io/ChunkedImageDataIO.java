@@ -0,0 +1,1521 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.color.ColorDeconvolutionStains;
+import qupath.lib.images.ImageData;
+import qupath.lib.measurements.MeasurementList;
+import qupath.lib.measurements.MeasurementListFactory;
+import qupath.lib.objects.PathAnnotationObject;
+import qupath.lib.objects.PathCellObject;
+import qupath.lib.objects.PathDetectionObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.PathROIObject;
+import qupath.lib.objects.PathRootObject;
+import qupath.lib.objects.PathTileObject;
+import qupath.lib.objects.TMACoreObject;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.objects.hierarchy.DefaultTMAGrid;
+import qupath.lib.objects.hierarchy.DeferredObjects;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.plugins.workflow.Workflow;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.RoiBinaryCodec;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Reader and writer for QuPath's chunked binary data files.
+ * <p>
+ * This is an alternative to writing the full {@link ImageData} with Java serialization, designed to scale to
+ * images with millions of objects.
+ * The file starts with a header containing the image metadata and an index of object chunks.
+ * Each chunk contains up to several thousand objects, compressed independently so that chunks can be
+ * encoded and decoded in parallel.
+ * Within a chunk, ROI vertices use the compact encoding of {@link RoiBinaryCodec} and measurements are
+ * stored column-by-column.
+ * <p>
+ * Annotations, TMA cores and other non-detection objects are written to 'structure' chunks.
+ * Detections are grouped by image plane and location, so that each detection chunk covers a compact
+ * region given in the index. A detection is always written in the same chunk as its descendants,
+ * and any parent outside the chunk is referenced by its ID - so that each chunk can be decoded using only
+ * the structure chunks.
+ * <p>
+ * Because of this, detections can also be read lazily: structure chunks are read immediately, and detection
+ * chunks are only decoded when the hierarchy needs objects from the region they cover.
+ * Any detection chunks that haven't been loaded when the hierarchy is written again are copied unchanged.
+ * <p>
+ * Files written in this format are read automatically by {@link PathIO}.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+public final class ChunkedImageDataIO {
+
+	private static final Logger logger = LoggerFactory.getLogger(ChunkedImageDataIO.class);
+
+	/**
+	 * Identifier at the start of a chunked data file ("QPDC").
+	 * This can't be confused with the start of a Java serialization stream.
+	 */
+	static final int MAGIC = 0x51504443;
+
+	private static final int VERSION = 1;
+
+	/**
+	 * Maximum number of objects in a chunk; this may be exceeded to keep a detection with its descendants.
+	 */
+	private static final int MAX_CHUNK_SIZE = 8192;
+
+	/**
+	 * Size of the grid cells (in pixels) used to order detections spatially.
+	 */
+	private static final int CELL_SIZE = 256;
+
+	private static final int NO_PARENT = Integer.MIN_VALUE;
+
+	private static final byte TYPE_ROOT = 0;
+	private static final byte TYPE_ANNOTATION = 1;
+	private static final byte TYPE_DETECTION = 2;
+	private static final byte TYPE_CELL = 3;
+	private static final byte TYPE_TILE = 4;
+	private static final byte TYPE_TMA_CORE = 5;
+
+	private static final int FLAG_NAME = 1;
+	private static final int FLAG_COLOR = 1 << 1;
+	private static final int FLAG_LOCKED = 1 << 2;
+	private static final int FLAG_METADATA = 1 << 3;
+	private static final int FLAG_PROBABILITY = 1 << 4;
+	private static final int FLAG_ROI = 1 << 5;
+	private static final int FLAG_NUCLEUS = 1 << 6;
+	private static final int FLAG_MISSING = 1 << 7;
+
+	private static final Map<Class<? extends PathObject>, Byte> OBJECT_TYPES = Map.of(
+			PathRootObject.class, TYPE_ROOT,
+			PathAnnotationObject.class, TYPE_ANNOTATION,
+			PathDetectionObject.class, TYPE_DETECTION,
+			PathCellObject.class, TYPE_CELL,
+			PathTileObject.class, TYPE_TILE,
+			TMACoreObject.class, TYPE_TMA_CORE
+			);
+
+	private ChunkedImageDataIO() {
+		throw new AssertionError("Cannot instantiate this class");
+	}
+
+
+	/**
+	 * The type of objects stored in a chunk.
+	 */
+	public enum ChunkType {
+		/**
+		 * The root object, annotations, TMA cores and any other objects that aren't contained in a detection.
+		 */
+		STRUCTURE,
+		/**
+		 * Detections (including tiles and cells), along with their descendants.
+		 * These chunks contain only detections; a detection with any other kind of descendant is written
+		 * to a structure chunk instead.
+		 */
+		DETECTIONS
+	}
+
+	/**
+	 * Index entry for a chunk of objects within a data file.
+	 *
+	 * @param type the type of objects in the chunk
+	 * @param nObjects the number of objects in the chunk
+	 * @param offset the offset of the chunk, in bytes, relative to the end of the header
+	 * @param length the (compressed) length of the chunk, in bytes
+	 * @param decodedLength the decompressed length of the chunk, in bytes
+	 * @param region the region containing all the ROIs in a detection chunk, or null for a structure chunk
+	 */
+	public record ChunkInfo(ChunkType type, int nObjects, long offset, int length, int decodedLength, ImageRegion region) {}
+
+	/**
+	 * Header of a chunked data file, containing the image metadata and the chunk index.
+	 * This can be read without decoding any objects.
+	 */
+	public static class Header {
+
+		private String serverString;
+		private ImageData.ImageType imageType;
+		private ColorDeconvolutionStains stains;
+		private Workflow workflow;
+		private Map<String, Object> properties;
+		private int tmaGridWidth = -1;
+		private List<UUID> tmaCoreIDs = Collections.emptyList();
+		private List<ChunkInfo> chunks = Collections.emptyList();
+		// Offset of the first chunk from the start of the file, if known
+		private long dataOffset = -1;
+
+		private Header() {}
+
+		String getServerString() {
+			return serverString;
+		}
+
+		/**
+		 * Get the image type.
+		 * @return
+		 */
+		public ImageData.ImageType getImageType() {
+			return imageType;
+		}
+
+		/**
+		 * Get the color deconvolution stains, or null if none were stored.
+		 * @return
+		 */
+		public ColorDeconvolutionStains getColorDeconvolutionStains() {
+			return stains;
+		}
+
+		/**
+		 * Get the command history workflow, or null if none was stored.
+		 * @return
+		 */
+		public Workflow getWorkflow() {
+			return workflow;
+		}
+
+		/**
+		 * Get the image data properties.
+		 * @return an unmodifiable map
+		 */
+		public Map<String, Object> getProperties() {
+			return properties == null ? Collections.emptyMap() : Collections.unmodifiableMap(properties);
+		}
+
+		/**
+		 * Get the index of all the object chunks in the file.
+		 * @return
+		 */
+		public List<ChunkInfo> getChunks() {
+			return Collections.unmodifiableList(chunks);
+		}
+
+		/**
+		 * Get the total number of objects in the file, including the root object.
+		 * @return
+		 */
+		public long nObjects() {
+			return chunks.stream().mapToLong(ChunkInfo::nObjects).sum();
+		}
+
+	}
+
+
+	/**
+	 * Check whether a file is a chunked data file, by reading its first bytes.
+	 * @param path
+	 * @return true if the file starts with the identifier of a chunked data file
+	 * @throws IOException
+	 */
+	public static boolean isChunkedDataFile(Path path) throws IOException {
+		try (var stream = Files.newInputStream(path)) {
+			return isChunkedDataStream(new BufferedInputStream(stream));
+		}
+	}
+
+	/**
+	 * Check whether a stream contains a chunked data file, without consuming any bytes.
+	 * @param stream a stream that supports mark and reset
+	 * @return
+	 * @throws IOException
+	 */
+	static boolean isChunkedDataStream(InputStream stream) throws IOException {
+		if (!stream.markSupported())
+			throw new IllegalArgumentException("Stream must support mark and reset");
+		stream.mark(4);
+		try {
+			var bytes = stream.readNBytes(4);
+			return bytes.length == 4 && ((bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff)) == MAGIC;
+		} finally {
+			stream.reset();
+		}
+	}
+
+	/**
+	 * Read the header of a chunked data file, without decoding any objects.
+	 * @param path
+	 * @return
+	 * @throws IOException if the file could not be read, or is not a chunked data file
+	 */
+	public static Header readHeader(Path path) throws IOException {
+		var counting = new CountingInputStream(new BufferedInputStream(Files.newInputStream(path)));
+		try (var stream = new DataInputStream(counting)) {
+			var header = readHeader(stream);
+			header.dataOffset = counting.count;
+			return header;
+		}
+	}
+
+
+	/**
+	 * Check whether all the objects in a hierarchy can be written to a chunked data file.
+	 * This requires that all objects are of the standard QuPath types, and that objects outside detections
+	 * have unique IDs.
+	 * @param hierarchy
+	 * @return
+	 */
+	static boolean canWrite(PathObjectHierarchy hierarchy) {
+		return createLayout(hierarchy) != null;
+	}
+
+
+	/**
+	 * Write image data to a stream as a chunked data file.
+	 * @param stream the output stream; this is not closed
+	 * @param imageData the image data to write
+	 * @param serverString string representation of the server builder
+	 * @param properties the properties to write; these must all be serializable
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the hierarchy contains objects that can't be written; see {@link #canWrite(PathObjectHierarchy)}
+	 */
+	static void writeImageData(OutputStream stream, ImageData<?> imageData, String serverString, Map<String, Object> properties) throws IOException {
+		var hierarchy = imageData.getHierarchy();
+		if (hierarchy.getDeferredObjects() == null) {
+			writeImageData(stream, imageData, hierarchy, serverString, properties);
+		} else {
+			// Hold the hierarchy's lock so that deferred objects can't be loaded while writing -
+			// otherwise they could be written twice, or the file they are read from could be closed
+			synchronized (hierarchy) {
+				writeImageData(stream, imageData, hierarchy, serverString, properties);
+			}
+		}
+	}
+
+	private static void writeImageData(OutputStream stream, ImageData<?> imageData, PathObjectHierarchy hierarchy,
+			String serverString, Map<String, Object> properties) throws IOException {
+		var layout = createLayout(hierarchy);
+		if (layout == null)
+			throw new IllegalArgumentException("Hierarchy cannot be written as a chunked data file");
+
+		// Chunks that haven't been loaded can be copied unchanged, provided all their parents are still present
+		ChunkLoader loader = null;
+		List<ChunkInfo> unchanged = Collections.emptyList();
+		var deferred = hierarchy.getDeferredObjects();
+		if (deferred != null) {
+			if (deferred instanceof ChunkLoader chunkLoader && chunkLoader.hasParents(layout.ids)) {
+				loader = chunkLoader;
+				unchanged = chunkLoader.getPending();
+			} else {
+				logger.debug("Loading deferred objects before writing");
+				hierarchy.loadDeferredObjects();
+				layout = createLayout(hierarchy);
+				if (layout == null)
+					throw new IllegalArgumentException("Hierarchy cannot be written as a chunked data file");
+			}
+		}
+
+		// Encode all chunks in parallel
+		List<EncodedChunk> encoded;
+		try {
+			encoded = layout.chunks.parallelStream()
+					.map(ChunkedImageDataIO::encodeChunkUnchecked)
+					.toList();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		List<ChunkInfo> infos = new ArrayList<>();
+		long offset = 0;
+		for (int i = 0; i < layout.chunks.size(); i++) {
+			var chunk = layout.chunks.get(i);
+			var bytes = encoded.get(i);
+			infos.add(new ChunkInfo(chunk.type, chunk.nodes.size(), offset, bytes.compressed().length, bytes.decodedLength(), chunk.getRegion()));
+			offset += bytes.compressed().length;
+		}
+		for (var info : unchanged) {
+			infos.add(new ChunkInfo(info.type(), info.nObjects(), offset, info.length(), info.decodedLength(), info.region()));
+			offset += info.length();
+		}
+
+		var out = new DataOutputStream(stream);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		writeString(out, serverString);
+
+		// Write the remaining metadata with (filtered) serialization, since it is small and the objects are
+		// all serializable
+		var metadata = new ByteArrayOutputStream();
+		try (var metadataStream = new ObjectOutputStream(metadata)) {
+			metadataStream.writeObject(imageData.getImageType());
+			metadataStream.writeObject(imageData.getColorDeconvolutionStains());
+			metadataStream.writeObject(imageData.getHistoryWorkflow());
+			metadataStream.writeObject(new HashMap<>(properties));
+		}
+		out.writeInt(metadata.size());
+		metadata.writeTo(out);
+
+		var tmaGrid = hierarchy.getTMAGrid();
+		if (tmaGrid == null) {
+			out.writeInt(-1);
+			out.writeInt(0);
+		} else {
+			out.writeInt(tmaGrid.getGridWidth());
+			var cores = tmaGrid.getTMACoreList();
+			out.writeInt(cores.size());
+			for (var core : cores)
+				writeUUID(out, core.getID());
+		}
+
+		out.writeInt(infos.size());
+		for (var info : infos) {
+			out.writeByte(info.type().ordinal());
+			out.writeInt(info.nObjects());
+			out.writeLong(info.offset());
+			out.writeInt(info.length());
+			out.writeInt(info.decodedLength());
+			var region = info.region();
+			out.writeBoolean(region != null);
+			if (region != null) {
+				out.writeInt(region.getX());
+				out.writeInt(region.getY());
+				out.writeInt(region.getWidth());
+				out.writeInt(region.getHeight());
+				out.writeInt(region.getZ());
+				out.writeInt(region.getT());
+			}
+		}
+		for (var bytes : encoded)
+			out.write(bytes.compressed());
+		for (var info : unchanged)
+			out.write(loader.readChunk(info));
+		out.flush();
+	}
+
+
+	/**
+	 * Load any deferred detections of a hierarchy from a new data file, and release the file they were read from.
+	 * <p>
+	 * This should be called after writing the hierarchy to the file with {@link #writeImageData(OutputStream, ImageData, String, Map)}, 
+	 * while still holding the hierarchy's lock so that no deferred objects can be loaded in between.
+	 * Detection chunks that haven't been loaded are copied unchanged when writing, so they can be loaded from the new file - 
+	 * and the previous file can then be replaced or deleted.
+	 * <p>
+	 * This does nothing if the hierarchy doesn't have detections deferred from a chunked data file.
+	 * @param hierarchy the hierarchy that was written
+	 * @param path the new data file
+	 * @throws IOException if the file could not be read, or does not contain the deferred detections; 
+	 *                     in this case the previous file continues to be used
+	 */
+	static void reopenDeferredObjects(PathObjectHierarchy hierarchy, Path path) throws IOException {
+		synchronized (hierarchy) {
+			if (hierarchy.getDeferredObjects() instanceof ChunkLoader loader)
+				loader.reopen(path);
+		}
+	}
+
+
+	/**
+	 * Read the header from a chunked data stream, leaving the stream positioned at the start of the first chunk.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	static Header readHeader(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("Stream does not contain a chunked QuPath data file");
+		int version = in.readInt();
+		if (version > VERSION)
+			throw new IOException("Data file version " + version + " is not supported - it may have been written by a newer version of QuPath");
+
+		var header = new Header();
+		header.serverString = readString(in);
+
+		byte[] metadata = new byte[in.readInt()];
+		in.readFully(metadata);
+		try (var metadataStream = PathIO.createObjectInputStream(new ByteArrayInputStream(metadata))) {
+			header.imageType = (ImageData.ImageType)metadataStream.readObject();
+			header.stains = (ColorDeconvolutionStains)metadataStream.readObject();
+			header.workflow = (Workflow)metadataStream.readObject();
+			header.properties = (Map<String, Object>)metadataStream.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("Unable to read image metadata", e);
+		}
+
+		header.tmaGridWidth = in.readInt();
+		int nCores = in.readInt();
+		var coreIDs = new ArrayList<UUID>(nCores);
+		for (int i = 0; i < nCores; i++)
+			coreIDs.add(readUUID(in));
+		header.tmaCoreIDs = coreIDs;
+
+		int nChunks = in.readInt();
+		var types = ChunkType.values();
+		var chunks = new ArrayList<ChunkInfo>(nChunks);
+		for (int i = 0; i < nChunks; i++) {
+			var type = types[in.readByte()];
+			int nObjects = in.readInt();
+			long offset = in.readLong();
+			int length = in.readInt();
+			int decodedLength = in.readInt();
+			ImageRegion region = null;
+			if (in.readBoolean())
+				region = ImageRegion.createInstance(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+			chunks.add(new ChunkInfo(type, nObjects, offset, length, decodedLength, region));
+		}
+		header.chunks = chunks;
+		return header;
+	}
+
+
+	/**
+	 * Read all the objects from a chunked data stream, after the header has been read.
+	 * Chunks are decoded in parallel while the stream is being read.
+	 * @param in the stream, positioned at the start of the first chunk
+	 * @param header the header that was previously read from the stream
+	 * @return a new hierarchy containing all the objects
+	 * @throws IOException
+	 */
+	static PathObjectHierarchy readHierarchy(DataInputStream in, Header header) throws IOException {
+		var futures = new ArrayList<CompletableFuture<DecodedChunk>>();
+		long pos = 0;
+		for (var info : header.chunks) {
+			if (info.offset() > pos)
+				in.skipNBytes(info.offset() - pos);
+			byte[] bytes = new byte[info.length()];
+			in.readFully(bytes);
+			pos = info.offset() + info.length();
+			futures.add(CompletableFuture.supplyAsync(() -> decodeChunkUnchecked(info, bytes)));
+		}
+		return buildHierarchy(header, joinChunks(futures), new HashMap<>());
+	}
+
+
+	/**
+	 * Read the objects from a chunked data file, deferring detections until they are needed.
+	 * <p>
+	 * Structure chunks are read immediately, and the hierarchy loads detection chunks the first time
+	 * a region they overlap is requested (see {@link DeferredObjects}).
+	 * The file is kept open until all detections have been loaded.
+	 * @param path the data file
+	 * @param header the header, previously read using {@link #readHeader(Path)}
+	 * @return a new hierarchy containing all the objects outside detections, with the detections deferred
+	 * @throws IOException
+	 */
+	static PathObjectHierarchy readHierarchyLazily(Path path, Header header) throws IOException {
+		if (header.dataOffset < 0)
+			throw new IllegalArgumentException("Header must be read from a file");
+		var loader = new ChunkLoader(FileChannel.open(path, StandardOpenOption.READ), header.dataOffset);
+		try {
+			List<ChunkInfo> structure = new ArrayList<>();
+			List<ChunkInfo> detections = new ArrayList<>();
+			for (var info : header.chunks) {
+				if (info.type() == ChunkType.DETECTIONS)
+					detections.add(info);
+				else
+					structure.add(info);
+			}
+			Map<UUID, PathObject> structureObjects = new HashMap<>();
+			var hierarchy = buildHierarchy(header, loader.decode(structure), structureObjects);
+			if (detections.isEmpty()) {
+				loader.close();
+			} else {
+				loader.defer(detections, structureObjects, hierarchy.getRootObject());
+				hierarchy.setDeferredObjects(loader);
+			}
+			return hierarchy;
+		} catch (IOException | RuntimeException e) {
+			loader.close();
+			throw e;
+		}
+	}
+
+
+	private static List<DecodedChunk> joinChunks(List<CompletableFuture<DecodedChunk>> futures) throws IOException {
+		var chunks = new ArrayList<DecodedChunk>(futures.size());
+		try {
+			for (var future : futures)
+				chunks.add(future.join());
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException ioe)
+				throw ioe.getCause();
+			throw new IOException(e.getCause());
+		}
+		return chunks;
+	}
+
+
+	/**
+	 * Build a hierarchy from decoded chunks, which must include all the structure chunks.
+	 * @param header
+	 * @param chunks
+	 * @param structureObjects map to populate with all the objects in structure chunks, mapped by ID
+	 * @return
+	 * @throws IOException
+	 */
+	private static PathObjectHierarchy buildHierarchy(Header header, List<DecodedChunk> chunks, Map<UUID, PathObject> structureObjects) throws IOException {
+		var hierarchy = new PathObjectHierarchy();
+		var root = hierarchy.getRootObject();
+
+		// Map IDs of all objects outside detections, since these may be referenced from other chunks
+		boolean rootFound = false;
+		for (var chunk : chunks) {
+			if (chunk.info.type() != ChunkType.STRUCTURE)
+				continue;
+			for (int i = 0; i < chunk.objects.length; i++) {
+				var pathObject = chunk.objects[i];
+				if (chunk.parents[i] == NO_PARENT) {
+					if (rootFound || !pathObject.isRootObject())
+						throw new IOException("Data file contains more than one root object");
+					copyRootProperties(pathObject, root);
+					chunk.objects[i] = root;
+					pathObject = root;
+					rootFound = true;
+				}
+				structureObjects.put(pathObject.getID(), pathObject);
+			}
+		}
+		if (!rootFound)
+			throw new IOException("Data file does not contain a root object");
+
+		// Group objects by parent, then add them all at once
+		Map<PathObject, ChildList> childLists = new IdentityHashMap<>();
+		for (var chunk : chunks)
+			collectChildren(chunk, structureObjects, root, childLists, childLists);
+		childLists.entrySet()
+			.parallelStream()
+			.forEach(entry -> entry.getKey().addChildObjects(entry.getValue().toSortedList()));
+
+		if (header.tmaGridWidth > 0) {
+			var cores = new ArrayList<TMACoreObject>();
+			for (var id : header.tmaCoreIDs) {
+				if (structureObjects.get(id) instanceof TMACoreObject core)
+					cores.add(core);
+				else
+					throw new IOException("TMA core " + id + " not found");
+			}
+			hierarchy.setTMAGrid(DefaultTMAGrid.create(cores, header.tmaGridWidth));
+		} else
+			hierarchy.fireHierarchyChangedEvent(root);
+		return hierarchy;
+	}
+
+	/**
+	 * Group the objects in a decoded chunk according to their parents.
+	 * @param chunk the chunk
+	 * @param structureObjects objects that may be referenced as parents from outside the chunk
+	 * @param root root object, used if a parent can't be found
+	 * @param localChildren map to which objects with parents in the same chunk should be added
+	 * @param externalChildren map to which objects with parents outside the chunk should be added
+	 */
+	private static void collectChildren(DecodedChunk chunk, Map<UUID, PathObject> structureObjects, PathObject root,
+			Map<PathObject, ChildList> localChildren, Map<PathObject, ChildList> externalChildren) {
+		for (int i = 0; i < chunk.objects.length; i++) {
+			int ref = chunk.parents[i];
+			if (ref == NO_PARENT)
+				continue;
+			PathObject parent;
+			Map<PathObject, ChildList> map;
+			if (ref >= 0) {
+				parent = chunk.objects[ref];
+				map = localChildren;
+			} else {
+				parent = structureObjects.get(chunk.externalParents[-ref - 1]);
+				if (parent == null) {
+					logger.warn("Parent {} not found - object will be added to the root", chunk.externalParents[-ref - 1]);
+					parent = root;
+				}
+				map = externalChildren;
+			}
+			map.computeIfAbsent(parent, p -> new ChildList()).add(chunk.objects[i], chunk.positions[i]);
+		}
+	}
+
+	private static boolean overlaps(ImageRegion region, ImageRegion chunkRegion) {
+		if (chunkRegion == null)
+			return true;
+		return region.getZ() == chunkRegion.getZ() && region.getT() == chunkRegion.getT() &&
+				region.getMinX() <= chunkRegion.getMaxX() && region.getMaxX() >= chunkRegion.getMinX() &&
+				region.getMinY() <= chunkRegion.getMaxY() && region.getMaxY() >= chunkRegion.getMinY();
+	}
+
+	private static void copyRootProperties(PathObject source, PathObject target) {
+		target.setID(source.getID());
+		target.setName(source.getName());
+		target.setColor(source.getColor());
+		if (source.hasMetadata())
+			target.getMetadata().putAll(source.getMetadata());
+		if (source.hasMeasurements())
+			target.getMeasurementList().putAll(source.getMeasurementList());
+	}
+
+
+	/**
+	 * Create the layout of chunks for the hierarchy, or null if it contains objects that can't be written.
+	 */
+	private static Layout createLayout(PathObjectHierarchy hierarchy) {
+		var rootNode = new Node(hierarchy.getRootObject(), null, 0);
+		List<Node> structure = new ArrayList<>();
+		List<Unit> units = new ArrayList<>();
+		structure.add(rootNode);
+		if (!collectNodes(rootNode, structure, units))
+			return null;
+
+		// Check IDs are unique, since they are used to find parents
+		var layout = new Layout();
+		for (var node : structure) {
+			if (!layout.ids.add(node.pathObject.getID())) {
+				logger.debug("Duplicate object ID {}", node.pathObject.getID());
+				return null;
+			}
+		}
+
+		for (int i = 0; i < structure.size(); i += MAX_CHUNK_SIZE)
+			layout.add(new Chunk(ChunkType.STRUCTURE, structure.subList(i, Math.min(structure.size(), i + MAX_CHUNK_SIZE))));
+
+		// Order detections by plane, then spatially, so that chunks cover compact regions
+		units.sort(Comparator.comparingInt((Unit u) -> u.t)
+				.thenComparingInt(u -> u.z)
+				.thenComparingLong(u -> u.cell));
+
+		List<Node> current = new ArrayList<>();
+		Unit lastUnit = null;
+		for (var unit : units) {
+			boolean samePlane = lastUnit != null && unit.t == lastUnit.t && unit.z == lastUnit.z;
+			if (!current.isEmpty() && (!samePlane || current.size() + unit.nodes.size() > MAX_CHUNK_SIZE)) {
+				layout.add(new Chunk(ChunkType.DETECTIONS, current));
+				current = new ArrayList<>();
+			}
+			current.addAll(unit.nodes);
+			lastUnit = unit;
+		}
+		if (!current.isEmpty())
+			layout.add(new Chunk(ChunkType.DETECTIONS, current));
+		return layout;
+	}
+
+	/**
+	 * Collect nodes below a node, adding objects outside detections to the structure list and
+	 * detections (with all their descendants) as units.
+	 * @return false if an object can't be written
+	 */
+	private static boolean collectNodes(Node node, List<Node> structure, List<Unit> units) {
+		if (!OBJECT_TYPES.containsKey(node.pathObject.getClass())) {
+			logger.debug("Unsupported object class {}", node.pathObject.getClass());
+			return false;
+		}
+		if (!node.pathObject.hasChildObjects())
+			return true;
+		int position = 0;
+		for (var child : node.pathObject.getChildObjectsAsArray()) {
+			var childNode = new Node(child, node, position++);
+			if (child.isDetection()) {
+				var nodes = new ArrayList<Node>();
+				if (!collectSubtree(childNode, nodes))
+					return false;
+				// Detection chunks contain only detections, so that they can be loaded on demand
+				if (nodes.stream().allMatch(n -> n.pathObject.isDetection()))
+					units.add(new Unit(nodes));
+				else
+					structure.addAll(nodes);
+			} else {
+				structure.add(childNode);
+				if (!collectNodes(childNode, structure, units))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean collectSubtree(Node node, List<Node> nodes) {
+		if (!OBJECT_TYPES.containsKey(node.pathObject.getClass()) || !node.pathObject.hasROI()) {
+			logger.debug("Unsupported object {}", node.pathObject);
+			return false;
+		}
+		nodes.add(node);
+		if (node.pathObject.hasChildObjects()) {
+			int position = 0;
+			for (var child : node.pathObject.getChildObjectsAsArray()) {
+				if (!collectSubtree(new Node(child, node, position++), nodes))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private static long interleaveBits(long x, long y) {
+		return spreadBits(x) | (spreadBits(y) << 1);
+	}
+
+	private static long spreadBits(long v) {
+		v &= 0xFFFFFFFFL;
+		v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+		v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+		v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+		v = (v | (v << 2)) & 0x3333333333333333L;
+		v = (v | (v << 1)) & 0x5555555555555555L;
+		return v;
+	}
+
+
+	private static EncodedChunk encodeChunkUnchecked(Chunk chunk) {
+		try {
+			return encodeChunk(chunk);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static EncodedChunk encodeChunk(Chunk chunk) throws IOException {
+		var nodes = chunk.nodes;
+		int n = nodes.size();
+
+		// Find parents outside the chunk, and all the classifications
+		Map<Node, Integer> externalParents = new IdentityHashMap<>();
+		Map<PathClass, Integer> pathClasses = new LinkedHashMap<>();
+		int[] parents = new int[n];
+		for (int i = 0; i < n; i++) {
+			var node = nodes.get(i);
+			var parent = node.parent;
+			if (parent == null)
+				parents[i] = NO_PARENT;
+			else if (parent.chunk == chunk)
+				parents[i] = parent.index;
+			else
+				parents[i] = -1 - externalParents.computeIfAbsent(parent, p -> externalParents.size());
+			var pathClass = node.pathObject.getPathClass();
+			if (pathClass != null)
+				pathClasses.putIfAbsent(pathClass, pathClasses.size());
+		}
+
+		var bytes = new ByteArrayOutputStream(n * 256);
+		var out = new DataOutputStream(bytes);
+		out.writeInt(n);
+		out.writeInt(externalParents.size());
+		var externalArray = new Node[externalParents.size()];
+		for (var entry : externalParents.entrySet())
+			externalArray[entry.getValue()] = entry.getKey();
+		for (var parent : externalArray)
+			writeUUID(out, parent.pathObject.getID());
+		out.writeInt(pathClasses.size());
+		for (var pathClass : pathClasses.keySet()) {
+			writeString(out, pathClass.toString());
+			var color = pathClass.getColor();
+			out.writeBoolean(color != null);
+			if (color != null)
+				out.writeInt(color);
+		}
+
+		// Write types before measurements, since they are needed to create the measurement lists
+		for (var node : nodes)
+			out.writeByte(OBJECT_TYPES.get(node.pathObject.getClass()));
+
+		writeMeasurements(out, nodes);
+
+		for (int i = 0; i < n; i++) {
+			var node = nodes.get(i);
+			var pathObject = node.pathObject;
+			out.writeInt(parents[i]);
+			out.writeInt(node.position);
+			writeUUID(out, pathObject.getID());
+
+			var name = pathObject.getName();
+			var color = pathObject.getColor();
+			var pathClass = pathObject.getPathClass();
+			double probability = pathObject.getClassProbability();
+			var roi = pathObject.getROI();
+			var nucleus = pathObject instanceof PathCellObject cell ? cell.getNucleusROI() : null;
+			int flags = 0;
+			if (name != null)
+				flags |= FLAG_NAME;
+			if (color != null)
+				flags |= FLAG_COLOR;
+			if (pathObject instanceof PathROIObject && pathObject.isLocked())
+				flags |= FLAG_LOCKED;
+			if (pathObject.hasMetadata())
+				flags |= FLAG_METADATA;
+			if (pathClass != null && !Double.isNaN(probability))
+				flags |= FLAG_PROBABILITY;
+			if (roi != null)
+				flags |= FLAG_ROI;
+			if (nucleus != null)
+				flags |= FLAG_NUCLEUS;
+			if (pathObject instanceof TMACoreObject core && core.isMissing())
+				flags |= FLAG_MISSING;
+			out.writeByte(flags);
+
+			if (name != null)
+				writeString(out, name);
+			if (color != null)
+				out.writeInt(color);
+			out.writeInt(pathClass == null ? -1 : pathClasses.get(pathClass));
+			if ((flags & FLAG_PROBABILITY) != 0)
+				out.writeDouble(probability);
+			if ((flags & FLAG_METADATA) != 0) {
+				var metadata = pathObject.getMetadata();
+				out.writeInt(metadata.size());
+				for (var entry : metadata.entrySet()) {
+					writeString(out, entry.getKey());
+					writeString(out, entry.getValue());
+				}
+			}
+			if (roi != null)
+				RoiBinaryCodec.writeROI(out, roi);
+			if (nucleus != null)
+				RoiBinaryCodec.writeROI(out, nucleus);
+		}
+		out.flush();
+
+		int decodedLength = bytes.size();
+		var deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(bytes.toByteArray());
+			deflater.finish();
+			var compressed = new ByteArrayOutputStream(decodedLength / 2 + 64);
+			byte[] buffer = new byte[65536];
+			while (!deflater.finished()) {
+				int len = deflater.deflate(buffer);
+				compressed.write(buffer, 0, len);
+			}
+			return new EncodedChunk(compressed.toByteArray(), decodedLength);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Write the measurements for a chunk, one column per measurement name.
+	 * Each column is written with float precision if that is sufficient to represent all values exactly.
+	 */
+	private static void writeMeasurements(DataOutput out, List<Node> nodes) throws IOException {
+		int n = nodes.size();
+		Map<String, MeasurementColumn> columns = new LinkedHashMap<>();
+		for (int i = 0; i < n; i++) {
+			var pathObject = nodes.get(i).pathObject;
+			if (!pathObject.hasMeasurements())
+				continue;
+			var list = pathObject.getMeasurementList();
+			synchronized (list) {
+				var names = list.getNames();
+				var values = list.values();
+				boolean aligned = values.length == names.size();
+				for (int j = 0; j < names.size(); j++) {
+					var name = names.get(j);
+					double value = aligned ? values[j] : list.get(name);
+					columns.computeIfAbsent(name, k -> new MeasurementColumn(n)).set(i, value);
+				}
+			}
+		}
+		out.writeInt(columns.size());
+		for (var entry : columns.entrySet()) {
+			var column = entry.getValue();
+			writeString(out, entry.getKey());
+			out.writeBoolean(column.isFloat);
+			var words = column.present.toLongArray();
+			out.writeInt(words.length);
+			for (long word : words)
+				out.writeLong(word);
+			for (int i = column.present.nextSetBit(0); i >= 0; i = column.present.nextSetBit(i+1)) {
+				if (column.isFloat)
+					out.writeFloat((float)column.values[i]);
+				else
+					out.writeDouble(column.values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Read the measurements for a chunk, returning an array of lists (or null values for objects without measurements).
+	 * Detections with float measurements share a columnar store.
+	 */
+	private static MeasurementList[] readMeasurements(DataInput in, byte[] types, int n) throws IOException {
+		int nColumns = in.readInt();
+		if (nColumns == 0)
+			return null;
+		var names = new String[nColumns];
+		var isFloat = new boolean[nColumns];
+		var present = new BitSet[nColumns];
+		var values = new double[nColumns][];
+		boolean allFloat = true;
+		var hasMeasurements = new BitSet(n);
+		for (int c = 0; c < nColumns; c++) {
+			names[c] = readString(in);
+			isFloat[c] = in.readBoolean();
+			allFloat = allFloat && isFloat[c];
+			long[] words = new long[in.readInt()];
+			for (int w = 0; w < words.length; w++)
+				words[w] = in.readLong();
+			present[c] = BitSet.valueOf(words);
+			hasMeasurements.or(present[c]);
+			double[] columnValues = new double[present[c].cardinality()];
+			for (int i = 0; i < columnValues.length; i++)
+				columnValues[i] = isFloat[c] ? in.readFloat() : in.readDouble();
+			values[c] = columnValues;
+		}
+
+		var lists = new MeasurementList[n];
+		var store = allFloat ? MeasurementListFactory.createColumnarStore() : null;
+		for (int i = hasMeasurements.nextSetBit(0); i >= 0; i = hasMeasurements.nextSetBit(i+1)) {
+			boolean isDetection = types[i] == TYPE_DETECTION || types[i] == TYPE_CELL || types[i] == TYPE_TILE;
+			if (store != null && isDetection)
+				lists[i] = store.createMeasurementList();
+			else
+				lists[i] = MeasurementListFactory.createMeasurementList(0,
+						isDetection ? MeasurementList.MeasurementListType.DOUBLE : MeasurementList.MeasurementListType.GENERAL);
+		}
+		for (int c = 0; c < nColumns; c++) {
+			int k = 0;
+			var name = names[c];
+			var columnValues = values[c];
+			for (int i = present[c].nextSetBit(0); i >= 0; i = present[c].nextSetBit(i+1))
+				lists[i].put(name, columnValues[k++]);
+		}
+		for (var list : lists) {
+			if (list != null)
+				list.close();
+		}
+		return lists;
+	}
+
+
+	private static DecodedChunk decodeChunkUnchecked(ChunkInfo info, byte[] bytes) {
+		try {
+			return decodeChunk(info, bytes);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static DecodedChunk decodeChunk(ChunkInfo info, byte[] compressed) throws IOException {
+		byte[] bytes = new byte[info.decodedLength()];
+		var inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			int len = 0;
+			while (len < bytes.length && !inflater.finished()) {
+				int n = inflater.inflate(bytes, len, bytes.length - len);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					throw new EOFException("Unexpected end of chunk data");
+				len += n;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Unable to decompress chunk", e);
+		} finally {
+			inflater.end();
+		}
+
+		var in = new DataInputStream(new ByteArrayInputStream(bytes));
+		int n = in.readInt();
+		var chunk = new DecodedChunk(info, n);
+		chunk.externalParents = new UUID[in.readInt()];
+		for (int i = 0; i < chunk.externalParents.length; i++)
+			chunk.externalParents[i] = readUUID(in);
+		var pathClasses = new PathClass[in.readInt()];
+		for (int i = 0; i < pathClasses.length; i++) {
+			var name = readString(in);
+			Integer color = in.readBoolean() ? in.readInt() : null;
+			pathClasses[i] = PathClass.fromString(name, color);
+		}
+
+		var types = new byte[n];
+		in.readFully(types);
+		var lists = readMeasurements(in, types, n);
+
+		for (int i = 0; i < n; i++) {
+			byte type = types[i];
+			chunk.parents[i] = in.readInt();
+			chunk.positions[i] = in.readInt();
+			var id = readUUID(in);
+			int flags = in.readByte() & 0xff;
+			String name = (flags & FLAG_NAME) != 0 ? readString(in) : null;
+			Integer color = (flags & FLAG_COLOR) != 0 ? in.readInt() : null;
+			int classIndex = in.readInt();
+			var pathClass = classIndex < 0 ? null : pathClasses[classIndex];
+			double probability = (flags & FLAG_PROBABILITY) != 0 ? in.readDouble() : Double.NaN;
+			Map<String, String> metadata = null;
+			if ((flags & FLAG_METADATA) != 0) {
+				int nMetadata = in.readInt();
+				metadata = new LinkedHashMap<>();
+				for (int m = 0; m < nMetadata; m++)
+					metadata.put(readString(in), readString(in));
+			}
+			ROI roi = (flags & FLAG_ROI) != 0 ? RoiBinaryCodec.readROI(in) : null;
+			ROI nucleus = (flags & FLAG_NUCLEUS) != 0 ? RoiBinaryCodec.readROI(in) : null;
+			var measurements = lists == null ? null : lists[i];
+
+			PathObject pathObject = switch (type) {
+			case TYPE_ROOT -> new PathRootObject();
+			case TYPE_ANNOTATION -> PathObjects.createAnnotationObject(roi, pathClass, measurements);
+			case TYPE_DETECTION -> PathObjects.createDetectionObject(roi, pathClass, measurements);
+			case TYPE_CELL -> PathObjects.createCellObject(roi, nucleus, pathClass, measurements);
+			case TYPE_TILE -> PathObjects.createTileObject(roi, pathClass, measurements);
+			case TYPE_TMA_CORE -> {
+				var core = new TMACoreObject();
+				core.setROI(roi);
+				core.setMissing((flags & FLAG_MISSING) != 0);
+				yield core;
+			}
+			default -> throw new IOException("Unknown object type " + type);
+			};
+			if (type == TYPE_ROOT || type == TYPE_TMA_CORE) {
+				if (measurements != null)
+					pathObject.getMeasurementList().putAll(measurements);
+			}
+			if (type == TYPE_TMA_CORE || (pathClass != null && !Double.isNaN(probability)))
+				pathObject.setPathClass(pathClass, probability);
+			pathObject.setID(id);
+			pathObject.setName(name);
+			// Set color after the classification, since setting the classification can reset the color
+			if (color != null)
+				pathObject.setColor(color);
+			if ((flags & FLAG_LOCKED) != 0)
+				pathObject.setLocked(true);
+			if (metadata != null)
+				pathObject.getMetadata().putAll(metadata);
+			chunk.objects[i] = pathObject;
+		}
+		return chunk;
+	}
+
+	private static void writeString(DataOutput out, String s) throws IOException {
+		// Avoid writeUTF, since it is limited to 64 kB
+		var bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		var bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeUUID(DataOutput out, UUID id) throws IOException {
+		out.writeLong(id.getMostSignificantBits());
+		out.writeLong(id.getLeastSignificantBits());
+	}
+
+	private static UUID readUUID(DataInput in) throws IOException {
+		return new UUID(in.readLong(), in.readLong());
+	}
+
+
+	/**
+	 * An object to write, with its location in the hierarchy and (once assigned) in a chunk.
+	 */
+	private static class Node {
+
+		private final PathObject pathObject;
+		private final Node parent;
+		private final int position;
+
+		private Chunk chunk;
+		private int index;
+
+		private Node(PathObject pathObject, Node parent, int position) {
+			this.pathObject = pathObject;
+			this.parent = parent;
+			this.position = position;
+		}
+
+	}
+
+	/**
+	 * A detection and all its descendants, which must be written to the same chunk.
+	 */
+	private static class Unit {
+
+		private final List<Node> nodes;
+		private final int t;
+		private final int z;
+		private final long cell;
+
+		private Unit(List<Node> nodes) {
+			this.nodes = nodes;
+			var roi = nodes.getFirst().pathObject.getROI();
+			this.t = roi.getT();
+			this.z = roi.getZ();
+			long cellX = Math.max(0, (long)(roi.getBoundsX() + roi.getBoundsWidth()/2) / CELL_SIZE);
+			long cellY = Math.max(0, (long)(roi.getBoundsY() + roi.getBoundsHeight()/2) / CELL_SIZE);
+			this.cell = interleaveBits(cellX, cellY);
+		}
+
+	}
+
+	private static class Chunk {
+
+		private final ChunkType type;
+		private final List<Node> nodes;
+
+		private Chunk(ChunkType type, List<Node> nodes) {
+			this.type = type;
+			this.nodes = nodes;
+			int i = 0;
+			for (var node : nodes) {
+				node.chunk = this;
+				node.index = i++;
+			}
+		}
+
+		private ImageRegion getRegion() {
+			if (type != ChunkType.DETECTIONS)
+				return null;
+			double x1 = Double.POSITIVE_INFINITY, y1 = Double.POSITIVE_INFINITY;
+			double x2 = Double.NEGATIVE_INFINITY, y2 = Double.NEGATIVE_INFINITY;
+			for (var node : nodes) {
+				var roi = node.pathObject.getROI();
+				x1 = Math.min(x1, roi.getBoundsX());
+				y1 = Math.min(y1, roi.getBoundsY());
+				x2 = Math.max(x2, roi.getBoundsX() + roi.getBoundsWidth());
+				y2 = Math.max(y2, roi.getBoundsY() + roi.getBoundsHeight());
+			}
+			var roi = nodes.getFirst().pathObject.getROI();
+			int x = (int)Math.floor(x1);
+			int y = (int)Math.floor(y1);
+			return ImageRegion.createInstance(x, y, (int)Math.ceil(x2) - x, (int)Math.ceil(y2) - y, roi.getZ(), roi.getT());
+		}
+
+	}
+
+	private static class Layout {
+
+		private final List<Chunk> chunks = new ArrayList<>();
+		private final Set<UUID> ids = new HashSet<>();
+
+		private void add(Chunk chunk) {
+			chunks.add(chunk);
+		}
+
+	}
+
+	private static class MeasurementColumn {
+
+		private final double[] values;
+		private final BitSet present;
+		private boolean isFloat = true;
+
+		private MeasurementColumn(int n) {
+			this.values = new double[n];
+			this.present = new BitSet(n);
+		}
+
+		private void set(int i, double value) {
+			values[i] = value;
+			present.set(i);
+			if (isFloat && !Double.isNaN(value) && (double)(float)value != value)
+				isFloat = false;
+		}
+
+	}
+
+	private record EncodedChunk(byte[] compressed, int decodedLength) {}
+
+	private static class DecodedChunk {
+
+		private final ChunkInfo info;
+		private final PathObject[] objects;
+		private final int[] parents;
+		private final int[] positions;
+		private UUID[] externalParents;
+
+		private DecodedChunk(ChunkInfo info, int n) {
+			this.info = info;
+			this.objects = new PathObject[n];
+			this.parents = new int[n];
+			this.positions = new int[n];
+		}
+
+	}
+
+	/**
+	 * Children of a single parent, with their original positions.
+	 */
+	private static class ChildList {
+
+		private PathObject[] objects = new PathObject[4];
+		private int[] positions = new int[4];
+		private int size = 0;
+		private boolean sorted = true;
+
+		private void add(PathObject pathObject, int position) {
+			if (size == objects.length) {
+				objects = Arrays.copyOf(objects, size * 2);
+				positions = Arrays.copyOf(positions, size * 2);
+			}
+			if (size > 0 && positions[size-1] > position)
+				sorted = false;
+			objects[size] = pathObject;
+			positions[size] = position;
+			size++;
+		}
+
+		private List<PathObject> toSortedList() {
+			if (sorted)
+				return Arrays.asList(objects).subList(0, size);
+			var inds = new Integer[size];
+			for (int i = 0; i < size; i++)
+				inds[i] = i;
+			Arrays.sort(inds, Comparator.comparingInt(i -> positions[i]));
+			var list = new ArrayList<PathObject>(size);
+			for (var i : inds)
+				list.add(objects[i]);
+			return list;
+		}
+
+	}
+
+	/**
+	 * Detection chunks that are read from a file only when they are needed.
+	 * All methods are called while holding the lock of the hierarchy that owns the loader.
+	 * <p>
+	 * The file is closed when all chunks have been loaded, or the hierarchy discards the loader - 
+	 * or, failing that, when the loader is garbage collected (e.g. because the image data was dropped).
+	 */
+	private static class ChunkLoader implements DeferredObjects {
+
+		private static final Cleaner cleaner = Cleaner.create();
+
+		private FileChannel channel;
+		private Cleaner.Cleanable cleanable;
+		private long dataOffset;
+		private final List<ChunkInfo> pending = new ArrayList<>();
+		private Map<UUID, PathObject> parents = Collections.emptyMap();
+		private PathObject root;
+
+		private ChunkLoader(FileChannel channel, long dataOffset) {
+			this.channel = channel;
+			this.cleanable = cleaner.register(this, new ChannelCloser(channel));
+			this.dataOffset = dataOffset;
+		}
+
+		private void defer(List<ChunkInfo> chunks, Map<UUID, PathObject> parents, PathObject root) {
+			this.pending.addAll(chunks);
+			this.parents = parents;
+			this.root = root;
+		}
+
+		private List<ChunkInfo> getPending() {
+			return new ArrayList<>(pending);
+		}
+
+		@Override
+		public long nObjects() {
+			return pending.stream().mapToLong(ChunkInfo::nObjects).sum();
+		}
+
+		@Override
+		public Map<PathObject, List<PathObject>> load(ImageRegion region) throws IOException {
+			var toLoad = pending.stream()
+					.filter(info -> region == null || overlaps(region, info.region()))
+					.toList();
+			if (toLoad.isEmpty())
+				return Collections.emptyMap();
+
+			Map<PathObject, ChildList> localChildren = new IdentityHashMap<>();
+			Map<PathObject, ChildList> externalChildren = new IdentityHashMap<>();
+			for (var chunk : decode(toLoad))
+				collectChildren(chunk, parents, root, localChildren, externalChildren);
+			pending.removeAll(toLoad);
+
+			// Objects with parents in the same chunk can be added now, since they aren't yet in the hierarchy
+			for (var entry : localChildren.entrySet())
+				entry.getKey().addChildObjects(entry.getValue().toSortedList());
+			Map<PathObject, List<PathObject>> loaded = new IdentityHashMap<>();
+			for (var entry : externalChildren.entrySet())
+				loaded.put(entry.getKey(), entry.getValue().toSortedList());
+			return loaded;
+		}
+
+		private List<DecodedChunk> decode(List<ChunkInfo> infos) throws IOException {
+			var futures = new ArrayList<CompletableFuture<DecodedChunk>>();
+			for (var info : infos) {
+				byte[] bytes = readChunk(info);
+				futures.add(CompletableFuture.supplyAsync(() -> decodeChunkUnchecked(info, bytes)));
+			}
+			return joinChunks(futures);
+		}
+
+		/**
+		 * Check that the parents of all pending chunks are found in a set of IDs, by reading the start of each chunk.
+		 */
+		private boolean hasParents(Set<UUID> ids) throws IOException {
+			for (var info : pending) {
+				try (var in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(readChunk(info))))) {
+					in.readInt();
+					int nExternal = in.readInt();
+					for (int i = 0; i < nExternal; i++) {
+						if (!ids.contains(readUUID(in)))
+							return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Read the pending chunks from a new file, closing the current one.
+		 * Chunks that haven't been loaded are written last when saving, in the same order, so they are found 
+		 * at the end of the new file.
+		 */
+		private void reopen(Path path) throws IOException {
+			var header = readHeader(path);
+			int nChunks = header.chunks.size();
+			int nPending = pending.size();
+			if (nChunks < nPending)
+				throw new IOException("Deferred objects not found in " + path);
+			var chunks = header.chunks.subList(nChunks - nPending, nChunks);
+			for (int i = 0; i < nPending; i++) {
+				var info = pending.get(i);
+				var newInfo = chunks.get(i);
+				if (!info.equals(new ChunkInfo(newInfo.type(), newInfo.nObjects(), info.offset(), newInfo.length(), newInfo.decodedLength(), newInfo.region())))
+					throw new IOException("Deferred objects not found in " + path);
+			}
+			var newChannel = FileChannel.open(path, StandardOpenOption.READ);
+			cleanable.clean();
+			channel = newChannel;
+			cleanable = cleaner.register(this, new ChannelCloser(newChannel));
+			dataOffset = header.dataOffset;
+			pending.clear();
+			pending.addAll(chunks);
+		}
+
+		private byte[] readChunk(ChunkInfo info) throws IOException {
+			var buffer = ByteBuffer.allocate(info.length());
+			long position = dataOffset + info.offset();
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0)
+					throw new EOFException("Unexpected end of data file");
+			}
+			return buffer.array();
+		}
+
+		@Override
+		public void close() throws IOException {
+			cleanable.clean();
+		}
+
+	}
+
+	/**
+	 * Close the file used by a {@link ChunkLoader}.
+	 * This must not reference the loader, so that it can be used with a {@link Cleaner}.
+	 */
+	private static class ChannelCloser implements Runnable {
+
+		private final FileChannel channel;
+
+		private ChannelCloser(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public void run() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				logger.warn("Exception closing data file: {}", e.getMessage(), e);
+			}
+		}
+
+	}
+
+	/**
+	 * Input stream that counts the bytes that have been read, so that the end of the header can be found.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		private long count = 0;
+
+		private CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				count += n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+	}
+
+}
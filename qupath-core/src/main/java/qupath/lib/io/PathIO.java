@@ -44,6 +44,7 @@ import qupath.lib.plugins.workflow.Workflow;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -110,6 +111,37 @@ public class PathIO {
 	
 	private static int requestedDataFileVersion = DATA_FILE_VERSION - 1;
 	
+	private static boolean writeChunkedDataFiles = false;
+	
+	/**
+	 * Query whether .qpdata files are written in the chunked binary format.
+	 * 
+	 * @return
+	 * @see #setWriteChunkedDataFiles(boolean)
+	 * @since v0.6.0
+	 */
+	public static boolean getWriteChunkedDataFiles() {
+		return writeChunkedDataFiles;
+	}
+	
+	/**
+	 * Set whether .qpdata files should be written in the chunked binary format, rather than 
+	 * with Java serialization (the default).
+	 * <p>
+	 * The chunked format is much faster to read and write for images with many objects, 
+	 * but can't be read by QuPath versions before v0.6.0 - so it is off by default, to ensure that 
+	 * projects can still be opened with earlier versions.
+	 * Data files that contain object types the format doesn't support are always written with Java serialization.
+	 * Both formats can be read, regardless of this setting.
+	 * 
+	 * @param doChunked
+	 * @see ChunkedImageDataIO
+	 * @since v0.6.0
+	 */
+	public static void setWriteChunkedDataFiles(boolean doChunked) {
+		writeChunkedDataFiles = doChunked;
+	}
+	
 	/**
 	 * Get the requested version for .qpdata files.
 	 * 
@@ -170,15 +202,21 @@ public class PathIO {
 	public static String readSerializedServerPath(final File file) throws FileNotFoundException, IOException, ClassNotFoundException {
 		String serverPath = null;
 		try (FileInputStream fileIn = new FileInputStream(file)) {
-			ObjectInputStream inStream = createObjectInputStream(new BufferedInputStream(fileIn));
-			
-			// Check the first line, then read the server path if it is valid
-			String firstLine = inStream.readUTF();
-			if (firstLine.startsWith("Data file version")) {
-				serverPath = (String)inStream.readObject();
-				serverPath = serverPath.substring("Image path: ".length()).trim();
+			var stream = new BufferedInputStream(fileIn);
+			if (ChunkedImageDataIO.isChunkedDataStream(stream)) {
+				// Chunked files store the same server string in their header
+				serverPath = ChunkedImageDataIO.readHeader(new DataInputStream(stream)).getServerString();
+			} else {
+				ObjectInputStream inStream = createObjectInputStream(stream);
+				
+				// Check the first line, then read the server path if it is valid
+				String firstLine = inStream.readUTF();
+				if (firstLine.startsWith("Data file version"))
+					serverPath = (String)inStream.readObject();
 			}
 		}
+		if (serverPath != null && serverPath.startsWith("Image path: "))
+			serverPath = serverPath.substring("Image path: ".length()).trim();
 		return serverPath;
 	}
 	
@@ -192,7 +230,12 @@ public class PathIO {
 	 */
 	public static <T> ServerBuilder<T> extractServerBuilder(Path file) throws IOException {
 		try (InputStream fileIn = Files.newInputStream(file)) {
-			ObjectInputStream inStream = createObjectInputStream(new BufferedInputStream(fileIn));
+			var stream = new BufferedInputStream(fileIn);
+			if (ChunkedImageDataIO.isChunkedDataStream(stream)) {
+				var header = ChunkedImageDataIO.readHeader(new DataInputStream(stream));
+				return extractServerBuilder(header.getServerString(), true);
+			}
+			ObjectInputStream inStream = createObjectInputStream(stream);
 			
 			// Check the first line, then read the server path if it is valid
 			String firstLine = inStream.readUTF();
@@ -299,8 +342,12 @@ public class PathIO {
 		long startTime = System.currentTimeMillis();
 		Locale locale = Locale.getDefault(Category.FORMAT);
 		boolean localeChanged = false;
+		
+		var bufferedStream = new BufferedInputStream(stream);
+		if (ChunkedImageDataIO.isChunkedDataStream(bufferedStream))
+			return readImageDataChunked(bufferedStream, server, requestedServerBuilder);
 
-		try (ObjectInputStream inStream = createObjectInputStream(new BufferedInputStream(stream))) {
+		try (ObjectInputStream inStream = createObjectInputStream(bufferedStream)) {
 			
 			ServerBuilder<T> serverBuilder = requestedServerBuilder;
 			PathObjectHierarchy hierarchy = null;
@@ -376,26 +423,7 @@ public class PathIO {
 				}
 			}
 
-			// Create a new ImageData
-			ImageData<T> imageData;
-			if (server != null)
-				imageData = new ImageData<>(server, hierarchy, imageType);
-			else if (serverBuilder != null)
-				imageData = new ImageData<>(serverBuilder, hierarchy, imageType);
-			else
-				throw new IOException("Can't read ImageData without a server or server builder");
-
-			// Set the other properties we have just read
-			if (workflow != null) {
-				imageData.getHistoryWorkflow().addSteps(workflow.getSteps());
-			}
-			if (stains != null) {
-				imageData.setColorDeconvolutionStains(stains);
-			}
-			if (propertyMap != null) {
-				for (Entry<String, Object> entry : propertyMap.entrySet())
-					imageData.setProperty(entry.getKey(), entry.getValue());
-			}
+			var imageData = createImageData(server, serverBuilder, hierarchy, imageType, stains, workflow, propertyMap);
 
 			long endTime = System.currentTimeMillis();
 			if (hierarchy != null)
@@ -414,6 +442,52 @@ public class PathIO {
 	}
 
 
+	private static <T> ImageData<T> readImageDataChunked(final InputStream stream, ImageServer<T> server,
+			ServerBuilder<T> requestedServerBuilder) throws IOException {
+		long startTime = System.currentTimeMillis();
+		try (var inStream = new DataInputStream(stream)) {
+			var header = ChunkedImageDataIO.readHeader(inStream);
+			ServerBuilder<T> serverBuilder = requestedServerBuilder;
+			if (serverBuilder == null)
+				serverBuilder = extractServerBuilder(header.getServerString(), true);
+			var hierarchy = ChunkedImageDataIO.readHierarchy(inStream, header);
+			var imageData = createImageData(server, serverBuilder, hierarchy, header.getImageType(),
+					header.getColorDeconvolutionStains(), header.getWorkflow(), header.getProperties());
+			long endTime = System.currentTimeMillis();
+			logger.debug(String.format("Hierarchy with %d object(s) read in %.2f seconds",
+					hierarchy.nObjects(),
+					(endTime - startTime)/1000.));
+			return imageData;
+		}
+	}
+
+	private static <T> ImageData<T> createImageData(ImageServer<T> server, ServerBuilder<T> serverBuilder,
+			PathObjectHierarchy hierarchy, ImageData.ImageType imageType, ColorDeconvolutionStains stains,
+			Workflow workflow, Map<String, Object> propertyMap) throws IOException {
+		// Create a new ImageData
+		ImageData<T> imageData;
+		if (server != null)
+			imageData = new ImageData<>(server, hierarchy, imageType);
+		else if (serverBuilder != null)
+			imageData = new ImageData<>(serverBuilder, hierarchy, imageType);
+		else
+			throw new IOException("Can't read ImageData without a server or server builder");
+
+		// Set the other properties we have just read
+		if (workflow != null) {
+			imageData.getHistoryWorkflow().addSteps(workflow.getSteps());
+		}
+		if (stains != null) {
+			imageData.setColorDeconvolutionStains(stains);
+		}
+		if (propertyMap != null) {
+			for (Entry<String, Object> entry : propertyMap.entrySet())
+				imageData.setProperty(entry.getKey(), entry.getValue());
+		}
+		return imageData;
+	}
+
+
 	/**
 	 * Try to update an original ImageData object to match a new one.
 	 * @param imageDataOriginal
@@ -530,6 +604,47 @@ public class PathIO {
 		}
 	}
 
+	/**
+	 * Read an ImageData, optionally providing a serverBuilder for lazy image loading and optionally deferring 
+	 * the loading of detections until they are needed.
+	 * <p>
+	 * Deferring detections can make reading a data file containing a very large number of objects much faster, 
+	 * and use much less memory, if only some of the detections are needed.
+	 * Annotations and TMA cores are read immediately, while detections are loaded by the hierarchy the first 
+	 * time a region containing them is requested - or all at once, if required by any other operation.
+	 * See {@link PathObjectHierarchy#setDeferredObjects(qupath.lib.objects.hierarchy.DeferredObjects)} for details.
+	 * <p>
+	 * Detections can only be deferred for files written in the chunked format; for other files, 
+	 * all objects are read immediately.
+	 * 
+	 * @param path the .qpdata file to read
+	 * @param serverBuilder the server builder to use, or null to use the one stored in the file
+	 * @param deferDetections if true, defer loading detections until they are needed
+	 * @return
+	 * @throws IOException
+	 * @since v0.6.0
+	 */
+	public static <T> ImageData<T> readImageData(final Path path, ServerBuilder<T> serverBuilder, boolean deferDetections) throws IOException {
+		if (!deferDetections || !ChunkedImageDataIO.isChunkedDataFile(path))
+			return readImageData(path, serverBuilder);
+		
+		long startTime = System.currentTimeMillis();
+		var header = ChunkedImageDataIO.readHeader(path);
+		if (serverBuilder == null)
+			serverBuilder = extractServerBuilder(header.getServerString(), true);
+		var hierarchy = ChunkedImageDataIO.readHierarchyLazily(path, header);
+		var imageData = createImageData(null, serverBuilder, hierarchy, header.getImageType(),
+				header.getColorDeconvolutionStains(), header.getWorkflow(), header.getProperties());
+		imageData.setLastSavedPath(path.toAbsolutePath().toString(), true);
+		long endTime = System.currentTimeMillis();
+		var deferred = hierarchy.getDeferredObjects();
+		logger.debug(String.format("Hierarchy with %d object(s) read in %.2f seconds (%d deferred)",
+				hierarchy.nObjects(),
+				(endTime - startTime)/1000.,
+				deferred == null ? 0 : deferred.nObjects()));
+		return imageData;
+	}
+
 	/**
 	 * Read an ImageData, optionally providing a serverBuilder for lazy image loading.
 	 * @param stream the .qpdata file to read
@@ -625,11 +740,15 @@ public class PathIO {
 		}
 		
 		// Write the data
-		try (var stream = new FileOutputStream(file)) {
-			writeImageDataSerialized(stream, imageData);
-			
-			// Remember the saved path
-			imageData.setLastSavedPath(file.getAbsolutePath(), true);
+		// Any deferred detections are copied from the backup, and then read from the new file instead
+		synchronized (imageData.getHierarchy()) {
+			try (var stream = new FileOutputStream(file)) {
+				writeImageDataSerialized(stream, imageData);
+				
+				// Remember the saved path
+				imageData.setLastSavedPath(file.getAbsolutePath(), true);
+			}
+			reopenDeferredObjects(imageData, file.toPath());
 		}
 		
 		// Delete the backup file
@@ -638,6 +757,28 @@ public class PathIO {
 
 	}
 	
+	/**
+	 * Read any deferred detections of an ImageData from a data file it has just been written to, 
+	 * releasing the file they were previously read from.
+	 * <p>
+	 * Detections that haven't been loaded are copied unchanged when writing an ImageData, so this makes it possible 
+	 * to replace or delete the original file afterwards - which would otherwise still be needed to load them.
+	 * The hierarchy's lock should be held from before writing until this method returns, so that no detections 
+	 * are loaded in between.
+	 * <p>
+	 * This does nothing if the hierarchy doesn't have deferred detections.
+	 * 
+	 * @param imageData the image data that was written
+	 * @param path the file the image data was written to
+	 * @throws IOException if the detections could not be found in the file; in this case, they continue to be read 
+	 *                     from the original file
+	 * @since v0.6.0
+	 * @see #readImageData(Path, ServerBuilder, boolean)
+	 */
+	public static void reopenDeferredObjects(final ImageData<?> imageData, final Path path) throws IOException {
+		ChunkedImageDataIO.reopenDeferredObjects(imageData.getHierarchy(), path);
+	}
+	
 	/**
 	 * Serialize an ImageData object to an output stream.
 	 * @param stream
@@ -654,11 +795,6 @@ public class PathIO {
 		try (OutputStream outputStream = new BufferedOutputStream(stream)) {
 			long startTime = System.currentTimeMillis();
 			
-			ObjectOutputStream outStream = new ObjectOutputStream(outputStream);
-			
-			// Write the identifier
-			outStream.writeUTF("Data file version " + DATA_FILE_VERSION);
-			
 			// Write JSON object including QuPath version and ServerBuilder
 			// Note that the builder may be null, in which case the server cannot be recreated
 			var builder = imageData.getServerBuilder();
@@ -672,6 +808,32 @@ public class PathIO {
 			}
 			var wrapper = ServerBuilderWrapper.create(builder, serverPath);
 			String json = GsonTools.getInstance().toJson(wrapper);
+			
+			// Get any remaining (serializable) properties
+			Map<String, Object> map = new HashMap<>();
+			for (Entry<String, Object> entry : imageData.getProperties().entrySet()) {
+				if (serializableObject(entry.getValue()))
+					map.put(entry.getKey(), entry.getValue());
+				else
+					logger.warn("Property not serializable and will not be saved!  Key: " + entry.getKey() + ", Value: " + entry.getValue());
+			}
+			
+			PathObjectHierarchy hierarchy = imageData.getHierarchy();
+			if (writeChunkedDataFiles) {
+				if (ChunkedImageDataIO.canWrite(hierarchy)) {
+					logger.info(String.format("Writing object hierarchy with %d object(s)...", hierarchy.nObjects()));
+					ChunkedImageDataIO.writeImageData(outputStream, imageData, json, map);
+					long endTime = System.currentTimeMillis();
+					logger.info(String.format("Image data written in %.2f seconds", (endTime - startTime)/1000.));
+					return;
+				} else
+					logger.warn("Hierarchy contains objects that can't be written in the chunked format - will use serialization instead");
+			}
+			
+			ObjectOutputStream outStream = new ObjectOutputStream(outputStream);
+			
+			// Write the identifier
+			outStream.writeUTF("Data file version " + DATA_FILE_VERSION);
 			outStream.writeObject(json);
 			
 			// Write the current locale
@@ -683,20 +845,11 @@ public class PathIO {
 			outStream.writeObject(imageData.getHistoryWorkflow());
 			
 			// Write the rest of the main image metadata
-			PathObjectHierarchy hierarchy = imageData.getHierarchy();
 			logger.info(String.format("Writing object hierarchy with %d object(s)...", hierarchy.nObjects()));
 			outStream.writeObject(hierarchy);
 			
 			// Write any remaining (serializable) properties
-			Map<String, Object> map = new HashMap<>();
-			for (Entry<String, Object> entry : imageData.getProperties().entrySet()) {
-				if (serializableObject(entry.getValue()))
-					map.put(entry.getKey(), entry.getValue());
-				else
-					logger.warn("Property not serializable and will not be saved!  Key: " + entry.getKey() + ", Value: " + entry.getValue());
-			}
-			if (map != null)
-				outStream.writeObject(map);
+			outStream.writeObject(map);
 			
 			// Write EOF marker
 			outStream.writeObject("EOF");
@@ -741,10 +894,17 @@ public class PathIO {
 	 */
 	public static PathObjectHierarchy readHierarchy(final InputStream fileIn) throws IOException {
 
+		var bufferedStream = new BufferedInputStream(fileIn);
+		if (ChunkedImageDataIO.isChunkedDataStream(bufferedStream)) {
+			var inStream = new DataInputStream(bufferedStream);
+			var header = ChunkedImageDataIO.readHeader(inStream);
+			return ChunkedImageDataIO.readHierarchy(inStream, header);
+		}
+
 		Locale locale = Locale.getDefault(Category.FORMAT);
 		boolean localeChanged = false;
 
-		try (ObjectInputStream inStream = createObjectInputStream(new BufferedInputStream(fileIn))) {
+		try (ObjectInputStream inStream = createObjectInputStream(bufferedStream)) {
 			
 			if (!inStream.readUTF().startsWith("Data file version")) {
 				logger.error("Input stream is not from a valid QuPath data file!");
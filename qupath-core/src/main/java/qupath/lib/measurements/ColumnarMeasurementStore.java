@@ -0,0 +1,387 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.measurements;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * A store of measurements for many objects, where values are held in one primitive column per measurement name.
+ * <p>
+ * Each object gets its own {@link MeasurementList} from {@link #createMeasurementList()}, but this is only a
+ * lightweight view of one row of the store. This avoids the need for every object to have its own
+ * arrays and name lists, and means that all the values for one measurement can be read without
+ * looping through the lists of individual objects.
+ * <p>
+ * Values are stored as floats, with the same loss of precision as
+ * {@link MeasurementList.MeasurementListType#FLOAT} lists.
+ * The names of a list are returned in the order in which the columns were first added to the store,
+ * which is the same as insertion order whenever objects add measurements in the same order.
+ * <p>
+ * Rows are not reused when a list is no longer needed; the memory is only freed once the store and all
+ * its lists can be garbage collected. A store is therefore best used for objects that are created together,
+ * e.g. the detections created by a single command.
+ * <p>
+ * Lists created by a store are serialized as standalone float lists, so can be read without the store.
+ * <p>
+ * Stores can be created through the {@link MeasurementListFactory} class.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+public class ColumnarMeasurementStore {
+
+	private static final int CHUNK_BITS = 12;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	/**
+	 * Bit pattern used to represent a missing value.
+	 * This is a NaN that is never stored as a value, because all NaNs are converted to the canonical form.
+	 */
+	private static final int MISSING = 0x7fa00001;
+
+	private final Map<String, Column> columnMap = new ConcurrentHashMap<>();
+	private volatile Column[] columns = new Column[0];
+	private int nRows = 0;
+
+	ColumnarMeasurementStore() {}
+
+	/**
+	 * Create a new, empty measurement list backed by a new row of this store.
+	 * @return
+	 */
+	public synchronized MeasurementList createMeasurementList() {
+		return new RowMeasurementList(this, nRows++);
+	}
+
+	/**
+	 * Get the number of rows in the store, i.e. the number of measurement lists that have been created.
+	 * @return
+	 */
+	public synchronized int getRowCount() {
+		return nRows;
+	}
+
+	/**
+	 * Get the names of all the columns in the store, in the order they were added.
+	 * A list from the store may not contain all these measurements.
+	 * @return
+	 */
+	public List<String> getNames() {
+		return Arrays.stream(columns).map(c -> c.name).toList();
+	}
+
+	/**
+	 * Get all values of a measurement, indexed by row.
+	 * Rows that don't contain the measurement have the value {@code Float.NaN}.
+	 * @param name the measurement name
+	 * @return a new array, with length equal to {@link #getRowCount()}
+	 */
+	public float[] getColumn(String name) {
+		int n = getRowCount();
+		float[] values = new float[n];
+		var column = columnMap.get(name);
+		if (column == null) {
+			Arrays.fill(values, Float.NaN);
+			return values;
+		}
+		var chunks = column.chunks;
+		for (int c = 0; c * CHUNK_SIZE < n; c++) {
+			int start = c * CHUNK_SIZE;
+			int end = Math.min(n, start + CHUNK_SIZE);
+			int[] chunk = c < chunks.length ? chunks[c] : null;
+			if (chunk == null) {
+				Arrays.fill(values, start, end, Float.NaN);
+				continue;
+			}
+			for (int i = start; i < end; i++)
+				values[i] = toFloat(chunk[i - start]);
+		}
+		return values;
+	}
+
+	/**
+	 * Get the values of a measurement for a list of measurement lists.
+	 * Values are read directly from the store for lists that it created, and using {@link MeasurementList#get(String)}
+	 * for any other lists.
+	 * @param name the measurement name
+	 * @param lists the measurement lists
+	 * @return an array of values, with the same length and order as the lists; missing values are {@code Double.NaN}
+	 */
+	public double[] getValues(String name, List<? extends MeasurementList> lists) {
+		double[] values = new double[lists.size()];
+		var column = columnMap.get(name);
+		int i = 0;
+		for (var list : lists) {
+			if (list instanceof RowMeasurementList row && row.store == this)
+				values[i] = column == null ? Double.NaN : toFloat(column.get(row.row));
+			else
+				values[i] = list == null ? Double.NaN : list.get(name);
+			i++;
+		}
+		return values;
+	}
+
+	/**
+	 * Get the row index of a measurement list within this store.
+	 * @param list
+	 * @return the row index, or -1 if the list wasn't created by this store
+	 */
+	public int getRow(MeasurementList list) {
+		if (list instanceof RowMeasurementList row && row.store == this)
+			return row.row;
+		return -1;
+	}
+
+
+	private Column getColumn(String name, boolean create) {
+		var column = columnMap.get(name);
+		if (column != null || !create)
+			return column;
+		synchronized (this) {
+			column = columnMap.get(name);
+			if (column == null) {
+				column = new Column(name.intern());
+				var newColumns = Arrays.copyOf(columns, columns.length + 1);
+				newColumns[columns.length] = column;
+				columns = newColumns;
+				columnMap.put(column.name, column);
+			}
+			return column;
+		}
+	}
+
+	private static int toBits(double value) {
+		// floatToIntBits converts all NaNs to the canonical form, so can't match MISSING
+		return Float.floatToIntBits((float)value);
+	}
+
+	private static float toFloat(int bits) {
+		return bits == MISSING ? Float.NaN : Float.intBitsToFloat(bits);
+	}
+
+
+	/**
+	 * Values for a single measurement, stored in chunks of rows so that the store can grow
+	 * without copying existing values.
+	 */
+	private static class Column {
+
+		private final String name;
+		private volatile int[][] chunks = new int[0][];
+
+		private Column(String name) {
+			this.name = name;
+		}
+
+		private int get(int row) {
+			var chunks = this.chunks;
+			int c = row >>> CHUNK_BITS;
+			if (c >= chunks.length || chunks[c] == null)
+				return MISSING;
+			return chunks[c][row & CHUNK_MASK];
+		}
+
+		private void set(int row, int bits) {
+			int c = row >>> CHUNK_BITS;
+			var chunks = this.chunks;
+			if (c >= chunks.length || chunks[c] == null) {
+				if (bits == MISSING)
+					return;
+				chunks = ensureChunk(c);
+			}
+			chunks[c][row & CHUNK_MASK] = bits;
+		}
+
+		private synchronized int[][] ensureChunk(int c) {
+			var chunks = this.chunks;
+			if (c >= chunks.length)
+				chunks = Arrays.copyOf(chunks, c + 1);
+			if (chunks[c] == null) {
+				int[] chunk = new int[CHUNK_SIZE];
+				Arrays.fill(chunk, MISSING);
+				chunks[c] = chunk;
+			}
+			this.chunks = chunks;
+			return chunks;
+		}
+
+	}
+
+
+	/**
+	 * A measurement list that is a view of one row of the store.
+	 */
+	static class RowMeasurementList implements MeasurementList {
+
+		@Serial
+		private static final long serialVersionUID = 1L;
+
+		private final transient ColumnarMeasurementStore store;
+		private final transient int row;
+
+		private transient volatile Map<String, Number> mapView;
+
+		private RowMeasurementList(ColumnarMeasurementStore store, int row) {
+			this.store = store;
+			this.row = row;
+		}
+
+		@Override
+		public synchronized void put(String name, double value) {
+			store.getColumn(name, true).set(row, toBits(value));
+		}
+
+		@Override
+		public synchronized double get(String name) {
+			var column = store.getColumn(name, false);
+			return column == null ? Double.NaN : toFloat(column.get(row));
+		}
+
+		@Override
+		public synchronized boolean containsKey(String name) {
+			var column = store.getColumn(name, false);
+			return column != null && column.get(row) != MISSING;
+		}
+
+		@Override
+		public synchronized List<Measurement> getMeasurements() {
+			List<Measurement> list = new ArrayList<>();
+			for (var column : store.columns) {
+				int bits = column.get(row);
+				if (bits != MISSING)
+					list.add(MeasurementFactory.createMeasurement(column.name, Float.intBitsToFloat(bits)));
+			}
+			return Collections.unmodifiableList(list);
+		}
+
+		@Override
+		public synchronized Measurement getByIndex(int ind) {
+			int count = 0;
+			for (var column : store.columns) {
+				int bits = column.get(row);
+				if (bits != MISSING) {
+					if (count == ind)
+						return MeasurementFactory.createMeasurement(column.name, Float.intBitsToFloat(bits));
+					count++;
+				}
+			}
+			throw new IndexOutOfBoundsException("Index " + ind + " out of bounds for length " + count);
+		}
+
+		@Override
+		public synchronized double[] values() {
+			var columns = store.columns;
+			double[] values = new double[columns.length];
+			int n = 0;
+			for (var column : columns) {
+				int bits = column.get(row);
+				if (bits != MISSING)
+					values[n++] = Float.intBitsToFloat(bits);
+			}
+			return n == values.length ? values : Arrays.copyOf(values, n);
+		}
+
+		@Override
+		public synchronized double remove(String name) {
+			var column = store.getColumn(name, false);
+			if (column == null)
+				return Double.NaN;
+			double value = toFloat(column.get(row));
+			column.set(row, MISSING);
+			return value;
+		}
+
+		@Override
+		public synchronized List<String> getNames() {
+			List<String> names = new ArrayList<>();
+			for (var column : store.columns) {
+				if (column.get(row) != MISSING)
+					names.add(column.name);
+			}
+			return Collections.unmodifiableList(names);
+		}
+
+		@Override
+		public synchronized int size() {
+			int n = 0;
+			for (var column : store.columns) {
+				if (column.get(row) != MISSING)
+					n++;
+			}
+			return n;
+		}
+
+		@Override
+		public synchronized void removeAll(String... measurementNames) {
+			for (var name : measurementNames)
+				remove(name);
+		}
+
+		@Override
+		public synchronized void clear() {
+			for (var column : store.columns)
+				column.set(row, MISSING);
+		}
+
+		@Override
+		public Map<String, Number> asMap() {
+			if (mapView == null) {
+				synchronized(this) {
+					if (mapView == null)
+						mapView = Collections.synchronizedMap(new MeasurementsMap(this));
+				}
+			}
+			return mapView;
+		}
+
+		@Override
+		public synchronized String toString() {
+			return "[" + getMeasurements().stream()
+					.map(m -> m.getName() + ": " + m.getValue())
+					.collect(Collectors.joining(", ")) + "]";
+		}
+
+		/**
+		 * Serialize as a standalone list, since the store itself isn't serializable.
+		 * @return
+		 */
+		@Serial
+		private synchronized Object writeReplace() {
+			var names = getNames();
+			var list = new NumericMeasurementList.FloatList(names.size());
+			for (var name : names)
+				list.put(name, get(name));
+			list.close();
+			return list;
+		}
+
+	}
+
+}
@@ -27,6 +27,8 @@ package qupath.lib.measurements;
  * Factory for creating new measurement lists.
  * <p>
  * For efficiency, (static) Float lists are generally preferred for detection objects.
+ * Where many objects are created together, a {@link ColumnarMeasurementStore} can be used to 
+ * create lists that share storage.
  * 
  * @author Pete Bankhead
  *
@@ -52,4 +54,14 @@ public class MeasurementListFactory {
 			return new DefaultMeasurementList(capacity);
 		}
 	}
+	
+	/**
+	 * Create a new store that can be used to create measurement lists with shared, columnar storage.
+	 * @return
+	 * @see ColumnarMeasurementStore#createMeasurementList()
+	 * @since v0.6.0
+	 */
+	public static ColumnarMeasurementStore createColumnarStore() {
+		return new ColumnarMeasurementStore();
+	}
 }
@@ -0,0 +1,68 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.objects.hierarchy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.regions.ImageRegion;
+
+/**
+ * Detection objects that belong to a {@link PathObjectHierarchy}, but haven't been loaded yet.
+ * <p>
+ * This makes it possible to open a hierarchy containing a very large number of detections without creating them all.
+ * The hierarchy requests the detections for a region the first time that region is queried
+ * (e.g. with {@link PathObjectHierarchy#getObjectsForRegion(Class, ImageRegion, java.util.Collection)}),
+ * and loads all the remaining detections before any operation that might need them
+ * (e.g. {@link PathObjectHierarchy#getDetectionObjects()}, or removing an annotation).
+ * <p>
+ * Implementations only need to provide the objects; the hierarchy is responsible for adding them to their parents.
+ * All the objects provided must be detections (or their detection descendants), so that queries for annotations
+ * and TMA cores never need to load them.
+ * Methods are only called while holding the hierarchy's lock.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ * @see PathObjectHierarchy#setDeferredObjects(DeferredObjects)
+ */
+public interface DeferredObjects extends Closeable {
+
+	/**
+	 * Get the number of objects that haven't been loaded yet, including all descendants.
+	 * @return
+	 */
+	long nObjects();
+
+	/**
+	 * Load the objects with bounds that might intersect a region.
+	 * Objects should only ever be returned once.
+	 *
+	 * @param region the region, or null if all remaining objects should be loaded
+	 * @return a map of parent objects (that are already in the hierarchy) to the objects that should be added as their children
+	 * @throws IOException if the objects could not be loaded; objects that couldn't be loaded should remain available to be loaded later
+	 */
+	Map<PathObject, List<PathObject>> load(ImageRegion region) throws IOException;
+
+}
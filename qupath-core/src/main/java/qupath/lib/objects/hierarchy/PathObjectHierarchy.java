@@ -23,8 +23,11 @@
 
 package qupath.lib.objects.hierarchy;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serial;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -97,6 +100,9 @@ public final class PathObjectHierarchy implements Serializable {
 
 	private transient AtomicLong eventCount = new AtomicLong();
 
+	// Detections that haven't been loaded yet, if the hierarchy was read lazily
+	private transient volatile DeferredObjects deferredObjects;
+
 	/**
 	 * Default constructor, creates an empty hierarchy.
 	 */
@@ -111,7 +117,7 @@ public final class PathObjectHierarchy implements Serializable {
 	 * @return
 	 */
 	public synchronized boolean isEmpty() {
-		return (tmaGrid == null || tmaGrid.nCores() == 0) && !rootObject.hasChildObjects();// && featureMaps.isEmpty();
+		return (tmaGrid == null || tmaGrid.nCores() == 0) && !rootObject.hasChildObjects() && deferredObjects == null;// && featureMaps.isEmpty();
 	}
 	
 	/**
@@ -177,6 +183,7 @@ public final class PathObjectHierarchy implements Serializable {
 		this.tmaGrid = tmaGrid;
 		if (tmaGrid != null)
 			addObjects(tmaGrid.getTMACoreList());
+		tileCache.markUpdated();
 		fireHierarchyChangedEvent(getRootObject());
 	}
 	
@@ -232,15 +239,15 @@ public final class PathObjectHierarchy implements Serializable {
 		removeObjects(selectedObjects, true);
 		selectedObjects.sort(PathObjectHierarchy.HIERARCHY_COMPARATOR.reversed());
 		boolean singleObject = selectedObjects.size() == 1;
-		// We don't want to reset caches for every object if we have only detections, since previously-inserted objects don't impact the potential parent
-		boolean allDetections = selectedObjects.stream().allMatch(PathObject::isDetection);
 		for (var pathObject : selectedObjects) {
 //			hierarchy.insertPathObject(pathObject, true);
-			insertPathObject(getRootObject(), pathObject, singleObject, !singleObject && !allDetections);
+			insertPathObject(getRootObject(), pathObject, singleObject, !singleObject);
 //			insertPathObject(pathObject, selectedObjects.size() == 1);
 		}
-		if (!singleObject)
+		if (!singleObject) {
+			tileCache.markUpdated();
 			fireHierarchyChangedEvent(this);
+		}
 		return true;
 	}
 	
@@ -277,10 +284,10 @@ public final class PathObjectHierarchy implements Serializable {
 	 * @param pathObjectParent the first potential parent; this can be used to help filter out 'impossible' parents to aid performance
 	 * @param pathObject the object to insert
 	 * @param fireChangeEvents if true, fire hierarchy change events after inserting the object
-	 * @param resetCache if true, reset the tile cache after adding the object; this is only used if fireChangeEvents is false
+	 * @param updateCache if true, add the object to the tile cache; this is only used if fireChangeEvents is false
 	 * @return
 	 */
-	private synchronized boolean insertPathObject(PathObject pathObjectParent, PathObject pathObject, boolean fireChangeEvents, boolean resetCache) {
+	private synchronized boolean insertPathObject(PathObject pathObjectParent, PathObject pathObject, boolean fireChangeEvents, boolean updateCache) {
 		
 		if (pathObject.isTMACore()) {
 			logger.warn("TMA core objects cannot be inserted - use resolveHierarchy() instead");
@@ -289,6 +296,9 @@ public final class PathObjectHierarchy implements Serializable {
 
 		// Get all the annotations that might be a parent of this object
 		var region = ImageRegion.createInstance(pathObject.getROI());
+		// Detections within the region might need to be reassigned to the new object
+		if (!pathObject.isDetection())
+			loadDeferredObjects(null, region);
 		Collection<PathObject> tempSet = new HashSet<>();
 		tempSet.add(getRootObject());
 		tileCache.getObjectsForRegion(PathAnnotationObject.class, region, tempSet, true);
@@ -339,8 +349,8 @@ public final class PathObjectHierarchy implements Serializable {
 				// Notify listeners of changes, if required
 				if (fireChangeEvents)
 					fireObjectAddedEvent(this, pathObject);
-				else if (resetCache)
-					tileCache.resetCache();
+				else if (updateCache)
+					tileCache.addObjects(Collections.singletonList(pathObject));
 				return true;
 			}
 		}
@@ -383,6 +393,10 @@ public final class PathObjectHierarchy implements Serializable {
 			return false;
 		}
 
+		// Any deferred detections might be descendants of the object
+		if (!pathObject.isDetection())
+			loadDeferredObjects();
+
 		// Can't keep children if there aren't any
 		boolean hasChildren = pathObject.hasChildObjects();
 		
@@ -398,8 +412,11 @@ public final class PathObjectHierarchy implements Serializable {
 		if (fireEvent) {
 			if (keepChildren || !hasChildren)
 				fireObjectRemovedEvent(this, pathObject, pathObjectParent);
-			else
+			else {
+				tileCache.removeObjects(Collections.singletonList(pathObject), true);
+				tileCache.markUpdated();
 				fireHierarchyChangedEvent(this, pathObjectParent);
+			}
 		}
 		return true;
 	}
@@ -432,6 +449,10 @@ public final class PathObjectHierarchy implements Serializable {
 		if (map.isEmpty())
 			return;
 		
+		// Any deferred detections might be descendants of the objects
+		if (deferredObjects != null && pathObjectSet.stream().anyMatch(p -> !p.isDetection()))
+			loadDeferredObjects();
+		
 		// Loop through and remove objects, keeping children if necessary
 		Set<PathObject> childrenToKeep = new LinkedHashSet<>();
 		for (Entry<PathObject, List<PathObject>> entry : map.entrySet()) {
@@ -444,12 +465,16 @@ public final class PathObjectHierarchy implements Serializable {
 			}
 		}
 		childrenToKeep.removeAll(pathObjects);
+		// Update the tile cache in place - any children we keep are already there
+		tileCache.removeObjects(pathObjectSet, !keepChildren);
 		// Add children back if required (note: this can be quite slow!)
-		tileCache.resetCache();
 		for (PathObject pathObject : childrenToKeep) {
 			addPathObjectImpl(pathObject, false);
 		}
-		fireHierarchyChangedEvent(this);
+		tileCache.markUpdated();
+		// Children that were kept have moved, so are no longer descendants of the removed objects
+		pathObjectSet.addAll(childrenToKeep);
+		fireHierarchyChangedEvent(this, getRootObject(), pathObjectSet);
 	}
 	
 	
@@ -551,7 +576,9 @@ public final class PathObjectHierarchy implements Serializable {
 			counter++;
 		}
 		if (changes) {
-			fireHierarchyChangedEvent(getRootObject());
+			tileCache.addObjects(pathObjects);
+			tileCache.markUpdated();
+			fireHierarchyChangedEvent(getRootObject(), getRootObject(), pathObjects);
 		}
 		return changes;
 	}
@@ -561,6 +588,7 @@ public final class PathObjectHierarchy implements Serializable {
 	 * Remove all objects from the hierarchy.
 	 */
 	public synchronized void clearAll() {
+		setDeferredObjects(null);
 		getRootObject().clearChildObjects();
 		tmaGrid = null;
 		fireHierarchyChangedEvent(getRootObject());
@@ -649,6 +677,7 @@ public final class PathObjectHierarchy implements Serializable {
 			pathObjects.addAll(tileCache.getObjectsForRegion(cls, null, null, true));
 			return pathObjects;
 		}
+		loadDeferredObjects(cls, null);
 		if (cls == null || cls.isAssignableFrom(PathRootObject.class))
 			pathObjects.add(getRootObject());
 		
@@ -712,10 +741,13 @@ public final class PathObjectHierarchy implements Serializable {
 	
 	/**
 	 * Number of objects in the hierarchy, excluding the root.
+	 * This includes any deferred objects that haven't been loaded yet.
 	 * @return
 	 */
 	public synchronized int nObjects() {
-		return PathObjectTools.countDescendants(getRootObject());
+		var deferred = deferredObjects;
+		int nDeferred = deferred == null ? 0 : (int)deferred.nObjects();
+		return PathObjectTools.countDescendants(getRootObject()) + nDeferred;
 	}
 	
 	/**
@@ -728,9 +760,111 @@ public final class PathObjectHierarchy implements Serializable {
 			return;
 		rootObject = hierarchy.getRootObject();
 		tmaGrid = hierarchy.tmaGrid;
+		// Take ownership of any deferred objects, since their parents are now in this hierarchy
+		setDeferredObjects(hierarchy.deferredObjects);
+		hierarchy.deferredObjects = null;
 		fireHierarchyChangedEvent(rootObject);
 	}
 	
+	/**
+	 * Set detections that belong in this hierarchy, but should only be loaded when they are needed.
+	 * Any previous deferred objects that haven't been loaded are discarded.
+	 * <p>
+	 * This is intended for use when reading a hierarchy from a file.
+	 * Objects are loaded without firing hierarchy events, since they are considered to be part of the hierarchy already.
+	 * However, they aren't accessible through the child lists of their parents until they have been loaded - 
+	 * so {@link #loadDeferredObjects()} should be called before traversing the hierarchy through its child lists.
+	 * Deferred objects are added after any existing children of their parents, so the order of child objects
+	 * can depend upon the order in which regions are loaded.
+	 * 
+	 * @param deferredObjects the deferred objects, or null if there are none
+	 * @since v0.6.0
+	 */
+	public synchronized void setDeferredObjects(DeferredObjects deferredObjects) {
+		var previous = this.deferredObjects;
+		this.deferredObjects = deferredObjects;
+		if (previous != null && previous != deferredObjects)
+			closeDeferredObjects(previous);
+	}
+	
+	/**
+	 * Get the detections that belong in this hierarchy, but haven't been loaded yet.
+	 * @return the deferred objects, or null if all objects have been loaded
+	 * @since v0.6.0
+	 * @see #setDeferredObjects(DeferredObjects)
+	 */
+	public DeferredObjects getDeferredObjects() {
+		return deferredObjects;
+	}
+	
+	/**
+	 * Load all deferred objects, adding them to the child lists of their parents.
+	 * <p>
+	 * Methods of the hierarchy that need the objects load them automatically, so this is only needed before traversing
+	 * the hierarchy through the child lists of its objects.
+	 * @since v0.6.0
+	 * @see #setDeferredObjects(DeferredObjects)
+	 */
+	public void loadDeferredObjects() {
+		loadDeferredObjects(null, null);
+	}
+	
+	/**
+	 * Load any deferred objects that might be needed for a query.
+	 * @param cls the class of objects being requested, or null if all objects are requested
+	 * @param region the region being requested, or null if all regions are requested
+	 */
+	void loadDeferredObjects(Class<? extends PathObject> cls, ImageRegion region) {
+		if (deferredObjects == null)
+			return;
+		// Deferred objects are always detections, so aren't needed for annotations or TMA cores
+		if (cls != null && !cls.isAssignableFrom(PathDetectionObject.class) && !PathDetectionObject.class.isAssignableFrom(cls))
+			return;
+		synchronized (this) {
+			var deferred = deferredObjects;
+			if (deferred == null)
+				return;
+			Map<PathObject, List<PathObject>> loaded;
+			try {
+				loaded = deferred.load(region);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to load deferred objects", e);
+			}
+			if (!loaded.isEmpty()) {
+				List<PathObject> added = new ArrayList<>();
+				for (var entry : loaded.entrySet()) {
+					entry.getKey().addChildObjects(entry.getValue());
+					added.addAll(entry.getValue());
+				}
+				tileCache.addObjects(added);
+				logger.debug("Loaded {} deferred object(s) for {}", added.size(), region == null ? "all regions" : region);
+			}
+			if (deferred.nObjects() == 0) {
+				deferredObjects = null;
+				closeDeferredObjects(deferred);
+			}
+		}
+	}
+	
+	private static void closeDeferredObjects(DeferredObjects deferred) {
+		try {
+			deferred.close();
+		} catch (IOException e) {
+			logger.warn("Exception closing deferred objects: {}", e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Ensure all objects are loaded before the hierarchy is serialized.
+	 * @param out
+	 * @throws IOException
+	 */
+	@Serial
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		loadDeferredObjects();
+		out.defaultWriteObject();
+	}
+	
 	/**
 	 * Get the objects within a specified ROI, as defined by the general rules for resolving the hierarchy. 
 	 * This relies on centroids for detections (including subclasses), and a 'covers' rule for others (annotations, TMA cores).
@@ -1114,6 +1248,20 @@ public final class PathObjectHierarchy implements Serializable {
 		fireEvent(event);
 	}
 
+	/**
+	 * Fire a hierarchy update indicating the hierarchy structure has changed, where the objects that were added, removed 
+	 * or moved are known.
+	 * This enables listeners to determine the regions that have changed, via {@link PathObjectHierarchyEvent#getChangedRegions()}.
+	 * @param source
+	 * @param pathObject the base object, below which the structure has changed
+	 * @param affectedObjects the objects that were added, removed or moved
+	 * @since v0.6.0
+	 */
+	public void fireHierarchyChangedEvent(Object source, PathObject pathObject, Collection<? extends PathObject> affectedObjects) {
+		PathObjectHierarchyEvent event = PathObjectHierarchyEvent.createStructureChangeEvent(source, this, pathObject, affectedObjects);
+		fireEvent(event);
+	}
+
 	/**
 	 * Fire a hierarchy update indicating the hierarchy structure has changed.
 	 * This is often a good choice of event if multiple changes may have occurred, of if one is unsure what exactly 
@@ -23,6 +23,7 @@
 
 package qupath.lib.objects.hierarchy;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -32,7 +33,9 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.locationtech.jts.algorithm.locate.SimplePointInAreaLocator;
@@ -42,6 +45,7 @@ import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Location;
 import org.locationtech.jts.index.SpatialIndex;
 import org.locationtech.jts.index.quadtree.Quadtree;
+import org.locationtech.jts.index.strtree.STRtree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +54,7 @@ import qupath.lib.objects.TemporaryObject;
 import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent;
 import qupath.lib.objects.hierarchy.events.PathObjectHierarchyListener;
 import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent.HierarchyEventType;
+import qupath.lib.regions.ImagePlane;
 import qupath.lib.regions.ImageRegion;
 import qupath.lib.roi.interfaces.ROI;
 
@@ -61,6 +66,20 @@ import qupath.lib.roi.interfaces.ROI;
  * In practice, the cache itself is constructed lazily whenever a request is made 
  * through getObjectsForRegion, to avoid rebuilding it too often when the hierarchy
  * is changing a lot.
+ * <p>
+ * Objects are indexed separately for each PathObject class and {@link ImagePlane}, 
+ * so that a query for one z-slice or timepoint doesn't need to visit objects on any other plane.
+ * When the cache is constructed, planes containing many objects are bulk-loaded into a packed 
+ * {@link STRtree}; this is converted to a {@link Quadtree} the first time an object is added to the plane.
+ * <p>
+ * Once constructed, the cache is updated in place as objects are added and removed. 
+ * The hierarchy reports batches of changes directly through {@link #addObjects(Collection)} and 
+ * {@link #removeObjects(Collection, boolean)}, and then calls {@link #markUpdated()} so that the 
+ * following structure change event doesn't trigger a rebuild.
+ * Before a query, the hierarchy is asked to load any {@link DeferredObjects} that might overlap the region,
+ * so that detections of a lazily-read hierarchy are only created where they are needed.
+ * Each plane has its own lock, and a rebuilt cache is only swapped in when it is complete, so 
+ * queries are only blocked by writes to the plane they are querying - or if there is no valid cache at all.
  * 
  * @author Pete Bankhead
  *
@@ -75,9 +94,16 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	private static final Envelope MAX_ENVELOPE = new Envelope(-Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE);
 	
 	/**
-	 * Store a spatial index according to the class of PathObject.
+	 * Minimum number of objects on a plane for a packed STRtree to be built when the cache is constructed.
+	 * Smaller planes use a Quadtree, since this can be updated efficiently.
 	 */
-	private final Map<Class<? extends PathObject>, SpatialIndex> map = new HashMap<>();
+	private static final int BULK_LOAD_THRESHOLD = 1000;
+	
+	/**
+	 * Store a spatial index according to the class of PathObject and the image plane.
+	 * This is replaced (rather than cleared) whenever the cache is reconstructed.
+	 */
+	private volatile Map<Class<? extends PathObject>, Map<ImagePlane, PlaneIndex>> map = new ConcurrentHashMap<>();
 	
 	/**
 	 * Map to cache Geometries, specifically for annotations.
@@ -91,11 +117,19 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	private static final Map<ROI, RoiRelate> relateMap = Collections.synchronizedMap(new WeakHashMap<>());
 
 	private final PathObjectHierarchy hierarchy;
-	private boolean isActive = false;
+	private volatile boolean isActive = false;
+	
+	/**
+	 * Lock used to apply changes to the cache (either rebuilding it, or updating it in place).
+	 * Queries don't require this lock, but rather lock only the plane being queried.
+	 */
+	private final Lock writeLock = new ReentrantLock();
 	
-	private final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
-    private final Lock r = rwl.readLock();
-    private final Lock w = rwl.writeLock();
+	/**
+	 * Event count of the next event that doesn't require any update, because the cache 
+	 * has already been updated for the changes it describes.
+	 */
+	private long updatedEventCount = -1L;
 	
 	
 	public PathObjectTileCache(PathObjectHierarchy hierarchy) {
@@ -109,31 +143,33 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 		logger.trace("Cache reset!");
 	}
 	
-//	int cacheCounter = 0;
-
-	private void constructCache(Class<? extends PathObject> limitToClass) {
-		w.lock();
+	private void constructCache() {
+		writeLock.lock();
 		try {
-	//		logger.info("Skipping cache reconstruction...");
+			// Another thread may have constructed the cache while we were waiting
+			if (isActive())
+				return;
 			long startTime = System.currentTimeMillis();
+			Map<Class<? extends PathObject>, Map<ImagePlane, List<PathObject>>> toIndex = new HashMap<>();
+			collectObjects(hierarchy.getRootObject(), toIndex);
+			Map<Class<? extends PathObject>, Map<ImagePlane, PlaneIndex>> newMap = new ConcurrentHashMap<>();
+			for (var entry : toIndex.entrySet()) {
+				var planeMap = newMap.computeIfAbsent(entry.getKey(), k -> new ConcurrentHashMap<>());
+				for (var planeEntry : entry.getValue().entrySet())
+					planeMap.put(planeEntry.getKey(), new PlaneIndex(planeEntry.getValue()));
+			}
+			map = newMap;
 			isActive = true;
-			if (limitToClass == null)
-				map.clear();
-			else
-				map.remove(limitToClass);
-			addToCache(hierarchy.getRootObject(), true, limitToClass);
 			long endTime = System.currentTimeMillis();
             logger.debug("Cache reconstructed in {} ms", endTime - startTime);
 		} finally {
-			w.unlock();
+			writeLock.unlock();
 		}
-//		cacheCounter += (endTime - startTime);
-//		logger.info("Cache count: " + (cacheCounter)/1000.);
 	}
 	
 	private void ensureCacheConstructed() {
 		if (!isActive())
-			constructCache(null);
+			constructCache();
 	}
 	
 	// TRUE if the cache has been constructed
@@ -141,31 +177,100 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 		return isActive;
 	}
 	
+	/**
+	 * Add objects (and their descendants) to the cache, if it is active.
+	 * Objects that are already in the cache are not added again.
+	 * <p>
+	 * This is intended to be called by the hierarchy, while it holds its own lock.
+	 * @param pathObjects
+	 * @see #markUpdated()
+	 */
+	void addObjects(Collection<? extends PathObject> pathObjects) {
+		writeLock.lock();
+		try {
+			for (var pathObject : pathObjects)
+				addToCache(pathObject, true);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Remove objects from the cache, if it is active.
+	 * <p>
+	 * This is intended to be called by the hierarchy, while it holds its own lock.
+	 * @param pathObjects
+	 * @param includeDescendants if true, also remove all descendants of the objects
+	 * @see #markUpdated()
+	 */
+	void removeObjects(Collection<? extends PathObject> pathObjects, boolean includeDescendants) {
+		writeLock.lock();
+		try {
+			for (var pathObject : pathObjects)
+				removeFromCache(pathObject, includeDescendants, false);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Indicate that the cache has been updated for all the changes described by the next event fired 
+	 * by the hierarchy, so that the event can be ignored.
+	 * <p>
+	 * This is intended to be called by the hierarchy, while it holds its own lock, immediately before 
+	 * firing the event.
+	 */
+	void markUpdated() {
+		long nextEventCount = hierarchy.getEventCount() + 1;
+		writeLock.lock();
+		try {
+			updatedEventCount = nextEventCount;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Collect a PathObject and its descendants, grouped by class and plane, so that they can be bulk-loaded.
+	 * 
+	 * @param pathObject
+	 * @param toIndex
+	 */
+	private static void collectObjects(PathObject pathObject, Map<Class<? extends PathObject>, Map<ImagePlane, List<PathObject>>> toIndex) {
+		if (pathObject.hasROI()) {
+			toIndex.computeIfAbsent(pathObject.getClass(), k -> new HashMap<>())
+				.computeIfAbsent(getPlane(pathObject.getROI()), k -> new ArrayList<>())
+				.add(pathObject);
+		}
+		if (!(pathObject instanceof TemporaryObject) && pathObject.hasChildObjects()) {
+			for (PathObject child : pathObject.getChildObjectsAsArray())
+				collectObjects(child, toIndex);
+		}
+	}
+	
 	/**
 	 * Add a PathObject to the cache, optionally including children.
+	 * This doesn't acquire the lock! The locking is done first.
 	 * 
 	 * @param pathObject
 	 * @param includeChildren
-	 * @param limitToClass
 	 */
-	private void addToCache(PathObject pathObject, boolean includeChildren, Class<? extends PathObject> limitToClass) {
+	private void addToCache(PathObject pathObject, boolean includeChildren) {
 		// If the cache isn't active, we can ignore this... it will be constructed when it is needed
 		if (!isActive())
 			return;
 
 		if (pathObject.hasROI()) {
-			Class<? extends PathObject> cls = pathObject.getClass();
-			if (limitToClass == null || cls == limitToClass) {
-                SpatialIndex mapObjects = map.computeIfAbsent(cls, k -> createSpatialIndex());
-                Envelope envelope = getEnvelope(pathObject);
-				mapObjects.insert(envelope, pathObject);
-			}
+			var planeMap = map.computeIfAbsent(pathObject.getClass(), k -> new ConcurrentHashMap<>());
+			var plane = getPlane(pathObject.getROI());
+			planeMap.computeIfAbsent(plane, p -> new PlaneIndex(Collections.emptyList()))
+				.insert(getEnvelope(pathObject), pathObject);
 		}
 		
 		// Add the children
 		if (includeChildren && !(pathObject instanceof TemporaryObject) && pathObject.hasChildObjects()) {
 			for (PathObject child : pathObject.getChildObjectsAsArray())
-				addToCache(child, includeChildren, limitToClass);
+				addToCache(child, includeChildren);
 		}
 	}
 
@@ -214,20 +319,25 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	}
 	
 	
-	private SpatialIndex createSpatialIndex() {
-		return new Quadtree();
+	/**
+	 * Get the plane used to index a ROI, ignoring any channel.
+	 * @param roi
+	 * @return
+	 */
+	private static ImagePlane getPlane(ROI roi) {
+		return ImagePlane.getPlane(roi.getZ(), roi.getT());
 	}
 	
-	private Envelope getEnvelope(PathObject pathObject) {
+	private static Envelope getEnvelope(PathObject pathObject) {
 		return getEnvelope(pathObject.getROI());
 	}
 	
-	private Envelope getEnvelope(ROI roi) {
+	private static Envelope getEnvelope(ROI roi) {
 		return new Envelope(roi.getBoundsX(), roi.getBoundsX() + roi.getBoundsWidth(),
 				roi.getBoundsY(), roi.getBoundsY() + roi.getBoundsHeight());
 	}
 
-	private Envelope getEnvelope(ImageRegion region) {
+	private static Envelope getEnvelope(ImageRegion region) {
 		return new Envelope(region.getMinX(), region.getMaxX(),
 				region.getMinY(), region.getMaxY());
 	}
@@ -236,34 +346,45 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	
 	/**
 	 * This doesn't acquire the lock! The locking is done first.
+	 * <p>
+	 * Objects are removed using the envelope they were indexed with, so they can be found even if their ROI 
+	 * has changed since. The plane of the current ROI is checked first; other planes are checked only if requested, 
+	 * otherwise any stale entry is left in the cache. This doesn't change the results of queries, because objects 
+	 * are checked against their current ROI and parent before being returned.
 	 * 
 	 * @param pathObject
 	 * @param removeChildren
+	 * @param searchAll if true, search all planes if the object isn't found using its current ROI
 	 */
-	private void removeFromCache(PathObject pathObject, boolean removeChildren) {
+	private void removeFromCache(PathObject pathObject, boolean removeChildren, boolean searchAll) {
 		// If the cache isn't active, then nothing to remove
 		if (!isActive())
 			return;
 		
-		SpatialIndex mapObjects = map.get(pathObject.getClass());
-		
-		// We can remove objects from a Quadtree
-		if (mapObjects instanceof Quadtree) {
-			if (mapObjects.remove(MAX_ENVELOPE, pathObject)) {
-				logger.debug("Removed {} from cache", pathObject);
-			} else
-				logger.debug("Unable to remove {} from cache", pathObject);
-			// Remove the children
-			if (removeChildren) {
-				for (PathObject child : pathObject.getChildObjectsAsArray())
-					removeFromCache(child, removeChildren);
+		var planeMap = map.get(pathObject.getClass());
+		if (planeMap != null) {
+			boolean removed = false;
+			if (pathObject.hasROI()) {
+				var index = planeMap.get(getPlane(pathObject.getROI()));
+				removed = index != null && index.remove(pathObject);
 			}
-		} else if (mapObjects != null && !removeChildren) {
-			// We can't remove objects from a STRtree, but since we're just removing one object we can rebuild only the cache for this class
-			constructCache(pathObject.getClass());
-		} else {
-			// If we need to remove multiple objects, better to just rebuild the entire cache
-			constructCache(null);
+			if (!removed && searchAll) {
+				for (var index : planeMap.values()) {
+					if (index.remove(pathObject)) {
+						removed = true;
+						break;
+					}
+				}
+			}
+			if (removed)
+				logger.trace("Removed {} from cache", pathObject);
+			else
+				logger.debug("Unable to remove {} from cache", pathObject);
+		}
+		// Remove the children
+		if (removeChildren) {
+			for (PathObject child : pathObject.getChildObjectsAsArray())
+				removeFromCache(child, removeChildren, searchAll);
 		}
 	}
 
@@ -287,100 +408,209 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	 * @return
 	 */
 	public Collection<PathObject> getObjectsForRegion(Class<? extends PathObject> cls, ImageRegion region, Collection<PathObject> pathObjects, boolean includeSubclasses) {
+		loadDeferredObjects(cls, region);
 		ensureCacheConstructed();
 		
 		var envelope = region == null ? MAX_ENVELOPE : getEnvelope(region);
 		
-		int z = region == null ? -1 : region.getZ();
-		int t = region == null ? -1 : region.getT();
-		r.lock();
-		try {
-			// Iterate through all the classes, getting objects of the specified class or subclasses thereof
-			for (Entry<Class<? extends PathObject>, SpatialIndex> entry : map.entrySet()) {
-				if (cls == null || (includeSubclasses && cls.isAssignableFrom(entry.getKey())) || Objects.equals(cls, entry.getKey())) {
-					if (entry.getValue() != null) {
-						List<PathObject> list = entry.getValue().query(envelope);
-						if (list.isEmpty())
-							continue;
-						
-						if (pathObjects == null)
-							pathObjects = new HashSet<>();
-						
-						// Add all objects that have a parent, i.e. might be in the hierarchy
-						for (PathObject pathObject : list) {
-							var roi = pathObject.getROI();
-							if (roi == null || region == null || (roi.getZ() == z && roi.getT() == t)) {
-								if (pathObject.getParent() != null || pathObject.isRootObject()) {
-									if (envelope.intersects(getEnvelope(pathObject)))
-										pathObjects.add(pathObject);
-								}
+		var plane = region == null ? null : region.getImagePlane();
+		// Iterate through all the classes, getting objects of the specified class or subclasses thereof
+		for (Entry<Class<? extends PathObject>, Map<ImagePlane, PlaneIndex>> entry : map.entrySet()) {
+			if (cls == null || (includeSubclasses && cls.isAssignableFrom(entry.getKey())) || Objects.equals(cls, entry.getKey())) {
+				for (var index : getIndexes(entry.getValue(), plane)) {
+					List<PathObject> list = index.query(envelope);
+					if (list.isEmpty())
+						continue;
+					
+					if (pathObjects == null)
+						pathObjects = new HashSet<>();
+					
+					// Add all objects that have a parent, i.e. might be in the hierarchy
+					for (PathObject pathObject : list) {
+						var roi = pathObject.getROI();
+						// Plane check is only needed if a ROI has been changed since the object was indexed
+						if (roi == null || region == null || (roi.getZ() == region.getZ() && roi.getT() == region.getT())) {
+							if (pathObject.getParent() != null || pathObject.isRootObject()) {
+								if (envelope.intersects(getEnvelope(pathObject)))
+									pathObjects.add(pathObject);
 							}
 						}
 					}
 				}
 			}
-			if (pathObjects == null)
-				return Collections.emptySet();
-			return pathObjects;
-		} finally {
-			r.unlock();
 		}
+		if (pathObjects == null)
+			return Collections.emptySet();
+		return pathObjects;
 	}
 	
 	public boolean hasObjectsForRegion(Class<? extends PathObject> cls, ImageRegion region, boolean includeSubclasses) {
+		loadDeferredObjects(cls, region);
 		ensureCacheConstructed();
 		
 		var envelope = region == null ? MAX_ENVELOPE : getEnvelope(region);
 		
-		int z = region == null ? -1 : region.getZ();
-		int t = region == null ? -1 : region.getT();
-		r.lock();
-		try {
-			// Iterate through all the classes, getting objects of the specified class or subclasses thereof
-			for (Entry<Class<? extends PathObject>, SpatialIndex> entry : map.entrySet()) {
-				if (cls == null || Objects.equals(cls, entry.getKey()) || (includeSubclasses && cls.isAssignableFrom(entry.getKey()))) {
-					if (entry.getValue() != null) {
-						var list = (List<PathObject>)entry.getValue().query(envelope);
-						for (var pathObject : list) {
-							var roi = pathObject.getROI();
-							if (roi == null)
-								continue;
-							if (region == null)
-								return true;
-							if (roi.getZ() != z || roi.getT() != t)
-								continue;
-							if (region.intersects(roi.getBoundsX(), roi.getBoundsY(), roi.getBoundsWidth(), roi.getBoundsHeight())) {
-								return true;
-							}
+		var plane = region == null ? null : region.getImagePlane();
+		// Iterate through all the classes, getting objects of the specified class or subclasses thereof
+		for (Entry<Class<? extends PathObject>, Map<ImagePlane, PlaneIndex>> entry : map.entrySet()) {
+			if (cls == null || Objects.equals(cls, entry.getKey()) || (includeSubclasses && cls.isAssignableFrom(entry.getKey()))) {
+				for (var index : getIndexes(entry.getValue(), plane)) {
+					var list = index.query(envelope);
+					for (var pathObject : list) {
+						var roi = pathObject.getROI();
+						if (roi == null)
+							continue;
+						if (pathObject.getParent() == null && !pathObject.isRootObject())
+							continue;
+						if (region == null)
+							return true;
+						if (roi.getZ() != region.getZ() || roi.getT() != region.getT())
+							continue;
+						if (region.intersects(roi.getBoundsX(), roi.getBoundsY(), roi.getBoundsWidth(), roi.getBoundsHeight())) {
+							return true;
 						}
 					}
 				}
 			}
-			return false;
-		} finally {
-			r.unlock();
 		}
+		return false;
+	}
+
+
+	/**
+	 * Ask the hierarchy to load any deferred objects that might be returned by a query.
+	 * This must be called before acquiring any of the cache's locks, since loading requires the hierarchy's lock.
+	 * @param cls
+	 * @param region
+	 */
+	private void loadDeferredObjects(Class<? extends PathObject> cls, ImageRegion region) {
+		if (hierarchy != null)
+			hierarchy.loadDeferredObjects(cls, region);
+	}
+
+
+	/**
+	 * Get the spatial indexes that should be queried for a specified plane.
+	 * @param planeMap
+	 * @param plane the plane, or null if all planes should be queried
+	 * @return
+	 */
+	private static Collection<PlaneIndex> getIndexes(Map<ImagePlane, PlaneIndex> planeMap, ImagePlane plane) {
+		if (plane == null)
+			return planeMap.values();
+		var index = planeMap.get(plane);
+		return index == null ? Collections.emptyList() : Collections.singletonList(index);
 	}
 
 
 	@Override
 	public void hierarchyChanged(final PathObjectHierarchyEvent event) {
-		w.lock();
+		writeLock.lock();
 		try {
+			// Check if we've already been updated for this event
+			if (updatedEventCount == hierarchy.getEventCount())
+				return;
 			boolean singleChange = event.getChangedObjects().size() == 1;
 			PathObject singleObject = singleChange ? event.getChangedObjects().getFirst() : null;
 			if (singleChange && event.getEventType() == HierarchyEventType.ADDED) {
-				removeFromCache(singleObject, false);
-				addToCache(singleObject, false, singleObject.getClass());
+				addToCache(singleObject, true);
 			} else if (singleChange && event.getEventType() == HierarchyEventType.REMOVED) {
-				removeFromCache(singleObject, false);
+				removeFromCache(singleObject, false, true);
 			} else if (event.getEventType() == HierarchyEventType.OTHER_STRUCTURE_CHANGE || event.getEventType() == HierarchyEventType.CHANGE_OTHER) {
 				if (!event.isChanging())
 					resetCache();
 			}
 		} finally {
-			w.unlock();
+			writeLock.unlock();
+		}
+	}
+	
+	
+	/**
+	 * Spatial index for the objects of one class on one plane, with its own lock.
+	 * <p>
+	 * The envelope used to index each object is retained, since this is needed to remove the object 
+	 * and may differ from the bounds of its current ROI.
+	 */
+	private static class PlaneIndex {
+		
+		private final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
+		private final Lock r = rwl.readLock();
+		private final Lock w = rwl.writeLock();
+		
+		private SpatialIndex index;
+		private final Map<PathObject, Envelope> envelopes = new HashMap<>();
+		
+		/**
+		 * Create an index containing the specified objects.
+		 * Large collections use a packed STRtree, which is faster to query but doesn't support insertion.
+		 * @param pathObjects
+		 */
+		private PlaneIndex(Collection<? extends PathObject> pathObjects) {
+			index = pathObjects.size() >= BULK_LOAD_THRESHOLD ? new STRtree() : new Quadtree();
+			for (var pathObject : pathObjects) {
+				var envelope = getEnvelope(pathObject);
+				if (envelopes.put(pathObject, envelope) == null)
+					index.insert(envelope, pathObject);
+			}
+			if (index instanceof STRtree tree)
+				tree.build();
 		}
+		
+		@SuppressWarnings("unchecked")
+		private List<PathObject> query(Envelope envelope) {
+			r.lock();
+			try {
+				return index.query(envelope);
+			} finally {
+				r.unlock();
+			}
+		}
+		
+		/**
+		 * Insert an object, if it isn't already present with the same envelope.
+		 * If it is present with a different envelope (because its ROI has changed), it is reindexed.
+		 * @param envelope
+		 * @param pathObject
+		 */
+		private void insert(Envelope envelope, PathObject pathObject) {
+			w.lock();
+			try {
+				var previous = envelopes.get(pathObject);
+				if (envelope.equals(previous))
+					return;
+				// A packed STRtree can't be updated, so replace it with a Quadtree
+				if (index instanceof STRtree) {
+					var quadtree = new Quadtree();
+					for (var entry : envelopes.entrySet())
+						quadtree.insert(entry.getValue(), entry.getKey());
+					index = quadtree;
+				}
+				if (previous != null)
+					index.remove(previous, pathObject);
+				index.insert(envelope, pathObject);
+				envelopes.put(pathObject, envelope);
+			} finally {
+				w.unlock();
+			}
+		}
+		
+		/**
+		 * Remove an object, using the envelope it was indexed with. 
+		 * Both Quadtrees and (built) STRtrees support removal.
+		 * @param pathObject
+		 * @return true if the object was found and removed
+		 */
+		private boolean remove(PathObject pathObject) {
+			w.lock();
+			try {
+				var envelope = envelopes.remove(pathObject);
+				return envelope != null && index.remove(envelope, pathObject);
+			} finally {
+				w.unlock();
+			}
+		}
+		
 	}
 	
 }
@@ -26,10 +26,13 @@ package qupath.lib.objects.hierarchy.events;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImageRegion;
 
 /**
  * An event class for passing on information about modifications to a PathObjectHierarchy.
@@ -82,13 +85,33 @@ public class PathObjectHierarchyEvent {
 	private List<PathObject> pathObjects;
 	private boolean isChanging;
 	private long timestamp;
+	
+	/**
+	 * Maximum number of regions to return before they are merged into a coarser grid.
+	 */
+	private static final int MAX_REGIONS = 100;
+	
+	/**
+	 * Size of the grid used to merge regions, in pixels.
+	 */
+	private static final int REGION_GRID_SIZE = 1024;
+	
+	// Objects used to determine the changed regions, or null if these are unknown
+	private final Collection<? extends PathObject> regionObjects;
+	private volatile List<ImageRegion> changedRegions;
 
 	PathObjectHierarchyEvent(final Object source, final PathObjectHierarchy hierarchy, final HierarchyEventType type, final PathObject parentObject, final List<PathObject> pathObjects, final boolean isChanging) {
+		this(source, hierarchy, type, parentObject, pathObjects, pathObjects.isEmpty() ? null : pathObjects, isChanging);
+	}
+	
+	private PathObjectHierarchyEvent(final Object source, final PathObjectHierarchy hierarchy, final HierarchyEventType type, final PathObject parentObject, final List<PathObject> pathObjects, 
+			final Collection<? extends PathObject> regionObjects, final boolean isChanging) {
 		this.source = source;
 		this.hierarchy = hierarchy;
 		this.type = type;
 		this.parentObject = parentObject;
 		this.pathObjects = Collections.unmodifiableList(pathObjects);
+		this.regionObjects = regionObjects;
 		this.isChanging = isChanging;
 	}
 
@@ -108,6 +131,24 @@ public class PathObjectHierarchyEvent {
 		return new PathObjectHierarchyEvent(source, hierarchy, HierarchyEventType.OTHER_STRUCTURE_CHANGE, parentObject, new ArrayList<>(0), false);						
 	}
 
+	/**
+	 * Create a hierarchy event indicating that the hierarchy structure has been changed, where the objects that were 
+	 * added, removed or moved are known.
+	 * <p>
+	 * The affected objects are used only to determine {@link #getChangedRegions()}; they are not returned by 
+	 * {@link #getChangedObjects()}, so that listeners handle the event in the same way as any other structure change.
+	 * @param source
+	 * @param hierarchy
+	 * @param parentObject
+	 * @param affectedObjects the objects that were added, removed or moved
+	 * @return
+	 * @since v0.6.0
+	 */
+	public static PathObjectHierarchyEvent createStructureChangeEvent(Object source, PathObjectHierarchy hierarchy, PathObject parentObject, Collection<? extends PathObject> affectedObjects) {
+		return new PathObjectHierarchyEvent(source, hierarchy, HierarchyEventType.OTHER_STRUCTURE_CHANGE, parentObject, new ArrayList<>(0), 
+				affectedObjects == null ? null : new ArrayList<>(affectedObjects), false);
+	}
+
 	/**
 	 * Create a hierarchy event indicated objects were added.
 	 * @param source
@@ -220,6 +261,80 @@ public class PathObjectHierarchyEvent {
 		return type == HierarchyEventType.CHANGE_MEASUREMENTS;
 	}
 	
+	/**
+	 * Get the regions within which objects may have changed.
+	 * <p>
+	 * These are determined from the bounds of the ROIs of the changed objects, and (for structure changes) their descendants.
+	 * If there are many objects, the regions are merged into a coarser grid, so the regions may be larger than strictly necessary.
+	 * <p>
+	 * If the regions are unknown (e.g. for a structure change event without any affected objects), this returns null 
+	 * and listeners should assume that any object may have changed.
+	 * This is also the case for {@link HierarchyEventType#CHANGE_OTHER} events, since these may indicate that ROIs 
+	 * have changed, and the previous locations of the objects are not known.
+	 * 
+	 * @return an unmodifiable list of regions, or null if the changed regions are unknown
+	 * @since v0.6.0
+	 */
+	public List<ImageRegion> getChangedRegions() {
+		if (regionObjects == null || type == HierarchyEventType.CHANGE_OTHER)
+			return null;
+		var regions = changedRegions;
+		if (regions == null) {
+			synchronized (this) {
+				regions = changedRegions;
+				if (regions == null) {
+					// Note that this will be null if any object lacks a ROI
+					regions = computeRegions(regionObjects, isStructureChangeEvent());
+					changedRegions = regions;
+				}
+			}
+		}
+		return regions;
+	}
+	
+	private static List<ImageRegion> computeRegions(Collection<? extends PathObject> pathObjects, boolean includeDescendants) {
+		List<ImageRegion> regions = new ArrayList<>();
+		for (var pathObject : pathObjects) {
+			if (!addRegion(pathObject, regions))
+				return null;
+			if (includeDescendants && pathObject.hasChildObjects()) {
+				for (var descendant : pathObject.getDescendantObjects(null)) {
+					if (!addRegion(descendant, regions))
+						return null;
+				}
+			}
+		}
+		if (regions.size() <= MAX_REGIONS)
+			return Collections.unmodifiableList(regions);
+		
+		// Merge into grid cells, to avoid a very long list
+		Set<ImageRegion> cells = new LinkedHashSet<>();
+		for (var region : regions) {
+			int x1 = Math.floorDiv(region.getX(), REGION_GRID_SIZE);
+			int y1 = Math.floorDiv(region.getY(), REGION_GRID_SIZE);
+			int x2 = Math.floorDiv(region.getMaxX() - 1, REGION_GRID_SIZE);
+			int y2 = Math.floorDiv(region.getMaxY() - 1, REGION_GRID_SIZE);
+			for (int y = y1; y <= y2; y++) {
+				for (int x = x1; x <= x2; x++) {
+					cells.add(ImageRegion.createInstance(x * REGION_GRID_SIZE, y * REGION_GRID_SIZE, REGION_GRID_SIZE, REGION_GRID_SIZE, region.getZ(), region.getT()));
+				}
+			}
+		}
+		return List.copyOf(cells);
+	}
+	
+	private static boolean addRegion(PathObject pathObject, List<ImageRegion> regions) {
+		var roi = pathObject.getROI();
+		if (roi == null)
+			return false;
+		int x = (int)Math.floor(roi.getBoundsX());
+		int y = (int)Math.floor(roi.getBoundsY());
+		int width = Math.max(1, (int)Math.ceil(roi.getBoundsX() + roi.getBoundsWidth()) - x);
+		int height = Math.max(1, (int)Math.ceil(roi.getBoundsY() + roi.getBoundsHeight()) - y);
+		regions.add(ImageRegion.createInstance(x, y, width, height, roi.getZ(), roi.getT()));
+		return true;
+	}
+	
 	/**
 	 * If this is a structure change event, return the base object, i.e. below which the structure differs from previously.
 	 * In the case that an object was added or removed, this will return the parent of the added/removed object.  For more
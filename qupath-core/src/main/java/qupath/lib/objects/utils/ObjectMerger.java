@@ -26,6 +26,7 @@ import java.util.HashMap;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.CoordinateSequenceFilter;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
@@ -33,6 +34,7 @@ import org.locationtech.jts.index.SpatialIndex;
 import org.locationtech.jts.index.hprtree.HPRtree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.measurements.MeasurementList;
 import qupath.lib.measurements.MeasurementListFactory;
 import qupath.lib.objects.PathObject;
@@ -68,6 +70,11 @@ public class ObjectMerger implements ObjectProcessor {
 
     private static final Logger logger = LoggerFactory.getLogger(ObjectMerger.class);
 
+    /**
+     * Minimum number of objects before merge tests are computed in parallel, using spatial partitions.
+     */
+    private static final int MIN_OBJECTS_FOR_PARTITIONING = 1000;
+
     private final BiPredicate<PathObject, PathObject> compatibilityTest;
     private final BiPredicate<Geometry, Geometry> mergeTest;
     private final double searchDistance;
@@ -128,6 +135,18 @@ public class ObjectMerger implements ObjectProcessor {
      * @return a list of objects, with the same number or fewer than the input
      */
     public List<PathObject> process(Collection<? extends PathObject> pathObjects) {
+        return process(pathObjects, pathObjects != null && pathObjects.size() >= MIN_OBJECTS_FOR_PARTITIONING);
+    }
+
+    /**
+     * Calculate the result of applying the merging strategy to the input objects, optionally partitioning the
+     * objects spatially so that merge tests can be computed in parallel.
+     * The clusters of objects to merge (and their order) are the same in both cases.
+     * @param pathObjects the input objects for which merges should be calculated
+     * @param partitioned if true, use spatial partitioning whenever a search distance is available
+     * @return a list of objects, with the same number or fewer than the input
+     */
+    List<PathObject> process(Collection<? extends PathObject> pathObjects, boolean partitioned) {
 
         if (pathObjects == null || pathObjects.isEmpty())
             return Collections.emptyList();
@@ -143,6 +162,8 @@ public class ObjectMerger implements ObjectProcessor {
         List<List<PathObject>> clustersToMerge;
         if (doRecursive)
             clustersToMerge = computeClustersRecursive(pathObjects);
+        else if (partitioned && useSearchDistance())
+            clustersToMerge = computeClustersPartitioned(pathObjects);
         else
             clustersToMerge = computeClustersIterative(pathObjects);
 
@@ -428,6 +449,101 @@ public class ObjectMerger implements ObjectProcessor {
         return clusters;
     }
 
+    /**
+     * Partitioned method to compute clusters to merge.
+     * <p>
+     * Objects are grouped into spatial buckets, and the merge tests with all neighbors are computed for each bucket
+     * in parallel using the shared (read-only) spatial index - so that objects close to bucket boundaries are
+     * also tested against neighbors in adjacent buckets.
+     * The clusters are then assembled by traversing the precomputed merges, which is cheap and gives exactly the
+     * same clusters (with objects in the same order) as {@link #computeClustersIterative(Collection)}.
+     *
+     * @param allObjects
+     * @return
+     * @throws UnsupportedOperationException if {@link #useSearchDistance()} is false
+     */
+    private List<List<PathObject>> computeClustersPartitioned(Collection<? extends PathObject> allObjects) throws UnsupportedOperationException {
+        if (!useSearchDistance())
+            throw new UnsupportedOperationException("Partitioned merging requires a search distance");
+
+        var geometryMap = buildMutableGeometryMap(allObjects);
+        var index = buildSpatialIndex(allObjects, geometryMap);
+        // Ensure the index is built before it is queried from multiple threads
+        index.build();
+
+        // Compute all the merges for each object
+        Map<PathObject, List<PathObject>> merges = new ConcurrentHashMap<>();
+        createSpatialBuckets(allObjects, geometryMap)
+                .parallelStream()
+                .forEach(bucket -> {
+                    for (var current : bucket) {
+                        var currentGeometry = getGeometry(current, geometryMap);
+                        var neighbors = filterCompatibleNeighbors(current, findCompatibleNeighbors(currentGeometry, index));
+                        merges.put(current, neighbors.stream()
+                                .filter(neighbor -> mergeTest.test(currentGeometry, getGeometry(neighbor, geometryMap)))
+                                .toList());
+                    }
+                });
+
+        // Visit objects in the same order as the iterative method
+        List<List<PathObject>> clusters = new ArrayList<>();
+        Set<PathObject> alreadyVisited = new HashSet<>();
+        Queue<PathObject> pending = new ArrayDeque<>();
+        for (var p : allObjects) {
+            if (alreadyVisited.contains(p))
+                continue;
+            List<PathObject> cluster = new ArrayList<>();
+            pending.clear();
+            pending.add(p);
+            while (!pending.isEmpty()) {
+                var current = pending.poll();
+                if (!alreadyVisited.add(current))
+                    continue;
+                cluster.add(current);
+                for (var neighbor : merges.getOrDefault(current, Collections.emptyList())) {
+                    if (!alreadyVisited.contains(neighbor))
+                        pending.add(neighbor);
+                }
+            }
+            clusters.add(cluster);
+        }
+        return clusters;
+    }
+
+    /**
+     * Group objects into buckets according to the centers of their envelopes.
+     * Objects without geometries are excluded.
+     * @param pathObjects
+     * @param geometryMap
+     * @return
+     */
+    private static List<List<PathObject>> createSpatialBuckets(Collection<? extends PathObject> pathObjects, Map<ROI, Geometry> geometryMap) {
+        var bounds = new Envelope();
+        for (var p : pathObjects) {
+            var geom = p.hasROI() ? geometryMap.get(p.getROI()) : null;
+            if (geom != null)
+                bounds.expandToInclude(geom.getEnvelopeInternal());
+        }
+        if (bounds.isNull())
+            return Collections.emptyList();
+        // Aim for enough buckets to balance the work between threads
+        int nBuckets = ThreadTools.getParallelism() * 16;
+        int nPerSide = (int)Math.ceil(Math.sqrt(nBuckets));
+        double bucketWidth = Math.max(bounds.getWidth() / nPerSide, 1.0);
+        double bucketHeight = Math.max(bounds.getHeight() / nPerSide, 1.0);
+        Map<Long, List<PathObject>> buckets = new HashMap<>();
+        for (var p : pathObjects) {
+            var geom = p.hasROI() ? geometryMap.get(p.getROI()) : null;
+            if (geom == null)
+                continue;
+            var env = geom.getEnvelopeInternal();
+            long bx = (long)((env.centre().x - bounds.getMinX()) / bucketWidth);
+            long by = (long)((env.centre().y - bounds.getMinY()) / bucketHeight);
+            buckets.computeIfAbsent(by * (nPerSide + 1) + bx, k -> new ArrayList<>()).add(p);
+        }
+        return new ArrayList<>(buckets.values());
+    }
+
     /**
      * Recursively build a cluster of objects that can be merged.
      * This is a recursive implementation of the iterative method above, useful for debugging.
@@ -560,7 +676,7 @@ public class ObjectMerger implements ObjectProcessor {
      * @param geometryMap
      * @return
      */
-    private static SpatialIndex buildSpatialIndex(Collection<? extends PathObject> pathObjects, Map<ROI, Geometry> geometryMap) {
+    private static HPRtree buildSpatialIndex(Collection<? extends PathObject> pathObjects, Map<ROI, Geometry> geometryMap) {
         var index = new HPRtree();
         populateSpatialIndex(index, pathObjects, geometryMap);
         return index;
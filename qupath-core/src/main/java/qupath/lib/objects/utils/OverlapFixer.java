@@ -39,17 +39,26 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class OverlapFixer implements ObjectProcessor {
 
     private static final Logger logger = LoggerFactory.getLogger(OverlapFixer.class);
 
+    /**
+     * Minimum number of overlapping objects before they are split into independent groups to process in parallel.
+     */
+    private static final int MIN_OBJECTS_FOR_PARTITIONING = 1000;
+
     public enum Strategy {
         KEEP_OVERLAPS,
         DROP_OVERLAPS,
@@ -92,6 +101,19 @@ public class OverlapFixer implements ObjectProcessor {
      *         possibly with new (clipped) ROIs - but no object will be added or have its properties changed.
      */
     public List<PathObject> process(Collection<? extends PathObject> pathObjects) {
+        return process(pathObjects, null);
+    }
+
+    /**
+     * Fix overlaps in a collection of PathObjects, optionally splitting overlapping objects into independent groups
+     * that can be processed in parallel.
+     * The output is the same in both cases.
+     * @param pathObjects the input objects
+     * @param partitioned true if objects should be partitioned, false if not, or null if this should be determined
+     *                    by the number of overlapping objects
+     * @return the output objects
+     */
+    List<PathObject> process(Collection<? extends PathObject> pathObjects, Boolean partitioned) {
 
         int nInput = pathObjects.size();
 
@@ -113,9 +135,6 @@ public class OverlapFixer implements ObjectProcessor {
         // Build a first spatial index for efficient overlap detection - this can be immutable for performance
         SpatialIndex immutableIndex = new STRtree();
         populateSpatialIndex(pathObjects, immutableIndex, cache);
-        for (var pathObject : pathObjects) {
-            immutableIndex.insert(cache.getEnvelope(pathObject), pathObject);
-        }
 
         // Split the objects into two groups: those with overlaps and those without
         // Ensure the outputs are ArrayLists so that they are modifiable
@@ -128,15 +147,45 @@ public class OverlapFixer implements ObjectProcessor {
         List<PathObject> output = overlapMap.computeIfAbsent(Boolean.FALSE, b -> new ArrayList<>());
 
         // If we've got no objects with overlaps, we're done
-        if (overlapMap.getOrDefault(Boolean.TRUE, Collections.emptyList()).isEmpty()) {
+        List<PathObject> withOverlaps = overlapMap.getOrDefault(Boolean.TRUE, Collections.emptyList());
+        if (withOverlaps.isEmpty()) {
             logger.debug("No overlaps found in {} objects", nInput);
             return output;
         }
 
-        // Create a sorted set to store the objects to process, ordered using the comparator
         var comparator = comparatorSupplier.get();
+        if (partitioned == null)
+            partitioned = withOverlaps.size() >= MIN_OBJECTS_FOR_PARTITIONING;
+        if (partitioned) {
+            output.addAll(resolveOverlapsPartitioned(withOverlaps, cache, comparator));
+        } else {
+            for (var removal : resolveOverlaps(withOverlaps, cache, comparator)) {
+                if (removal.kept())
+                    output.add(removal.pathObject());
+            }
+        }
+        logger.debug("Processed {} objects to fix overlaps, retaining {} objects", nInput, output.size());
+        return output;
+    }
+
+    /**
+     * An object removed from the set of objects to process, and whether it was kept.
+     */
+    private static record Removal(PathObject pathObject, boolean kept) {}
+
+    /**
+     * Resolve overlaps between objects, in order of priority.
+     * @param pathObjects objects that might overlap with one another
+     * @param cache
+     * @param comparator comparator used to prioritize objects
+     * @return every object taken from the set of objects to process, in order, and whether it was kept
+     */
+    private List<Removal> resolveOverlaps(Collection<PathObject> pathObjects, GeometryCache cache, Comparator<PathObject> comparator) {
+        List<Removal> removals = new ArrayList<>();
+
+        // Create a sorted set to store the objects to process, ordered using the comparator
         var toProcess = new TreeSet<>(comparator);
-        toProcess.addAll(overlapMap.get(Boolean.TRUE));
+        toProcess.addAll(pathObjects);
 
         // Build a new (hopefully much smaller!) modifiable spatial index for the objects with overlaps
         // This must be mutable, so that we can both remove and add objects
@@ -153,10 +202,11 @@ public class OverlapFixer implements ObjectProcessor {
             List<PathObject> overlapping = index.query(envelope);
             if (!overlapping.contains(pathObject)) {
                 // Object has already been removed - skip
+                removals.add(new Removal(pathObject, false));
                 continue;
             }
             // Keep this object
-            output.add(pathObject);
+            removals.add(new Removal(pathObject, true));
             if (overlapping.size() > 1) {
                 // Perform stricter overlap check
                 var geom = cache.getGeometry(pathObject);
@@ -181,7 +231,6 @@ public class OverlapFixer implements ObjectProcessor {
             }
             // Drop all overlapping objects
             // We only need to remove them from the index (to avoid the cost of removing them from the list)
-            // TODO: Consider looking for non-overlapping clusters of objects to handle together
             for (var overlap : overlapping) {
                 if (!index.remove(cache.getEnvelope(overlap), overlap)) {
                     logger.warn("Failed to remove object from index: " + overlap);
@@ -216,10 +265,136 @@ public class OverlapFixer implements ObjectProcessor {
                 }
             }
         }
-        logger.debug("Processed {} objects to fix overlaps, retaining {} objects", nInput, output.size());
+        return removals;
+    }
+
+    /**
+     * Resolve overlaps by first splitting objects into groups that cannot influence one another, and processing
+     * each group in parallel.
+     * <p>
+     * Objects are grouped if their interiors intersect (or they are identical).
+     * Because clipping only ever removes part of an object, clipped objects can only overlap objects from the
+     * same group - and so the result for each group is independent of all the others.
+     * The results are then merged in the order that they would have been processed by
+     * {@link #resolveOverlaps(Collection, GeometryCache, Comparator)} for all objects.
+     *
+     * @param pathObjects objects that might overlap with one another
+     * @param cache
+     * @param comparator comparator used to prioritize objects
+     * @return the objects to keep, in the same order as they would be kept without partitioning
+     */
+    private List<PathObject> resolveOverlapsPartitioned(List<PathObject> pathObjects, GeometryCache cache, Comparator<PathObject> comparator) {
+        int n = pathObjects.size();
+        Map<PathObject, Integer> indices = new IdentityHashMap<>();
+        STRtree tree = new STRtree();
+        for (int i = 0; i < n; i++) {
+            var pathObject = pathObjects.get(i);
+            indices.put(pathObject, i);
+            tree.insert(cache.getEnvelope(pathObject), pathObject);
+        }
+        tree.build();
+
+        // Find the objects that may interact, using each pair only once
+        List<int[]> links = IntStream.range(0, n)
+                .parallel()
+                .mapToObj(i -> findLinks(i, pathObjects, indices, tree, cache))
+                .toList();
+
+        // Group the objects using union-find
+        int[] parents = IntStream.range(0, n).toArray();
+        for (int i = 0; i < n; i++) {
+            for (int j : links.get(i))
+                union(parents, i, j);
+        }
+        Map<Integer, List<PathObject>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++)
+            groups.computeIfAbsent(find(parents, i), k -> new ArrayList<>()).add(pathObjects.get(i));
+        logger.debug("Resolving overlaps for {} objects in {} groups", n, groups.size());
+
+        List<List<Removal>> results = groups.values()
+                .parallelStream()
+                .map(group -> resolveOverlaps(group, cache, comparator))
+                .toList();
+
+        // Merge the results, always taking the next object from the group with the highest priority.
+        // This matches the order in which objects are taken from a single sorted set.
+        var queue = new PriorityQueue<RemovalCursor>((c1, c2) -> comparator.compare(c1.peek(), c2.peek()));
+        for (var result : results) {
+            if (!result.isEmpty())
+                queue.add(new RemovalCursor(result));
+        }
+        List<PathObject> output = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            var cursor = queue.poll();
+            var removal = cursor.next();
+            if (removal.kept())
+                output.add(removal.pathObject());
+            if (cursor.hasNext())
+                queue.add(cursor);
+        }
         return output;
     }
 
+    private static int[] findLinks(int i, List<PathObject> pathObjects, Map<PathObject, Integer> indices, STRtree tree, GeometryCache cache) {
+        var pathObject = pathObjects.get(i);
+        var geom = cache.getGeometry(pathObject);
+        List<PathObject> candidates = tree.query(cache.getEnvelope(pathObject));
+        return candidates.stream()
+                .filter(p -> indices.get(p) > i)
+                .filter(p -> interiorsIntersect(geom, cache.getGeometry(p)))
+                .mapToInt(indices::get)
+                .toArray();
+    }
+
+    /**
+     * Check if two geometries could overlap, either now or after either has been clipped.
+     * This is less strict than {@link Geometry#overlaps(Geometry)}, which excludes containment.
+     */
+    private static boolean interiorsIntersect(Geometry geom, Geometry geom2) {
+        return geom.equalsExact(geom2) || geom.relate(geom2, "T********");
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parents, int i, int j) {
+        int ri = find(parents, i);
+        int rj = find(parents, j);
+        if (ri != rj)
+            parents[Math.max(ri, rj)] = Math.min(ri, rj);
+    }
+
+    /**
+     * Helper to iterate through the removals for a single group.
+     */
+    private static class RemovalCursor {
+
+        private final List<Removal> removals;
+        private int ind = 0;
+
+        private RemovalCursor(List<Removal> removals) {
+            this.removals = removals;
+        }
+
+        private PathObject peek() {
+            return removals.get(ind).pathObject();
+        }
+
+        private Removal next() {
+            return removals.get(ind++);
+        }
+
+        private boolean hasNext() {
+            return ind < removals.size();
+        }
+
+    }
+
     private static void populateSpatialIndex(Collection<? extends PathObject> pathObjects, SpatialIndex index, GeometryCache cache) {
         for (var pathObject : pathObjects) {
             index.insert(cache.getEnvelope(pathObject), pathObject);
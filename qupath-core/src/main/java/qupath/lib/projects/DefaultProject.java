@@ -643,6 +643,10 @@ class DefaultProject implements Project<BufferedImage> {
 			return Paths.get(getEntryPath().toString(), "data.qpdata.bkp");
 		}
 		
+		private Path getTempImageDataPath() {
+			return Paths.get(getEntryPath().toString(), "data.qpdata.tmp");
+		}
+		
 		private Path getDataSummaryPath() {
 			return Paths.get(getEntryPath().toString(), "summary.json");
 		}
@@ -656,13 +660,19 @@ class DefaultProject implements Project<BufferedImage> {
 		}
 
 		@Override
-		public synchronized ImageData<BufferedImage> readImageData() throws IOException {
+		public ImageData<BufferedImage> readImageData() throws IOException {
+			return readImageData(false);
+		}
+
+		@Override
+		public synchronized ImageData<BufferedImage> readImageData(boolean deferDetections) throws IOException {
 			Path path = getImageDataPath();
 			ImageData<BufferedImage> imageData = null;
 			// TODO: Consider whether we can set the image name for the lazy-loaded server
 			if (Files.exists(path)) {
 				try {
-					imageData = PathIO.readImageData(path, getServerBuilder());
+					// Deferred detections are read from the file later - when saving, they are copied to the new file and read from there
+					imageData = PathIO.readImageData(path, getServerBuilder(), deferDetections);
 				} catch (Exception e) {
 					logger.error("Error reading image data from {}", path, e);
 				}
@@ -701,11 +711,6 @@ class DefaultProject implements Project<BufferedImage> {
 			getEntryPath(true);
 			var pathData = getImageDataPath();
 			
-			// If we already have a file, back it up first
-			var pathBackup = getBackupImageDataPath();
-			if (Files.exists(pathData))
-				Files.move(pathData, pathBackup, StandardCopyOption.REPLACE_EXISTING);
-			
 			// Set the entry property, if needed
 			// This handles cases where an ImageData is being moved to become part of this project, 
 			// so that it can be recognized later in calls to Project.getEntry(entry)
@@ -715,24 +720,41 @@ class DefaultProject implements Project<BufferedImage> {
 				imageData.setProperty(IMAGE_ID, id);
 			}
 			
-			// Write to a temp file first
-			long timestamp = 0L;
-			try (var stream = Files.newOutputStream(pathData)) {
-				logger.debug("Saving image data to {}", pathData);
-				PathIO.writeImageData(stream, imageData);
-				imageData.setLastSavedPath(pathData.toString(), true);
-				timestamp = Files.getLastModifiedTime(pathData).toMillis();
-				// Delete backup file if it exists
-				if (Files.exists(pathBackup))
-					Files.delete(pathBackup);
-			} catch (IOException e) {
-				// Try to restore the backup
-				if (Files.exists(pathBackup)) {
-					logger.warn("Exception writing image file - attempting to restore {} from backup", pathData);
-					Files.move(pathBackup, pathData, StandardCopyOption.REPLACE_EXISTING);				
+			// Write to a temp file first, leaving the existing file in place - since any deferred detections 
+			// that haven't been loaded are copied from it.
+			// Hold the hierarchy's lock until the detections are read from the new file, so none can be loaded in between.
+			var pathTemp = getTempImageDataPath();
+			var pathBackup = getBackupImageDataPath();
+			synchronized (imageData.getHierarchy()) {
+				try {
+					try (var stream = Files.newOutputStream(pathTemp)) {
+						logger.debug("Saving image data to {}", pathTemp);
+						PathIO.writeImageData(stream, imageData);
+					}
+					PathIO.reopenDeferredObjects(imageData, pathTemp);
+				} catch (IOException e) {
+					Files.deleteIfExists(pathTemp);
+					throw e;
+				}
+				
+				// Replace the existing file, keeping it as a backup until the new file is in place
+				// (Java opens files so that they can still be renamed while open, on all platforms)
+				if (Files.exists(pathData))
+					Files.move(pathData, pathBackup, StandardCopyOption.REPLACE_EXISTING);
+				try {
+					Files.move(pathTemp, pathData, StandardCopyOption.REPLACE_EXISTING);
+				} catch (IOException e) {
+					// Try to restore the backup
+					if (Files.exists(pathBackup)) {
+						logger.warn("Exception writing image file - attempting to restore {} from backup", pathData);
+						Files.move(pathBackup, pathData, StandardCopyOption.REPLACE_EXISTING);				
+					}
+					throw e;
 				}
-				throw e;
+				Files.deleteIfExists(pathBackup);
 			}
+			imageData.setLastSavedPath(pathData.toString(), true);
+			long timestamp = Files.getLastModifiedTime(pathData).toMillis();
 			
 			// If successful, write the server (including metadata)
 			var currentServerBuilder = imageData.getServerBuilder();
@@ -955,13 +977,23 @@ class DefaultProject implements Project<BufferedImage> {
 		
 		private int nObjects;
 		private Integer nTMACores;
+		private Long nDeferredObjects;
 		private Map<String, Long> objectTypeCounts;
 		private Map<String, Long> annotationClassificationCounts;
 		private Map<String, Long> detectionClassificationCounts;
 		
 		HierarchySummary(PathObjectHierarchy hierarchy) {
-			Collection<PathObject> pathObjects = hierarchy.getObjects(null, null);
-			this.nObjects = pathObjects.size();
+			// Don't load deferred objects just to summarize them - but do include them in the total
+			Collection<PathObject> pathObjects;
+			var deferred = hierarchy.getDeferredObjects();
+			if (deferred == null) {
+				pathObjects = hierarchy.getObjects(null, null);
+			} else {
+				pathObjects = PathObjectTools.getDescendantObjects(hierarchy.getRootObject(),
+						new ArrayList<>(List.of(hierarchy.getRootObject())), null);
+				nDeferredObjects = deferred.nObjects();
+			}
+			this.nObjects = pathObjects.size() + (nDeferredObjects == null ? 0 : nDeferredObjects.intValue());
 			objectTypeCounts = pathObjects.stream()
 					.collect(Collectors.groupingBy(p -> PathObjectTools.getSuitableName(p.getClass(), true), Collectors.counting()));
 			annotationClassificationCounts = pathObjects.stream().filter(p -> p.isAnnotation())
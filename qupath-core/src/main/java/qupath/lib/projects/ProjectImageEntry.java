@@ -216,6 +216,29 @@ public interface ProjectImageEntry<T> extends UriResource, MinimalMetadataStore
 	 */
 	ImageData<T> readImageData() throws IOException;
 	
+	/**
+	 * Read the {@link ImageData} associated with this entry, optionally deferring the loading of detections 
+	 * until they are needed.
+	 * <p>
+	 * This can be much faster and use much less memory for images with very many detections, if only some of the 
+	 * detections are needed (e.g. in a script that only uses the annotations, or one region).
+	 * Detections are loaded automatically when they are requested from the hierarchy, either by region or all at once.
+	 * However, they are not accessible through the child lists of their parents until they have been loaded.
+	 * Detections that haven't been loaded are written back unchanged when the image data is saved, 
+	 * and discarded if the image data is closed.
+	 * <p>
+	 * The default implementation ignores the request to defer detections, and simply calls {@link #readImageData()}.
+	 * 
+	 * @param deferDetections if true, request that detections are only loaded when needed
+	 * @return
+	 * @throws IOException
+	 * @since v0.6.0
+	 * @see PathObjectHierarchy#loadDeferredObjects()
+	 */
+	default ImageData<T> readImageData(boolean deferDetections) throws IOException {
+		return readImageData();
+	}
+	
 	/**
 	 * Save the {@link ImageData} for this entry using the default storage location for the project.
 	 * @param imageData 
@@ -21,22 +21,32 @@
 
 package qupath.lib.roi;
 
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.util.PolygonExtracter;
 import org.locationtech.jts.index.SpatialIndex;
 import org.locationtech.jts.index.hprtree.HPRtree;
+import org.locationtech.jts.index.hprtree.HilbertEncoder;
 import org.locationtech.jts.operation.overlayng.UnaryUnionNG;
+import org.locationtech.jts.operation.polygonize.Polygonizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
 import java.util.stream.IntStream;
 
 /**
@@ -67,6 +77,9 @@ import java.util.stream.IntStream;
  * </ol>
  * This partitioning of the problem makes it possible to parallelize checking for intersections
  * and computing the union of groups.
+ * <p>
+ * Groups of non-overlapping rectangles (e.g. tiles) are merged by dissolving shared edges, while
+ * large groups of other polygons are sorted spatially and merged as a cascade of smaller unions in parallel.
  *
  * @author Pete Bankhead
  */
@@ -100,45 +113,247 @@ public class FastPolygonUnion {
         for (int i = 0; i < n; i++) {
             tree.insert(allPolygons.get(i).getEnvelopeInternal(), i);
         }
+        // Build before querying from multiple threads
+        tree.build();
 
-        // Check for adjacent objects, restricting search using the tree
-        var matrix = new AdjacencyMatrix(n);
-        IntStream.range(0, n)
+        // Check for adjacent objects, restricting search using the tree.
+        // We only store the adjacent pairs (rather than a full adjacency matrix), so that memory use depends upon
+        // the number of intersections rather than the square of the number of polygons.
+        // We also flag any rectangles that overlap, since these can't be merged by dissolving shared edges.
+        boolean[] overlappingRectangles = new boolean[n];
+        int[][] adjacent = IntStream.range(0, n)
                 .parallel()
-                .forEach(i -> populateAdjacencyMatrix(allPolygons, matrix, tree, i));
+                .mapToObj(i -> findAdjacent(allPolygons, tree, i, overlappingRectangles))
+                .toArray(int[][]::new);
 
         // Gather all the polygons that should be merged
-        var groupsToMerge = new ArrayList<List<Geometry>>();
+        var groups = new UnionFind(n);
+        for (int i = 0; i < n; i++) {
+            for (int j : adjacent[i])
+                groups.union(i, j);
+        }
+        var groupsToMerge = new LinkedHashMap<Integer, List<Integer>>();
         var toKeep = new ArrayList<Geometry>();
-        var visited = new HashSet<Integer>();
         for (int i = 0; i < n; i++) {
-            if (matrix.getAdjacentCount(i) == 0) {
+            if (groups.size(i) == 1) {
                 // Nothing to merge, keep unchanged
                 toKeep.add(allPolygons.get(i));
-                visited.add(i);
-            } else if (visited.contains(i)) {
-                // Already in a group, skip
-                continue;
             } else {
-                // Generate a new group for merging
-                List<Geometry> temp = new ArrayList<>();
-                for (Integer ind : matrix.getAdjacencyGroup(i)) {
-                    temp.add(allPolygons.get(ind));
-                    if (!visited.add(ind))
-                        logger.warn("Polygon added more than once!");
-                }
-                groupsToMerge.add(temp);
+                // Add to a group for merging
+                groupsToMerge.computeIfAbsent(groups.find(i), k -> new ArrayList<>()).add(i);
             }
         }
         logger.debug("Number of polygon collections to merge: {}", groupsToMerge.size());
 
-        toKeep.addAll(groupsToMerge.parallelStream()
-                .map(list -> unionOpNg(list))
+        toKeep.addAll(groupsToMerge.values()
+                .parallelStream()
+                .map(inds -> unionGroup(inds, allPolygons, overlappingRectangles))
                 .toList());
 
        return createPolygonalGeometry(toKeep);
     }
 
+    /**
+     * Compute the union of a group of polygons that are connected to one another.
+     * @param inds indices of the polygons
+     * @param allPolygons all the polygons
+     * @param overlappingRectangles flags indicating which polygons are rectangles that overlap other rectangles
+     * @return
+     */
+    private static Geometry unionGroup(List<Integer> inds, List<Polygon> allPolygons, boolean[] overlappingRectangles) {
+        List<Polygon> polygons = new ArrayList<>(inds.size());
+        boolean allRectangles = true;
+        for (int i : inds) {
+            var polygon = allPolygons.get(i);
+            polygons.add(polygon);
+            if (overlappingRectangles[i] || !polygon.isRectangle())
+                allRectangles = false;
+        }
+        if (allRectangles) {
+            try {
+                return unionRectangles(polygons);
+            } catch (Exception e) {
+                logger.warn("Unable to merge rectangles by shared edges, will use standard union: {}", e.getMessage(), e);
+            }
+        }
+        if (polygons.size() > MAX_CASCADE_LEAF_SIZE * 2)
+            return cascadedUnion(polygons);
+        return unionOpNg(new ArrayList<>(polygons));
+    }
+
+    /**
+     * Maximum number of polygons to union in a single operation, before splitting into parallel subtrees.
+     * Smaller values increase the potential for parallelism, but also increase the number of overlay operations.
+     */
+    private static final int MAX_CASCADE_LEAF_SIZE = 128;
+
+    /**
+     * Compute a cascaded union by sorting polygons along a Hilbert curve, and then recursively computing the union
+     * of each half in parallel.
+     * Spatial sorting ensures that each half is compact, so that intermediate geometries remain small.
+     * @param polygons
+     * @return
+     */
+    private static Geometry cascadedUnion(List<Polygon> polygons) {
+        var extent = new Envelope();
+        for (var polygon : polygons)
+            extent.expandToInclude(polygon.getEnvelopeInternal());
+        var encoder = new HilbertEncoder(12, extent);
+        int n = polygons.size();
+        int[] codes = new int[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            codes[i] = encoder.encode(polygons.get(i).getEnvelopeInternal());
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> codes[i]));
+        List<Geometry> sorted = new ArrayList<>(n);
+        for (int i : order)
+            sorted.add(polygons.get(i));
+        return ForkJoinPool.commonPool().invoke(new CascadedUnionTask(sorted));
+    }
+
+    /**
+     * Task to compute the union of a sublist of spatially-sorted geometries.
+     */
+    private static class CascadedUnionTask extends RecursiveTask<Geometry> {
+
+        private final List<Geometry> geometries;
+
+        private CascadedUnionTask(List<Geometry> geometries) {
+            this.geometries = geometries;
+        }
+
+        @Override
+        protected Geometry compute() {
+            int n = geometries.size();
+            if (n <= MAX_CASCADE_LEAF_SIZE)
+                return unionOpNg(geometries);
+            var first = new CascadedUnionTask(geometries.subList(0, n / 2));
+            var second = new CascadedUnionTask(geometries.subList(n / 2, n));
+            first.fork();
+            var geom2 = second.compute();
+            var geom1 = first.join();
+            return unionOpNg(List.of(geom1, geom2));
+        }
+
+    }
+
+    /**
+     * Compute the union of axis-aligned rectangles that don't overlap (but may share edges), by dissolving
+     * shared edges rather than using a full overlay operation.
+     * This is a common case when merging tiles.
+     * <p>
+     * For each horizontal and vertical line containing a rectangle edge, the line is split at every rectangle corner
+     * and only the pieces that separate a covered area from an uncovered area are retained.
+     * The retained pieces are polygonized to give the union.
+     * @param rectangles
+     * @return
+     */
+    private static Geometry unionRectangles(List<Polygon> rectangles) {
+        Map<Double, List<double[]>> horizontal = new TreeMap<>();
+        Map<Double, List<double[]>> vertical = new TreeMap<>();
+        for (var rect : rectangles) {
+            var env = rect.getEnvelopeInternal();
+            // The last value indicates whether the rectangle is on the 'positive' side of the line
+            horizontal.computeIfAbsent(env.getMinY(), k -> new ArrayList<>()).add(new double[] {env.getMinX(), env.getMaxX(), 1});
+            horizontal.computeIfAbsent(env.getMaxY(), k -> new ArrayList<>()).add(new double[] {env.getMinX(), env.getMaxX(), 0});
+            vertical.computeIfAbsent(env.getMinX(), k -> new ArrayList<>()).add(new double[] {env.getMinY(), env.getMaxY(), 1});
+            vertical.computeIfAbsent(env.getMaxX(), k -> new ArrayList<>()).add(new double[] {env.getMinY(), env.getMaxY(), 0});
+        }
+        var factory = GeometryTools.getDefaultFactory();
+        var polygonizer = new Polygonizer(true);
+        for (var entry : horizontal.entrySet()) {
+            double y = entry.getKey();
+            addBoundaryLines(entry.getValue(), (x1, x2) -> polygonizer.add(createLine(factory, x1, y, x2, y)));
+        }
+        for (var entry : vertical.entrySet()) {
+            double x = entry.getKey();
+            addBoundaryLines(entry.getValue(), (y1, y2) -> polygonizer.add(createLine(factory, x, y1, x, y2)));
+        }
+        // Normalize, since the start of each ring can otherwise vary between calls
+        return polygonizer.getGeometry().norm();
+    }
+
+    private static LineString createLine(GeometryFactory factory, double x1, double y1, double x2, double y2) {
+        return factory.createLineString(new Coordinate[] {new Coordinate(x1, y1), new Coordinate(x2, y2)});
+    }
+
+    /**
+     * Find the parts of a line that lie on a boundary, given the intervals covered by rectangles on either side.
+     * Lines are split at every rectangle corner, which ensures that they are correctly noded for polygonization
+     * and retains the same vertices as a standard union.
+     * @param intervals intervals along the line, as {@code [start, end, side]}
+     * @param consumer consumer for the start and end of each boundary line
+     */
+    private static void addBoundaryLines(List<double[]> intervals, BiConsumer<Double, Double> consumer) {
+        // Sweep along the line, tracking how many rectangles cover each side
+        int nEvents = intervals.size() * 2;
+        double[] positions = new double[nEvents];
+        int[] deltas = new int[nEvents];
+        Integer[] order = new Integer[nEvents];
+        for (int i = 0; i < intervals.size(); i++) {
+            var interval = intervals.get(i);
+            int side = interval[2] > 0 ? 1 : 2;
+            positions[i * 2] = interval[0];
+            deltas[i * 2] = side;
+            positions[i * 2 + 1] = interval[1];
+            deltas[i * 2 + 1] = -side;
+        }
+        for (int i = 0; i < nEvents; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingDouble(i -> positions[i]));
+
+        int nPositive = 0;
+        int nNegative = 0;
+        boolean isBoundary = false;
+        double start = Double.NaN;
+        int i = 0;
+        while (i < nEvents) {
+            double pos = positions[order[i]];
+            // Apply all changes at this position
+            while (i < nEvents && positions[order[i]] == pos) {
+                int delta = deltas[order[i]];
+                if (Math.abs(delta) == 1)
+                    nPositive += Integer.signum(delta);
+                else
+                    nNegative += Integer.signum(delta);
+                i++;
+            }
+            if (isBoundary)
+                consumer.accept(start, pos);
+            isBoundary = (nPositive > 0) != (nNegative > 0);
+            start = pos;
+        }
+    }
+
+    private static int[] findAdjacent(List<Polygon> allPolygons, SpatialIndex tree, int ind, boolean[] overlappingRectangles) {
+        var poly = allPolygons.get(ind);
+        var env = poly.getEnvelopeInternal();
+        List<Integer> adjacent = new ArrayList<>();
+        for (int ind2 : (List<Integer>)tree.query(env)) {
+            // Adjacency is symmetric, so only test where needed
+            if (ind2 <= ind)
+                continue;
+            // Check if polygons intersect
+            var poly2 = allPolygons.get(ind2);
+            if (poly.intersects(poly2)) {
+                adjacent.add(ind2);
+                if (poly.isRectangle() && poly2.isRectangle() && overlapsInterior(env, poly2.getEnvelopeInternal())) {
+                    // Setting true from multiple threads is fine, since we never set false
+                    overlappingRectangles[ind] = true;
+                    overlappingRectangles[ind2] = true;
+                }
+            }
+        }
+        return adjacent.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static boolean overlapsInterior(Envelope env1, Envelope env2) {
+        return Math.min(env1.getMaxX(), env2.getMaxX()) > Math.max(env1.getMinX(), env2.getMinX()) &&
+                Math.min(env1.getMaxY(), env2.getMaxY()) > Math.max(env1.getMinY(), env2.getMinY());
+    }
+
     /**
      * Extract all non-empty polygons from a collection of geometries.
      * @param geoms
@@ -191,91 +406,60 @@ public class FastPolygonUnion {
             return GeometryTools.getDefaultFactory().createMultiPolygon(list.toArray(Polygon[]::new));
     }
 
-    private static void populateAdjacencyMatrix(List<Polygon> allPolygons, AdjacencyMatrix matrix, SpatialIndex tree, int ind) {
-        var poly = allPolygons.get(ind);
-        for (int ind2 : (List<Integer>)tree.query(poly.getEnvelopeInternal())) {
-            // Matrix is symmetric, so only test where needed
-            if (ind2 <= ind || matrix.isAdjacent(ind, ind2))
-                continue;
-            // Check if polygons intersect
-            var poly2 = allPolygons.get(ind2);
-            if (poly.intersects(poly2)) {
-                matrix.setAdjacent(ind, ind2);
-            }
-        }
-    }
-
     /**
-     * Simple adjacency matrix to help identify polygons that should be merged.
+     * Simple union-find structure to help identify polygons that should be merged.
      */
-    private static class AdjacencyMatrix {
+    private static class UnionFind {
 
-        private List<BitSet> bits = new ArrayList<>();
+        private final int[] parents;
+        private final int[] sizes;
 
-        private AdjacencyMatrix(int n) {
-            for (int i = 0; i < n; i++) {
-                bits.add(new BitSet(n));
-            }
-        }
-
-        /**
-         * Flag that two entries are adjacent.
-         * @param i
-         * @param j
-         * @return true if a change was made, false if the entries were already
-         *         flagged as adjacent.
-         */
-        public boolean setAdjacent(int i, int j) {
-            if (bits.get(i).get(j))
-                return false;
-            bits.get(i).set(j);
-            bits.get(j).set(i);
-            return true;
+        private UnionFind(int n) {
+            parents = IntStream.range(0, n).toArray();
+            sizes = new int[n];
+            Arrays.fill(sizes, 1);
         }
 
         /**
-         * Get indices for all entries that are directly or indirectly adjacent,
-         * i.e. polygons that may need to be merged.
+         * Get the index representing the group containing an item.
          * @param i
          * @return
          */
-        public Set<Integer> getAdjacencyGroup(int i) {
-            var set = new HashSet<Integer>();
-            accumulateAdjacencyGroup(i, set);
-            return set;
-        }
-
-        /**
-         * Ensure an item is part of a group; if it has not already been added,
-         * any additional adjacent items will be added as well.
-         * @param i
-         * @param group
-         */
-        private void accumulateAdjacencyGroup(int i, Set<Integer> group) {
-            if (group.add(i)) {
-                for (int j : bits.get(i).stream().toArray()) {
-                    accumulateAdjacencyGroup(j, group);
-                }
+        private int find(int i) {
+            while (parents[i] != i) {
+                parents[i] = parents[parents[i]];
+                i = parents[i];
             }
+            return i;
         }
 
         /**
-         * Get the number of directly-adjacent items for the given item index.
+         * Join the groups containing two items.
          * @param i
-         * @return
+         * @param j
          */
-        public int getAdjacentCount(int i) {
-            return bits.get(i).cardinality();
+        private void union(int i, int j) {
+            int ri = find(i);
+            int rj = find(j);
+            if (ri == rj)
+                return;
+            // Use the smaller index as the root, so that groups are ordered by their first item
+            if (ri > rj) {
+                int temp = ri;
+                ri = rj;
+                rj = temp;
+            }
+            parents[rj] = ri;
+            sizes[ri] += sizes[rj];
         }
 
         /**
-         * Query whether two items are flagged as adjacent.
+         * Get the number of items in the group containing an item.
          * @param i
-         * @param j
          * @return
          */
-        public boolean isAdjacent(int i, int j) {
-            return bits.get(i).get(j);
+        private int size(int i) {
+            return sizes[find(i)];
         }
 
     }
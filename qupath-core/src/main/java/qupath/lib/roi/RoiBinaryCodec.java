@@ -0,0 +1,377 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.roi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+
+import qupath.lib.geom.Point2;
+import qupath.lib.io.PathIO;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Compact binary encoding of ROIs, used by QuPath's chunked data files.
+ * <p>
+ * Vertices are written in the most compact form that is lossless for the ROI:
+ * <ul>
+ *   <li>as variable-length deltas, if all coordinates lie on the 0.01 pixel grid used by
+ *       {@link GeometryTools#getDefaultFactory()} (which includes all integer and half-pixel coordinates)</li>
+ *   <li>as floats, if all coordinates can be represented exactly as floats</li>
+ *   <li>as doubles otherwise</li>
+ * </ul>
+ * ROI types that aren't supported directly are written using Java serialization.
+ *
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+public final class RoiBinaryCodec {
+
+	private static final byte TYPE_RECTANGLE = 1;
+	private static final byte TYPE_ELLIPSE = 2;
+	private static final byte TYPE_LINE = 3;
+	private static final byte TYPE_POINTS = 4;
+	private static final byte TYPE_POLYGON = 5;
+	private static final byte TYPE_POLYLINE = 6;
+	private static final byte TYPE_POLYGONAL = 7;
+	private static final byte TYPE_WKB = 8;
+	private static final byte TYPE_SERIALIZED = 9;
+
+	private static final byte COORDS_GRID = 0;
+	private static final byte COORDS_FLOAT = 1;
+	private static final byte COORDS_DOUBLE = 2;
+
+	/**
+	 * Scale for coordinates on the default 0.01 pixel grid.
+	 */
+	private static final double GRID_SCALE = 100.0;
+
+	private RoiBinaryCodec() {
+		throw new AssertionError("Cannot instantiate this class");
+	}
+
+	/**
+	 * Write a ROI to a data output.
+	 * @param out the output
+	 * @param roi the ROI to write; must not be null
+	 * @throws IOException
+	 */
+	public static void writeROI(DataOutput out, ROI roi) throws IOException {
+		if (roi instanceof RectangleROI || roi instanceof EllipseROI) {
+			out.writeByte(roi instanceof RectangleROI ? TYPE_RECTANGLE : TYPE_ELLIPSE);
+			writePlane(out, roi);
+			out.writeDouble(roi.getBoundsX());
+			out.writeDouble(roi.getBoundsY());
+			out.writeDouble(roi.getBoundsWidth());
+			out.writeDouble(roi.getBoundsHeight());
+		} else if (roi instanceof LineROI line) {
+			out.writeByte(TYPE_LINE);
+			writePlane(out, roi);
+			out.writeDouble(line.getX1());
+			out.writeDouble(line.getY1());
+			out.writeDouble(line.getX2());
+			out.writeDouble(line.getY2());
+		} else if (roi instanceof PointsROI || roi instanceof PolygonROI || roi instanceof PolylineROI) {
+			if (roi instanceof PointsROI)
+				out.writeByte(TYPE_POINTS);
+			else
+				out.writeByte(roi instanceof PolygonROI ? TYPE_POLYGON : TYPE_POLYLINE);
+			writePlane(out, roi);
+			writePoints(out, roi.getAllPoints());
+		} else if (roi instanceof GeometryROI) {
+			var geometry = roi.getGeometry();
+			if (!geometry.isEmpty() && (geometry instanceof Polygon || geometry instanceof MultiPolygon)) {
+				out.writeByte(TYPE_POLYGONAL);
+				writePlane(out, roi);
+				writePolygonal(out, geometry);
+			} else {
+				out.writeByte(TYPE_WKB);
+				writePlane(out, roi);
+				writeBytes(out, new WKBWriter(2).write(geometry));
+			}
+		} else {
+			out.writeByte(TYPE_SERIALIZED);
+			var bytes = new ByteArrayOutputStream();
+			try (var stream = new ObjectOutputStream(bytes)) {
+				stream.writeObject(roi);
+			}
+			writeBytes(out, bytes.toByteArray());
+		}
+	}
+
+	/**
+	 * Read a ROI from a data input, as written by {@link #writeROI(DataOutput, ROI)}.
+	 * @param in the input
+	 * @return the ROI
+	 * @throws IOException if the ROI could not be read
+	 */
+	public static ROI readROI(DataInput in) throws IOException {
+		byte type = in.readByte();
+		if (type == TYPE_SERIALIZED) {
+			try (var stream = PathIO.createObjectInputStream(new ByteArrayInputStream(readBytes(in)))) {
+				return (ROI)stream.readObject();
+			} catch (ClassNotFoundException | ClassCastException e) {
+				throw new IOException("Unable to read ROI", e);
+			}
+		}
+		var plane = readPlane(in);
+		switch (type) {
+		case TYPE_RECTANGLE:
+			return ROIs.createRectangleROI(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), plane);
+		case TYPE_ELLIPSE:
+			return ROIs.createEllipseROI(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), plane);
+		case TYPE_LINE:
+			return ROIs.createLineROI(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), plane);
+		case TYPE_POINTS:
+			var points = readCoordinates(in);
+			return ROIs.createPointsROI(points[0], points[1], plane);
+		case TYPE_POLYGON:
+			var polygon = readCoordinates(in);
+			return ROIs.createPolygonROI(polygon[0], polygon[1], plane);
+		case TYPE_POLYLINE:
+			var polyline = readCoordinates(in);
+			return ROIs.createPolylineROI(polyline[0], polyline[1], plane);
+		case TYPE_POLYGONAL:
+			return new GeometryROI(readPolygonal(in), plane);
+		case TYPE_WKB:
+			try {
+				return new GeometryROI(new WKBReader(GeometryTools.getDefaultFactory()).read(readBytes(in)), plane);
+			} catch (ParseException e) {
+				throw new IOException("Unable to read ROI geometry", e);
+			}
+		default:
+			throw new IOException("Unknown ROI type " + type);
+		}
+	}
+
+
+	private static void writePlane(DataOutput out, ROI roi) throws IOException {
+		out.writeInt(roi.getC());
+		out.writeInt(roi.getZ());
+		out.writeInt(roi.getT());
+	}
+
+	private static ImagePlane readPlane(DataInput in) throws IOException {
+		int c = in.readInt();
+		int z = in.readInt();
+		int t = in.readInt();
+		return ImagePlane.getPlaneWithChannel(c, z, t);
+	}
+
+	private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] readBytes(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static void writePolygonal(DataOutput out, Geometry geometry) throws IOException {
+		int n = geometry.getNumGeometries();
+		out.writeBoolean(geometry instanceof MultiPolygon);
+		out.writeInt(n);
+		for (int i = 0; i < n; i++) {
+			var polygon = (Polygon)geometry.getGeometryN(i);
+			int nHoles = polygon.getNumInteriorRing();
+			out.writeInt(nHoles);
+			writeRing(out, polygon.getExteriorRing());
+			for (int h = 0; h < nHoles; h++)
+				writeRing(out, polygon.getInteriorRingN(h));
+		}
+	}
+
+	private static Geometry readPolygonal(DataInput in) throws IOException {
+		var factory = GeometryTools.getDefaultFactory();
+		boolean isMulti = in.readBoolean();
+		int n = in.readInt();
+		var polygons = new Polygon[n];
+		for (int i = 0; i < n; i++) {
+			int nHoles = in.readInt();
+			var shell = readRing(in, factory);
+			var holes = new LinearRing[nHoles];
+			for (int h = 0; h < nHoles; h++)
+				holes[h] = readRing(in, factory);
+			polygons[i] = factory.createPolygon(shell, holes);
+		}
+		if (isMulti || n != 1)
+			return factory.createMultiPolygon(polygons);
+		return polygons[0];
+	}
+
+	private static void writeRing(DataOutput out, LineString ring) throws IOException {
+		var seq = ring.getCoordinateSequence();
+		int n = seq.size();
+		double[] x = new double[n];
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = seq.getX(i);
+			y[i] = seq.getY(i);
+		}
+		writeCoordinates(out, x, y);
+	}
+
+	private static LinearRing readRing(DataInput in, GeometryFactory factory) throws IOException {
+		var xy = readCoordinates(in);
+		int n = xy[0].length;
+		double[] packed = new double[n * 2];
+		for (int i = 0; i < n; i++) {
+			packed[i*2] = xy[0][i];
+			packed[i*2+1] = xy[1][i];
+		}
+		return factory.createLinearRing(new PackedCoordinateSequence.Double(packed, 2, 0));
+	}
+
+	private static void writePoints(DataOutput out, List<Point2> points) throws IOException {
+		int n = points.size();
+		double[] x = new double[n];
+		double[] y = new double[n];
+		int i = 0;
+		for (var p : points) {
+			x[i] = p.getX();
+			y[i] = p.getY();
+			i++;
+		}
+		writeCoordinates(out, x, y);
+	}
+
+	private static void writeCoordinates(DataOutput out, double[] x, double[] y) throws IOException {
+		int n = x.length;
+		out.writeInt(n);
+		byte mode = COORDS_GRID;
+		for (int i = 0; i < n && mode != COORDS_DOUBLE; i++) {
+			mode = (byte)Math.max(mode, coordinateMode(x[i]));
+			mode = (byte)Math.max(mode, coordinateMode(y[i]));
+		}
+		out.writeByte(mode);
+		switch (mode) {
+		case COORDS_GRID:
+			long lastX = 0, lastY = 0;
+			for (int i = 0; i < n; i++) {
+				long gx = Math.round(x[i] * GRID_SCALE);
+				long gy = Math.round(y[i] * GRID_SCALE);
+				writeVarLong(out, gx - lastX);
+				writeVarLong(out, gy - lastY);
+				lastX = gx;
+				lastY = gy;
+			}
+			break;
+		case COORDS_FLOAT:
+			for (int i = 0; i < n; i++) {
+				out.writeFloat((float)x[i]);
+				out.writeFloat((float)y[i]);
+			}
+			break;
+		default:
+			for (int i = 0; i < n; i++) {
+				out.writeDouble(x[i]);
+				out.writeDouble(y[i]);
+			}
+		}
+	}
+
+	private static double[][] readCoordinates(DataInput in) throws IOException {
+		int n = in.readInt();
+		byte mode = in.readByte();
+		double[] x = new double[n];
+		double[] y = new double[n];
+		switch (mode) {
+		case COORDS_GRID:
+			long gx = 0, gy = 0;
+			for (int i = 0; i < n; i++) {
+				gx += readVarLong(in);
+				gy += readVarLong(in);
+				x[i] = gx / GRID_SCALE;
+				y[i] = gy / GRID_SCALE;
+			}
+			break;
+		case COORDS_FLOAT:
+			for (int i = 0; i < n; i++) {
+				x[i] = in.readFloat();
+				y[i] = in.readFloat();
+			}
+			break;
+		case COORDS_DOUBLE:
+			for (int i = 0; i < n; i++) {
+				x[i] = in.readDouble();
+				y[i] = in.readDouble();
+			}
+			break;
+		default:
+			throw new IOException("Unknown coordinate encoding " + mode);
+		}
+		return new double[][] {x, y};
+	}
+
+	private static byte coordinateMode(double value) {
+		// Division must reproduce the value exactly, otherwise the grid isn't lossless
+		if (Math.abs(value) < 1e12 && Math.round(value * GRID_SCALE) / GRID_SCALE == value)
+			return COORDS_GRID;
+		if ((double)(float)value == value)
+			return COORDS_FLOAT;
+		return COORDS_DOUBLE;
+	}
+
+	private static void writeVarLong(DataOutput out, long value) throws IOException {
+		// Zigzag encoding, so that small negative deltas are also short
+		long v = (value << 1) ^ (value >> 63);
+		while ((v & ~0x7FL) != 0) {
+			out.writeByte((int)((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.writeByte((int)v);
+	}
+
+	private static long readVarLong(DataInput in) throws IOException {
+		long v = 0;
+		int shift = 0;
+		while (true) {
+			byte b = in.readByte();
+			v |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				break;
+			shift += 7;
+			if (shift > 63)
+				throw new IOException("Malformed variable-length value");
+		}
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+}
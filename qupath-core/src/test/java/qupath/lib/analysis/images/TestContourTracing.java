@@ -27,14 +27,19 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
 import java.io.IOException;
+import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
+import java.util.UUID;
 import javax.imageio.ImageIO;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -42,6 +47,17 @@ import org.locationtech.jts.operation.valid.IsValidOp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import qupath.lib.images.servers.AbstractTileableImageServer;
+import qupath.lib.images.servers.ImageChannel;
+import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.images.servers.ImageServerMetadata;
+import qupath.lib.images.servers.PixelType;
+import qupath.lib.images.servers.TileRequest;
+import qupath.lib.objects.PathCellObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+
 /**
  * Test conversion of raster images (binary and labelled) to ROIs.
  * 
@@ -150,4 +166,154 @@ public class TestContourTracing {
 	}
 	
 
+	@Test
+	void testCreateROIsWithMaxLabel() {
+		var img = createLabelImage(100, 80, 10, 12, 0, 1);
+		var image = ContourTracing.extractBand(img.getRaster(), 0);
+		var all = ContourTracing.createROIs(image, null, 1, -1);
+		var some = ContourTracing.createROIs(image, null, 1, 5);
+		assertEquals(10, all.size());
+		assertEquals(5, some.size());
+		for (var entry : some.entrySet())
+			assertEquals(all.get(entry.getKey()).getArea(), entry.getValue().getArea(), 1e-6);
+	}
+	
+	@Test
+	void testTiledDetections() throws Exception {
+		var img = createLabelImage(250, 190, 40, 25, 0, 1);
+		var expected = ContourTracing.createDetections(ContourTracing.extractBand(img.getRaster(), 0), null, 1, -1);
+		
+		var server = new TiledLabelServer(img, 32);
+		var detections = ContourTracing.labelsToDetections(server, null);
+		assertSameObjects(expected, detections);
+		
+		// Check we can add to a hierarchy as we go
+		var hierarchy = new PathObjectHierarchy();
+		ContourTracing.labelsToObjects(server, null, 0, 1,
+				ContourTracing.createNumberedObjectFunction(r -> PathObjects.createDetectionObject(r)),
+				hierarchy::addObjects);
+		assertEquals(expected.size(), hierarchy.getDetectionObjects().size());
+		server.close();
+	}
+	
+	@Test
+	void testTiledCells() throws Exception {
+		var img = createLabelImage(200, 170, 30, 20, 10, 2);
+		var raster = img.getRaster();
+		var expected = ContourTracing.createCells(raster, 0, 1, null, 1, -1);
+		
+		var server = new TiledLabelServer(img, 25);
+		var cells = ContourTracing.labelsToCells(server, null);
+		assertSameObjects(expected, cells);
+		for (int i = 0; i < cells.size(); i++) {
+			var nucleus = ((PathCellObject)cells.get(i)).getNucleusROI();
+			var expectedNucleus = ((PathCellObject)expected.get(i)).getNucleusROI();
+			assertEquals(expectedNucleus.getArea(), nucleus.getArea(), 1e-6);
+		}
+		server.close();
+	}
+	
+	private static void assertSameObjects(List<PathObject> expected, List<PathObject> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			var g1 = expected.get(i).getROI().getGeometry();
+			var g2 = actual.get(i).getROI().getGeometry();
+			assertEquals(expected.get(i).getName(), actual.get(i).getName());
+			assertEquals(g1.getArea(), g2.getArea(), 1e-6);
+			assertEquals(0, g1.symDifference(g2).getArea(), 1e-6);
+		}
+	}
+	
+	/**
+	 * Server that returns tiles from a labeled image.
+	 */
+	private static class TiledLabelServer extends AbstractTileableImageServer {
+		
+		private final BufferedImage img;
+		private final ImageServerMetadata metadata;
+		
+		private TiledLabelServer(BufferedImage img, int tileSize) {
+			this.img = img;
+			int nBands = img.getRaster().getNumBands();
+			this.metadata = new ImageServerMetadata.Builder()
+					.width(img.getWidth())
+					.height(img.getHeight())
+					.preferredTileSize(tileSize, tileSize)
+					.levelsFromDownsamples(1.0)
+					.pixelType(nBands == 1 ? PixelType.UINT16 : PixelType.UINT8)
+					.channels(ImageChannel.getDefaultChannelList(nBands))
+					.build();
+		}
+
+		@Override
+		protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
+			var raster = img.getRaster().createCompatibleWritableRaster(tileRequest.getTileWidth(), tileRequest.getTileHeight());
+			raster.setRect(-tileRequest.getTileX(), -tileRequest.getTileY(), img.getRaster());
+			return new BufferedImage(img.getColorModel(), raster, false, null);
+		}
+
+		@Override
+		protected ServerBuilder<BufferedImage> createServerBuilder() {
+			return null;
+		}
+
+		@Override
+		protected String createID() {
+			return getClass().getName() + ": " + UUID.randomUUID();
+		}
+
+		@Override
+		public Collection<URI> getURIs() {
+			return List.of();
+		}
+
+		@Override
+		public String getServerType() {
+			return "Tiled label server";
+		}
+
+		@Override
+		public ImageServerMetadata getOriginalMetadata() {
+			return metadata;
+		}
+		
+	}
+	
+	/**
+	 * Create a labeled image from the Voronoi regions of random points, restricted to lie within a fixed distance of each point.
+	 * This ensures that every label is connected.
+	 * If nBands &gt; 1, the first band has labels for pixels within a smaller distance (i.e. nuclei).
+	 */
+	private static BufferedImage createLabelImage(int width, int height, int nLabels, double radius, double nucleusRadius, int nBands) {
+		var rng = new Random(42);
+		double[] xs = new double[nLabels];
+		double[] ys = new double[nLabels];
+		for (int i = 0; i < nLabels; i++) {
+			xs[i] = rng.nextDouble() * width;
+			ys[i] = rng.nextDouble() * height;
+		}
+		var img = nBands == 1 ? new BufferedImage(width, height, BufferedImage.TYPE_USHORT_GRAY) : 
+			new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		var raster = img.getRaster();
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int nearest = -1;
+				double minDist = Double.POSITIVE_INFINITY;
+				for (int i = 0; i < nLabels; i++) {
+					double dist = Math.hypot(xs[i] - x, ys[i] - y);
+					if (dist < minDist) {
+						minDist = dist;
+						nearest = i;
+					}
+				}
+				if (minDist <= radius)
+					raster.setSample(x, y, nBands - 1, nearest + 1);
+				if (nBands > 1 && minDist <= nucleusRadius)
+					raster.setSample(x, y, 0, nearest + 1);
+			}
+		}
+		return img;
+	}
+	
+
 }
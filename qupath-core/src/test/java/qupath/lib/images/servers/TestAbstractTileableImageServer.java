@@ -0,0 +1,224 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.common.ThreadTools;
+import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class TestAbstractTileableImageServer {
+
+	@Test
+	public void test_batchedTiles() throws Exception {
+		try (var server = new GradientServer()) {
+			// 4x2 tiles
+			var request = RegionRequest.createInstance(server.getPath(), 1.0, 10, 10, 40, 20);
+			var img = server.readRegion(request);
+			assertEquals(40, img.getWidth());
+			assertEquals(20, img.getHeight());
+			for (int y = 0; y < img.getHeight(); y++) {
+				for (int x = 0; x < img.getWidth(); x++) {
+					assertEquals(GradientServer.value(x + 10, y + 10), img.getRaster().getSample(x, y, 0));
+				}
+			}
+			// All tiles should have been requested as a single batch
+			assertEquals(List.of(8), server.batchSizes);
+			assertEquals(8, server.tileCount.get());
+
+			// Nothing should be read again, since the tiles are cached
+			server.readRegion(request);
+			assertEquals(8, server.tileCount.get());
+		}
+	}
+
+	@Test
+	public void test_batchedTilesException() throws Exception {
+		try (var server = new GradientServer()) {
+			server.fail = true;
+			var request = RegionRequest.createInstance(server.getPath(), 1.0, 0, 0, 64, 64);
+			assertThrows(IOException.class, () -> server.readRegion(request));
+			// Failed tiles shouldn't remain pending
+			server.fail = false;
+			assertNotNull(server.readRegion(request));
+		}
+	}
+
+	@Test
+	public void test_nestedBatches() throws Exception {
+		// Reading tiles can require batches from other servers, which shouldn't deadlock even if the pool is busy
+		int parallelism = ThreadTools.getParallelism();
+		try (var inner = new GradientServer(); GradientServer server = new WrappingServer(inner)) {
+			ThreadTools.setParallelism(4);
+			var request = RegionRequest.createInstance(server.getPath(), 1.0, 0, 0, 48, 48);
+			var img = assertTimeoutPreemptively(Duration.ofSeconds(30), () -> server.readRegion(request));
+			for (int y = 0; y < img.getHeight(); y++) {
+				for (int x = 0; x < img.getWidth(); x++) {
+					assertEquals(GradientServer.value(x + 8, y + 8), img.getRaster().getSample(x, y, 0));
+				}
+			}
+			assertEquals(List.of(9), server.batchSizes);
+			assertFalse(inner.batchSizes.isEmpty());
+		} finally {
+			ThreadTools.setParallelism(parallelism);
+		}
+	}
+
+	@Test
+	public void test_pinningLimitedByCacheSize() throws Exception {
+		// All 16 tiles require 4096 bytes, which is a quarter of the cache
+		try (var server = new GradientServer()) {
+			var cache = new TileCache<BufferedImage>(4096 * 4, TileCache::estimateBytes);
+			server.cache = cache;
+			server.readRegion(RegionRequest.createInstance(server.getPath(), 1.0, 0, 0, 64, 64));
+			assertEquals(16, server.tileCount.get());
+			assertEquals(16, server.pinnedCount.get());
+			assertTrue(cache.getCurrentBytes() <= cache.getMaxBytes());
+		}
+		// If the cache is smaller, tiles shouldn't be pinned because they could make the cache exceed its limit
+		try (var server = new GradientServer()) {
+			var cache = new TileCache<BufferedImage>(1024, TileCache::estimateBytes);
+			server.cache = cache;
+			var img = server.readRegion(RegionRequest.createInstance(server.getPath(), 1.0, 0, 0, 64, 64));
+			assertEquals(GradientServer.value(63, 63), img.getRaster().getSample(63, 63, 0));
+			assertEquals(0, server.pinnedCount.get());
+			assertTrue(cache.getCurrentBytes() <= cache.getMaxBytes());
+		}
+	}
+
+	/**
+	 * Server that reads each tile from an offset region of another server, so that it spans 2x2 of its tiles.
+	 */
+	private static class WrappingServer extends GradientServer {
+
+		private final GradientServer wrapped;
+
+		private WrappingServer(GradientServer wrapped) {
+			this.wrapped = wrapped;
+		}
+
+		@Override
+		protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
+			return wrapped.readRegion(RegionRequest.createInstance(wrapped.getPath(), tileRequest.getDownsample(),
+					tileRequest.getImageX() + 8, tileRequest.getImageY() + 8, tileRequest.getImageWidth(), tileRequest.getImageHeight()));
+		}
+
+	}
+
+	/**
+	 * Server with 16x16 pixel tiles, which records how tiles are read.
+	 */
+	private static class GradientServer extends AbstractTileableImageServer {
+
+		private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+		private final AtomicInteger tileCount = new AtomicInteger();
+		private final AtomicInteger pinnedCount = new AtomicInteger();
+		private volatile boolean fail = false;
+		private TileCache<BufferedImage> cache = TileCache.createBufferedImageCache(1024L * 1024L);
+
+		private final ImageServerMetadata metadata = new ImageServerMetadata.Builder()
+				.width(64)
+				.height(64)
+				.preferredTileSize(16, 16)
+				.levelsFromDownsamples(1.0, 2.0)
+				.pixelType(PixelType.UINT8)
+				.channels(ImageChannel.getDefaultChannelList(1))
+				.build();
+
+		private static int value(int x, int y) {
+			return (x + y * 3) % 256;
+		}
+
+		@Override
+		protected Map<TileRequest, BufferedImage> readTiles(Collection<TileRequest> tileRequests) throws IOException {
+			batchSizes.add(tileRequests.size());
+			return super.readTiles(tileRequests);
+		}
+
+		@Override
+		protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
+			if (fail)
+				throw new IOException("Tile couldn't be read");
+			tileCount.incrementAndGet();
+			if (cache.isPinned(tileRequest.getRegionRequest()))
+				pinnedCount.incrementAndGet();
+			var img = new BufferedImage(tileRequest.getTileWidth(), tileRequest.getTileHeight(), BufferedImage.TYPE_BYTE_GRAY);
+			var raster = img.getRaster();
+			double downsample = tileRequest.getDownsample();
+			for (int y = 0; y < img.getHeight(); y++) {
+				for (int x = 0; x < img.getWidth(); x++) {
+					raster.setSample(x, y, 0, value(
+							(int)(tileRequest.getImageX() + x * downsample),
+							(int)(tileRequest.getImageY() + y * downsample)));
+				}
+			}
+			return img;
+		}
+
+		@Override
+		protected Map<RegionRequest, BufferedImage> getCache() {
+			return cache;
+		}
+
+		@Override
+		protected ServerBuilder<BufferedImage> createServerBuilder() {
+			return null;
+		}
+
+		@Override
+		protected String createID() {
+			return getClass().getName() + ": " + UUID.randomUUID();
+		}
+
+		@Override
+		public Collection<URI> getURIs() {
+			return List.of();
+		}
+
+		@Override
+		public String getServerType() {
+			return "Gradient server";
+		}
+
+		@Override
+		public ImageServerMetadata getOriginalMetadata() {
+			return metadata;
+		}
+
+	}
+
+}
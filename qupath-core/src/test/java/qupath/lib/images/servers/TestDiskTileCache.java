@@ -0,0 +1,191 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import qupath.lib.color.ColorModelFactory;
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class TestDiskTileCache {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void test_roundTrip() throws IOException {
+		var cache = DiskTileCache.create(tempDir, 100_000_000L);
+		var rand = new Random(100L);
+
+		for (int type : new int[] {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY}) {
+			var img = new BufferedImage(32, 24, type);
+			fillRandom(img, rand);
+			var request = RegionRequest.createInstance("server " + type, 1.0, 0, 0, 32, 24);
+			assertTrue(cache.put(request, img, null));
+			assertSamePixels(img, cache.get(request, null));
+		}
+
+		// Custom types need a compatible color model
+		var colorModel = ColorModelFactory.createColorModel(PixelType.FLOAT32, ImageChannel.getDefaultChannelList(3));
+		var img = new BufferedImage(colorModel, colorModel.createCompatibleWritableRaster(16, 8), false, null);
+		fillRandom(img, rand);
+		var request = RegionRequest.createInstance("float", 2.0, 0, 0, 32, 16);
+		assertTrue(cache.put(request, img, colorModel));
+		assertSamePixels(img, cache.get(request, colorModel));
+		assertNull(cache.get(request, null));
+
+		ColorModel otherModel = ColorModelFactory.createColorModel(PixelType.UINT8, ImageChannel.getDefaultChannelList(3));
+		assertFalse(cache.put(request.updatePath("float2"), img, otherModel));
+		assertNull(cache.get(request.updatePath("float2"), colorModel));
+	}
+
+	@Test
+	public void test_longServerPath() throws IOException {
+		// Paths can be longer than the 64 kB supported by writeUTF, e.g. if they include a classifier as JSON
+		var cache = DiskTileCache.create(tempDir, 100_000_000L);
+		var img = new BufferedImage(16, 16, BufferedImage.TYPE_BYTE_GRAY);
+		fillRandom(img, new Random(100L));
+		var request = RegionRequest.createInstance("\u00e9".repeat(50_000), 1.0, 0, 0, 16, 16);
+		assertTrue(cache.put(request, img, null));
+		assertSamePixels(img, cache.get(request, null));
+	}
+
+	@Test
+	public void test_evictionAndPersistence() throws IOException, InterruptedException {
+		var rand = new Random(100L);
+		var cache = DiskTileCache.create(tempDir, 100_000_000L);
+		for (int i = 0; i < 10; i++) {
+			var img = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+			fillRandom(img, rand);
+			cache.put(RegionRequest.createInstance("a", 1.0, i * 64, 0, 64, 64), img, null);
+			// Ensure distinct modified times, since these determine the eviction order in the next session
+			Thread.sleep(10L);
+		}
+		var stats = cache.getStats();
+		assertEquals(10, stats.nTiles());
+		long tileBytes = stats.bytes() / 10;
+
+		// Reopen with a smaller size - the oldest tiles should be evicted
+		var cache2 = DiskTileCache.create(tempDir, tileBytes * 5);
+		stats = cache2.getStats();
+		assertTrue(stats.nTiles() <= 5);
+		assertTrue(stats.bytes() <= tileBytes * 5);
+		assertTrue(stats.evictions() >= 5);
+		assertNotNull(cache2.get(RegionRequest.createInstance("a", 1.0, 9 * 64, 0, 64, 64), null));
+		assertNull(cache2.get(RegionRequest.createInstance("a", 1.0, 0, 0, 64, 64), null));
+		assertEquals(1, cache2.getStats().hits());
+		assertEquals(1, cache2.getStats().misses());
+
+		assertEquals(stats.nTiles(), cache2.clearCacheForServer("a"));
+		assertEquals(0, cache2.getStats().nTiles());
+		assertEquals(0, DiskTileCache.create(tempDir, tileBytes).getStats().nTiles());
+	}
+
+	@Test
+	public void test_server() throws Exception {
+		var img = new BufferedImage(100, 80, BufferedImage.TYPE_INT_RGB);
+		fillRandom(img, new Random(100L));
+		var diskCache = DiskTileCache.create(tempDir, 100_000_000L);
+
+		var server = new CountingServer(img);
+		server.setDiskCache(diskCache);
+		var request = RegionRequest.createInstance(server);
+		var imgRead = server.readRegion(request);
+		assertSamePixels(img, imgRead);
+		assertEquals(1, server.count.get());
+		server.close();
+
+		// Remove the tiles from the in-memory cache, so that they need to be read again
+		var memoryCache = ImageServerProvider.getCache(BufferedImage.class);
+		if (memoryCache instanceof TileCache<BufferedImage> tileCache)
+			tileCache.clearCacheForServer(server.getPath());
+
+		var server2 = new CountingServer(img);
+		server2.setDiskCache(diskCache);
+		assertSamePixels(img, server2.readRegion(request));
+		assertEquals(0, server2.count.get());
+		assertEquals(1, diskCache.getStats().hits());
+		server2.close();
+	}
+
+	private static void fillRandom(BufferedImage img, Random rand) {
+		var raster = img.getRaster();
+		for (int b = 0; b < raster.getNumBands(); b++) {
+			for (int y = 0; y < raster.getHeight(); y++) {
+				for (int x = 0; x < raster.getWidth(); x++) {
+					raster.setSample(x, y, b, rand.nextInt(256));
+				}
+			}
+		}
+	}
+
+	private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+		assertNotNull(actual);
+		assertEquals(expected.getType(), actual.getType());
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		var r1 = expected.getRaster();
+		var r2 = actual.getRaster();
+		assertEquals(r1.getNumBands(), r2.getNumBands());
+		for (int b = 0; b < r1.getNumBands(); b++) {
+			assertArrayEquals(
+					r1.getSamples(0, 0, r1.getWidth(), r1.getHeight(), b, (double[])null),
+					r2.getSamples(0, 0, r2.getWidth(), r2.getHeight(), b, (double[])null));
+		}
+	}
+
+	/**
+	 * Server with a fixed path, which counts the number of tiles it reads.
+	 */
+	private static class CountingServer extends WrappedBufferedImageServer {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		CountingServer(BufferedImage img) {
+			super("Counting", img);
+		}
+
+		@Override
+		protected String createID() {
+			return "TestDiskTileCache: counting server";
+		}
+
+		@Override
+		protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
+			count.incrementAndGet();
+			return super.readTile(tileRequest);
+		}
+
+	}
+
+}
@@ -0,0 +1,290 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class TestTileCache {
+
+	private static RegionRequest createRequest(String path, int ind) {
+		return RegionRequest.createInstance(path, 1.0, ind * 10, 0, 10, 10);
+	}
+
+	@Test
+	public void test_weights() {
+		var img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+		assertEquals(400L, TileCache.estimateBytes(img));
+		img = new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY);
+		assertEquals(100L, TileCache.estimateBytes(img));
+		assertEquals(0L, TileCache.estimateBytes(null));
+	}
+
+	@Test
+	public void test_eviction() {
+		// Each 'tile' weighs 100 bytes, so 5 can fit
+		var cache = new TileCache<String>(500, s -> 100, 4);
+		for (int i = 0; i < 5; i++)
+			cache.put(createRequest("a", i), "Tile " + i);
+		assertEquals(5, cache.size());
+		assertEquals(500, cache.getCurrentBytes());
+
+		// Access the first tile, so that the second becomes the least recently used
+		assertEquals("Tile 0", cache.get(createRequest("a", 0)));
+		cache.put(createRequest("a", 5), "Tile 5");
+		assertEquals(5, cache.size());
+		assertEquals(500, cache.getCurrentBytes());
+		assertTrue(cache.containsKey(createRequest("a", 0)));
+		assertFalse(cache.containsKey(createRequest("a", 1)));
+
+		var stats = cache.getStats();
+		assertEquals(1, stats.hits());
+		assertEquals(0, stats.misses());
+		assertEquals(1, stats.evictions());
+		assertNull(cache.get(createRequest("a", 1)));
+		assertEquals(1, cache.getStats().misses());
+		assertEquals(0.5, cache.getStats().hitRate(), 1e-6);
+
+		// Replacing an entry shouldn't change the size
+		cache.put(createRequest("a", 5), "Tile 5 again");
+		assertEquals(500, cache.getCurrentBytes());
+		assertEquals(1, cache.getStats().evictions());
+
+		// A single tile can use up the entire cache, regardless of the number of segments
+		var bigCache = new TileCache<String>(500, s -> s.length() * 100L, 4);
+		bigCache.put(createRequest("a", 0), "x");
+		bigCache.put(createRequest("a", 1), "xxxxx");
+		assertEquals(1, bigCache.size());
+		assertTrue(bigCache.containsKey(createRequest("a", 1)));
+		// Too big to cache at all
+		assertNull(bigCache.put(createRequest("a", 2), "xxxxxx"));
+		assertFalse(bigCache.containsKey(createRequest("a", 2)));
+		assertEquals(500, bigCache.getCurrentBytes());
+
+		cache.resetStats();
+		assertEquals(0, cache.getStats().hits());
+		cache.clear();
+		assertTrue(cache.isEmpty());
+		assertEquals(0, cache.getCurrentBytes());
+	}
+
+	@Test
+	public void test_pinning() {
+		var cache = new TileCache<String>(300, s -> 100, 2);
+		var pinned = createRequest("a", 0);
+		// Pin before the tile is added, as if it were still being read
+		cache.pin(pinned);
+		assertTrue(cache.isPinned(pinned));
+		cache.put(pinned, "Pinned");
+		for (int i = 1; i < 10; i++)
+			cache.put(createRequest("a", i), "Tile " + i);
+		assertTrue(cache.containsKey(pinned));
+		assertEquals(3, cache.size());
+
+		// If everything is pinned, the cache can temporarily exceed its limit
+		var requests = IntStream.range(10, 14).mapToObj(i -> createRequest("a", i)).toList();
+		cache.pinAll(requests);
+		for (var request : requests)
+			cache.put(request, "Tile");
+		assertEquals(500, cache.getCurrentBytes());
+		cache.unpinAll(requests);
+		assertEquals(300, cache.getCurrentBytes());
+		assertTrue(cache.containsKey(pinned));
+
+		// Pins are counted
+		cache.pin(pinned);
+		cache.unpin(pinned);
+		assertTrue(cache.isPinned(pinned));
+		cache.unpin(pinned);
+		assertFalse(cache.isPinned(pinned));
+		for (int i = 20; i < 23; i++)
+			cache.put(createRequest("a", i), "Tile " + i);
+		assertFalse(cache.containsKey(pinned));
+	}
+
+	@Test
+	public void test_clearForServer() {
+		var cache = new TileCache<String>(10_000, s -> 100, 4);
+		for (int i = 0; i < 10; i++) {
+			cache.put(createRequest("a", i), "a");
+			cache.put(createRequest("b", i), "b");
+		}
+		assertEquals(20, cache.size());
+		assertEquals(10, cache.clearCacheForServer("a"));
+		assertEquals(10, cache.size());
+		assertEquals(1000, cache.getCurrentBytes());
+		assertTrue(cache.values().stream().allMatch("b"::equals));
+
+		// Removal via the entry set should be supported
+		cache.entrySet().removeIf(e -> e.getKey().getX() >= 50);
+		assertEquals(5, cache.size());
+		assertEquals(500, cache.getCurrentBytes());
+	}
+
+	@Test
+	public void test_overlappingRequests() {
+		var cache = new TileCache<String>(1_000_000, s -> 1, 4);
+		List<RegionRequest> requests = new ArrayList<>();
+		// Tiles for a pyramid with 3 levels and 2 z-slices, plus tiles for another server
+		for (double downsample : new double[] {1, 4, 16}) {
+			int size = (int)(256 * downsample);
+			for (int z = 0; z < 2; z++) {
+				for (int y = 0; y < 4096; y += size) {
+					for (int x = 0; x < 4096; x += size) {
+						var request = RegionRequest.createInstance("a", downsample, x, y, size, size, z, 0);
+						requests.add(request);
+						cache.put(request, "a");
+						cache.put(request.updatePath("b"), "b");
+					}
+				}
+			}
+		}
+		var rand = new Random(100L);
+		for (int i = 0; i < 100; i++) {
+			int x = rand.nextInt(5000) - 500;
+			int y = rand.nextInt(5000) - 500;
+			var query = RegionRequest.createInstance("a", 1, x, y, rand.nextInt(1000) + 1, rand.nextInt(1000) + 1, rand.nextInt(2), 0);
+			var expected = requests.stream().filter(query::overlapsRequest).collect(Collectors.toSet());
+			var overlapping = cache.getOverlappingRequests(query);
+			assertEquals(expected.size(), overlapping.size());
+			assertEquals(expected, new HashSet<>(overlapping));
+		}
+		
+		// A small region should overlap one tile per level
+		var query = RegionRequest.createInstance("a", 1, 300, 300, 10, 10, 1, 0);
+		assertEquals(3, cache.getOverlappingRequests(query).size());
+		int sizeBefore = cache.size();
+		assertEquals(3, cache.clearCacheForRequestOverlap(query));
+		assertEquals(sizeBefore - 3, cache.size());
+		assertTrue(cache.getOverlappingRequests(query).isEmpty());
+		
+		// Evicted and cleared tiles should be removed from the index
+		cache.clearCacheForServer("a");
+		assertTrue(cache.getOverlappingRequests(RegionRequest.createInstance("a", 1, 0, 0, 4096, 4096)).isEmpty());
+		assertFalse(cache.getOverlappingRequests(RegionRequest.createInstance("b", 1, 0, 0, 4096, 4096)).isEmpty());
+		cache.clear();
+		assertTrue(cache.getOverlappingRequests(RegionRequest.createInstance("b", 1, 0, 0, 4096, 4096)).isEmpty());
+		
+		var small = new TileCache<String>(2, s -> 1, 1);
+		for (int i = 0; i < 10; i++)
+			small.put(createRequest("a", i), "a");
+		assertEquals(2, small.getOverlappingRequests(RegionRequest.createInstance("a", 1, 0, 0, 1000, 10)).size());
+	}
+
+	@Test
+	public void test_concurrent() throws InterruptedException, ExecutionException {
+		int nTiles = 1000;
+		var cache = new TileCache<String>(100 * 200, s -> 100, 8);
+		var pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				futures.add(pool.submit(() -> {
+					for (int i = 0; i < nTiles; i++) {
+						var request = createRequest("a", i);
+						if (cache.get(request) == null)
+							cache.put(request, "Tile " + i);
+					}
+				}));
+			}
+			for (var future : futures)
+				future.get();
+		} finally {
+			pool.shutdown();
+		}
+		// Concurrent evictions may occasionally remove more tiles than strictly necessary
+		assertTrue(cache.size() <= 200);
+		assertEquals(cache.size() * 100L, cache.getCurrentBytes());
+		var stats = cache.getStats();
+		assertEquals(4 * nTiles, stats.hits() + stats.misses());
+		assertEquals(stats.nTiles() * 100, stats.bytes());
+	}
+
+	@Test
+	public void test_concurrentOverlappingIndex() throws InterruptedException, ExecutionException {
+		// Requests from different threads share the same cells of the spatial index, 
+		// and are repeatedly added and removed so that cells are often emptied and pruned
+		int nThreads = 4;
+		int nRequests = 50;
+		var cache = new TileCache<String>(Long.MAX_VALUE / 2, s -> 1, 16);
+		var pool = Executors.newFixedThreadPool(nThreads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < nThreads; t++) {
+				int offset = t;
+				futures.add(pool.submit(() -> {
+					for (int iter = 0; iter < 200; iter++) {
+						for (int i = 0; i < nRequests; i++)
+							cache.put(RegionRequest.createInstance("a", 1.0, i * 4 + offset, offset, 4, 4), "Tile");
+						if (iter < 199) {
+							for (int i = 0; i < nRequests; i++)
+								cache.remove(RegionRequest.createInstance("a", 1.0, i * 4 + offset, offset, 4, 4));
+						}
+					}
+				}));
+			}
+			for (var future : futures)
+				future.get();
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(nThreads * nRequests, cache.size());
+		var overlapping = new HashSet<>(cache.getOverlappingRequests(RegionRequest.createInstance("a", 1.0, 0, 0, 10000, 100)));
+		assertEquals(nThreads * nRequests, overlapping.size());
+		for (int t = 0; t < nThreads; t++) {
+			for (int i = 0; i < nRequests; i++)
+				assertTrue(overlapping.contains(RegionRequest.createInstance("a", 1.0, i * 4 + t, t, 4, 4)));
+		}
+	}
+
+	@Test
+	public void test_softValues() {
+		var cache = TileCache.createBufferedImageCache(1024L, true);
+		assertTrue(cache.hasSoftValues());
+		assertFalse(TileCache.createBufferedImageCache(1024L).hasSoftValues());
+		// Soft values should still be evicted according to the size limit
+		var img = new BufferedImage(16, 16, BufferedImage.TYPE_BYTE_GRAY);
+		for (int i = 0; i < 8; i++)
+			cache.put(RegionRequest.createInstance("a", 1.0, i * 16, 0, 16, 16), img);
+		assertEquals(4, cache.size());
+		assertEquals(1024L, cache.getCurrentBytes());
+		assertSame(img, cache.get(RegionRequest.createInstance("a", 1.0, 7 * 16, 0, 16, 16)));
+		assertNull(cache.get(RegionRequest.createInstance("a", 1.0, 0, 0, 16, 16)));
+		assertEquals(4, cache.entrySet().size());
+	}
+
+}
@@ -0,0 +1,211 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.writers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import com.google.gson.JsonParser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class TestTileExporter {
+	
+	@TempDir
+	Path dir;
+	
+	@Test
+	public void test_shards() throws IOException {
+		var img = new BufferedImage(100, 70, BufferedImage.TYPE_BYTE_GRAY);
+		var raster = img.getRaster();
+		for (int y = 0; y < img.getHeight(); y++) {
+			for (int x = 0; x < img.getWidth(); x++)
+				raster.setSample(x, y, 0, (x + y) % 256);
+		}
+		var server = new WrappedBufferedImageServer("test", img);
+		var imageData = new ImageData<>(server);
+		
+		new TileExporter(imageData)
+			.tileSize(32)
+			.imageExtension(".png")
+			.tilesPerShard(4)
+			.exportJson(true)
+			.writeTiles(dir.toString());
+		
+		var shard0 = dir.resolve("test-000000.tar");
+		var shard1 = dir.resolve("test-000001.tar");
+		assertTrue(Files.exists(shard0));
+		assertTrue(Files.exists(shard1));
+		assertTrue(Files.exists(dir.resolve("test-tiles.json")));
+		
+		// 3x2 tiles, with 2 files per tile
+		var entries0 = readTar(shard0);
+		var entries1 = readTar(shard1);
+		assertEquals(8, entries0.size());
+		assertEquals(4, entries1.size());
+		assertEquals(
+				Arrays.asList("test-00000000.png", "test-00000000.json", "test-00000001.png", "test-00000001.json",
+						"test-00000002.png", "test-00000002.json", "test-00000003.png", "test-00000003.json"),
+				entries0.keySet().stream().toList());
+		assertEquals(
+				Arrays.asList("test-00000004.png", "test-00000004.json", "test-00000005.png", "test-00000005.json"),
+				entries1.keySet().stream().toList());
+		
+		for (var entry : entries0.entrySet()) {
+			if (entry.getKey().endsWith(".png")) {
+				var tile = ImageIO.read(new ByteArrayInputStream(entry.getValue()));
+				assertEquals(32, tile.getWidth());
+				assertEquals(32, tile.getHeight());
+			} else {
+				var json = new String(entry.getValue(), StandardCharsets.UTF_8);
+				assertTrue(json.contains("test-000000.tar"));
+			}
+		}
+	}
+	
+	@Test
+	public void test_shardsWithFailedTile() throws IOException {
+		var img = new BufferedImage(100, 70, BufferedImage.TYPE_BYTE_GRAY);
+		// Fail to read the second tile
+		var server = new WrappedBufferedImageServer("test", img) {
+			@Override
+			public BufferedImage readRegion(RegionRequest request) throws IOException {
+				if (request.getX() == 32 && request.getY() == 0)
+					throw new IOException("Failed tile");
+				return super.readRegion(request);
+			}
+		};
+		var imageData = new ImageData<BufferedImage>(server);
+		
+		new TileExporter(imageData)
+			.tileSize(32)
+			.imageExtension(".png")
+			.tilesPerShard(4)
+			.exportJson(true)
+			.writeTiles(dir.toString());
+		
+		// Shards should be filled based upon the tiles actually written
+		var entries0 = readTar(dir.resolve("test-000000.tar"));
+		var entries1 = readTar(dir.resolve("test-000001.tar"));
+		assertEquals(
+				Arrays.asList("test-00000000.png", "test-00000000.json", "test-00000002.png", "test-00000002.json",
+						"test-00000003.png", "test-00000003.json", "test-00000004.png", "test-00000004.json"),
+				entries0.keySet().stream().toList());
+		assertEquals(
+				Arrays.asList("test-00000005.png", "test-00000005.json"),
+				entries1.keySet().stream().toList());
+		assertTrue(new String(entries1.get("test-00000005.json"), StandardCharsets.UTF_8).contains("test-000001.tar"));
+		
+		// The exported json should only include tiles that were written, with the correct shards
+		var json = JsonParser.parseString(Files.readString(dir.resolve("test-tiles.json"))).getAsJsonObject();
+		Map<String, String> shards = new LinkedHashMap<>();
+		for (var tile : json.getAsJsonArray("tiles"))
+			shards.put(tile.getAsJsonObject().get("image").getAsString(), tile.getAsJsonObject().get("shard").getAsString());
+		assertEquals(5, shards.size());
+		for (var name : entries0.keySet()) {
+			if (name.endsWith(".png"))
+				assertEquals("test-000000.tar", shards.get(name));
+		}
+		assertEquals("test-000001.tar", shards.get("test-00000005.png"));
+	}
+	
+	@Test
+	public void test_shardsWithLongName() throws IOException {
+		// Each character requires 3 bytes in UTF-8
+		String name = "a=b " + "图像".repeat(40) + ".tif";
+		var server = new WrappedBufferedImageServer(name, new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_GRAY));
+		var imageData = new ImageData<BufferedImage>(server);
+		
+		new TileExporter(imageData)
+			.tileSize(32)
+			.imageExtension(".png")
+			.tilesPerShard(10)
+			.exportJson(true)
+			.writeTiles(dir.toString());
+		
+		try (var files = Files.list(dir)) {
+			var shards = files.filter(p -> p.toString().endsWith(".tar")).toList();
+			assertEquals(1, shards.size());
+			var entries = readTar(shards.get(0));
+			assertEquals(8, entries.size());
+			for (var entry : entries.entrySet()) {
+				assertTrue(entry.getKey().getBytes(StandardCharsets.UTF_8).length <= 100);
+				assertTrue(entry.getKey().startsWith("a=b 图像"));
+				// Characters shouldn't be escaped differently from the exported json
+				if (entry.getKey().endsWith(".json"))
+					assertTrue(new String(entry.getValue(), StandardCharsets.UTF_8).contains("a=b"));
+			}
+		}
+	}
+	
+	@Test
+	public void test_truncateUtf8() {
+		assertEquals("abc", TileExporter.truncateUtf8("abc", 3));
+		assertEquals("ab", TileExporter.truncateUtf8("abc", 2));
+		assertEquals("a图", TileExporter.truncateUtf8("a图像", 5));
+		assertEquals("a", TileExporter.truncateUtf8("a图像", 3));
+		assertEquals("", TileExporter.truncateUtf8("图像", 2));
+	}
+	
+	/**
+	 * Read the names and contents of files in a tar archive.
+	 */
+	private static Map<String, byte[]> readTar(Path path) throws IOException {
+		byte[] bytes = Files.readAllBytes(path);
+		assertEquals(0, bytes.length % 512);
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		int pos = 0;
+		while (pos + 512 <= bytes.length && bytes[pos] != 0) {
+			String name = readString(bytes, pos, 100);
+			int size = Integer.parseInt(readString(bytes, pos + 124, 12).trim(), 8);
+			entries.put(name, Arrays.copyOfRange(bytes, pos + 512, pos + 512 + size));
+			pos += 512 + (size + 511) / 512 * 512;
+		}
+		return entries;
+	}
+	
+	private static String readString(byte[] bytes, int offset, int length) {
+		int end = offset;
+		while (end < offset + length && bytes[end] != 0)
+			end++;
+		return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+}
@@ -24,6 +24,10 @@
 package qupath.lib.io;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -34,20 +38,37 @@ import java.io.IOException;
 import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.net.URI;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.junit.jupiter.api.Test;
 
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.ImageServerBuilder.DefaultImageServerBuilder;
+import qupath.lib.objects.PathCellObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjectTools;
 import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.TMACoreObject;
 import qupath.lib.objects.classes.PathClass;
+import qupath.lib.objects.hierarchy.DefaultTMAGrid;
 import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.GeometryTools;
 import qupath.lib.roi.ROIs;
+import qupath.lib.roi.interfaces.ROI;
 
 @SuppressWarnings("javadoc")
 public class TestPathIO {
@@ -171,4 +192,299 @@ public class TestPathIO {
 		}
 	}
 	
+	@Test
+	public void test_chunkedDataFiles() throws IOException {
+		var imageData = createImageData();
+		var hierarchy = imageData.getHierarchy();
+		
+		boolean writeChunked = PathIO.getWriteChunkedDataFiles();
+		try {
+			PathIO.setWriteChunkedDataFiles(true);
+			var bytes = writeImageData(imageData);
+			assertTrue(ChunkedImageDataIO.isChunkedDataStream(new java.io.BufferedInputStream(new ByteArrayInputStream(bytes))));
+			
+			var imageData2 = PathIO.readImageData(new ByteArrayInputStream(bytes), imageData.getServerBuilder());
+			assertEquals(imageData.getImageType(), imageData2.getImageType());
+			assertEquals("Value", imageData2.getProperty("Key"));
+			assertHierarchiesEqual(hierarchy, imageData2.getHierarchy());
+			assertHierarchiesEqual(hierarchy, PathIO.readHierarchy(new ByteArrayInputStream(bytes)));
+			
+			// Check the index covers all objects, and the header can be read from a file
+			var path = Files.createTempFile("chunked", ".qpdata");
+			try {
+				Files.write(path, bytes);
+				assertTrue(ChunkedImageDataIO.isChunkedDataFile(path));
+				var header = ChunkedImageDataIO.readHeader(path);
+				assertEquals(hierarchy.nObjects() + 1, header.nObjects());
+				assertTrue(header.getChunks().size() > 2);
+				for (var chunk : header.getChunks()) {
+					if (chunk.type() == ChunkedImageDataIO.ChunkType.DETECTIONS)
+						assertNotNull(chunk.region());
+				}
+				assertEquals(imageData.getImageType(), header.getImageType());
+			} finally {
+				Files.deleteIfExists(path);
+			}
+		} finally {
+			PathIO.setWriteChunkedDataFiles(writeChunked);
+		}
+	}
+	
+	@SuppressWarnings("deprecation")
+	@Test
+	public void test_chunkedServerPath() throws Exception {
+		var imageData = createImageData();
+		boolean writeChunked = PathIO.getWriteChunkedDataFiles();
+		var path = Files.createTempFile("chunked", ".qpdata");
+		try {
+			PathIO.setWriteChunkedDataFiles(false);
+			Files.write(path, writeImageData(imageData));
+			String legacyPath = PathIO.readSerializedServerPath(path.toFile());
+			
+			PathIO.setWriteChunkedDataFiles(true);
+			Files.write(path, writeImageData(imageData));
+			assertTrue(ChunkedImageDataIO.isChunkedDataFile(path));
+			String chunkedPath = PathIO.readSerializedServerPath(path.toFile());
+			assertNotNull(chunkedPath);
+			assertEquals(legacyPath, chunkedPath);
+		} finally {
+			PathIO.setWriteChunkedDataFiles(writeChunked);
+			Files.deleteIfExists(path);
+		}
+	}
+	
+	@Test
+	public void test_deferredDetections() throws Exception {
+		var imageData = createImageData();
+		var hierarchy = imageData.getHierarchy();
+		var region = ImageRegion.createInstance(0, 0, 500, 500, 1, 0);
+		int nDetectionsInRegion = hierarchy.getAllDetectionsForRegion(region).size();
+		
+		boolean writeChunked = PathIO.getWriteChunkedDataFiles();
+		var path = Files.createTempFile("deferred", ".qpdata");
+		var path2 = Files.createTempFile("deferred", ".qpdata");
+		try {
+			PathIO.setWriteChunkedDataFiles(true);
+			Files.write(path, writeImageData(imageData));
+			
+			// Annotations and TMA cores are available without loading detections
+			var imageData2 = PathIO.readImageData(path, imageData.getServerBuilder(), true);
+			var hierarchy2 = imageData2.getHierarchy();
+			var deferred = hierarchy2.getDeferredObjects();
+			assertNotNull(deferred);
+			long nDeferred = deferred.nObjects();
+			assertTrue(nDeferred > 0);
+			assertEquals(hierarchy.nObjects(), hierarchy2.nObjects());
+			assertEquals(hierarchy.getAnnotationObjects().size(), hierarchy2.getAnnotationObjects().size());
+			assertEquals(hierarchy.getTMAGrid().nCores(), hierarchy2.getTMAGrid().nCores());
+			assertEquals(nDeferred, deferred.nObjects());
+			
+			// Querying a region loads only the detections that are needed, without changing the image data
+			assertEquals(nDetectionsInRegion, hierarchy2.getAllDetectionsForRegion(region).size());
+			assertTrue(deferred.nObjects() < nDeferred);
+			assertTrue(deferred.nObjects() > 0);
+			assertFalse(imageData2.isChanged());
+			
+			// Writing copies the detections that haven't been loaded, without loading them
+			long nStillDeferred = deferred.nObjects();
+			PathIO.writeImageData(path2, imageData2);
+			assertEquals(nStillDeferred, deferred.nObjects());
+			var hierarchy3 = PathIO.readHierarchy(path2);
+			assertHierarchiesEqual(hierarchy, hierarchy3, false);
+			
+			// The remaining detections are then read from the new file, so the original can be replaced
+			Files.write(path, new byte[0]);
+			
+			// Loading everything gives the original hierarchy (possibly with children in a different order)
+			hierarchy2.loadDeferredObjects();
+			assertNull(hierarchy2.getDeferredObjects());
+			assertHierarchiesEqual(hierarchy, hierarchy2, false);
+			
+			// Removing an annotation loads any detections that might be its descendants
+			var imageData4 = PathIO.readImageData(path2, imageData.getServerBuilder(), true);
+			var hierarchy4 = imageData4.getHierarchy();
+			var annotation = hierarchy4.getRootObject().getChildObjects().stream()
+					.filter(PathObject::isAnnotation)
+					.findFirst()
+					.orElseThrow();
+			hierarchy4.removeObject(annotation, false);
+			assertNull(hierarchy4.getDeferredObjects());
+			assertEquals(hierarchy.nObjects() - PathObjectTools.countDescendants(annotation) - 1, hierarchy4.nObjects());
+			
+			// Closing the image data releases any deferred objects
+			var imageData5 = PathIO.readImageData(path2, imageData.getServerBuilder(), true);
+			assertNotNull(imageData5.getHierarchy().getDeferredObjects());
+			imageData5.close();
+			assertNull(imageData5.getHierarchy().getDeferredObjects());
+		} finally {
+			PathIO.setWriteChunkedDataFiles(writeChunked);
+			Files.deleteIfExists(path);
+			Files.deleteIfExists(path2);
+		}
+	}
+	
+	@Test
+	public void test_legacyDataFiles() throws IOException {
+		var imageData = createImageData();
+		boolean writeChunked = PathIO.getWriteChunkedDataFiles();
+		try {
+			PathIO.setWriteChunkedDataFiles(false);
+			var bytes = writeImageData(imageData);
+			assertFalse(ChunkedImageDataIO.isChunkedDataStream(new java.io.BufferedInputStream(new ByteArrayInputStream(bytes))));
+			var hierarchy = PathIO.readHierarchy(new ByteArrayInputStream(bytes));
+			assertEquals(imageData.getHierarchy().nObjects(), hierarchy.nObjects());
+			assertEquals(imageData.getHierarchy().getTMAGrid().nCores(), hierarchy.getTMAGrid().nCores());
+		} finally {
+			PathIO.setWriteChunkedDataFiles(writeChunked);
+		}
+	}
+	
+	private static byte[] writeImageData(ImageData<?> imageData) throws IOException {
+		var bytesOut = new ByteArrayOutputStream();
+		PathIO.writeImageData(bytesOut, imageData);
+		return bytesOut.toByteArray();
+	}
+	
+	private static ImageData<Object> createImageData() {
+		var builder = DefaultImageServerBuilder.createInstance(null, URI.create("file:/path/to/image.tif"));
+		var imageData = new ImageData<>(builder, new PathObjectHierarchy(), ImageData.ImageType.FLUORESCENCE);
+		imageData.setProperty("Key", "Value");
+		var hierarchy = imageData.getHierarchy();
+		hierarchy.getRootObject().getMeasurementList().put("Root measurement", 1.5);
+		
+		var rand = new Random(100L);
+		var plane = ImagePlane.getPlane(1, 0);
+		var pathClass = PathClass.fromString("Tumor: Positive");
+		
+		// Annotations with different ROI types
+		var rois = List.of(
+				ROIs.createRectangleROI(0, 0, 1000, 1000, plane),
+				ROIs.createEllipseROI(10.5, 20.25, 100, 200, plane),
+				ROIs.createLineROI(1.1, 2.2, 3.3, 4.4, plane),
+				ROIs.createPointsROI(new double[] {1, 2.5, 3}, new double[] {4, 5, 6.123456789}, plane),
+				ROIs.createPolygonROI(new double[] {0, 100.5, 50}, new double[] {0, 10, 80.25}, plane),
+				ROIs.createPolylineROI(new double[] {0, 100, 50}, new double[] {0, 10, 80}, plane),
+				GeometryTools.geometryToROI(ROIs.createRectangleROI(0, 0, 100, 100, plane).getGeometry()
+						.difference(ROIs.createEllipseROI(25, 25, 50, 50, plane).getGeometry()), plane),
+				GeometryTools.geometryToROI(ROIs.createRectangleROI(0, 0, 10, 10, plane).getGeometry()
+						.union(ROIs.createRectangleROI(20, 20, 10, 10, plane).getGeometry()), plane)
+				);
+		var annotations = new ArrayList<PathObject>();
+		for (var roi : rois) {
+			var annotation = PathObjects.createAnnotationObject(roi, pathClass);
+			annotation.setName("Annotation " + annotations.size());
+			annotation.getMetadata().put("Metadata key", "Metadata value");
+			annotation.getMeasurementList().put("Annotation measurement", rand.nextDouble());
+			annotations.add(annotation);
+		}
+		annotations.get(1).setColor(255, 0, 0);
+		annotations.get(2).setLocked(true);
+		var parent = annotations.get(0);
+		parent.addChildObjects(annotations.subList(1, annotations.size()));
+		hierarchy.addObject(parent);
+		
+		// TMA cores
+		var cores = new ArrayList<TMACoreObject>();
+		for (int i = 0; i < 4; i++) {
+			var core = PathObjects.createTMACoreObject(2000 + i * 200, 2000, 150, i == 2, plane);
+			core.setName("Core " + i);
+			core.setCaseID("Case " + i);
+			cores.add(core);
+		}
+		hierarchy.setTMAGrid(DefaultTMAGrid.create(cores, 2));
+		
+		// Many detections, on different planes, with float and double measurements
+		var detections = new ArrayList<PathObject>();
+		for (int i = 0; i < 20_000; i++) {
+			var detectionPlane = i % 3 == 0 ? ImagePlane.getDefaultPlane() : plane;
+			double x = rand.nextInt(5000) + 0.5;
+			double y = rand.nextInt(5000);
+			var roi = ROIs.createEllipseROI(x, y, 10, 10, detectionPlane);
+			PathObject detection;
+			if (i % 2 == 0) {
+				var nucleus = ROIs.createPolygonROI(new double[] {x, x + 5.25, x + 2}, new double[] {y, y + 3, y + 5.125}, detectionPlane);
+				detection = PathObjects.createCellObject(roi, nucleus, i % 5 == 0 ? pathClass : null);
+			} else
+				detection = PathObjects.createDetectionObject(roi);
+			if (i % 7 == 0)
+				detection.setPathClass(pathClass, 0.75);
+			try (var ml = detection.getMeasurementList()) {
+				ml.put("Index", i);
+				ml.put("Random", rand.nextFloat());
+				if (i % 11 == 0)
+					ml.put("Sometimes", i);
+			}
+			detections.add(detection);
+		}
+		// Nested detections, including tiles with double-precision measurements
+		var tile = PathObjects.createTileObject(ROIs.createRectangleROI(100, 100, 100, 100, plane));
+		tile.getMeasurementList().put("Double", Math.PI);
+		for (int i = 0; i < 3; i++)
+			tile.addChildObject(PathObjects.createDetectionObject(ROIs.createRectangleROI(100 + i * 10, 100, 5, 5, plane)));
+		detections.add(tile);
+		
+		parent.addChildObjects(detections.subList(0, 1000));
+		hierarchy.addObjects(detections.subList(1000, detections.size()));
+		cores.get(0).addChildObject(PathObjects.createAnnotationObject(ROIs.createRectangleROI(2000, 2000, 10, 10, plane)));
+		cores.get(0).addChildObject(PathObjects.createDetectionObject(ROIs.createRectangleROI(2010, 2000, 10, 10, plane)));
+		return imageData;
+	}
+	
+	private static void assertHierarchiesEqual(PathObjectHierarchy expected, PathObjectHierarchy actual) {
+		assertHierarchiesEqual(expected, actual, true);
+	}
+	
+	private static void assertHierarchiesEqual(PathObjectHierarchy expected, PathObjectHierarchy actual, boolean checkChildOrder) {
+		assertEquals(expected.nObjects(), actual.nObjects());
+		assertEquals(expected.getTMAGrid().getGridWidth(), actual.getTMAGrid().getGridWidth());
+		assertEquals(
+				expected.getTMAGrid().getTMACoreList().stream().map(PathObject::getID).toList(),
+				actual.getTMAGrid().getTMACoreList().stream().map(PathObject::getID).toList());
+		assertObjectsEqual(expected.getRootObject(), actual.getRootObject(), checkChildOrder);
+		assertEquals(
+				actual.getAllObjects(true).stream().map(PathObject::getID).collect(Collectors.toSet()),
+				expected.getAllObjects(true).stream().map(PathObject::getID).collect(Collectors.toSet()));
+		// Check the tile cache works with the new hierarchy
+		var region = qupath.lib.regions.ImageRegion.createInstance(0, 0, 2500, 2500, 0, 0);
+		assertEquals(expected.getAllDetectionsForRegion(region).size(), actual.getAllDetectionsForRegion(region).size());
+	}
+	
+	private static void assertObjectsEqual(PathObject expected, PathObject actual, boolean checkChildOrder) {
+		assertEquals(expected.getClass(), actual.getClass());
+		assertEquals(expected.getID(), actual.getID());
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getColor(), actual.getColor());
+		assertEquals(expected.getPathClass(), actual.getPathClass());
+		assertEquals(expected.getClassProbability(), actual.getClassProbability());
+		assertEquals(expected.isLocked(), actual.isLocked());
+		assertEquals(new HashMap<>(expected.getMetadata()), new HashMap<>(actual.getMetadata()));
+		assertEquals(expected.getMeasurementList().getNames(), actual.getMeasurementList().getNames());
+		assertTrue(Arrays.equals(expected.getMeasurementList().values(), actual.getMeasurementList().values()));
+		assertRoisEqual(expected.getROI(), actual.getROI());
+		if (expected instanceof PathCellObject cell)
+			assertRoisEqual(cell.getNucleusROI(), assertInstanceOf(PathCellObject.class, actual).getNucleusROI());
+		if (expected instanceof TMACoreObject core)
+			assertEquals(core.isMissing(), assertInstanceOf(TMACoreObject.class, actual).isMissing());
+		var expectedChildren = new ArrayList<>(expected.getChildObjects());
+		var actualChildren = new ArrayList<>(actual.getChildObjects());
+		if (!checkChildOrder) {
+			expectedChildren.sort(Comparator.comparing(PathObject::getID));
+			actualChildren.sort(Comparator.comparing(PathObject::getID));
+		}
+		assertEquals(expectedChildren.size(), actualChildren.size());
+		for (int i = 0; i < expectedChildren.size(); i++)
+			assertObjectsEqual(expectedChildren.get(i), actualChildren.get(i), checkChildOrder);
+	}
+	
+	private static void assertRoisEqual(ROI expected, ROI actual) {
+		if (expected == null) {
+			assertEquals(expected, actual);
+			return;
+		}
+		assertEquals(expected.getClass(), actual.getClass());
+		assertEquals(expected.getImagePlane(), actual.getImagePlane());
+		assertEquals(expected.getAllPoints(), actual.getAllPoints());
+		assertTrue(expected.getGeometry().equalsExact(actual.getGeometry()));
+	}
+	
 }
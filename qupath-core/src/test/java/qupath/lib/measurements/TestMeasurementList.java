@@ -21,9 +21,16 @@
 
 package qupath.lib.measurements;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
@@ -40,35 +47,45 @@ public class TestMeasurementList {
         GENERAL,
         DOUBLE,
         FLOAT,
+        COLUMNAR,
         GENERAL_CLOSED,
         DOUBLE_CLOSED,
-        FLOAT_CLOSED;
+        FLOAT_CLOSED,
+        COLUMNAR_CLOSED;
 
         private MeasurementList.MeasurementListType toMeasurementListType() {
             return switch (this) {
                 case GENERAL, GENERAL_CLOSED -> MeasurementList.MeasurementListType.GENERAL;
                 case DOUBLE, DOUBLE_CLOSED -> MeasurementList.MeasurementListType.DOUBLE;
-                case FLOAT, FLOAT_CLOSED -> MeasurementList.MeasurementListType.FLOAT;
+                case FLOAT, FLOAT_CLOSED, COLUMNAR, COLUMNAR_CLOSED -> MeasurementList.MeasurementListType.FLOAT;
             };
         }
 
         private boolean isClosed() {
             return switch (this) {
-                case FLOAT_CLOSED, DOUBLE_CLOSED, GENERAL_CLOSED -> true;
+                case FLOAT_CLOSED, DOUBLE_CLOSED, GENERAL_CLOSED, COLUMNAR_CLOSED -> true;
                 default -> false;
             };
         }
+
+        private boolean isColumnar() {
+            return this == COLUMNAR || this == COLUMNAR_CLOSED;
+        }
     }
 
+    // New store for each test, so that lists created within a test share columns - but results don't depend on other tests
+    private final ColumnarMeasurementStore store = MeasurementListFactory.createColumnarStore();
+
     /**
      * Create a measurement list of the specified type, closed or not.
      * @param type
      * @param nMeasurements
      * @return
      */
-    private static MeasurementList createMeasurementList(ListType type, int nMeasurements) {
+    private MeasurementList createMeasurementList(ListType type, int nMeasurements) {
         // Create list, permitting resize
-        var list = MeasurementListFactory.createMeasurementList(Math.max(1, nMeasurements / 2), type.toMeasurementListType());
+        var list = type.isColumnar() ? store.createMeasurementList() :
+                MeasurementListFactory.createMeasurementList(Math.max(1, nMeasurements / 2), type.toMeasurementListType());
         for (int i = 0; i < nMeasurements; i++) {
             list.put("Measurement " + i, i);
         }
@@ -349,4 +366,66 @@ public class TestMeasurementList {
         assertTrue(list.getNames().get(0) == list2.getNames().get(0));
     }
 
+    @Test
+    void test_columnarStore() {
+        var store = MeasurementListFactory.createColumnarStore();
+        int n = 10_000;
+        List<MeasurementList> lists = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            var list = store.createMeasurementList();
+            list.put("Index", i);
+            if (i % 2 == 0)
+                list.put("Even", i);
+            lists.add(list);
+        }
+        assertEquals(n, store.getRowCount());
+        assertEquals(List.of("Index", "Even"), store.getNames());
+        assertEquals(List.of("Index"), lists.get(1).getNames());
+        assertEquals(List.of("Index", "Even"), lists.get(2).getNames());
+
+        var column = store.getColumn("Index");
+        var columnEven = store.getColumn("Even");
+        var missing = store.getColumn("Missing");
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, column[i]);
+            assertEquals(i, store.getRow(lists.get(i)));
+            assertTrue(Float.isNaN(missing[i]));
+            if (i % 2 == 0)
+                assertEquals(i, columnEven[i]);
+            else
+                assertTrue(Float.isNaN(columnEven[i]));
+        }
+
+        // Mix lists from the store with other lists
+        var other = MeasurementListFactory.createMeasurementList(1, MeasurementList.MeasurementListType.DOUBLE);
+        other.put("Index", -1);
+        assertEquals(-1, store.getRow(other));
+        assertArrayEquals(new double[]{-1, 5, 6}, store.getValues("Index", List.of(other, lists.get(5), lists.get(6))));
+
+        // NaN is a value, not a missing measurement
+        var list = lists.get(1);
+        list.put("Even", Double.NaN);
+        assertTrue(list.containsKey("Even"));
+        assertTrue(Double.isNaN(list.get("Even")));
+        assertEquals(2, list.size());
+        list.remove("Even");
+        assertFalse(list.containsKey("Even"));
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    void test_columnarSerialization() throws Exception {
+        var list = MeasurementListFactory.createColumnarStore().createMeasurementList();
+        list.put("First", 1.0);
+        list.put("Second", 2.0);
+        var bytes = new ByteArrayOutputStream();
+        try (var stream = new ObjectOutputStream(bytes)) {
+            stream.writeObject(list);
+        }
+        try (var stream = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            var list2 = (MeasurementList)stream.readObject();
+            assertEquals(list.getMeasurements(), list2.getMeasurements());
+        }
+    }
+
 }
@@ -43,6 +43,7 @@ public class TestMeasurementListFactory {
 		testList(MeasurementListFactory.createMeasurementList(50, MeasurementListType.DOUBLE));
 		testList(MeasurementListFactory.createMeasurementList(50, MeasurementListType.FLOAT));
 		testList(MeasurementListFactory.createMeasurementList(50, MeasurementListType.GENERAL));
+		testList(MeasurementListFactory.createColumnarStore().createMeasurementList());
 	}
 	
 	
@@ -25,11 +25,13 @@ import org.junit.jupiter.api.Test;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjectTools;
 import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent;
 import qupath.lib.regions.ImagePlane;
 import qupath.lib.regions.ImageRegion;
 import qupath.lib.roi.ROIs;
 import qupath.lib.roi.interfaces.ROI;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
@@ -38,6 +40,7 @@ import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestPathObjectHierarchy {
@@ -279,4 +282,130 @@ public class TestPathObjectHierarchy {
         assertTrue(hierarchy.getCellSubdivision(plane).isEmpty());
     }
 
+    @Test
+    public void test_manyObjectsOnPlanes() {
+        // Use enough objects per plane for the cache to be bulk-loaded
+        int nPerPlane = 2000;
+        int nZ = 3;
+        var hierarchy = new PathObjectHierarchy();
+        List<PathObject> detections = new ArrayList<>();
+        for (int z = 0; z < nZ; z++) {
+            var plane = ImagePlane.getPlane(z, 0);
+            for (int i = 0; i < nPerPlane; i++) {
+                detections.add(PathObjects.createDetectionObject(
+                        ROIs.createRectangleROI((i % 100) * 10, (i / 100) * 10, 5, 5, plane)));
+            }
+        }
+        hierarchy.addObjects(detections);
+
+        var region = ImageRegion.createInstance(0, 0, 95, 95, 1, 0);
+        assertEquals(100, hierarchy.getAllDetectionsForRegion(region).size());
+        assertTrue(hierarchy.getAllDetectionsForRegion(region).stream().allMatch(p -> p.getROI().getZ() == 1));
+        assertTrue(hierarchy.getAllDetectionsForRegion(ImageRegion.createInstance(0, 0, 95, 95, nZ, 0)).isEmpty());
+        assertEquals(nPerPlane * nZ, hierarchy.getDetectionObjects().size());
+
+        // Single changes should update the cache without a rebuild
+        var added = PathObjects.createDetectionObject(ROIs.createRectangleROI(1, 1, 2, 2, ImagePlane.getPlane(1, 0)));
+        hierarchy.addObject(added);
+        assertEquals(101, hierarchy.getAllDetectionsForRegion(region).size());
+        assertTrue(hierarchy.getAllDetectionsForRegion(region).contains(added));
+
+        var removed = hierarchy.getAllDetectionsForRegion(region).iterator().next();
+        hierarchy.removeObject(removed, false);
+        assertEquals(100, hierarchy.getAllDetectionsForRegion(region).size());
+        assertFalse(hierarchy.getAllDetectionsForRegion(region).contains(removed));
+        assertEquals(nPerPlane * nZ, hierarchy.getDetectionObjects().size());
+    }
+
+    @Test
+    public void test_batchChanges() {
+        var hierarchy = new PathObjectHierarchy();
+        var plane = ImagePlane.getDefaultPlane();
+        List<PathObject> detections = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            detections.add(PathObjects.createDetectionObject(
+                    ROIs.createRectangleROI((i % 100) * 10, (i / 100) * 10, 5, 5, plane)));
+        }
+        hierarchy.addObjects(detections);
+        var all = ImageRegion.createInstance(-10, -10, 2000, 2000, 0, 0);
+        assertEquals(5000, hierarchy.getAllDetectionsForRegion(all).size());
+
+        // Insert an annotation, which should take detections as children
+        var annotation = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 100, 100, plane));
+        hierarchy.insertPathObjects(List.of(annotation));
+        var region = ImageRegion.createInstance(0, 0, 100, 100, 0, 0);
+        assertEquals(annotation.getChildObjects().size(), 100);
+        assertEquals(Set.of(annotation), Set.copyOf(hierarchy.getAnnotationsForRegion(region)));
+
+        // Removing the annotation but keeping children shouldn't change detections
+        hierarchy.removeObjects(List.of(annotation), true);
+        assertTrue(hierarchy.getAnnotationsForRegion(region).isEmpty());
+        assertEquals(5000, hierarchy.getAllDetectionsForRegion(all).size());
+
+        // Remove a batch of detections
+        var toRemove = List.copyOf(hierarchy.getAllDetectionsForRegion(region));
+        hierarchy.removeObjects(toRemove, false);
+        assertTrue(hierarchy.getAllDetectionsForRegion(region).isEmpty());
+        assertEquals(5000 - toRemove.size(), hierarchy.getAllDetectionsForRegion(all).size());
+
+        // Add them back, with an annotation parent that has them as children
+        var annotation2 = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 100, 100, plane));
+        annotation2.addChildObjects(toRemove);
+        hierarchy.addObjects(List.of(annotation2));
+        assertEquals(Set.copyOf(toRemove), Set.copyOf(hierarchy.getAllDetectionsForRegion(region)));
+        assertEquals(5000, hierarchy.getAllDetectionsForRegion(all).size());
+
+        // Remove the annotation and its children
+        hierarchy.removeObject(annotation2, false);
+        assertTrue(hierarchy.getAllDetectionsForRegion(region).isEmpty());
+        assertFalse(hierarchy.hasObjectsForRegion(null, region));
+        assertEquals(5000 - toRemove.size(), hierarchy.getAllDetectionsForRegion(all).size());
+    }
+
+    @Test
+    public void testChangedRegions() {
+        var hierarchy = new PathObjectHierarchy();
+        List<PathObjectHierarchyEvent> events = new ArrayList<>();
+        hierarchy.addListener(events::add);
+        var plane = ImagePlane.getDefaultPlane();
+
+        // Single object events should give the object bounds
+        var detection = PathObjects.createDetectionObject(ROIs.createRectangleROI(10.5, 20, 30, 40, plane));
+        hierarchy.addObject(detection);
+        assertEquals(List.of(ImageRegion.createInstance(10, 20, 31, 40, 0, 0)), events.get(events.size()-1).getChangedRegions());
+
+        // Batch changes should give regions that contain all the objects
+        List<PathObject> detections = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            detections.add(PathObjects.createDetectionObject(ROIs.createRectangleROI(i * 10, 5000 + i * 5, 5, 5, plane)));
+        hierarchy.addObjects(detections);
+        var event = events.get(events.size()-1);
+        assertTrue(event.isStructureChangeEvent());
+        assertTrue(event.getChangedObjects().isEmpty());
+        var regions = event.getChangedRegions();
+        assertTrue(regions.size() <= detections.size());
+        for (var d : detections)
+            assertTrue(regions.stream().anyMatch(r -> r.intersects(ImageRegion.createInstance(d.getROI()))));
+        assertFalse(regions.stream().anyMatch(r -> r.intersects(ImageRegion.createInstance(0, 0, 1000, 1000, 0, 0))));
+
+        // Removing an annotation should include its descendants
+        var annotation = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 100, 100, plane));
+        var child = PathObjects.createDetectionObject(ROIs.createRectangleROI(500, 500, 10, 10, plane));
+        annotation.addChildObject(child);
+        hierarchy.addObjectBelowParent(null, annotation, false);
+        hierarchy.removeObjects(List.of(annotation), false);
+        regions = events.get(events.size()-1).getChangedRegions();
+        assertTrue(regions.contains(ImageRegion.createInstance(child.getROI())));
+
+        // Regions are unknown for general structure changes
+        hierarchy.fireHierarchyChangedEvent(this);
+        assertNull(events.get(events.size()-1).getChangedRegions());
+
+        // Classification changes don't move objects, but other changes might
+        hierarchy.fireObjectClassificationsChangedEvent(this, List.of(detection));
+        assertEquals(List.of(ImageRegion.createInstance(10, 20, 31, 40, 0, 0)), events.get(events.size()-1).getChangedRegions());
+        hierarchy.fireObjectsChangedEvent(this, List.of(detection));
+        assertNull(events.get(events.size()-1).getChangedRegions());
+    }
+
 }
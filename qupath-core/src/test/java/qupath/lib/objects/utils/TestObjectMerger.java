@@ -31,10 +31,13 @@ import qupath.lib.regions.ImagePlane;
 import qupath.lib.roi.ROIs;
 import qupath.lib.roi.interfaces.ROI;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestObjectMerger {
 
@@ -318,6 +321,47 @@ public class TestObjectMerger {
         assert mergedMeasurements.entrySet().stream().allMatch(es -> largest.getMeasurementList().get(es.getKey()) == es.getValue().doubleValue());
     }
 
+    @Test
+    public void test_partitionedSameAsSequential() {
+        // Create objects split along tile boundaries, including some duplicates that overlap
+        var rng = new Random(100);
+        List<PathObject> pathObjects = new ArrayList<>();
+        double tileSize = 64;
+        for (int i = 0; i < 1500; i++) {
+            double x = Math.floor(rng.nextDouble() * 1000);
+            double y = Math.floor(rng.nextDouble() * 1000);
+            double w = 5 + Math.floor(rng.nextDouble() * 20);
+            double h = 5 + Math.floor(rng.nextDouble() * 20);
+            double xSplit = Math.ceil(x / tileSize) * tileSize;
+            String classification = i % 3 == 0 ? "A" : "B";
+            if (xSplit > x && xSplit < x + w) {
+                pathObjects.add(createRectangleObject(x, y, xSplit - x, h, classification));
+                pathObjects.add(createRectangleObject(xSplit, y, x + w - xSplit, h, classification));
+            } else {
+                pathObjects.add(createRectangleObject(x, y, w, h, classification));
+            }
+            if (i % 10 == 0)
+                pathObjects.add(createRectangleObject(x + 1, y + 1, w, h, classification));
+        }
+        for (var merger : List.of(
+                ObjectMerger.createSharedTileBoundaryMerger(0.5, MeasurementStrategy.MEAN),
+                ObjectMerger.createIoUMerger(0.1),
+                ObjectMerger.createIoMinMerger(0.1),
+                ObjectMerger.createTouchingMerger())) {
+            var sequential = merger.process(pathObjects, false);
+            var partitioned = merger.process(pathObjects, true);
+            assertEquals(sequential.size(), partitioned.size());
+            assertTrue(sequential.size() < pathObjects.size());
+            for (int i = 0; i < sequential.size(); i++) {
+                var expected = sequential.get(i);
+                var actual = partitioned.get(i);
+                assertEquals(expected.getPathClass(), actual.getPathClass());
+                assertTrue(expected.getROI().getGeometry().equalsExact(actual.getROI().getGeometry()));
+                assertEquals(expected.getMeasurements(), actual.getMeasurements());
+            }
+        }
+    }
+
     private List<PathObject> createMergableObjectsWithMeasurements() {
         var po1 = createRectangleObject(0, 0, 100, 100);
         var po2 = createRectangleObject(0, 0, 100, 180);
@@ -335,6 +379,12 @@ public class TestObjectMerger {
     }
 
 
+    private static PathObject createRectangleObject(double x, double y, double width, double height, String classification) {
+        return PathObjects.createDetectionObject(
+                ROIs.createRectangleROI(x, y, width, height, ImagePlane.getDefaultPlane()),
+                PathClass.fromString(classification));
+    }
+
     private static PathObject createAnnotation(double x, double y, String classification) {
         return createAnnotation(x, y, classification, ImagePlane.getDefaultPlane());
     }
@@ -28,12 +28,15 @@ import qupath.lib.regions.ImagePlane;
 import qupath.lib.roi.ROIs;
 import qupath.lib.roi.interfaces.ROI;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestOverlapFixer {
 
@@ -94,6 +97,34 @@ public class TestOverlapFixer {
         assertEquals(set, Set.copyOf(fixer.process(List.of(large, small))));
     }
 
+    @Test
+    public void test_partitionedSameAsSequential() {
+        var rng = new Random(100);
+        List<PathObject> pathObjects = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            double x = rng.nextDouble() * 1500;
+            double y = rng.nextDouble() * 1500;
+            if (i % 2 == 0)
+                pathObjects.add(createRectangle(x, y, 10 + rng.nextDouble() * 30, 10 + rng.nextDouble() * 30));
+            else
+                pathObjects.add(PathObjects.createDetectionObject(
+                        ROIs.createEllipseROI(x, y, 10 + rng.nextDouble() * 30, 10 + rng.nextDouble() * 30, ImagePlane.getDefaultPlane())));
+        }
+        for (var fixer : List.of(
+                OverlapFixer.builder().clipOverlaps().build(),
+                OverlapFixer.builder().clipOverlaps().keepFragments().sortBySolidity().build(),
+                OverlapFixer.builder().dropOverlaps().build())) {
+            var sequential = fixer.process(pathObjects, false);
+            var partitioned = fixer.process(pathObjects, true);
+            assertEquals(sequential.size(), partitioned.size());
+            for (int i = 0; i < sequential.size(); i++) {
+                var expected = sequential.get(i).getROI().getGeometry();
+                var actual = partitioned.get(i).getROI().getGeometry();
+                assertTrue(expected.equalsExact(actual));
+            }
+        }
+    }
+
     private static double sumAreas(Collection<? extends PathObject> pathObjects) {
         return pathObjects.stream().map(PathObject::getROI).mapToDouble(ROI::getArea).sum();
     }
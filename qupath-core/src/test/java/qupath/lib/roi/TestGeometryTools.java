@@ -48,6 +48,7 @@ import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.PrecisionModel;
 import org.locationtech.jts.geom.util.AffineTransformation;
 
+import org.locationtech.jts.operation.overlayng.UnaryUnionNG;
 import org.locationtech.jts.operation.polygonize.Polygonizer;
 import org.locationtech.jts.operation.valid.IsValidOp;
 import org.slf4j.Logger;
@@ -189,6 +190,49 @@ public class TestGeometryTools {
 		assertEquals(1, FastPolygonUnion.union(g1, gLine).getNumGeometries());
 	}
 
+	@Test
+	public void testUnionTiles() {
+		// Grid of tiles with some missing, to give holes and tiles that touch only at corners
+		var rng = new Random(100);
+		List<Geometry> tiles = new ArrayList<>();
+		for (int y = 0; y < 40; y++) {
+			for (int x = 0; x < 40; x++) {
+				if (rng.nextDouble() < 0.7)
+					tiles.add(GeometryTools.createRectangle(x * 64, y * 64, 64, 64));
+			}
+		}
+		// Add a tile that doesn't align with the grid
+		tiles.add(GeometryTools.createRectangle(40 * 64, 100, 50, 10));
+		var expected = UnaryUnionNG.union(tiles, GeometryTools.getDefaultFactory(), GeometryTools.getDefaultFactory().getPrecisionModel());
+		var union = FastPolygonUnion.union(tiles);
+		assertTrue(union.isValid());
+		assertEquals(expected.getNumGeometries(), union.getNumGeometries());
+		assertEquals(expected.getArea(), union.getArea(), 1e-6);
+		assertEquals(0, union.symDifference(expected).getArea(), 1e-6);
+	}
+
+	@Test
+	public void testUnionManyOverlapping() {
+		// Large numbers of overlapping polygons in a single group, to use a cascaded union
+		var rng = new Random(100);
+		List<Geometry> geometries = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			double x = rng.nextDouble() * 1000;
+			double y = rng.nextDouble() * 1000;
+			geometries.add(GeometryTools.createEllipse(x, y, 30 + rng.nextDouble() * 20, 30 + rng.nextDouble() * 20, 32));
+		}
+		// Add overlapping tiles, which can't be merged by dissolving shared edges
+		geometries.add(GeometryTools.createRectangle(2000, 0, 100, 100));
+		geometries.add(GeometryTools.createRectangle(2050, 50, 100, 100));
+		var expected = UnaryUnionNG.union(geometries, GeometryTools.getDefaultFactory(), GeometryTools.getDefaultFactory().getPrecisionModel());
+		var union = FastPolygonUnion.union(geometries);
+		assertTrue(union.isValid());
+		assertEquals(expected.getNumGeometries(), union.getNumGeometries());
+		// Allow for small differences due to the order in which polygons are merged
+		assertEquals(expected.getArea(), union.getArea(), expected.getArea() * 1e-6);
+		assertEquals(0, union.symDifference(expected).getArea(), expected.getArea() * 1e-6);
+	}
+
 
 	@Test
 	public void testFindLargestPolygonLineString() {
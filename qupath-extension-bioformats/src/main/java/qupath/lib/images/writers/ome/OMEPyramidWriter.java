@@ -23,6 +23,7 @@ package qupath.lib.images.writers.ome;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -380,6 +381,8 @@ public class OMEPyramidWriter {
 		
 		private int parallelThreads = 1;
 		
+		private boolean reduceFromPreviousLevel = false;
+		
 		private Boolean bigTiff;
 		private ChannelExportType channelExportType = ChannelExportType.DEFAULT;
 	
@@ -605,6 +608,13 @@ public class OMEPyramidWriter {
 		 * @see #initializeMetadata(IMetadata, int)
 		 */
 		public void writeSeries(IFormatWriter writer, IMetadata meta, final int series) throws FormatException, IOException {
+			// Ensure any temporary stores used to generate resolution levels are closed, even if writing fails
+			try (var stores = new LevelStores()) {
+				writeSeries(writer, meta, series, stores);
+			}
+		}
+		
+		private void writeSeries(IFormatWriter writer, IMetadata meta, final int series, LevelStores stores) throws FormatException, IOException {
 	
 			// We need to get the writer directly to be able to check if it is a TiffWriter
 			while (writer instanceof ImageWriter)
@@ -673,6 +683,17 @@ public class OMEPyramidWriter {
 			boolean isTiff = writer instanceof TiffWriter;
 			Map<Integer, IFD> map = new HashMap<>();
 			
+			// Determine if we can generate each level from the previous one
+			int[] reductionFactors = null;
+			if (reduceFromPreviousLevel && downsamples.length > 1) {
+				reductionFactors = isTiled ? getReductionFactors(tileWidth, tileHeight) : null;
+				if (reductionFactors == null)
+					logger.warn("Cannot reduce from previous levels with downsamples {} and tile size {}x{} - will request all levels from the image",
+							Arrays.toString(downsamples), tileWidth, tileHeight);
+			}
+			int valuesPerPixel = nChannels / nSamples == channels.length ? 1 : channels.length;
+			boolean useMode = server.getMetadata().getChannelType() == ChannelType.CLASSIFICATION;
+			
 			writer.setSeries(series);
 			for (int level = 0; level < downsamples.length; level++) {
 				
@@ -707,6 +728,20 @@ public class OMEPyramidWriter {
 				int zInc = zEnd >= zStart ? 1 : -1;
 				int effectiveSizeC = nChannels / nSamples;
 				
+				// Create a store for the next level, if we will generate it from this one
+				if (reductionFactors != null && level < downsamples.length - 1) {
+					int wNext = (int)(width / downsamples[level+1]);
+					int hNext = (int)(height / downsamples[level+1]);
+					if (meta instanceof IPyramidStore) {
+						wNext = ((IPyramidStore)meta).getResolutionSizeX(series, level+1).getValue().intValue();
+						hNext = ((IPyramidStore)meta).getResolutionSizeY(series, level+1).getValue().intValue();
+					}
+					stores.next = new ReducedLevelStore(wNext, hNext, nPlanes, valuesPerPixel, getExportPixelType(), endian, useMode);
+				}
+				var source = stores.current;
+				var target = stores.next;
+				int factor = target == null ? 1 : reductionFactors[level+1];
+				
 				AtomicInteger count = new AtomicInteger(0);
 								
 				int ti = 0;
@@ -775,7 +810,7 @@ public class OMEPyramidWriter {
 							logger.info("Writing plane {}/{}", plane+1, nPlanes);
 								
 							// We *must* write the first region first
-							writeRegion(writer, plane, ifd, server, firstTile, isRGB, localChannels);
+							writeRegion(writer, plane, ifd, server, firstTile, isRGB, localChannels, source, target, factor);
 							if (!tiles.isEmpty()) {
 								
 								// Reversing the regions means that for a large image we can still get some tiles from the cache
@@ -793,7 +828,7 @@ public class OMEPyramidWriter {
 										try {
 											if (Thread.currentThread().isInterrupted())
 												return;
-											writeRegion(localWriter, plane, ifd, server, tile, isRGB, localChannels);
+											writeRegion(localWriter, plane, ifd, server, tile, isRGB, localChannels, source, target, factor);
 										} catch (Exception e) {
 											logger.error(String.format(
 													"Error writing %s (downsample=%.2f)",
@@ -838,6 +873,9 @@ public class OMEPyramidWriter {
 					}
 					ti++;
 				}
+				
+				// The next level will be generated from the store we just filled
+				stores.nextLevel();
 			}
 			logger.trace("Image count: {}", meta.getImageCount());
 			if (writer instanceof FormatWriter)
@@ -866,6 +904,57 @@ public class OMEPyramidWriter {
 			return serverPyramidalized == null ? getOriginalServer() : serverPyramidalized;
 		}
 		
+		/**
+		 * Stores used to generate each resolution level from the previous one.
+		 */
+		private static class LevelStores implements Closeable {
+			
+			private ReducedLevelStore current;
+			private ReducedLevelStore next;
+			
+			/**
+			 * Move on to the next level, which will be written from the store that was just filled.
+			 */
+			private void nextLevel() throws IOException {
+				if (current != null)
+					current.close();
+				current = next;
+				next = null;
+			}
+			
+			@Override
+			public void close() throws IOException {
+				try {
+					if (current != null)
+						current.close();
+				} finally {
+					if (next != null)
+						next.close();
+				}
+			}
+			
+		}
+		
+		/**
+		 * Get the integer factors by which each resolution level is reduced relative to the previous level.
+		 * @param tileWidth
+		 * @param tileHeight
+		 * @return the factors (where the first entry is always 1), or null if the downsamples are not integer multiples of one another, 
+		 *         or the tiles cannot be reduced without crossing tile boundaries
+		 */
+		private int[] getReductionFactors(int tileWidth, int tileHeight) {
+			int[] factors = new int[downsamples.length];
+			factors[0] = 1;
+			for (int level = 1; level < downsamples.length; level++) {
+				double ratio = downsamples[level] / downsamples[level-1];
+				int factor = (int)Math.round(ratio);
+				if (factor < 2 || Math.abs(ratio - factor) > 1e-6 || tileWidth % factor != 0 || tileHeight % factor != 0)
+					return null;
+				factors[level] = factor;
+			}
+			return factors;
+		}
+		
 		/**
 		 * Write a region. The ifd is only used if writer is an instance of TiffWriter.
 		 * 
@@ -876,30 +965,51 @@ public class OMEPyramidWriter {
 		 * @param tile the tile to export; this incorporates the export coordinates and the full resolution coordinates (via the associated {@link RegionRequest})
 		 * @param isRGB export as RGB; this assumes both the input and export images are RGB (i.e. no extra conversions, channel reordering etc.)
 		 * @param channels
+		 * @param source optional store containing the pixels for the current level; if null, pixels are requested from the server
+		 * @param target optional store to which the reduced tile should be added, to generate the next level
+		 * @param factor reduction factor for the next level; ignored if target is null
 		 * @throws FormatException
 		 * @throws IOException
 		 */
-		private void writeRegion(IFormatWriter writer, int plane, IFD ifd, ImageServer<BufferedImage> server, TileRequest tile, boolean isRGB, int[] channels) throws FormatException, IOException {
+		private void writeRegion(IFormatWriter writer, int plane, IFD ifd, ImageServer<BufferedImage> server, TileRequest tile, boolean isRGB, int[] channels,
+				ReducedLevelStore source, ReducedLevelStore target, int factor) throws FormatException, IOException {
+			
+			int ww = tile.getTileWidth();
+			int hh = tile.getTileHeight();
+			byte[] bytes;
+			if (source != null) {
+				bytes = source.read(plane, tile.getTileX(), tile.getTileY(), ww, hh);
+			} else {
+				// Get the region request - and make sure to translate it to the origin
+				RegionRequest request = tile.getRegionRequest().translate(this.x, this.y);
+				BufferedImage img = server.readRegion(request);
+				if (img == null) {
+					bytes = new byte[ww * hh * getExportPixelType().getBytesPerPixel() * channels.length];
+				} else {
+					ww = img.getWidth();
+					hh = img.getHeight();
+					bytes = imageToBytes(img, isRGB, channels);
+				}
+			}
 			
-			// Get the region request - and make sure to translate it to the origin
-			RegionRequest request = tile.getRegionRequest().translate(this.x, this.y);
-			BufferedImage img = server.readRegion(request);
+			if (writer instanceof TiffWriter)
+				((TiffWriter)writer).saveBytes(plane, bytes, ifd, tile.getTileX(), tile.getTileY(), ww, hh);
+			else
+				writer.saveBytes(plane, bytes, tile.getTileX(), tile.getTileY(), ww, hh);
 			
+			if (target != null)
+				target.reduce(plane, bytes, tile.getTileX(), tile.getTileY(), ww, hh, factor);
+		}
+		
+		/**
+		 * Extract the pixels for the specified channels of an image, in the byte order and pixel type used for export.
+		 */
+		private byte[] imageToBytes(BufferedImage img, boolean isRGB, int[] channels) {
 			var pixelType = getExportPixelType();
 			int bytesPerPixel = pixelType.getBytesPerPixel();
-			int nChannels = channels.length;
-			if (img == null) {
-				byte[] zeros = new byte[tile.getTileWidth() * tile.getTileHeight() * bytesPerPixel * nChannels];
-				if (writer instanceof TiffWriter)
-					((TiffWriter)writer).saveBytes(plane, zeros, ifd, tile.getTileX(), tile.getTileY(), tile.getTileWidth(), tile.getTileHeight());
-				else
-					writer.saveBytes(plane, zeros, tile.getTileX(), tile.getTileY(), tile.getTileWidth(), tile.getTileHeight());
-				return;
-			}
-			
 			int ww = img.getWidth();
 			int hh = img.getHeight();
-			ByteBuffer buf = ByteBuffer.allocate(ww * hh * bytesPerPixel * nChannels)
+			ByteBuffer buf = ByteBuffer.allocate(ww * hh * bytesPerPixel * channels.length)
 					.order(endian);
 			
 			if (isRGB) {
@@ -919,10 +1029,7 @@ public class OMEPyramidWriter {
 					channelToBuffer(img.getRaster(), c, buf, ind, channels.length * bytesPerPixel, pixelType);
 				}
 			}
-			if (writer instanceof TiffWriter)
-				((TiffWriter)writer).saveBytes(plane, buf.array(), ifd, tile.getTileX(), tile.getTileY(), ww, hh);
-			else
-				writer.saveBytes(plane, buf.array(), tile.getTileX(), tile.getTileY(), ww, hh);
+			return buf.array();
 		}
 		
 		/**
@@ -1244,6 +1351,29 @@ public class OMEPyramidWriter {
 			return this;
 		}
 		
+		/**
+		 * Specify if each resolution level (after the first) should be generated by reducing the tiles written for 
+		 * the previous level, rather than by requesting pixels from the image at a lower resolution.
+		 * <p>
+		 * This means that pixels need only be requested from the image once, which can greatly improve performance 
+		 * when these are expensive to generate (e.g. for a non-pyramidal image, or one that is computed from 
+		 * another image). Pixels are averaged within each block, or the most common value is used for 
+		 * classification images.
+		 * <p>
+		 * This requires that each downsample is an integer multiple of the previous one, and that the tile size 
+		 * is divisible by this multiple; otherwise, all levels are requested from the image as usual.
+		 * Each level is stored in a temporary file while it is written, which requires additional disk space 
+		 * of up to around one third of the uncompressed size of the image.
+		 * 
+		 * @param doReduce
+		 * @return this builder
+		 * @since v0.6.0
+		 */
+		public Builder reduceFromPreviousLevel(boolean doReduce) {
+			series.reduceFromPreviousLevel = doReduce;
+			return this;
+		}
+		
 		/**
 		 * Specify the output {@link PixelType}.
 		 * @param exportPixelType
@@ -0,0 +1,272 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.writers.ome;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import qupath.lib.images.servers.PixelType;
+
+/**
+ * Temporary store for the pixels of a single resolution level of a pyramid, 
+ * which is created by reducing the tiles written for the previous (higher-resolution) level.
+ * <p>
+ * This enables each level of a pyramid to be generated from the one before, rather than by requesting 
+ * pixels from the original image again.
+ * Pixels are stored in a temporary file using the same interleaved layout and byte order that is passed to 
+ * the image writer, so that only the tiles currently being processed need to be held in memory.
+ * <p>
+ * Reducing and reading different regions is thread-safe, provided the regions do not overlap.
+ * 
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+class ReducedLevelStore implements Closeable {
+	
+	private final int width;
+	private final int height;
+	private final int nValues;
+	private final PixelType pixelType;
+	private final ByteOrder order;
+	private final boolean useMode;
+	
+	private final int bytesPerValue;
+	private final int stride;
+	
+	private final Path path;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	
+	/**
+	 * Create a store for a new resolution level.
+	 * @param width width of the level
+	 * @param height height of the level
+	 * @param nPlanes number of planes
+	 * @param nValues number of interleaved values for each pixel in a plane
+	 * @param pixelType pixel type of each value
+	 * @param order byte order of each value
+	 * @param useMode if true, reduce by taking the most common value in each block (e.g. for classification labels); 
+	 *                otherwise use the mean value
+	 * @throws IOException if the temporary file could not be created
+	 */
+	ReducedLevelStore(int width, int height, int nPlanes, int nValues, PixelType pixelType, ByteOrder order, boolean useMode) throws IOException {
+		this.width = width;
+		this.height = height;
+		this.nValues = nValues;
+		this.pixelType = pixelType;
+		this.order = order;
+		this.useMode = useMode;
+		this.bytesPerValue = pixelType.getBytesPerPixel();
+		this.stride = nValues * bytesPerValue;
+		this.path = Files.createTempFile("qupath-pyramid-", ".raw");
+		this.file = new RandomAccessFile(path.toFile(), "rw");
+		this.file.setLength((long)width * height * stride * nPlanes);
+		this.channel = file.getChannel();
+	}
+	
+	/**
+	 * Reduce a tile from the previous resolution level, and store the result.
+	 * The tile origin must be a multiple of the reduction factor.
+	 * @param plane the plane index
+	 * @param bytes the pixels of the tile, using the same layout and byte order as the store
+	 * @param x x-coordinate of the tile in the previous level
+	 * @param y y-coordinate of the tile in the previous level
+	 * @param tileWidth width of the tile
+	 * @param tileHeight height of the tile
+	 * @param factor the reduction factor (e.g. 2 if each pixel in this level corresponds to 2x2 pixels in the previous level)
+	 * @throws IOException
+	 */
+	void reduce(int plane, byte[] bytes, int x, int y, int tileWidth, int tileHeight, int factor) throws IOException {
+		if (x % factor != 0 || y % factor != 0)
+			throw new IllegalArgumentException("Tile origin (" + x + ", " + y + ") is not a multiple of " + factor);
+		int x2 = x / factor;
+		int y2 = y / factor;
+		int w2 = Math.min((x + tileWidth + factor - 1) / factor, width) - x2;
+		int h2 = Math.min((y + tileHeight + factor - 1) / factor, height) - y2;
+		if (w2 <= 0 || h2 <= 0)
+			return;
+		
+		var input = ByteBuffer.wrap(bytes).order(order);
+		var output = ByteBuffer.allocate(w2 * h2 * stride).order(order);
+		double[] block = new double[factor * factor];
+		for (int yy = 0; yy < h2; yy++) {
+			for (int xx = 0; xx < w2; xx++) {
+				for (int c = 0; c < nValues; c++) {
+					int n = 0;
+					for (int dy = 0; dy < factor; dy++) {
+						int ys = yy * factor + dy;
+						if (ys >= tileHeight)
+							break;
+						for (int dx = 0; dx < factor; dx++) {
+							int xs = xx * factor + dx;
+							if (xs >= tileWidth)
+								break;
+							block[n++] = getValue(input, (ys * tileWidth + xs) * nValues + c);
+						}
+					}
+					double value = useMode ? mode(block, n) : mean(block, n);
+					putValue(output, (yy * w2 + xx) * nValues + c, value);
+				}
+			}
+		}
+		
+		byte[] array = output.array();
+		int rowBytes = w2 * stride;
+		for (int yy = 0; yy < h2; yy++)
+			writeFully(ByteBuffer.wrap(array, yy * rowBytes, rowBytes), getOffset(plane, x2, y2 + yy));
+	}
+	
+	/**
+	 * Read a region of the stored level.
+	 * Any pixels outside the level are set to zero.
+	 * @param plane the plane index
+	 * @param x
+	 * @param y
+	 * @param regionWidth
+	 * @param regionHeight
+	 * @return the pixels, using the same layout and byte order as the store
+	 * @throws IOException
+	 */
+	byte[] read(int plane, int x, int y, int regionWidth, int regionHeight) throws IOException {
+		byte[] bytes = new byte[regionWidth * regionHeight * stride];
+		int w = Math.min(regionWidth, width - x);
+		if (w <= 0)
+			return bytes;
+		int rowBytes = regionWidth * stride;
+		for (int yy = 0; yy < regionHeight && y + yy < height; yy++)
+			readFully(ByteBuffer.wrap(bytes, yy * rowBytes, w * stride), getOffset(plane, x, y + yy));
+		return bytes;
+	}
+	
+	private long getOffset(int plane, int x, int y) {
+		return ((long)plane * height * width + (long)y * width + x) * stride;
+	}
+	
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+	
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position);
+			if (n < 0)
+				break;
+			position += n;
+		}
+	}
+	
+	private double getValue(ByteBuffer buffer, int index) {
+		int ind = index * bytesPerValue;
+		switch (pixelType) {
+		case INT8:
+			return buffer.get(ind);
+		case UINT8:
+			return buffer.get(ind) & 0xff;
+		case INT16:
+			return buffer.getShort(ind);
+		case UINT16:
+			return buffer.getShort(ind) & 0xffff;
+		case INT32:
+			return buffer.getInt(ind);
+		case UINT32:
+			return buffer.getInt(ind) & 0xffffffffL;
+		case FLOAT32:
+			return buffer.getFloat(ind);
+		case FLOAT64:
+			return buffer.getDouble(ind);
+		default:
+			throw new UnsupportedOperationException("Unsupported pixel type " + pixelType);
+		}
+	}
+	
+	private void putValue(ByteBuffer buffer, int index, double value) {
+		int ind = index * bytesPerValue;
+		switch (pixelType) {
+		case INT8:
+		case UINT8:
+			buffer.put(ind, (byte)Math.round(value));
+			break;
+		case INT16:
+		case UINT16:
+			buffer.putShort(ind, (short)Math.round(value));
+			break;
+		case INT32:
+		case UINT32:
+			buffer.putInt(ind, (int)Math.round(value));
+			break;
+		case FLOAT32:
+			buffer.putFloat(ind, (float)value);
+			break;
+		case FLOAT64:
+			buffer.putDouble(ind, value);
+			break;
+		default:
+			throw new UnsupportedOperationException("Unsupported pixel type " + pixelType);
+		}
+	}
+	
+	private static double mean(double[] values, int n) {
+		double sum = 0;
+		for (int i = 0; i < n; i++)
+			sum += values[i];
+		return sum / n;
+	}
+	
+	/**
+	 * Get the most common value, choosing the lowest value in the event of a tie.
+	 */
+	private static double mode(double[] values, int n) {
+		double mode = values[0];
+		int maxCount = 0;
+		for (int i = 0; i < n; i++) {
+			double v = values[i];
+			int count = 0;
+			for (int j = 0; j < n; j++) {
+				if (values[j] == v)
+					count++;
+			}
+			if (count > maxCount || (count == maxCount && v < mode)) {
+				mode = v;
+				maxCount = count;
+			}
+		}
+		return mode;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			channel.close();
+			file.close();
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+}
@@ -0,0 +1,156 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.writers.ome;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import qupath.lib.images.servers.AbstractImageServer;
+import qupath.lib.images.servers.ImageChannel;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.images.servers.ImageServerMetadata;
+import qupath.lib.images.servers.ImageServerProvider;
+import qupath.lib.images.servers.PixelType;
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class TestOMEPyramidWriter {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void test_reduceFromPreviousLevel() throws Exception {
+		var path = dir.resolve("reduced.ome.tif").toString();
+		try (var server = new CountingServer()) {
+			new OMEPyramidWriter.Builder(server)
+				.tileSize(64)
+				.downsamples(1, 2, 4)
+				.reduceFromPreviousLevel(true)
+				.parallelize(2)
+				.build()
+				.writeSeries(path);
+
+			// Every pixel should have been requested once, at full resolution
+			assertTrue(server.requests.stream().allMatch(r -> r.getDownsample() == 1.0));
+			assertEquals((long)CountingServer.SIZE * CountingServer.SIZE,
+					server.requests.stream().mapToLong(r -> (long)r.getWidth() * r.getHeight()).sum());
+		}
+
+		try (ImageServer<BufferedImage> server = ImageServerProvider.buildServer(path, BufferedImage.class)) {
+			assertArrayEquals(new double[] {1, 2, 4}, server.getPreferredDownsamples(), 1e-6);
+			for (int level = 0; level < server.nResolutions(); level++) {
+				int downsample = (int)Math.round(server.getDownsampleForResolution(level));
+				var img = server.readRegion(RegionRequest.createInstance(server.getPath(), downsample, 0, 0, CountingServer.SIZE, CountingServer.SIZE));
+				assertEquals(CountingServer.SIZE / downsample, img.getWidth());
+				assertEquals(CountingServer.SIZE / downsample, img.getHeight());
+				var raster = img.getRaster();
+				for (int y = 0; y < img.getHeight(); y++) {
+					for (int x = 0; x < img.getWidth(); x++)
+						assertEquals(CountingServer.getValue(x * downsample, y * downsample), raster.getSample(x, y, 0));
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Single-resolution server that records every region requested.
+	 * Values are constant within 4x4 blocks, so downsampling by averaging gives exact values.
+	 */
+	private static class CountingServer extends AbstractImageServer<BufferedImage> {
+
+		private static final int SIZE = 256;
+
+		private final List<RegionRequest> requests = new CopyOnWriteArrayList<>();
+
+		private final ImageServerMetadata metadata = new ImageServerMetadata.Builder()
+				.width(SIZE)
+				.height(SIZE)
+				.preferredTileSize(64, 64)
+				.pixelType(PixelType.UINT8)
+				.channels(ImageChannel.getDefaultChannelList(1))
+				.build();
+
+		private CountingServer() {
+			super(BufferedImage.class);
+		}
+
+		private static int getValue(int x, int y) {
+			return (x / 4 + 7 * (y / 4)) % 251;
+		}
+
+		@Override
+		public BufferedImage readRegion(RegionRequest request) {
+			requests.add(request);
+			double downsample = request.getDownsample();
+			int width = (int)Math.max(1, Math.round(request.getWidth() / downsample));
+			int height = (int)Math.max(1, Math.round(request.getHeight() / downsample));
+			var img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+			var raster = img.getRaster();
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++)
+					raster.setSample(x, y, 0, getValue(request.getX() + (int)(x * downsample), request.getY() + (int)(y * downsample)));
+			}
+			return img;
+		}
+
+		@Override
+		protected ServerBuilder<BufferedImage> createServerBuilder() {
+			return null;
+		}
+
+		@Override
+		protected String createID() {
+			return getClass().getName() + ": " + System.identityHashCode(this);
+		}
+
+		@Override
+		public Collection<URI> getURIs() {
+			return List.of();
+		}
+
+		@Override
+		public String getServerType() {
+			return "Counting server";
+		}
+
+		@Override
+		public ImageServerMetadata getOriginalMetadata() {
+			return metadata;
+		}
+
+	}
+
+}
@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.writers.ome;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.servers.PixelType;
+
+public class TestReducedLevelStore {
+
+	@Test
+	public void test_meanUInt8() throws IOException {
+		// 4x4 tile, 2 interleaved channels
+		int w = 4, h = 4, nValues = 2;
+		byte[] bytes = new byte[w * h * nValues];
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				bytes[(y * w + x) * nValues] = (byte)(x + y * w);
+				bytes[(y * w + x) * nValues + 1] = (byte)200;
+			}
+		}
+		try (var store = new ReducedLevelStore(2, 2, 1, nValues, PixelType.UINT8, ByteOrder.BIG_ENDIAN, false)) {
+			store.reduce(0, bytes, 0, 0, w, h, 2);
+			byte[] reduced = store.read(0, 0, 0, 2, 2);
+			// Means of (0, 1, 4, 5), (2, 3, 6, 7), (8, 9, 12, 13), (10, 11, 14, 15)
+			assertArrayEquals(new byte[] {3, (byte)200, 5, (byte)200, 11, (byte)200, 13, (byte)200}, reduced);
+		}
+	}
+	
+	@Test
+	public void test_modeLabels() throws IOException {
+		byte[] bytes = new byte[] {
+				1, 1, 2, 3,
+				1, 2, 3, 2,
+				4, 4, 0, 0,
+				5, 5, 0, 1
+		};
+		try (var store = new ReducedLevelStore(2, 2, 1, 1, PixelType.UINT8, ByteOrder.BIG_ENDIAN, true)) {
+			store.reduce(0, bytes, 0, 0, 4, 4, 2);
+			// Ties resolve to the lowest value
+			assertArrayEquals(new byte[] {1, 2, 4, 0}, store.read(0, 0, 0, 2, 2));
+		}
+	}
+	
+	@Test
+	public void test_partialTilesAndPlanes() throws IOException {
+		// Level of 5x3 pixels, built from tiles of 4x4 in a 10x6 image
+		int w = 10, h = 6, tileSize = 4;
+		var order = ByteOrder.LITTLE_ENDIAN;
+		try (var store = new ReducedLevelStore(w / 2, h / 2, 2, 1, PixelType.FLOAT32, order, false)) {
+			for (int plane = 0; plane < 2; plane++) {
+				for (int y = 0; y < h; y += tileSize) {
+					for (int x = 0; x < w; x += tileSize) {
+						int tw = Math.min(tileSize, w - x);
+						int th = Math.min(tileSize, h - y);
+						var buffer = ByteBuffer.allocate(tw * th * 4).order(order);
+						for (int i = 0; i < tw * th; i++)
+							buffer.putFloat(plane + 1f);
+						store.reduce(plane, buffer.array(), x, y, tw, th, 2);
+					}
+				}
+			}
+			for (int plane = 0; plane < 2; plane++) {
+				// Request a region that extends beyond the level
+				var buffer = ByteBuffer.wrap(store.read(plane, 2, 1, 4, 3)).order(order);
+				for (int y = 0; y < 3; y++) {
+					for (int x = 0; x < 4; x++) {
+						float expected = x + 2 < w / 2 && y + 1 < h / 2 ? plane + 1f : 0f;
+						assertEquals(expected, buffer.getFloat((y * 4 + x) * 4));
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -24,7 +24,6 @@
 package qupath.lib.images.servers.openslide;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.io.IOException;
@@ -314,28 +313,12 @@ public class OpenslideImageServer extends AbstractTileableImageServer {
 		int tileWidth = tileRequest.getTileWidth();
 		int tileHeight = tileRequest.getTileHeight();
 
-//		double downsampleFactor = getPreferredDownsamplesArray()[downsampleInd];
-		BufferedImage img = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_ARGB_PRE);
-        int[] data = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
-        
-		// Create a thumbnail for the region
-//        	osr.paintRegionOfLevel(g, dx, dy, sx, sy, w, h, level);
-		osr.paintRegionARGB(data, tileX, tileY, tileRequest.getLevel(), tileWidth, tileHeight);
-		
-		// Previously tried to take shortcut and only repaint if needed - 
-		// but transparent pixels happened too often, and it's really needed to repaint every time
-//			if (backgroundColor == null && GeneralTools.almostTheSame(downsample, downsampleFactor, 0.001))
-//				return img;
-		
-		BufferedImage img2 = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB);
-		Graphics2D g2d = img2.createGraphics();
-		if (backgroundColor != null) {
-			g2d.setColor(backgroundColor);
-			g2d.fillRect(0, 0, tileWidth, tileHeight);
-		}
-		g2d.drawImage(img, 0, 0, tileWidth, tileHeight, null);
-		g2d.dispose();
-		return img2;
+		// Read directly into the raster of an RGB image, drawing any transparent pixels over the background
+		BufferedImage img = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB);
+		int[] data = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+		int background = backgroundColor == null ? 0 : backgroundColor.getRGB();
+		osr.readRegionRGB(data, tileX, tileY, tileRequest.getLevel(), tileWidth, tileHeight, background);
+		return img;
 	}
 
 	@Override
@@ -44,6 +44,7 @@ package qupath.lib.images.servers.openslide.jna;
  *
  */
 
+import com.sun.jna.Memory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,6 +53,7 @@ import java.awt.image.DataBufferInt;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -75,10 +77,31 @@ public final class OpenSlide implements Closeable {
     public static final String PROPERTY_NAME_BOUNDS_WIDTH = "openslide.bounds-width";
     public static final String PROPERTY_NAME_BOUNDS_HEIGHT = "openslide.bounds-height";
 
+    /**
+     * System property used to specify the maximum number of OpenSlide handles that may be opened for each image,
+     * to enable regions to be read in parallel.
+     */
+    public static final String PROPERTY_MAX_HANDLES = "openslide.maxHandles";
+
+    private static final int DEFAULT_MAX_HANDLES = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Reusable native memory for reading regions, to avoid allocating (and copying) a new array for every request.
+     */
+    private static final ThreadLocal<Memory> REGION_BUFFER = new ThreadLocal<>();
+
     private final List<String> associatedImages;
 
+    private final String path;
+
     private long osr;
 
+    // Additional handles for reading regions in parallel, and those that are not currently in use
+    private final int maxHandles;
+    private final List<Long> handles = new ArrayList<>();
+    private final Deque<Long> idleHandles = new ConcurrentLinkedDeque<>();
+    private boolean failedToOpenHandle = false;
+
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
     private final long[] levelWidths;
     private final long[] levelHeights;
@@ -90,6 +113,8 @@ public final class OpenSlide implements Closeable {
     OpenSlide(OpenSlideJNA jna, String path) throws IOException {
         Objects.requireNonNull(jna, "OpenSlide JNA instance cannot be null");
         this.jna = jna;
+        this.path = path;
+        this.maxHandles = Math.max(1, Integer.getInteger(PROPERTY_MAX_HANDLES, DEFAULT_MAX_HANDLES));
 
         logger.trace("Initializing OpenSlide for {}", path);
         osr = jna.openslide_open(path);
@@ -159,6 +184,13 @@ public final class OpenSlide implements Closeable {
                 jna.openslide_close(osr);
                 osr = 0;
             }
+            // No regions can be read while we hold the write lock, so all other handles should be idle
+            synchronized (handles) {
+                for (long handle : handles)
+                    jna.openslide_close(handle);
+                handles.clear();
+                idleHandles.clear();
+            }
         } finally {
             wl.unlock();
         }
@@ -236,6 +268,115 @@ public final class OpenSlide implements Closeable {
         }
     }
 
+    /**
+     * Read a region as packed RGB values, blending any transparent pixels with a background color.
+     * <p>
+     * This is intended for reading image tiles efficiently.
+     * Pixels are read into reusable native memory and then copied directly into the destination array, 
+     * without requiring an intermediate image.
+     * Up to {@link #PROPERTY_MAX_HANDLES} OpenSlide handles are opened as needed, so that regions requested 
+     * from different threads can be read in parallel.
+     *
+     * @param dest the destination array, e.g. from an image of type {@link BufferedImage#TYPE_INT_RGB}
+     * @param x x-coordinate of the top left of the region, in the level 0 reference frame
+     * @param y y-coordinate of the top left of the region, in the level 0 reference frame
+     * @param level the pyramid level
+     * @param w width of the region
+     * @param h height of the region
+     * @param backgroundRGB packed RGB value used for transparent pixels
+     * @throws IOException if OpenSlide reports an error reading the region
+     */
+    public void readRegionRGB(int[] dest, long x, long y, int level, int w, int h, int backgroundRGB) throws IOException {
+        if ((long) w * (long) h > dest.length) {
+            throw new ArrayIndexOutOfBoundsException("Size of data ("
+                    + dest.length + ") is less than w * h");
+        }
+
+        if (w < 0 || h < 0) {
+            throw new IllegalArgumentException("w and h must be nonnegative");
+        }
+
+        int n = w * h;
+        if (n == 0)
+            return;
+        Memory buffer = REGION_BUFFER.get();
+        if (buffer == null || buffer.size() < n * 4L) {
+            buffer = new Memory(n * 4L);
+            REGION_BUFFER.set(buffer);
+        }
+
+        Lock rl = lock.readLock();
+        rl.lock();
+        try {
+            checkNotDisposed();
+            long handle = acquireHandle();
+            try {
+                jna.openslide_read_region(handle, buffer, x, y, level, w, h);
+                String msg = jna.openslide_get_error(handle);
+                if (msg != null)
+                    throw new IOException(msg);
+            } finally {
+                releaseHandle(handle);
+            }
+        } finally {
+            rl.unlock();
+        }
+        buffer.read(0, dest, 0, n);
+        blendWithBackground(dest, n, backgroundRGB);
+    }
+
+    /**
+     * Convert premultiplied ARGB values to RGB, blending with a background color as if drawn on top of it.
+     */
+    private static void blendWithBackground(int[] values, int n, int backgroundRGB) {
+        int bgRed = (backgroundRGB >> 16) & 0xff;
+        int bgGreen = (backgroundRGB >> 8) & 0xff;
+        int bgBlue = backgroundRGB & 0xff;
+        for (int i = 0; i < n; i++) {
+            int val = values[i];
+            int alpha = val >>> 24;
+            if (alpha == 255)
+                values[i] = val & 0xffffff;
+            else if (alpha == 0)
+                values[i] = backgroundRGB & 0xffffff;
+            else {
+                int inv = 255 - alpha;
+                int r = Math.min(255, ((val >> 16) & 0xff) + (bgRed * inv + 127) / 255);
+                int g = Math.min(255, ((val >> 8) & 0xff) + (bgGreen * inv + 127) / 255);
+                int b = Math.min(255, (val & 0xff) + (bgBlue * inv + 127) / 255);
+                values[i] = (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    // call with the reader lock held
+    private long acquireHandle() {
+        Long handle = idleHandles.pollFirst();
+        if (handle != null)
+            return handle;
+        synchronized (handles) {
+            // The main handle is thread-safe, so can always be shared if we can't open another
+            if (failedToOpenHandle || handles.size() + 1 >= maxHandles)
+                return osr;
+            long newHandle = jna.openslide_open(path);
+            if (newHandle == 0 || jna.openslide_get_error(newHandle) != null) {
+                logger.debug("Unable to open additional OpenSlide handle for {}", path);
+                if (newHandle != 0)
+                    jna.openslide_close(newHandle);
+                failedToOpenHandle = true;
+                return osr;
+            }
+            logger.debug("Opened OpenSlide handle {} for {}", handles.size() + 2, path);
+            handles.add(newHandle);
+            return newHandle;
+        }
+    }
+
+    private void releaseHandle(long handle) {
+        if (handle != osr)
+            idleHandles.offerFirst(handle);
+    }
+
     /**
      * Get an unmodifiable map of all available properties.
      * @return
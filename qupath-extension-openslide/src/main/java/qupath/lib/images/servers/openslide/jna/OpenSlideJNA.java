@@ -22,6 +22,7 @@
 package qupath.lib.images.servers.openslide.jna;
 
 import com.sun.jna.Library;
+import com.sun.jna.Pointer;
 
 /**
  * JNA interface for OpenSlide.
@@ -39,6 +40,7 @@ public interface OpenSlideJNA extends Library {
     String openslide_get_property_value(long osr, String name);
     String[] openslide_get_associated_image_names(long osr);
     void openslide_read_region(long osr, int[] dest, long x, long y, int level, long w, long h);
+    void openslide_read_region(long osr, Pointer dest, long x, long y, int level, long w, long h);
     void openslide_get_associated_image_dimensions(long osr, String name, long[] w, long[] h);
     void openslide_read_associated_image(long osr, String name, int[] dest);
     String openslide_get_error(long osr);
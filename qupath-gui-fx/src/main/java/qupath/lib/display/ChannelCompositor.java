@@ -0,0 +1,273 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.display;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.util.List;
+
+import qupath.lib.common.ColorTools;
+
+/**
+ * Helper class to composite multiple channels of an image into a packed RGB array, for display.
+ * <p>
+ * This gives the same result as calling {@link ChannelDisplayInfo#getRGB(BufferedImage, int[], ChannelDisplayMode)} 
+ * for the first channel and {@link ChannelDisplayInfo#updateRGBAdditive(BufferedImage, int[], ChannelDisplayMode)} 
+ * for the rest, but is much faster when there are many channels. Pixels are read directly from the raster 
+ * in strips of rows, and the red, green and blue values for every channel are accumulated together in a single 
+ * long per pixel. Buffers are reused by each thread, so that compositing a tile does not require 
+ * any new per-channel arrays.
+ * <p>
+ * Currently, only {@link DirectServerChannelInfo} is supported.
+ * 
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+final class ChannelCompositor {
+	
+	/**
+	 * Approximate number of pixels in each strip.
+	 * This is small enough for the buffers to remain in the CPU cache while all channels are added.
+	 */
+	private static final int STRIP_PIXELS = 8192;
+	
+	/**
+	 * Maximum number of channels, before the 16-bit accumulators for each color component could overflow.
+	 */
+	private static final int MAX_CHANNELS = 65535 / 255;
+	
+	/**
+	 * Maximum number of pixels in an output array that will be retained for reuse by a thread.
+	 */
+	private static final int MAX_REUSABLE_PIXELS = 1024 * 1024;
+	
+	private static final long MASK_16 = 0xFFFFL;
+	
+	private static final ThreadLocal<float[]> VALUES = ThreadLocal.withInitial(() -> new float[STRIP_PIXELS]);
+
+	private static final ThreadLocal<long[]> ACCUMULATOR = ThreadLocal.withInitial(() -> new long[STRIP_PIXELS]);
+
+	private static final ThreadLocal<int[]> RGB = new ThreadLocal<>();
+
+	private ChannelCompositor() {
+		throw new AssertionError();
+	}
+	
+	/**
+	 * Query whether the compositor can be used for the specified image and channels.
+	 * @param img
+	 * @param channels
+	 * @return
+	 */
+	static boolean canComposite(BufferedImage img, List<? extends ChannelDisplayInfo> channels) {
+		if (channels.isEmpty() || channels.size() > MAX_CHANNELS)
+			return false;
+		int nBands = img.getRaster().getNumBands();
+		for (var channel : channels) {
+			if (!(channel instanceof DirectServerChannelInfo direct) || direct.getChannel() >= nBands)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Composite channels to create packed RGB values.
+	 * <p>
+	 * The returned array may be reused by the current thread in a later call, and may be longer than the 
+	 * number of pixels in the image.
+	 * @param img the input image
+	 * @param channels the channels to composite; {@link #canComposite(BufferedImage, List)} should return true
+	 * @param mode the display mode
+	 * @return packed RGB values
+	 */
+	static int[] composite(BufferedImage img, List<? extends ChannelDisplayInfo> channels, ChannelDisplayMode mode) {
+		int width = img.getWidth();
+		int height = img.getHeight();
+		int nPixels = width * height;
+		
+		// Prepare lookup tables & scaling
+		int nChannels = channels.size();
+		var luts = new long[nChannels][];
+		var bands = new int[nChannels];
+		var offsets = new float[nChannels];
+		var scales = new float[nChannels];
+		int n = 0;
+		for (int c = 0; c < nChannels; c++) {
+			var channel = (DirectServerChannelInfo)channels.get(c);
+			float min = channel.getMinDisplay();
+			float max = channel.getMaxDisplay();
+			// Additive channels are skipped if they have no display range (but the first channel is always included)
+			if (c > 0 && min == max)
+				continue;
+			luts[n] = createLUT(channel, mode);
+			bands[n] = channel.getChannel();
+			offsets[n] = min;
+			scales[n] = 255.f/(max - min);
+			n++;
+		}
+		
+		int[] rgb = getRGBArray(nPixels);
+		float[] values = VALUES.get();
+		long[] accumulator = ACCUMULATOR.get();
+		var raster = img.getRaster();
+		int stripHeight = Math.max(1, STRIP_PIXELS / Math.max(1, width));
+		if (stripHeight * width > values.length) {
+			// Very wide images need a larger buffer
+			values = new float[stripHeight * width];
+			accumulator = new long[stripHeight * width];
+		}
+		
+		for (int y = 0; y < height; y += stripHeight) {
+			int h = Math.min(stripHeight, height - y);
+			int nStrip = h * width;
+			for (int c = 0; c < n; c++) {
+				readSamples(raster, bands[c], y, h, values);
+				long[] lut = luts[c];
+				float offset = offsets[c];
+				float scale = scales[c];
+				if (c == 0) {
+					for (int i = 0; i < nStrip; i++)
+						accumulator[i] = lut[toIndex(values[i], offset, scale)];
+				} else {
+					for (int i = 0; i < nStrip; i++)
+						accumulator[i] += lut[toIndex(values[i], offset, scale)];
+				}
+			}
+			int ind = y * width;
+			for (int i = 0; i < nStrip; i++) {
+				long acc = accumulator[i];
+				int r = (int)Math.min(255L, (acc >>> 32) & MASK_16);
+				int g = (int)Math.min(255L, (acc >>> 16) & MASK_16);
+				int b = (int)Math.min(255L, acc & MASK_16);
+				rgb[ind + i] = ColorTools.packRGB(r, g, b);
+			}
+		}
+		return rgb;
+	}
+	
+	/**
+	 * Convert a value to a lookup table index.
+	 * This gives the same result as {@link ColorTools#do8BitRangeCheck(float)} (including for NaN), 
+	 * but avoids branches that are hard to predict when pixel values vary.
+	 */
+	private static int toIndex(float value, float offset, float scale) {
+		return (int)Math.min(255f, Math.max(0f, (value - offset) * scale));
+	}
+	
+	/**
+	 * Create a lookup table that gives red, green and blue values as 16-bit fields of a long, 
+	 * so that the values for all channels can be summed without overflow.
+	 */
+	private static long[] createLUT(AbstractSingleChannelInfo channel, ChannelDisplayMode mode) {
+		var cm = channel.getColorModel(mode);
+		var lut = new long[256];
+		for (int i = 0; i < 256; i++) {
+			int val = cm == null ? ColorTools.packRGB(i, i, i) : cm.getRGB(i);
+			lut[i] = ((long)ColorTools.red(val) << 32) | ((long)ColorTools.green(val) << 16) | ColorTools.blue(val);
+		}
+		return lut;
+	}
+	
+	private static int[] getRGBArray(int nPixels) {
+		if (nPixels > MAX_REUSABLE_PIXELS)
+			return new int[nPixels];
+		int[] rgb = RGB.get();
+		if (rgb == null || rgb.length < nPixels) {
+			rgb = new int[nPixels];
+			RGB.set(rgb);
+		}
+		return rgb;
+	}
+	
+	/**
+	 * Read samples for a strip of rows covering the full width of the raster.
+	 * This accesses the data buffer directly for common sample models, and otherwise uses 
+	 * {@link Raster#getSamples(int, int, int, int, int, float[])}.
+	 */
+	static void readSamples(Raster raster, int band, int y, int h, float[] values) {
+		int width = raster.getWidth();
+		if (!(raster.getSampleModel() instanceof ComponentSampleModel sampleModel) || raster.getMinX() != 0 || raster.getMinY() != 0) {
+			raster.getSamples(0, y, width, h, band, values);
+			return;
+		}
+		var buffer = raster.getDataBuffer();
+		int bank = sampleModel.getBankIndices()[band];
+		int pixelStride = sampleModel.getPixelStride();
+		int scanlineStride = sampleModel.getScanlineStride();
+		int x0 = -raster.getSampleModelTranslateX();
+		int y0 = y - raster.getSampleModelTranslateY();
+		int start = buffer.getOffsets()[bank] + sampleModel.getBandOffsets()[band] + y0 * scanlineStride + x0 * pixelStride;
+		int i = 0;
+		if (buffer instanceof DataBufferByte dataBuffer) {
+			byte[] data = dataBuffer.getData(bank);
+			for (int yy = 0; yy < h; yy++) {
+				int pos = start + yy * scanlineStride;
+				for (int x = 0; x < width; x++, pos += pixelStride)
+					values[i++] = data[pos] & 0xFF;
+			}
+		} else if (buffer instanceof DataBufferUShort dataBuffer) {
+			short[] data = dataBuffer.getData(bank);
+			for (int yy = 0; yy < h; yy++) {
+				int pos = start + yy * scanlineStride;
+				for (int x = 0; x < width; x++, pos += pixelStride)
+					values[i++] = data[pos] & 0xFFFF;
+			}
+		} else if (buffer instanceof DataBufferShort dataBuffer) {
+			short[] data = dataBuffer.getData(bank);
+			for (int yy = 0; yy < h; yy++) {
+				int pos = start + yy * scanlineStride;
+				for (int x = 0; x < width; x++, pos += pixelStride)
+					values[i++] = data[pos];
+			}
+		} else if (buffer instanceof DataBufferInt dataBuffer) {
+			int[] data = dataBuffer.getData(bank);
+			for (int yy = 0; yy < h; yy++) {
+				int pos = start + yy * scanlineStride;
+				for (int x = 0; x < width; x++, pos += pixelStride)
+					values[i++] = data[pos];
+			}
+		} else if (buffer instanceof DataBufferFloat dataBuffer) {
+			float[] data = dataBuffer.getData(bank);
+			for (int yy = 0; yy < h; yy++) {
+				int pos = start + yy * scanlineStride;
+				for (int x = 0; x < width; x++, pos += pixelStride)
+					values[i++] = data[pos];
+			}
+		} else if (buffer instanceof DataBufferDouble dataBuffer) {
+			double[] data = dataBuffer.getData(bank);
+			for (int yy = 0; yy < h; yy++) {
+				int pos = start + yy * scanlineStride;
+				for (int x = 0; x < width; x++, pos += pixelStride)
+					values[i++] = (float)data[pos];
+			}
+		} else
+			raster.getSamples(0, y, width, h, band, values);
+	}
+
+}
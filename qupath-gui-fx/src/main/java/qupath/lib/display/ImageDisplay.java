@@ -28,6 +28,7 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -696,16 +697,23 @@ public class ImageDisplay extends AbstractImageRenderer {
 		// The line below worked well for Java 7 & 8 on a Mac, but terribly (killing acceleration) for Java 6
 		//		int[] pixels = ((DataBufferInt)imgOutput.getRaster().getDataBuffer()).getData();
 		
-		// I don't know exactly why, but I can't set this to null if there are multiple channels displayed additively...
-		int[] pixels = selectedChannels.size() <= 1 ? null : new int[imgInput.getWidth() * imgInput.getHeight()];
+		int[] pixels = null;
 		
 		try {
-			for (ChannelDisplayInfo info : selectedChannels.toArray(ChannelDisplayInfo[]::new)) {
-				if (firstChannel) {
-					pixels = info.getRGB(imgInput, pixels, mode);
-					firstChannel = false;
-				} else {
-					info.updateRGBAdditive(imgInput, pixels, mode);
+			var channels = Arrays.asList(selectedChannels.toArray(ChannelDisplayInfo[]::new));
+			if (ChannelCompositor.canComposite(imgInput, channels)) {
+				// Fast path for (possibly many) channels read directly from the image
+				pixels = ChannelCompositor.composite(imgInput, channels, mode);
+			} else {
+				// I don't know exactly why, but I can't set this to null if there are multiple channels displayed additively...
+				pixels = channels.size() <= 1 ? null : new int[width * height];
+				for (ChannelDisplayInfo info : channels) {
+					if (firstChannel) {
+						pixels = info.getRGB(imgInput, pixels, mode);
+						firstChannel = false;
+					} else {
+						info.updateRGBAdditive(imgInput, pixels, mode);
+					}
 				}
 			}
 		} catch (Exception e) {
@@ -719,15 +727,16 @@ public class ImageDisplay extends AbstractImageRenderer {
 
 		// Apply inversion
 		if (mode.invertColors()) {
-			invertRGB(pixels);
+			invertRGB(pixels, width * height);
 		}
 		imgOutput.getRaster().setDataElements(0, 0, imgOutput.getWidth(), imgOutput.getHeight(), pixels);
 		return imgOutput;
 	}
 	
 	
-	private static void invertRGB(int[] pixels) {
-		for (int i = 0; i < pixels.length; i++) {
+	private static void invertRGB(int[] pixels, int n) {
+		n = Math.min(n, pixels.length);
+		for (int i = 0; i < n; i++) {
 			int val = pixels[i];
 			int r = ColorTools.red(val);
 			int g = ColorTools.green(val);
@@ -848,6 +848,8 @@ public class QuPathGUI {
 			imageRegionStore.getCache().clear();
 		});
 		ImageServerProvider.setCache(imageRegionStore.getCache(), BufferedImage.class);
+		imageRegionStore.setPrefetchTiles(PathPrefs.prefetchTilesProperty().get());
+		PathPrefs.prefetchTilesProperty().addListener((v, o, n) -> imageRegionStore.setPrefetchTiles(n));
 		// Turn off the use of ImageIODiskCache (it causes some trouble)
 		ImageIO.setUseCache(false);
 	}
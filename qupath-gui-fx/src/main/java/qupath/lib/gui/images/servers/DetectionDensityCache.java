@@ -0,0 +1,319 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.gui.images.servers;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import qupath.lib.objects.PathDetectionObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * Coarse, cached summary of the detections within a hierarchy, used to paint tiles at low resolutions 
+ * without needing to visit every detection.
+ * <p>
+ * Each image plane is divided into square bins. For each bin, the number of detections (assigned by centroid), 
+ * the fraction of the bin covered by their bounding boxes and their mean color are stored. 
+ * Bins are grouped into blocks that are computed lazily, and individual bins can be invalidated when 
+ * the objects within a region change, so that only the affected bins need to be recomputed.
+ * <p>
+ * This is used only when detections are so small that they would be painted as (at most) a few pixels 
+ * anyway, so that the result is similar to painting each detection individually.
+ * 
+ * @author Pete Bankhead
+ * @since v0.6.0
+ */
+final class DetectionDensityCache {
+	
+	/**
+	 * Width and height of each bin, in full-resolution pixels.
+	 * Density tiles are only painted for downsamples at least this large.
+	 */
+	static final int BIN_SIZE = 64;
+	
+	/**
+	 * Number of bins along the width and height of each block.
+	 */
+	private static final int BLOCK_BINS = 256;
+	
+	private static final int BLOCK_SIZE = BIN_SIZE * BLOCK_BINS;
+	
+	/**
+	 * Maximum average width/height of detections, in pixels at the requested downsample, for a density tile to be used.
+	 * This matches the size below which detections are painted as filled rectangles.
+	 */
+	private static final double MAX_DETECTION_SIZE = 3.0;
+	
+	private final PathObjectHierarchy hierarchy;
+	private final Function<PathObject, Integer> colorFunction;
+	
+	private final Map<BlockKey, Block> blocks = new ConcurrentHashMap<>();
+	
+	/**
+	 * Constructor.
+	 * @param hierarchy the hierarchy containing detections
+	 * @param colorFunction function to determine the packed RGB color of a detection, or null if it should not be painted
+	 */
+	DetectionDensityCache(PathObjectHierarchy hierarchy, Function<PathObject, Integer> colorFunction) {
+		Objects.requireNonNull(hierarchy);
+		Objects.requireNonNull(colorFunction);
+		this.hierarchy = hierarchy;
+		this.colorFunction = colorFunction;
+	}
+	
+	/**
+	 * Paint a density tile, if this is appropriate for the request.
+	 * @param img the image to paint; this should be of type {@link BufferedImage#TYPE_INT_ARGB}, with a size matching the request at its downsample
+	 * @param request the region to paint
+	 * @return the number of detections summarized within the tile, or -1 if no density tile was painted (because detections should be painted individually)
+	 */
+	int paintTile(BufferedImage img, RegionRequest request) {
+		double downsample = request.getDownsample();
+		if (downsample < BIN_SIZE)
+			return -1;
+		
+		int width = img.getWidth();
+		int height = img.getHeight();
+		int n = width * height;
+		float[] area = new float[n];
+		float[] red = new float[n];
+		float[] green = new float[n];
+		float[] blue = new float[n];
+		
+		long count = 0;
+		double totalArea = 0;
+		int bx1 = Math.floorDiv(request.getX(), BLOCK_SIZE);
+		int by1 = Math.floorDiv(request.getY(), BLOCK_SIZE);
+		int bx2 = Math.floorDiv(request.getMaxX() - 1, BLOCK_SIZE);
+		int by2 = Math.floorDiv(request.getMaxY() - 1, BLOCK_SIZE);
+		for (int by = by1; by <= by2; by++) {
+			for (int bx = bx1; bx <= bx2; bx++) {
+				var block = getBlock(new BlockKey(request.getZ(), request.getT(), bx, by));
+				synchronized (block) {
+					block.update();
+					for (int i = 0; i < BLOCK_BINS*BLOCK_BINS; i++) {
+						int binCount = block.count[i];
+						if (binCount == 0)
+							continue;
+						// Assign each bin to the output pixel containing its center
+						double cx = (bx * BLOCK_SIZE + (i % BLOCK_BINS) * BIN_SIZE + BIN_SIZE/2.0 - request.getX()) / downsample;
+						double cy = (by * BLOCK_SIZE + (i / BLOCK_BINS) * BIN_SIZE + BIN_SIZE/2.0 - request.getY()) / downsample;
+						if (cx < 0 || cy < 0 || cx >= width || cy >= height)
+							continue;
+						int ind = (int)cy * width + (int)cx;
+						float a = block.area[i];
+						int rgb = block.rgb[i];
+						area[ind] += a;
+						red[ind] += a * ((rgb >> 16) & 0xff);
+						green[ind] += a * ((rgb >> 8) & 0xff);
+						blue[ind] += a * (rgb & 0xff);
+						count += binCount;
+						totalArea += a;
+					}
+				}
+			}
+		}
+		
+		// Use individual detections if they are large enough to be seen
+		if (count > 0 && Math.sqrt(totalArea / count) / downsample >= MAX_DETECTION_SIZE)
+			return -1;
+		
+		if (count == 0)
+			return 0;
+		
+		int[] argb = new int[n];
+		double pixelArea = downsample * downsample;
+		for (int i = 0; i < n; i++) {
+			float a = area[i];
+			if (a == 0)
+				continue;
+			int alpha = (int)Math.round(Math.min(1.0, a / pixelArea) * 255);
+			// Retain a visible pixel, even if the detections are sparse
+			alpha = Math.max(alpha, 32);
+			int r = Math.round(red[i] / a);
+			int g = Math.round(green[i] / a);
+			int b = Math.round(blue[i] / a);
+			argb[i] = (alpha << 24) | (r << 16) | (g << 8) | b;
+		}
+		img.setRGB(0, 0, width, height, argb, 0, width);
+		return (int)Math.min(count, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Invalidate all bins overlapping a region.
+	 * This should be called whenever detections within the region are added, removed or changed.
+	 * @param region
+	 */
+	void invalidate(ImageRegion region) {
+		int bx1 = Math.floorDiv(region.getX(), BLOCK_SIZE);
+		int by1 = Math.floorDiv(region.getY(), BLOCK_SIZE);
+		int bx2 = Math.floorDiv(region.getMaxX(), BLOCK_SIZE);
+		int by2 = Math.floorDiv(region.getMaxY(), BLOCK_SIZE);
+		for (int by = by1; by <= by2; by++) {
+			for (int bx = bx1; bx <= bx2; bx++) {
+				var block = blocks.get(new BlockKey(region.getZ(), region.getT(), bx, by));
+				if (block == null)
+					continue;
+				synchronized (block) {
+					block.invalidate(region);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Invalidate all bins.
+	 */
+	void invalidateAll() {
+		blocks.clear();
+	}
+	
+	private Block getBlock(BlockKey key) {
+		return blocks.computeIfAbsent(key, Block::new);
+	}
+	
+	
+	private static record BlockKey(int z, int t, int bx, int by) {}
+	
+	
+	private class Block {
+		
+		private final BlockKey key;
+		
+		private final int[] count = new int[BLOCK_BINS * BLOCK_BINS];
+		private final float[] area = new float[BLOCK_BINS * BLOCK_BINS];
+		private final int[] rgb = new int[BLOCK_BINS * BLOCK_BINS];
+		
+		// Range of bins requiring an update (inclusive), or empty if minX > maxX
+		private int dirtyMinX = 0;
+		private int dirtyMinY = 0;
+		private int dirtyMaxX = BLOCK_BINS - 1;
+		private int dirtyMaxY = BLOCK_BINS - 1;
+		
+		private Block(BlockKey key) {
+			this.key = key;
+		}
+		
+		private int originX() {
+			return key.bx() * BLOCK_SIZE;
+		}
+		
+		private int originY() {
+			return key.by() * BLOCK_SIZE;
+		}
+		
+		private void invalidate(ImageRegion region) {
+			int x1 = clipBin(Math.floorDiv(region.getX() - originX(), BIN_SIZE));
+			int y1 = clipBin(Math.floorDiv(region.getY() - originY(), BIN_SIZE));
+			int x2 = clipBin(Math.floorDiv(region.getMaxX() - originX(), BIN_SIZE));
+			int y2 = clipBin(Math.floorDiv(region.getMaxY() - originY(), BIN_SIZE));
+			if (dirtyMinX > dirtyMaxX) {
+				dirtyMinX = x1;
+				dirtyMinY = y1;
+				dirtyMaxX = x2;
+				dirtyMaxY = y2;
+			} else {
+				dirtyMinX = Math.min(dirtyMinX, x1);
+				dirtyMinY = Math.min(dirtyMinY, y1);
+				dirtyMaxX = Math.max(dirtyMaxX, x2);
+				dirtyMaxY = Math.max(dirtyMaxY, y2);
+			}
+		}
+		
+		private static int clipBin(int bin) {
+			return Math.max(0, Math.min(BLOCK_BINS - 1, bin));
+		}
+		
+		/**
+		 * Recompute any bins that have been invalidated.
+		 */
+		private void update() {
+			if (dirtyMinX > dirtyMaxX)
+				return;
+			int x1 = dirtyMinX, y1 = dirtyMinY, x2 = dirtyMaxX, y2 = dirtyMaxY;
+			dirtyMinX = BLOCK_BINS;
+			dirtyMaxX = -1;
+			
+			int w = x2 - x1 + 1;
+			double[] red = new double[w * (y2 - y1 + 1)];
+			double[] green = new double[red.length];
+			double[] blue = new double[red.length];
+			for (int y = y1; y <= y2; y++) {
+				int ind = y * BLOCK_BINS;
+				Arrays.fill(count, ind + x1, ind + x2 + 1, 0);
+				Arrays.fill(area, ind + x1, ind + x2 + 1, 0f);
+				Arrays.fill(rgb, ind + x1, ind + x2 + 1, 0);
+			}
+
+			var region = ImageRegion.createInstance(
+					originX() + x1 * BIN_SIZE, originY() + y1 * BIN_SIZE,
+					w * BIN_SIZE, (y2 - y1 + 1) * BIN_SIZE,
+					key.z(), key.t());
+			for (var pathObject : hierarchy.getAllDetectionsForRegion(region)) {
+				// Nested detections are painted on top of their parent, so don't add to the coverage
+				if (pathObject.getParent() instanceof PathDetectionObject)
+					continue;
+				var roi = pathObject.getROI();
+				if (roi == null || roi.getZ() != key.z() || roi.getT() != key.t())
+					continue;
+				int x = (int)Math.floor((roi.getCentroidX() - originX()) / BIN_SIZE);
+				int y = (int)Math.floor((roi.getCentroidY() - originY()) / BIN_SIZE);
+				if (x < x1 || x > x2 || y < y1 || y > y2)
+					continue;
+				Integer color = colorFunction.apply(pathObject);
+				if (color == null)
+					continue;
+				double a = Math.max(1.0, roi.getBoundsWidth()) * Math.max(1.0, roi.getBoundsHeight());
+				int ind = y * BLOCK_BINS + x;
+				count[ind]++;
+				area[ind] += a;
+				int local = (y - y1) * w + (x - x1);
+				red[local] += a * ((color >> 16) & 0xff);
+				green[local] += a * ((color >> 8) & 0xff);
+				blue[local] += a * (color & 0xff);
+			}
+			
+			for (int y = y1; y <= y2; y++) {
+				for (int x = x1; x <= x2; x++) {
+					int ind = y * BLOCK_BINS + x;
+					float a = area[ind];
+					if (a == 0)
+						continue;
+					int local = (y - y1) * w + (x - x1);
+					int r = (int)Math.round(red[local] / a);
+					int g = (int)Math.round(green[local] / a);
+					int b = (int)Math.round(blue[local] / a);
+					rgb[ind] = (r << 16) | (g << 8) | b;
+				}
+			}
+		}
+		
+	}
+
+}
@@ -55,6 +55,7 @@ import qupath.lib.objects.PathDetectionObject;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjectConnections;
 import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImageRegion;
 import qupath.lib.regions.RegionRequest;
 
 
@@ -84,6 +85,8 @@ public class PathHierarchyImageServer extends AbstractTileableImageServer implem
 	private OverlayOptions options;
 	private PathObjectHierarchy hierarchy;
 	
+	private DetectionDensityCache densityCache;
+	
 	/**
 	 * Constructor.
 	 * @param imageData the image data
@@ -105,6 +108,7 @@ public class PathHierarchyImageServer extends AbstractTileableImageServer implem
 		this.server = imageData.getServer();
 		this.hierarchy = imageData.getHierarchy();
 		this.options = options;
+		this.densityCache = new DetectionDensityCache(hierarchy, p -> PathObjectPainter.getPaintedColorRGB(p, options));
 		
 		double minDim = Math.min(server.getWidth(), server.getHeight());
 //		double maxDim = Math.max(server.getWidth(), server.getHeight());
@@ -128,6 +132,25 @@ public class PathHierarchyImageServer extends AbstractTileableImageServer implem
 				.build();
 	}
 	
+	/**
+	 * Clear any cached summaries of the objects in the hierarchy.
+	 * This should be called if the objects, or the options used to paint them, change.
+	 * @since v0.6.0
+	 */
+	public void clearCachedSummaries() {
+		densityCache.invalidateAll();
+	}
+	
+	/**
+	 * Clear any cached summaries of the objects in the hierarchy that overlap a specified region.
+	 * This should be called if objects within the region are added, removed or changed.
+	 * @param region the region containing the objects that have changed
+	 * @since v0.6.0
+	 */
+	public void clearCachedSummaries(ImageRegion region) {
+		densityCache.invalidate(region);
+	}
+	
 	/**
 	 * Returns null (does not support ServerBuilders).
 	 */
@@ -220,8 +243,18 @@ public class PathHierarchyImageServer extends AbstractTileableImageServer implem
 				subdivision = hierarchy.getDetectionSubdivision(tileRequest.getImagePlane());
 		}
 
-		List<PathObject> pathObjects = new ArrayList<>(getObjectsToPaint(request));
-		if (pathObjects.isEmpty()) {
+		double downsampleFactor = request.getDownsample();
+		int width = tileRequest.getTileWidth();
+		int height = tileRequest.getTileHeight();
+		BufferedImage img = createDefaultRGBImage(width, height);
+		
+		// At low resolutions, paint a summary of small detections rather than visiting each one
+		int nSummarized = densityCache.paintTile(img, request);
+		List<PathObject> pathObjects = nSummarized >= 0 ? Collections.emptyList() : new ArrayList<>(getObjectsToPaint(request));
+		if (nSummarized > 0) {
+			if (connections == null && (subdivision == null || subdivision.isEmpty()))
+				return img;
+		} else if (pathObjects.isEmpty()) {
 			// We can only return null if no connections - otherwise we might still need to draw something
 			if (!options.getShowConnections()) {
 				return null;
@@ -243,10 +276,6 @@ public class PathHierarchyImageServer extends AbstractTileableImageServer implem
 //		Collections.sort(pathObjects, new HierarchyOverlay.DetectionComparator());
 		
 		
-		double downsampleFactor = request.getDownsample();
-		int width = tileRequest.getTileWidth();
-		int height = tileRequest.getTileHeight();
-		BufferedImage img = createDefaultRGBImage(width, height);
 		Graphics2D g2d = img.createGraphics();
 		g2d.setClip(0, 0, width, height);
 //		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
@@ -24,34 +24,39 @@
 package qupath.lib.gui.images.stores;
 
 import java.awt.Shape;
+import java.awt.geom.AffineTransform;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.RemovalCause;
-import com.google.common.cache.Weigher;
-
 import qupath.lib.common.ThreadTools;
+import qupath.lib.images.servers.AbstractTileableImageServer;
 import qupath.lib.images.servers.GeneratingImageServer;
 import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.TileCache;
 import qupath.lib.regions.RegionRequest;
 
 
@@ -75,10 +80,14 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 
 	private boolean clearingCache = false; // Flag that cache is currently being cleared
 	
+	// Most recent refresh requested for each tile, so that an older refresh can't replace a newer one
+	private final Map<RegionRequest, Long> refreshMap = new ConcurrentHashMap<>();
+	private final AtomicLong refreshCounter = new AtomicLong();
+	
 	protected List<TileListener<T>> tileListeners = Collections.synchronizedList(new ArrayList<>());
 
 	// Cache of image tiles for specified regions
-	protected Map<RegionRequest, T> cache;
+	protected TileCache<T> cache;
 
 	/**
 	 * Maximum size of thumbnail, in any dimension.
@@ -97,6 +106,9 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 	
 	private final TileRequestManager manager = new TileRequestManager(10);
 	
+	// If true, request tiles one field of view ahead in the direction of panning
+	private volatile boolean prefetchTiles = false;
+	
 	// Create two threadpools: a larger one for images that need to be fetched (e.g. from disk, cloud storage), and a smaller one
 	// for painting image tiles... the reason being that the high latency of distantly-stored images otherwise risks lowering
 	// repainting performance
@@ -109,25 +121,7 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 		this.maxThumbnailSize = thumbnailSize;
 		this.tileCacheSizeBytes = tileCacheSizeBytes;
 		
-		// Because Guava uses integer weights, and we sometimes have *very* large images, we convert our size estimates KB
-		Weigher<RegionRequest, T> weigher = (var r, var t) -> (int)Long.min(Integer.MAX_VALUE, sizeEstimator.getApproxImageSize(t)/1024);
-		long maxWeight = Long.max(1, tileCacheSizeBytes / 1024);
-		// If concurrency > 1, the maximum size for an individual tile becomes maxWeight/concurrencyLevel
-		// This makes it more difficult to tune the cache size when working with large, non-pyramidal images
-		int concurrencyLevel = 1;
-		Cache<RegionRequest, T> originalCache = CacheBuilder.newBuilder()
-				.weigher(weigher)
-				.maximumWeight(maxWeight)
-				.softValues()
-				.concurrencyLevel(concurrencyLevel)
-//				.recordStats()
-				.removalListener(n -> {
-					if (n.getCause() == RemovalCause.COLLECTED) {
-                        logger.debug("Cached tile collected: {} (cache size={})", n.getKey(), cache.size());
-					} else {
-						logger.trace("Cached tile removed due to {}: {} (cache size={})", n.getCause(), n.getKey(), cache.size());
-					}}).build();
-		cache = originalCache.asMap();
+		cache = new TileCache<>(Long.max(1, tileCacheSizeBytes), sizeEstimator::getApproxImageSize, true);
 	}
 
 	
@@ -184,6 +178,29 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 	}
 
 
+	/**
+	 * Set whether tiles should be prefetched while panning.
+	 * If true, after the visible tiles have been requested, tiles are requested for the adjacent field of view 
+	 * in the direction of panning (at the same resolution), so that they are likely to be cached when needed.
+	 * Prefetching is limited to one field of view, and is abandoned whenever a new region is requested.
+	 * @param prefetch
+	 * @since v0.6.0
+	 */
+	public void setPrefetchTiles(boolean prefetch) {
+		this.prefetchTiles = prefetch;
+	}
+	
+	/**
+	 * Query whether tiles are prefetched while panning.
+	 * @return
+	 * @since v0.6.0
+	 * @see #setPrefetchTiles(boolean)
+	 */
+	public boolean getPrefetchTiles() {
+		return prefetchTiles;
+	}
+	
+	
 	/**
 	 * Register a request so that the tile request queue will be populated, including potentially for nearby tiles (i.e. preemptively).
 	 * @param tileListener
@@ -208,7 +225,11 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 
 	
 	
-	public Map<RegionRequest, T> getCache() {
+	/**
+	 * Get the tile cache used by this store.
+	 * @return
+	 */
+	public TileCache<T> getCache() {
 		return cache;
 	}
 	
@@ -297,6 +318,51 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 	}
 	
 	
+	/**
+	 * Run tasks in parallel using the pool intended for local (rather than I/O-bound) work, 
+	 * and wait for them to complete.
+	 * <p>
+	 * The calling thread also runs any tasks that have not yet been started by the pool, so that it never 
+	 * waits for tasks queued behind other work.
+	 * Exceptions thrown by the tasks are logged, not rethrown.
+	 * 
+	 * @param tasks the tasks to run
+	 */
+	protected void runLocalTasks(final List<? extends Runnable> tasks) {
+		if (tasks.isEmpty())
+			return;
+		List<Runnable> claimable = new ArrayList<>();
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (var task : tasks) {
+			var claimed = new AtomicBoolean(false);
+			Runnable runnable = () -> {
+				if (claimed.compareAndSet(false, true))
+					task.run();
+			};
+			claimable.add(runnable);
+			if (tasks.size() > 1 && !poolLocal.isShutdown()) {
+				try {
+					futures.add(CompletableFuture.runAsync(runnable, poolLocal));
+				} catch (RejectedExecutionException e) {
+					logger.debug("Unable to submit task: {}", e.getLocalizedMessage());
+				}
+			}
+		}
+		for (var runnable : claimable) {
+			try {
+				runnable.run();
+			} catch (Exception e) {
+				logger.warn("Exception running task: " + e.getLocalizedMessage(), e);
+			}
+		}
+		try {
+			CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new)).join();
+		} catch (CompletionException e) {
+			logger.warn("Exception running task: " + e.getLocalizedMessage(), e);
+		}
+	}
+	
+	
 	protected boolean stopWaiting(final RegionRequest request) {
 		if (clearingCache) {
 			//			synchronized(this) {
@@ -465,6 +531,103 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 	 */
 	@Override
 	public synchronized void clearCacheForRequestOverlap(final RegionRequest request) {
+		cancelWaitingForRequestOverlap(request);
+		cache.clearCacheForRequestOverlap(request);
+	}
+	
+	/**
+	 * Refresh all cached tiles that overlap any of the specified requests.
+	 * <p>
+	 * Unlike {@link #clearCacheForRequestOverlap(RegionRequest)}, the tiles are not removed immediately. 
+	 * Rather, each tile is read again in the background and swapped into the cache when it is ready, 
+	 * so that the previous tile can continue to be painted in the meantime.
+	 * Tile listeners are notified as each tile is replaced.
+	 * Tiles that are not currently required by any listener are simply removed, since they can be read on demand.
+	 * The same applies if the server is not an {@link AbstractTileableImageServer}, since then the tiles can't be 
+	 * read again without the server's cache potentially returning the previous version.
+	 * <p>
+	 * This is intended for cases where a server's tiles change in known regions, e.g. when objects painted 
+	 * by a {@link GeneratingImageServer} are modified.
+	 * Any pending requests for overlapping tiles are cancelled, since they may be out of date.
+	 * 
+	 * @param server the server used to read the tiles
+	 * @param requests the requests defining the regions that have changed
+	 * @since v0.6.0
+	 */
+	public void refreshCacheForRequestOverlap(final ImageServer<T> server, final Collection<? extends RegionRequest> requests) {
+		// Each tile should only be refreshed once, even if it overlaps multiple requests
+		var overlapping = new LinkedHashSet<RegionRequest>();
+		for (var request : requests) {
+			cancelWaitingForRequestOverlap(request);
+			overlapping.addAll(cache.getOverlappingRequests(request));
+		}
+		if (overlapping.isEmpty())
+			return;
+		logger.trace("Refreshing {} cached tiles for {}", overlapping.size(), server);
+		var executor = server instanceof GeneratingImageServer ? poolLocal : pool;
+		List<TileListener<T>> myTileListeners = new ArrayList<>(tileListeners);
+		boolean canRefresh = server instanceof AbstractTileableImageServer;
+		for (var request : overlapping) {
+			if (!canRefresh || myTileListeners.stream().noneMatch(l -> l.requiresTileRegion(request.getPath(), request))) {
+				refreshMap.remove(request);
+				cache.remove(request);
+				continue;
+			}
+			long refreshId = refreshCounter.incrementAndGet();
+			refreshMap.put(request, refreshId);
+			try {
+				executor.execute(() -> refreshTile(server, request, refreshId));
+			} catch (RejectedExecutionException e) {
+				logger.debug("Unable to refresh tile: {}", e.getLocalizedMessage());
+				refreshMap.remove(request, refreshId);
+				cache.remove(request);
+			}
+		}
+	}
+	
+	private void refreshTile(final ImageServer<T> server, final RegionRequest request, final long refreshId) {
+		// Skip if the tile has been removed, or a newer refresh has been requested
+		Long latestId = refreshMap.get(request);
+		if (latestId == null || latestId != refreshId || !cache.containsKey(request)) {
+			refreshMap.remove(request, refreshId);
+			return;
+		}
+		T img;
+		try {
+			img = readTileUncached(server, request);
+		} catch (Exception e) {
+			logger.warn("Unable to refresh tile {}: {}", request, e.getLocalizedMessage());
+			logger.debug(e.getLocalizedMessage(), e);
+			if (refreshMap.remove(request, refreshId))
+				cache.remove(request);
+			return;
+		}
+		// Swap in the new tile, unless it is already out of date
+		if (!refreshMap.remove(request, refreshId) || !cache.containsKey(request))
+			return;
+		if (img == null)
+			cache.remove(request);
+		else
+			cache.put(request, img);
+		List<TileListener<T>> myTileListeners = new ArrayList<>(tileListeners);
+		for (TileListener<T> listener : myTileListeners)
+			listener.tileAvailable(request.getPath(), request, img);
+	}
+	
+	/**
+	 * Read a tile again for a refresh.
+	 * The server's own cache is bypassed, since it may be shared with this store and would return the previous tile.
+	 */
+	@SuppressWarnings("unchecked")
+	private T readTileUncached(final ImageServer<T> server, final RegionRequest request) throws IOException {
+		return (T)((AbstractTileableImageServer)server).readTileUncached(request);
+	}
+	
+	/**
+	 * Cancel any pending requests that overlap a specified request.
+	 * @param request
+	 */
+	private synchronized void cancelWaitingForRequestOverlap(final RegionRequest request) {
 		// Ensure any current requests are discarded
 		if (!waitingMap.isEmpty()) {
 			Iterator<Entry<RegionRequest, TileWorker<T>>> iter = waitingMap.entrySet().iterator();
@@ -477,18 +640,12 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 				}
 			}
 		}
-		clearCacheForRequestOverlap(cache, request);
 	}
 	
 	
 	
-	private synchronized void clearCacheForServer(Map<RegionRequest, T> map, ImageServer<?> server) {
-		String serverPath = server.getPath();
-        map.entrySet().removeIf(entry -> serverPath.equals(entry.getKey().getPath()));
-	}
-	
-	private synchronized void clearCacheForRequestOverlap(Map<RegionRequest, T> map, RegionRequest request) {
-        map.entrySet().removeIf(regionRequestTEntry -> request.overlapsRequest(regionRequestTEntry.getKey()));
+	private synchronized void clearCacheForServer(TileCache<T> cache, ImageServer<?> server) {
+		cache.clearCacheForServer(server.getPath());
 	}
 	
 	
@@ -528,12 +685,15 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 		public synchronized void registerRequest(final TileListener<T> tileListener, final ImageServer<T> server, final Shape clipShape, final double downsampleFactor, final int zPosition, final int tPosition) {
 			
 			// Check if the listener has already put in a request - if so, check if it is the same & discard it if not
+			Shape previousClipShape = null;
 			Iterator<TileRequestCollection<T>> iter = list.iterator();
 			while (iter.hasNext()) {
 				TileRequestCollection<T> temp = iter.next();
 				if (temp.tileListener == tileListener) {
 					if (temp.clipShape.equals(clipShape) && temp.zPosition == zPosition && temp.tPosition == tPosition)
 						return;
+					if (temp.server == server && temp.downsampleFactor == downsampleFactor && temp.zPosition == zPosition && temp.tPosition == tPosition)
+						previousClipShape = temp.clipShape;
 					iter.remove();
 					break;
 				}
@@ -541,12 +701,30 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 			
 			// Create a new request
 			TileRequestCollection<T> requestCollection = new TileRequestCollection<>(tileListener, server, clipShape, downsampleFactor, zPosition, tPosition, 10);
+			if (prefetchTiles && previousClipShape != null) {
+				var shapeAhead = getShapeAhead(previousClipShape, clipShape);
+				if (shapeAhead != null)
+					requestCollection.addPrefetchRequests(shapeAhead);
+			}
 			list.add(requestCollection);
 			Collections.sort(list, comparator);
 			assignTasks();
 			
 		}
 		
+		/**
+		 * Get the shape one field of view further along the direction of panning, or null if the shape hasn't moved.
+		 */
+		private static Shape getShapeAhead(final Shape previousClipShape, final Shape clipShape) {
+			var previousBounds = previousClipShape.getBounds2D();
+			var bounds = clipShape.getBounds2D();
+			double dx = Math.signum(bounds.getCenterX() - previousBounds.getCenterX());
+			double dy = Math.signum(bounds.getCenterY() - previousBounds.getCenterY());
+			if (dx == 0 && dy == 0)
+				return null;
+			return AffineTransform.getTranslateInstance(dx * bounds.getWidth(), dy * bounds.getHeight()).createTransformedShape(clipShape);
+		}
+		
 		public synchronized void deregisterRequest(final TileListener<T> tileListener) {
             list.removeIf(temp -> temp.tileListener == tileListener);
 		}
@@ -661,6 +839,19 @@ abstract class AbstractImageRegionStore<T> implements ImageRegionStore<T> {
 		}
 		
 		
+		/**
+		 * Add requests for tiles that are likely to be needed soon.
+		 * These are requested after the tiles for the current region, but before any other z-slices.
+		 * @param shapeAhead
+		 */
+		void addPrefetchRequests(final Shape shapeAhead) {
+			var requestsAhead = ImageRegionStoreHelpers.getTilesToRequest(server, shapeAhead, downsampleFactor, zPosition, tPosition, null);
+			requestsAhead.removeAll(tileRequests);
+			// Requests are taken from the end of the list
+			tileRequests.addAll(0, requestsAhead);
+			logger.trace("Prefetch requests added: {}", requestsAhead.size());
+		}
+		
 		public boolean hasMoreTiles() {
 			return !tileRequests.isEmpty();
 		}
@@ -235,6 +235,10 @@ public class DefaultImageRegionStore extends AbstractImageRegionStore<BufferedIm
 				displayCachePath = server.getPath() + imageDisplay.getUniqueID();
 		}
 
+		// Composite channels for all the tiles we need in parallel, rather than one at a time as they are drawn
+		if (useDisplayCache && imageDisplay != null)
+			applyTransformsInParallel(requests, displayCachePath, imageDisplay, displayTimestamp);
+
 		// Loop through and draw whatever tiles we've got
 		BufferedImage imgTemp = null;
 		for (RegionRequest request : requests) {
@@ -293,6 +297,34 @@ public class DefaultImageRegionStore extends AbstractImageRegionStore<BufferedIm
 	}
 
 
+	/**
+	 * Apply display transforms to tiles that are already in the cache, but for which no transformed version 
+	 * has been cached, and cache the results.
+	 * Tiles are processed in parallel, since applying transforms can be expensive for images with many channels.
+	 */
+	private void applyTransformsInParallel(List<RegionRequest> requests, String displayCachePath, ImageRenderer imageDisplay, long displayTimestamp) {
+		List<Runnable> tasks = new ArrayList<>();
+		for (RegionRequest request : requests) {
+			RegionRequest requestCache = RegionRequest.createInstance(displayCachePath, request.getDownsample(), request);
+			if (cache.containsKey(requestCache))
+				continue;
+			BufferedImage img = cache.get(request);
+			if (img == null)
+				continue;
+			tasks.add(() -> {
+				// Skip if the display has changed, since the result would be discarded
+				if (displayTimestamp != imageDisplay.getLastChangeTimestamp())
+					return;
+				BufferedImage imgRGB = imageDisplay.applyTransforms(img, null);
+				if (imgRGB != null && displayTimestamp == imageDisplay.getLastChangeTimestamp())
+					cache.put(requestCache, imgRGB);
+			});
+		}
+		if (tasks.size() > 1)
+			runLocalTasks(tasks);
+	}
+
+
 	@Override
 	public void close() {
 		super.close();
@@ -23,10 +23,8 @@
 
 package qupath.lib.gui.images.stores;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import qupath.lib.gui.prefs.PathPrefs;
+import qupath.lib.images.servers.TileCache;
 
 /**
  * Factory for creating an ImageRegionStore.
@@ -36,8 +34,6 @@ import qupath.lib.gui.prefs.PathPrefs;
  */
 public class ImageRegionStoreFactory {
 	
-	private static final Logger logger = LoggerFactory.getLogger(ImageRegionStoreFactory.class);
-	
 	/**
 	 * Create an {@link ImageRegionStore} with a specified tile cache size, in bytes.
 	 * @param tileCacheSizeBytes 
@@ -62,24 +58,7 @@ public class ImageRegionStoreFactory {
 	 * @return tile cache size in bytes
 	 */
 	private static long getTileCacheSizeBytes() {
-		// Try to compute a sensible value...
-		Runtime rt = Runtime.getRuntime();
-		long maxAvailable = rt.maxMemory(); // Max available memory
-		if (maxAvailable == Long.MAX_VALUE) {
-			logger.warn("No inherent maximum memory set - for caching purposes, will assume 64 GB");
-			maxAvailable = 64L * 1024L * 1024L * 1024L;
-		}
-		double percentage = PathPrefs.tileCachePercentageProperty().get();
-		if (percentage < 10) {
-			logger.warn("At least 10% of available memory needs to be used for tile caching (you requested {}%)", percentage);
-			percentage = 10;
-		} else if (percentage > 90) {
-			logger.warn("No more than 90% of available memory can be used for tile caching (you requested {}%)", percentage);
-			percentage = 90;			
-		}
-		long tileCacheSize = Math.round(maxAvailable * (percentage / 100.0));
-		logger.info(String.format("Setting tile cache size to %.2f MB (%.1f%% max memory)", tileCacheSize/(1024.*1024.), percentage));
-		return tileCacheSize;
+		return TileCache.calculateCacheSize(PathPrefs.tileCachePercentageProperty().get());
 	}
 	
 }
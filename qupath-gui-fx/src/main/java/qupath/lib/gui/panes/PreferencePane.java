@@ -239,6 +239,9 @@ public class PreferencePane {
 		@DoublePref("Prefs.General.tileCache")
 		public final DoubleProperty tileCache = PathPrefs.tileCachePercentageProperty();
 
+		@BooleanPref("Prefs.General.prefetchTiles")
+		public final BooleanProperty prefetchTiles = PathPrefs.prefetchTilesProperty();
+
 		@BooleanPref("Prefs.General.showImageNameInTitle")
 		public final BooleanProperty showImageNameInTitle = PathPrefs.showImageNameInTitleProperty();
 
@@ -341,6 +344,9 @@ public class PreferencePane {
 		@DoublePref("Prefs.InputOutput.tmaExportDownsample")
 		public final DoubleProperty tmaExportDownsample = PathPrefs.tmaExportDownsampleProperty();
 		
+		@BooleanPref("Prefs.InputOutput.writeChunkedDataFiles")
+		public final BooleanProperty writeChunkedDataFiles = PathPrefs.writeChunkedDataFilesProperty();
+		
 	}
 	
 	
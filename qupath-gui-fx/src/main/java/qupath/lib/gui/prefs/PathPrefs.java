@@ -66,6 +66,7 @@ import qupath.lib.common.ThreadTools;
 import qupath.lib.common.Version;
 import qupath.lib.gui.QuPathGUI;
 import qupath.lib.gui.localization.QuPathResources;
+import qupath.lib.io.PathIO;
 import qupath.lib.objects.classes.PathClass;
 import qupath.lib.projects.ProjectIO;
 
@@ -1205,6 +1206,20 @@ public class PathPrefs {
 	}
 	
 	
+	private static BooleanProperty prefetchTiles = createPersistentPreference("prefetchTiles", false);
+	
+	/**
+	 * Request tiles for the adjacent field of view while panning in a viewer, so that they are likely 
+	 * to be cached by the time they are needed.
+	 * This can improve responsiveness for slow image sources, at the cost of reading some tiles that are never shown.
+	 * @return
+	 * @since v0.6.0
+	 */
+	public static BooleanProperty prefetchTilesProperty() {
+		return prefetchTiles;
+	}
+	
+	
 	private static BooleanProperty useCalibratedLocationString = createPersistentPreference("useCalibratedLocationString", true);
 	
 	/**
@@ -1550,6 +1565,24 @@ public class PathPrefs {
 		return minPyramidDimension;
 	}
 	
+	private static BooleanProperty writeChunkedDataFiles = createPersistentPreference("writeChunkedDataFiles", false);
+	
+	/**
+	 * Write .qpdata files in the chunked binary format, which is faster for images with many objects 
+	 * but can't be read by QuPath versions before v0.6.0.
+	 * @return
+	 * @see PathIO#setWriteChunkedDataFiles(boolean)
+	 * @since v0.6.0
+	 */
+	public static BooleanProperty writeChunkedDataFilesProperty() {
+		return writeChunkedDataFiles;
+	}
+	
+	private static void addChunkedDataFilesListener() {
+		writeChunkedDataFiles.addListener((v, o, n) -> PathIO.setWriteChunkedDataFiles(n));
+		PathIO.setWriteChunkedDataFiles(writeChunkedDataFiles.get());
+	}
+	
 	private static IntegerProperty pointRadiusProperty = createPersistentPreference("defaultPointRadius", 5);
 
 	/**
@@ -1763,6 +1796,7 @@ public class PathPrefs {
 	static {
 		addLocaleListeners();
 		addNumThreadsListener();
+		addChunkedDataFilesListener();
 	}
 
 
@@ -350,6 +350,25 @@ public class PathObjectPainter {
 	
 
 
+	/**
+	 * Get the color that would be used to paint an unselected object, or null if the object would not be painted 
+	 * (e.g. because it is hidden, or has no valid color for the current measurement mapper).
+	 * This is useful when objects are summarized rather than painted individually.
+	 * 
+	 * @param pathObject the object
+	 * @param overlayOptions the overlay options defining how objects should be painted
+	 * @return the packed RGB color, or null if the object would not be painted
+	 * @since v0.6.0
+	 */
+	public static Integer getPaintedColorRGB(PathObject pathObject, OverlayOptions overlayOptions) {
+		if ((overlayOptions.isHidden(pathObject) && !pathObject.isTMACore())
+				|| isHiddenObjectType(pathObject, overlayOptions))
+			return null;
+		var color = getBaseObjectColor(pathObject, overlayOptions, false);
+		return color == null ? null : color.getRGB();
+	}
+
+
 	private static Color getBaseObjectColor(PathObject pathObject, OverlayOptions overlayOptions, boolean isSelected) {
 		Color color = null;
 		if (isSelected)
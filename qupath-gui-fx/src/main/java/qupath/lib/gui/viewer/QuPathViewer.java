@@ -130,7 +130,6 @@ import qupath.lib.images.servers.ImageChannel;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ImageServerMetadata;
 import qupath.lib.images.servers.PixelCalibration;
-import qupath.lib.objects.PathDetectionObject;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjectTools;
 import qupath.lib.objects.TMACoreObject;
@@ -2988,23 +2987,16 @@ public class QuPathViewer implements TileListener<BufferedImage>, PathObjectHier
 			return;
 		}
 		
-		// Clear any cached regions of the overlay, if necessary
-		// TODO: Make this update a bit less conservative - it isn't really needed if we don't modify detections?
-		if (event == null || event.isStructureChangeEvent())
+		// Refresh any cached regions of the overlay, if necessary
+		// Cached tiles only contain detections, so other objects can be ignored unless the structure has changed
+		if (event == null)
 			hierarchyOverlay.clearCachedOverlay();
-		else {
-			List<PathObject> pathObjects = event.getChangedObjects();
-			List<PathObject> pathDetectionObjects = PathObjectTools.getObjectsOfClass(pathObjects, PathDetectionObject.class);
-			if (pathDetectionObjects.size() <= 50) {
-				// TODO: PUT THIS LISTENER INTO THE HIERARCHY OVERLAY ITSELF?  But then the order of events is uncertain... hierarchy would need to be able to call repaint as well
-				// (or possibly post an event?)
-				for (PathObject temp : pathDetectionObjects) {
-					if (temp.hasROI())
-						hierarchyOverlay.clearCachedOverlayForRegion(ImageRegion.createInstance(temp.getROI()));
-				}
-			} else {
+		else if (event.isStructureChangeEvent() || event.getChangedObjects().stream().anyMatch(PathObject::isDetection)) {
+			var regions = event.getChangedRegions();
+			if (regions == null)
 				hierarchyOverlay.clearCachedOverlay();
-			}
+			else
+				hierarchyOverlay.refreshCachedOverlayForRegions(regions);
 		}
 //		hierarchyOverlay.clearCachedOverlay();
 
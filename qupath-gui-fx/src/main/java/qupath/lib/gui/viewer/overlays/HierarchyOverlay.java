@@ -462,6 +462,8 @@ public class HierarchyOverlay extends AbstractOverlay {
 	 * Clear previously-cached tiles for this overlay.
 	 */
 	public void clearCachedOverlay() {
+		if (overlayServer != null)
+			overlayServer.clearCachedSummaries();
 		if (regionStore != null && overlayServer != null)
 			regionStore.clearCacheForServer(overlayServer);
 	}
@@ -471,9 +473,34 @@ public class HierarchyOverlay extends AbstractOverlay {
 	 * @param region the region for which tiles should be removed
 	 */
 	public void clearCachedOverlayForRegion(ImageRegion region) {
+		if (overlayServer != null)
+			overlayServer.clearCachedSummaries(region);
 		if (regionStore != null && overlayServer != null)
 			regionStore.clearCacheForRequestOverlap(RegionRequest.createInstance(overlayServer.getPath(), 1, region));
 	}
+	
+	/**
+	 * Refresh previously-cached tiles for this overlay that overlap any of the specified regions.
+	 * <p>
+	 * Unlike {@link #clearCachedOverlayForRegion(ImageRegion)}, the tiles are repainted in the background 
+	 * and replaced when they are ready, so that the overlay doesn't flicker while the tiles are updated.
+	 * Only tiles overlapping the regions are repainted, at each resolution that has been cached.
+	 * @param regions the regions for which tiles should be refreshed
+	 * @since v0.6.0
+	 */
+	public void refreshCachedOverlayForRegions(Collection<? extends ImageRegion> regions) {
+		if (overlayServer == null || regions.isEmpty())
+			return;
+		for (var region : regions)
+			overlayServer.clearCachedSummaries(region);
+		if (regionStore != null) {
+			String path = overlayServer.getPath();
+			var requests = regions.stream()
+					.map(r -> RegionRequest.createInstance(path, 1, r))
+					.toList();
+			regionStore.refreshCacheForRequestOverlap(overlayServer, requests);
+		}
+	}
 
 	
 	/**
@@ -0,0 +1,104 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.display;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.color.ColorModelFactory;
+import qupath.lib.common.ColorTools;
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.ImageChannel;
+import qupath.lib.images.servers.PixelType;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+
+@SuppressWarnings("javadoc")
+public class TestChannelCompositor {
+
+	@Test
+	public void test_compositeMatchesAdditive() {
+		var rand = new Random(100L);
+		for (var pixelType : new PixelType[] {PixelType.UINT8, PixelType.UINT16, PixelType.FLOAT32}) {
+			int nChannels = 12;
+			var channels = new ArrayList<ImageChannel>();
+			for (int c = 0; c < nChannels; c++)
+				channels.add(ImageChannel.getInstance("Channel " + c, ColorTools.packRGB(rand.nextInt(256), rand.nextInt(256), rand.nextInt(256))));
+			var colorModel = ColorModelFactory.createColorModel(pixelType, channels);
+			// Use an awkward width, so that strips don't align with rows
+			var img = new BufferedImage(colorModel, colorModel.createCompatibleWritableRaster(301, 57), false, null);
+			var raster = img.getRaster();
+			for (int b = 0; b < nChannels; b++) {
+				for (int y = 0; y < img.getHeight(); y++) {
+					for (int x = 0; x < img.getWidth(); x++)
+						raster.setSample(x, y, b, rand.nextInt(256));
+				}
+			}
+			var imageData = new ImageData<>(new WrappedBufferedImageServer("Test", img, channels));
+			List<DirectServerChannelInfo> infos = new ArrayList<>();
+			for (int c = 0; c < nChannels; c++) {
+				var info = new DirectServerChannelInfo(imageData, c);
+				info.setMinDisplay(rand.nextInt(50));
+				info.setMaxDisplay(100 + rand.nextInt(150));
+				infos.add(info);
+			}
+			// A channel with no display range should be skipped
+			infos.get(3).setMaxDisplay(infos.get(3).getMinDisplay());
+
+			for (var mode : ChannelDisplayMode.values()) {
+				for (var selected : List.of(infos, infos.subList(0, 1), infos.subList(2, 5))) {
+					assertTrue(ChannelCompositor.canComposite(img, selected));
+					int n = img.getWidth() * img.getHeight();
+					int[] expected = selected.get(0).getRGB(img, new int[n], mode);
+					for (var info : selected.subList(1, selected.size()))
+						info.updateRGBAdditive(img, expected, mode);
+					int[] actual = ChannelCompositor.composite(img, selected, mode);
+					for (int i = 0; i < n; i++)
+						assertEquals(expected[i] & 0xFFFFFF, actual[i] & 0xFFFFFF);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void test_readSamples() {
+		var channels = ImageChannel.getDefaultChannelList(3);
+		var colorModel = ColorModelFactory.createColorModel(PixelType.INT16, channels);
+		var img = new BufferedImage(colorModel, colorModel.createCompatibleWritableRaster(20, 10), false, null);
+		var raster = img.getRaster();
+		for (int b = 0; b < 3; b++) {
+			for (int y = 0; y < 10; y++) {
+				for (int x = 0; x < 20; x++)
+					raster.setSample(x, y, b, (x - y) * (b + 1));
+			}
+		}
+		float[] values = new float[60];
+		ChannelCompositor.readSamples(raster, 2, 4, 3, values);
+		assertArrayEquals(raster.getSamples(0, 4, 20, 3, 2, (float[])null), values);
+	}
+
+}
@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.gui.images.servers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.common.ColorTools;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.regions.RegionRequest;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestDetectionDensityCache {
+	
+	private static final int RED = ColorTools.packRGB(255, 0, 0);
+
+	@Test
+	public void test_paintTile() {
+		var hierarchy = new PathObjectHierarchy();
+		var detections = createDetections(0, 0, 2000, 1000, 10, 4);
+		hierarchy.addObjects(detections);
+		var cache = new DetectionDensityCache(hierarchy, p -> RED);
+		
+		// Too high resolution for a summary
+		var img = createImage(256, 256);
+		assertEquals(-1, cache.paintTile(img, RegionRequest.createInstance("", 4, 0, 0, 1024, 1024)));
+		
+		// Small detections should be summarized
+		double downsample = 64;
+		var request = RegionRequest.createInstance("", downsample, 0, 0, 256*64, 256*64);
+		assertEquals(detections.size(), cache.paintTile(img, request));
+		assertEquals(RED & 0xffffff, img.getRGB(5, 5) & 0xffffff);
+		assertTrue(img.getRGB(5, 5) >>> 24 > 0);
+		assertEquals(0, img.getRGB(100, 100));
+		
+		// Large detections should be painted individually
+		var hierarchyLarge = new PathObjectHierarchy();
+		hierarchyLarge.addObjects(createDetections(0, 0, 2000, 1000, 500, 400));
+		var cacheLarge = new DetectionDensityCache(hierarchyLarge, p -> RED);
+		assertEquals(-1, cacheLarge.paintTile(createImage(256, 256), request));
+	}
+	
+	@Test
+	public void test_hiddenDetections() {
+		var hierarchy = new PathObjectHierarchy();
+		hierarchy.addObjects(createDetections(0, 0, 2000, 1000, 10, 4));
+		var cache = new DetectionDensityCache(hierarchy, p -> null);
+		var img = createImage(256, 256);
+		assertEquals(0, cache.paintTile(img, RegionRequest.createInstance("", 64, 0, 0, 256*64, 256*64)));
+		assertEquals(0, img.getRGB(5, 5));
+	}
+	
+	@Test
+	public void test_invalidate() {
+		var hierarchy = new PathObjectHierarchy();
+		var detections = createDetections(0, 0, 2000, 1000, 10, 4);
+		hierarchy.addObjects(detections);
+		var cache = new DetectionDensityCache(hierarchy, p -> RED);
+		var request = RegionRequest.createInstance("", 64, 0, 0, 256*64, 256*64);
+		assertEquals(detections.size(), cache.paintTile(createImage(256, 256), request));
+		
+		// Add detections far from the others
+		var added = createDetections(10000, 10000, 500, 500, 10, 4);
+		hierarchy.addObjects(added);
+		
+		// Cached values are used until invalidated
+		assertEquals(detections.size(), cache.paintTile(createImage(256, 256), request));
+		cache.invalidate(ImageRegion.createInstance(10000, 10000, 500, 500, 0, 0));
+		assertEquals(detections.size() + added.size(), cache.paintTile(createImage(256, 256), request));
+		
+		// Remove the original detections
+		hierarchy.removeObjects(detections, false);
+		cache.invalidate(ImageRegion.createInstance(0, 0, 2000, 1000, 0, 0));
+		var img = createImage(256, 256);
+		assertEquals(added.size(), cache.paintTile(img, request));
+		assertEquals(0, img.getRGB(5, 5));
+		
+		// Different planes are independent
+		assertEquals(0, cache.paintTile(createImage(256, 256), request.updateZ(1)));
+		
+		cache.invalidateAll();
+		assertEquals(added.size(), cache.paintTile(createImage(256, 256), request));
+	}
+	
+	private static BufferedImage createImage(int width, int height) {
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	}
+	
+	private static List<PathObject> createDetections(int x, int y, int width, int height, int spacing, int size) {
+		List<PathObject> detections = new ArrayList<>();
+		for (int yy = y; yy < y + height; yy += spacing) {
+			for (int xx = x; xx < x + width; xx += spacing) {
+				detections.add(PathObjects.createDetectionObject(ROIs.createEllipseROI(xx, yy, size, size, ImagePlane.getDefaultPlane())));
+			}
+		}
+		return detections;
+	}
+
+}
@@ -0,0 +1,183 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2025 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.gui.images.stores;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.servers.AbstractTileableImageServer;
+import qupath.lib.images.servers.ImageChannel;
+import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.images.servers.ImageServerMetadata;
+import qupath.lib.images.servers.PixelType;
+import qupath.lib.images.servers.TileRequest;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class TestDefaultImageRegionStore {
+
+	@Test
+	public void test_prefetchWhilePanning() throws Exception {
+		var visible = RegionRequest.createInstance("", 1.0, 320, 0, 64, 64);
+		var ahead = RegionRequest.createInstance("", 1.0, 512, 0, 64, 64);
+		for (boolean prefetch : new boolean[] {true, false}) {
+			var store = new DefaultImageRegionStore(64L * 1024L * 1024L);
+			try (var server = new TileServer()) {
+				store.setPrefetchTiles(prefetch);
+				var img = new BufferedImage(server.getWidth(), server.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+				var g2d = img.createGraphics();
+				// Pan to the right
+				store.paintRegion(server, g2d, new Rectangle(0, 0, 256, 256), 0, 0, 1.0, null, null, null);
+				store.paintRegion(server, g2d, new Rectangle(128, 0, 256, 256), 0, 0, 1.0, null, null, null);
+				g2d.dispose();
+				var cache = store.getCache();
+				assertTrue(waitForTile(cache, visible.updatePath(server.getPath())));
+				if (prefetch)
+					assertTrue(waitForTile(cache, ahead.updatePath(server.getPath())));
+				else
+					assertFalse(waitForTile(cache, ahead.updatePath(server.getPath())));
+			} finally {
+				store.close();
+			}
+		}
+	}
+	
+	@Test
+	public void test_refreshTileWithSharedCache() throws Exception {
+		var store = new DefaultImageRegionStore(64L * 1024L * 1024L);
+		try (var server = new TileServer()) {
+			// Share the cache, as when the store's cache is used by all servers
+			server.cache = store.getCache();
+			server.value = 255;
+			var request = RegionRequest.createInstance(server.getPath(), 1.0, 0, 0, 64, 64);
+			assertEquals(255, server.readRegion(request).getRaster().getSample(0, 0, 0));
+			assertTrue(store.getCache().containsKey(request));
+			
+			// Remove what was painted in the tile, then refresh it
+			server.value = 0;
+			var latch = new CountDownLatch(1);
+			store.addTileListener(new TileListener<>() {
+				@Override
+				public void tileAvailable(String serverPath, ImageRegion region, BufferedImage tile) {
+					latch.countDown();
+				}
+
+				@Override
+				public boolean requiresTileRegion(String serverPath, ImageRegion region) {
+					return true;
+				}
+			});
+			store.refreshCacheForRequestOverlap(server, List.of(request));
+			assertTrue(latch.await(2, TimeUnit.SECONDS));
+			assertEquals(0, store.getCache().get(request).getRaster().getSample(0, 0, 0));
+			assertEquals(0, server.readRegion(request).getRaster().getSample(0, 0, 0));
+		} finally {
+			store.close();
+		}
+	}
+	
+	private static boolean waitForTile(Map<RegionRequest, ?> cache, RegionRequest request) throws InterruptedException {
+		long timeout = System.currentTimeMillis() + 2000L;
+		while (System.currentTimeMillis() < timeout) {
+			if (cache.containsKey(request))
+				return true;
+			Thread.sleep(10L);
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Server with 64x64 pixel tiles and a single resolution.
+	 */
+	private static class TileServer extends AbstractTileableImageServer {
+		
+		private volatile int value = 0;
+		private Map<RegionRequest, BufferedImage> cache;
+		
+		private final ImageServerMetadata metadata = new ImageServerMetadata.Builder()
+				.width(1024)
+				.height(256)
+				.preferredTileSize(64, 64)
+				.pixelType(PixelType.UINT8)
+				.channels(ImageChannel.getDefaultChannelList(1))
+				.build();
+
+		@Override
+		protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
+			var img = new BufferedImage(tileRequest.getTileWidth(), tileRequest.getTileHeight(), BufferedImage.TYPE_BYTE_GRAY);
+			if (value != 0) {
+				var raster = img.getRaster();
+				for (int y = 0; y < img.getHeight(); y++) {
+					for (int x = 0; x < img.getWidth(); x++)
+						raster.setSample(x, y, 0, value);
+				}
+			}
+			return img;
+		}
+		
+		@Override
+		protected Map<RegionRequest, BufferedImage> getCache() {
+			return cache;
+		}
+
+		@Override
+		protected ServerBuilder<BufferedImage> createServerBuilder() {
+			return null;
+		}
+
+		@Override
+		protected String createID() {
+			return getClass().getName() + ": " + UUID.randomUUID();
+		}
+
+		@Override
+		public Collection<URI> getURIs() {
+			return List.of();
+		}
+
+		@Override
+		public String getServerType() {
+			return "Tile server";
+		}
+
+		@Override
+		public ImageServerMetadata getOriginalMetadata() {
+			return metadata;
+		}
+		
+	}
+
+}
@@ -56,6 +56,9 @@ include("qupath-extension-script-editor")
 include("qupath-extension-openslide")
 include("qupath-extension-bioformats")
 
+// Benchmarks (not included in the distribution)
+include("qupath-benchmarks")
+
 // Support JavaFX dependency override
 // This can be used to create a build for older versions of macOS
 dependencyResolutionManagement {